@@ -0,0 +1,109 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the access index checks and the discarding of entries loaded concurrently with an invalidation
+ *
+ * @author Boris Capitanu
+ */
+public class AccessIndexTest {
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID compId = UUID.randomUUID();
+    private final UUID group1 = UUID.randomUUID();
+    private final UUID group2 = UUID.randomUUID();
+    private final UUID group3 = UUID.randomUUID();
+
+    @Test
+    public void testMembershipsAndSharing() {
+        AccessIndex index = new AccessIndex(100, 0);
+
+        long[] memberships = index.putUserMemberships(userId,
+                new UUID[] { group2, group1 },
+                new int[] { SCRole.USER.getRoleId(), SCRole.ADMIN.getRoleId() },
+                index.getGeneration());
+
+        assertTrue(AccessIndex.isMember(memberships, index.getGroupNumber(group1)));
+        assertTrue(AccessIndex.isMember(memberships, index.getGroupNumber(group2)));
+        assertFalse(AccessIndex.isMember(memberships, index.getGroupNumber(group3)));
+
+        assertTrue(AccessIndex.hasRole(memberships, index.getGroupNumber(group1), SCRole.ADMIN.getRoleId()));
+        assertFalse(AccessIndex.hasRole(memberships, index.getGroupNumber(group2), SCRole.ADMIN.getRoleId()));
+
+        int[] groups = index.putComponentGroups(compId, 1, Arrays.asList(group3, group2), index.getGeneration());
+        assertTrue(AccessIndex.isShared(groups, memberships));
+        assertFalse(AccessIndex.isShared(groups, null));
+
+        groups = index.putComponentGroups(compId, 2, Collections.singletonList(group3), index.getGeneration());
+        assertFalse(AccessIndex.isShared(groups, memberships));
+
+        groups = index.putComponentGroups(compId, 3,
+                Collections.singletonList(BackendStoreLink.PUBLIC_GROUP), index.getGeneration());
+        assertTrue(AccessIndex.isShared(groups, null));
+    }
+
+    @Test
+    public void testStaleLoadIsDiscarded() {
+        AccessIndex index = new AccessIndex(100, 0);
+
+        // A load that started before the component was shared must not be kept
+        long generation = index.getGeneration();
+        index.invalidateComponent(compId, 1);
+        index.putComponentGroups(compId, 1, Collections.singletonList(group1), generation);
+        assertNull(index.getComponentGroups(compId, 1));
+
+        index.putComponentGroups(compId, 1, Collections.singletonList(group1), index.getGeneration());
+        assertNotNull(index.getComponentGroups(compId, 1));
+
+        index.putUserMemberships(userId, new UUID[] { group1 }, new int[] { 0 }, index.getGeneration());
+        index.invalidateUser(userId);
+        assertNull(index.getUserMemberships(userId));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests resuming the change feed from a token and the reset reported when events were missed
+ *
+ * @author Boris Capitanu
+ */
+public class ChangeFeedTest {
+
+    private final UUID userId = UUID.randomUUID();
+
+    @Test
+    public void testResume() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(10);
+        String start = feed.getToken();
+
+        feed.publish(SCEvent.USER_CREATED, userId, null, null, null, null, System.currentTimeMillis());
+        feed.publish(SCEvent.USER_PROFILE_UPDATED, userId, null, null, null, "{}", System.currentTimeMillis());
+
+        ChangeFeed.Batch batch = feed.read(start, 1, 0);
+        assertFalse(batch.isReset());
+        assertEquals(1, batch.getEntries().size());
+        assertEquals(SCEvent.USER_CREATED, batch.getEntries().get(0).getEvent());
+
+        batch = feed.read(batch.getToken(), 10, 0);
+        assertEquals(1, batch.getEntries().size());
+        assertEquals(SCEvent.USER_PROFILE_UPDATED, batch.getEntries().get(0).getEvent());
+
+        // Nothing new: the token stays the same
+        String token = batch.getToken();
+        batch = feed.read(token, 10, 0);
+        assertTrue(batch.getEntries().isEmpty());
+        assertEquals(token, batch.getToken());
+    }
+
+    @Test
+    public void testReset() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(2);
+        String start = feed.getToken();
+
+        for (int i = 0; i < 3; i++)
+            feed.publish(SCEvent.USER_CREATED, userId, null, null, null, null, System.currentTimeMillis());
+
+        ChangeFeed.Batch batch = feed.read(start, 10, 0);
+        assertTrue(batch.isReset());
+        assertTrue(batch.getEntries().isEmpty());
+        assertEquals(feed.getToken(), batch.getToken());
+
+        // A token issued by another feed (before a restart)
+        assertTrue(feed.read("0-1", 10, 0).isReset());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidToken() throws InterruptedException {
+        new ChangeFeed(2).read("bogus", 10, 0);
+    }
+}
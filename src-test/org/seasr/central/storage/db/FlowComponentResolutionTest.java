@@ -0,0 +1,287 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seasr.central.storage.db.properties.DBProperties;
+import org.seasr.central.util.IdVersionPair;
+import org.seasr.meandre.support.generic.util.UUIDUtils;
+
+import java.io.FileInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Compares the set-based resolution of the components referenced by a flow against the per-instance
+ * lookups it replaced, on a synthetic 200-instance flow stored in an in-memory SQLite database and
+ * using the queries from the MySQL store configuration. main() runs the benchmark; an optional
+ * argument simulates the network round trip time (ms) of each query.
+ *
+ * @author Boris Capitanu
+ */
+public class FlowComponentResolutionTest {
+
+    private static final int COMPONENTS = 120;
+    private static final int VERSIONS = 5;
+    private static final int INSTANCES = 200;
+    private static final int DISTINCT_INSTANCES = 70;
+
+    private Properties properties;
+    private Connection sqliteConn;
+    private Connection conn;
+    private CountingConnection counter;
+    private SQLLink link;
+    private List<IdVersionPair> instances;
+
+    @Before
+    public void setUp() throws Exception {
+        setUp(0);
+    }
+
+    private void setUp(long roundTripMillis) throws Exception {
+        properties = new Properties();
+        properties.loadFromXML(new FileInputStream("conf/sc-mysql-store-config.xml"));
+
+        link = new SQLLink();
+        Field field = SQLLink.class.getDeclaredField("properties");
+        field.setAccessible(true);
+        field.set(link, properties);
+
+        Class.forName("org.sqlite.JDBC");
+        sqliteConn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        counter = new CountingConnection(sqliteConn, roundTripMillis);
+        conn = counter.proxy;
+
+        // The SQLite driver does not support DECIMAL values, the ids are stored as text
+        Statement stmt = sqliteConn.createStatement();
+        stmt.executeUpdate("CREATE TABLE sc_component (comp_uuid TEXT, uploaded_at DATETIME, version INT, core_hash TEXT)");
+        stmt.close();
+
+        Random random = new Random(42);
+        List<UUID> componentIds = new ArrayList<UUID>();
+        PreparedStatement ps = sqliteConn.prepareStatement("INSERT INTO sc_component VALUES (?, ?, ?, ?)");
+        for (int c = 0; c < COMPONENTS; c++) {
+            UUID componentId = UUID.randomUUID();
+            componentIds.add(componentId);
+            for (int v = 0; v < VERSIONS; v++) {
+                ps.setString(1, UUIDUtils.toBigInteger(componentId).toString());
+                ps.setTimestamp(2, new Timestamp(1262304000000L + (v * 1000000L + random.nextInt(1000000)) * 1000L));
+                ps.setInt(3, v + 1);
+                ps.setString(4, new BigInteger(127, random).negate().toString());
+                ps.addBatch();
+            }
+        }
+        ps.executeBatch();
+        ps.close();
+
+        // A flow with many instances of the same components
+        List<IdVersionPair> distinct = new ArrayList<IdVersionPair>();
+        for (int i = 0; i < DISTINCT_INSTANCES; i++)
+            distinct.add(new IdVersionPair(componentIds.get(random.nextInt(COMPONENTS)), 1 + random.nextInt(VERSIONS)));
+        instances = new ArrayList<IdVersionPair>();
+        for (int i = 0; i < INSTANCES; i++)
+            instances.add(distinct.get(random.nextInt(distinct.size())));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sqliteConn.close();
+    }
+
+    @Test
+    public void testResolutionEquivalence() throws Exception {
+        Map<IdVersionPair, long[]> expected = resolvePerInstance(instances);
+        Map<IdVersionPair, long[]> actual = resolveSetBased(instances);
+
+        assertEquals(expected.size(), actual.size());
+        for (IdVersionPair instance : instances)
+            assertEquals(Arrays.toString(expected.get(instance)), Arrays.toString(actual.get(instance)));
+
+        // Unknown component versions are not resolved
+        IdVersionPair unknownVersion = new IdVersionPair(instances.get(0).getId(), VERSIONS + 1);
+        IdVersionPair unknownComponent = new IdVersionPair(UUID.randomUUID(), 1);
+        Map<IdVersionPair, long[]> unknown = resolveSetBased(Arrays.asList(unknownVersion, unknownComponent));
+        assertNull(unknown.get(unknownVersion));
+        assertNull(unknown.get(unknownComponent));
+    }
+
+    /**
+     * The lookups previously done by addFlow: two queries per flow instance
+     */
+    private Map<IdVersionPair, long[]> resolvePerInstance(List<IdVersionPair> instances) throws SQLException {
+        Map<IdVersionPair, long[]> result = new HashMap<IdVersionPair, long[]>();
+
+        for (IdVersionPair instance : instances) {
+            BigInteger compId = UUIDUtils.toBigInteger(instance.getId());
+            Long verId = link.getComponentVersionId(compId, instance.getVersion(), conn);
+            if (verId == null) continue;
+
+            BigInteger coreHash = link.getComponentCore(compId, verId, conn);
+            result.put(instance, new long[] { verId, coreHash.longValue(), coreHash.shiftRight(64).longValue() });
+        }
+
+        return result;
+    }
+
+    private Map<IdVersionPair, long[]> resolveSetBased(List<IdVersionPair> instances) throws SQLException {
+        Map<IdVersionPair, long[]> result = new HashMap<IdVersionPair, long[]>();
+
+        Map<IdVersionPair, SQLLink.Component> resolved =
+                link.resolveComponentVersions(new HashSet<IdVersionPair>(instances), conn);
+        for (IdVersionPair instance : instances) {
+            SQLLink.Component comp = resolved.get(instance);
+            if (comp == null) continue;
+
+            BigInteger coreHash = comp.getComponentCoreHash();
+            result.put(instance, new long[] {
+                    comp.getComponentVersionId(), coreHash.longValue(), coreHash.shiftRight(64).longValue() });
+        }
+
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long roundTripMillis = (args.length > 0) ? Long.parseLong(args[0]) : 0;
+        int iterations = (roundTripMillis > 0) ? 20 : 500;
+
+        FlowComponentResolutionTest test = new FlowComponentResolutionTest();
+        test.setUp(roundTripMillis);
+
+        try {
+            // Warm up
+            for (int i = 0; i < Math.min(iterations, 50); i++) {
+                test.resolvePerInstance(test.instances);
+                test.resolveSetBased(test.instances);
+            }
+
+            test.counter.queries = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                test.resolvePerInstance(test.instances);
+            long perInstance = (System.nanoTime() - start) / iterations;
+            int perInstanceQueries = test.counter.queries / iterations;
+
+            test.counter.queries = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                test.resolveSetBased(test.instances);
+            long setBased = (System.nanoTime() - start) / iterations;
+            int setBasedQueries = test.counter.queries / iterations;
+
+            System.out.println(String.format("%d instances (%d distinct), simulated round trip %d ms",
+                    INSTANCES, new HashSet<IdVersionPair>(test.instances).size(), roundTripMillis));
+            System.out.println(String.format("per-instance: %,10d us/flow  %4d queries", perInstance / 1000, perInstanceQueries));
+            System.out.println(String.format("set-based:    %,10d us/flow  %4d queries", setBased / 1000, setBasedQueries));
+        }
+        finally {
+            test.tearDown();
+        }
+    }
+
+    /**
+     * Counts the queries executed (optionally delaying each one), and maps the DECIMAL values to text
+     */
+    private static class CountingConnection implements InvocationHandler {
+        private final Connection conn;
+        private final long roundTripMillis;
+        private final Connection proxy;
+        private int queries = 0;
+
+        public CountingConnection(Connection conn, long roundTripMillis) {
+            this.conn = conn;
+            this.roundTripMillis = roundTripMillis;
+            this.proxy = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class[] { Connection.class }, this);
+        }
+
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            Object result = call(conn, method, args);
+            if (!method.getName().equals("prepareStatement")) return result;
+
+            final PreparedStatement ps = (PreparedStatement) result;
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { PreparedStatement.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("setBigDecimal")) {
+                                ps.setString((Integer) args[0], args[1].toString());
+                                return null;
+                            }
+                            if (!method.getName().equals("executeQuery"))
+                                return call(ps, method, args);
+
+                            queries++;
+                            if (roundTripMillis > 0) Thread.sleep(roundTripMillis);
+
+                            final ResultSet rs = (ResultSet) call(ps, method, args);
+                            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ResultSet.class },
+                                    new InvocationHandler() {
+                                        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                                            if (method.getName().equals("getBigDecimal") && args[0] instanceof Integer)
+                                                return new BigDecimal(rs.getString((Integer) args[0]));
+                                            return call(rs, method, args);
+                                        }
+                                    });
+                        }
+                    });
+        }
+
+        private static Object call(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
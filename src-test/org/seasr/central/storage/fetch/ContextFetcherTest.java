@@ -0,0 +1,219 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.fetch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seasr.central.storage.ContextFile;
+import org.seasr.meandre.support.generic.crypto.Crypto;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the remote context fetcher against a local HTTP server
+ *
+ * @author Boris Capitanu
+ */
+public class ContextFetcherTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private final byte[] content = new byte[300000];
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    private HttpServer server;
+    private File cacheDir;
+    private URL url;
+    private URL slowUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i * 31);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/lib.jar", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e) {
+                    // ignore
+                }
+
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+
+                downloads.incrementAndGet();
+                exchange.getResponseHeaders().set("Content-Type", "application/java-archive");
+                exchange.sendResponseHeaders(200, content.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(content);
+                out.close();
+            }
+        });
+        server.createContext("/slow.jar", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                }
+                catch (InterruptedException e) {
+                    // ignore
+                }
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/lib.jar");
+        slowUrl = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/slow.jar");
+
+        cacheDir = File.createTempFile("fetch", "cache");
+        cacheDir.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    @Test
+    public void testConcurrentFetchesAreShared() throws Exception {
+        ContextFetcher fetcher = new ContextFetcher(cacheDir, 4, 2, 5000, 5000, 30000, 60000, 60000);
+
+        Map<URL, Future<ContextFile>> futures = fetcher.fetchAll(Arrays.asList(url, url));
+        Future<ContextFile> other = fetcher.fetch(url);
+
+        assertEquals(1, futures.size());
+        ContextFile context = ContextFetcher.getResult(futures.get(url));
+        assertSame(context, ContextFetcher.getResult(other));
+        assertEquals(1, requests.get());
+
+        assertEquals("lib.jar", context.getFileName());
+        assertEquals("application/java-archive", context.getContentType());
+        assertEquals(content.length, context.getSize());
+        assertEquals(new BigInteger(Crypto.createMD5Hash(content)), context.getMD5());
+        assertEquals(context.getMD5(), new BigInteger(Crypto.createMD5Hash(context.getFile())));
+
+        // Fresh cache entries are used without contacting the server
+        ContextFile cached = ContextFetcher.getResult(fetcher.fetch(url));
+        assertEquals(1, requests.get());
+        assertEquals(context.getMD5(), cached.getMD5());
+        assertEquals(context.getFile(), cached.getFile());
+
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void testStaleEntriesAreRevalidated() throws Exception {
+        ContextFetcher fetcher = new ContextFetcher(cacheDir, 4, 2, 5000, 5000, 30000, 0, 60000);
+
+        ContextFile context = ContextFetcher.getResult(fetcher.fetch(url));
+        ContextFile revalidated = ContextFetcher.getResult(fetcher.fetch(url));
+
+        assertEquals(2, requests.get());
+        assertEquals(1, downloads.get());
+        assertEquals(context.getMD5(), revalidated.getMD5());
+        assertEquals("application/java-archive", revalidated.getContentType());
+        assertTrue(revalidated.getFile().isFile());
+
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void testTemporaryDownloadsAreDeletedOnRelease() throws Exception {
+        ContextFetcher fetcher = new ContextFetcher(null, 4, 2, 5000, 5000, 30000, 0, 0);
+
+        Future<ContextFile> first = fetcher.fetch(url);
+        Future<ContextFile> second = fetcher.fetch(url);
+
+        // One request giving up does not cancel the fetch the other one shares
+        ContextFetcher.release(first);
+        ContextFile context = ContextFetcher.getResult(second);
+        assertEquals(1, requests.get());
+        assertTrue(context.getFile().isFile());
+
+        ContextFetcher.release(second);
+        assertFalse(context.getFile().exists());
+
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void testSlowServersTimeOut() throws Exception {
+        ContextFetcher fetcher = new ContextFetcher(null, 4, 2, 5000, 500, 1000, 0, 0);
+
+        long start = System.currentTimeMillis();
+        try {
+            ContextFetcher.getResult(fetcher.fetch(slowUrl));
+            fail("The fetch should have timed out");
+        }
+        catch (IOException e) {
+            assertTrue(System.currentTimeMillis() - start < 1900);
+        }
+
+        fetcher.shutdown();
+    }
+}
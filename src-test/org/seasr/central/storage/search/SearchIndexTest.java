@@ -0,0 +1,124 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.search;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.meandre.core.repository.FlowDescription;
+import org.seasr.central.storage.exceptions.InvalidQueryException;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the search only returns the versions visible to the searching user
+ *
+ * @author Boris Capitanu
+ */
+public class SearchIndexTest {
+
+    private final UUID ownerId = UUID.randomUUID();
+    private final UUID groupId = UUID.randomUUID();
+
+    private File indexDir;
+    private SearchIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        indexDir = File.createTempFile("sc-search", "");
+        indexDir.delete();
+        index = new SearchIndex(indexDir, 0, 100);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+        File[] files = indexDir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        indexDir.delete();
+    }
+
+    @Test
+    public void testVisibility() throws Exception {
+        UUID privateId = UUID.randomUUID();
+        UUID sharedId = UUID.randomUUID();
+
+        index.updateFlow(privateId, 1, ownerId, Collections.<UUID>emptySet(), createFlow("Word counter"));
+        index.updateFlow(sharedId, 1, ownerId, Arrays.asList(groupId), createFlow("Word cloud"));
+        index.flush();
+
+        // The owner sees both versions; a member of the group only the shared one
+        assertEquals(2, index.search("word", null, ownerId, Collections.<UUID>emptySet(), 0, 10).length());
+
+        JSONArray jaHits = index.search("word", SearchIndex.Type.FLOW, UUID.randomUUID(), Arrays.asList(groupId), 0, 10);
+        assertEquals(1, jaHits.length());
+        assertEquals(sharedId.toString(), jaHits.getJSONObject(0).getString("uuid"));
+
+        // Unrestricted searches see everything, components are not matched
+        assertEquals(2, index.search("word", SearchIndex.Type.FLOW, null, null, 0, 10).length());
+        assertEquals(0, index.search("word", SearchIndex.Type.COMPONENT, null, null, 0, 10).length());
+
+        index.remove(SearchIndex.Type.FLOW, privateId, 1);
+        index.flush();
+        assertEquals(1, index.search("word", null, null, null, 0, 10).length());
+    }
+
+    @Test(expected = InvalidQueryException.class)
+    public void testInvalidQuery() throws Exception {
+        index.search("name:(word", null, null, null, 0, 10);
+    }
+
+    private FlowDescription createFlow(String name) {
+        FlowDescription fd = new FlowDescription();
+        fd.setName(name);
+        fd.setDescription("Counts the words of a document");
+        fd.setCreator("Test");
+        return fd;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.util;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import org.junit.Test;
+import org.meandre.core.utils.vocabulary.RepositoryVocabulary;
+import org.seasr.meandre.support.generic.io.ModelUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the direct model rewriting in Tools.rewriteComponentModel/rewriteFlowModel, and the
+ * descriptors pre-rendered at upload time, against the Turtle round-trip they replaced, using the
+ * descriptors in test/data. The tests check that all produce isomorphic models; main() runs the benchmark.
+ *
+ * @author Boris Capitanu
+ */
+public class ModelRewriteTest {
+
+    private static final File COMPONENTS_DIR = new File("test/data/components");
+    private static final File FLOWS_DIR = new File("test/data/flows");
+
+    private static final UUID ID = UUID.fromString("0e4ab3a8-5d1c-4a7f-9f2e-3b6f0d6b3c11");
+    private static final int VERSION = 3;
+
+    @Test
+    public void testComponentRewriteEquivalence() throws IOException {
+        HttpServletRequest request = createRequest();
+
+        for (File file : getDescriptors(COMPONENTS_DIR)) {
+            Model expected = loadModel(file);
+            Model actual = loadModel(file);
+
+            legacyRewriteComponentModel(expected, ID, VERSION, request);
+            Tools.rewriteComponentModel(actual, ID, VERSION, request);
+
+            assertTrue(file.getName(), expected.isIsomorphicWith(actual));
+        }
+    }
+
+    @Test
+    public void testFlowRewriteEquivalence() throws IOException {
+        HttpServletRequest request = createRequest();
+
+        for (File file : getDescriptors(FLOWS_DIR)) {
+            Model expected = loadModel(file);
+            Model actual = loadModel(file);
+
+            legacyRewriteFlowModel(expected, ID, VERSION, request);
+            Tools.rewriteFlowModel(actual, ID, VERSION, request);
+
+            assertTrue(file.getName(), expected.isIsomorphicWith(actual));
+        }
+    }
+
+    @Test
+    public void testRenderingEquivalence() throws IOException {
+        HttpServletRequest request = createRequest();
+
+        for (File dir : new File[] { COMPONENTS_DIR, FLOWS_DIR }) {
+            boolean isFlow = (dir == FLOWS_DIR);
+
+            for (File file : getDescriptors(dir)) {
+                Model expected = loadModel(file);
+                Map<String, byte[]> renderings;
+
+                if (isFlow) {
+                    renderings = Tools.renderFlowModel(expected, ID, VERSION);
+                    legacyRewriteFlowModel(expected, ID, VERSION, request);
+                } else {
+                    renderings = Tools.renderComponentModel(expected, ID, VERSION);
+                    legacyRewriteComponentModel(expected, ID, VERSION, request);
+                }
+
+                for (String format : Tools.DESCRIPTOR_FORMATS) {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    HttpServletResponse response = createResponse(baos);
+                    Tools.sendRendering(response, renderings.get(format), Tools.getBaseAccessUrl(request));
+
+                    Model actual = ModelFactory.createDefaultModel()
+                            .read(new ByteArrayInputStream(baos.toByteArray()), null, format);
+
+                    assertTrue(file.getName() + " " + format, expected.isIsomorphicWith(actual));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        HttpServletRequest request = createRequest();
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+
+        for (File dir : new File[] { COMPONENTS_DIR, FLOWS_DIR }) {
+            boolean isFlow = (dir == FLOWS_DIR);
+
+            for (File file : getDescriptors(dir)) {
+                Model model = loadModel(file);
+
+                Map<String, byte[]> renderings = isFlow ?
+                        Tools.renderFlowModel(model, ID, VERSION) : Tools.renderComponentModel(model, ID, VERSION);
+
+                // Each timing covers rewriting the descriptor and serializing it as RDF/XML
+                for (int pass = 0; pass < 2; pass++) {
+                    // The first pass warms up the JIT
+                    long legacyTime = 0, directTime = 0, renderedTime = 0;
+
+                    for (int i = 0; i < iterations; i++) {
+                        Model legacy = copy(model);
+                        long start = System.nanoTime();
+                        if (isFlow)
+                            legacyRewriteFlowModel(legacy, ID, VERSION, request);
+                        else
+                            legacyRewriteComponentModel(legacy, ID, VERSION, request);
+                        legacy.write(new ByteArrayOutputStream(), "RDF/XML");
+                        legacyTime += System.nanoTime() - start;
+
+                        Model direct = copy(model);
+                        start = System.nanoTime();
+                        if (isFlow)
+                            Tools.rewriteFlowModel(direct, ID, VERSION, request);
+                        else
+                            Tools.rewriteComponentModel(direct, ID, VERSION, request);
+                        direct.write(new ByteArrayOutputStream(), "RDF/XML");
+                        directTime += System.nanoTime() - start;
+
+                        start = System.nanoTime();
+                        Tools.sendRendering(createResponse(new ByteArrayOutputStream()),
+                                renderings.get("RDF/XML"), Tools.getBaseAccessUrl(request));
+                        renderedTime += System.nanoTime() - start;
+                    }
+
+                    if (pass == 1)
+                        System.out.println(String.format(
+                                "%-25s %5d statements  turtle round-trip: %8.1f us  direct: %8.1f us  pre-rendered: %6.1f us",
+                                file.getName(), model.size(), legacyTime / 1000.0 / iterations,
+                                directTime / 1000.0 / iterations, renderedTime / 1000.0 / iterations));
+                }
+            }
+        }
+    }
+
+    private static File[] getDescriptors(File dir) {
+        return dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                String name = file.getName();
+                return name.endsWith(".rdf") || name.endsWith(".ttl") || name.endsWith(".nt");
+            }
+        });
+    }
+
+    private static Model loadModel(File file) throws IOException {
+        String name = file.getName();
+        String lang = name.endsWith(".ttl") ? "TURTLE" : name.endsWith(".nt") ? "N-TRIPLE" : "RDF/XML";
+
+        InputStream is = new FileInputStream(file);
+        try {
+            return ModelFactory.createDefaultModel().read(is, null, lang);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    private static Model copy(Model model) {
+        Model copy = ModelFactory.createDefaultModel();
+        copy.setNsPrefixes(model.getNsPrefixMap());
+        copy.add(model);
+        return copy;
+    }
+
+    private static HttpServletRequest createRequest() {
+        return (HttpServletRequest) Proxy.newProxyInstance(ModelRewriteTest.class.getClassLoader(),
+                new Class[] { HttpServletRequest.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        String name = m.getName();
+                        if (name.equals("getScheme")) return "http";
+                        if (name.equals("getServerName")) return "localhost";
+                        if (name.equals("getServerPort")) return 1714;
+                        if (name.equals("getServletPath")) return "/services";
+                        return null;
+                    }
+                });
+    }
+
+    private static HttpServletResponse createResponse(final OutputStream out) {
+        final ServletOutputStream sos = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        };
+
+        return (HttpServletResponse) Proxy.newProxyInstance(ModelRewriteTest.class.getClassLoader(),
+                new Class[] { HttpServletResponse.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        if (m.getName().equals("getOutputStream")) return sos;
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * The Turtle round-trip rewriting that Tools.rewriteComponentModel used to do
+     */
+    private static void legacyRewriteComponentModel(Model compModel, UUID componentId, int version,
+                                                    HttpServletRequest request) throws IOException {
+        Resource resExecComp = compModel.listSubjectsWithProperty(
+                RDF.type, RepositoryVocabulary.executable_component).nextResource();
+        String oldCompUri = resExecComp.getURI();
+        String compUri = Tools.getComponentBaseAccessUrl(request, componentId.toString(), version);
+        String contextBase = String.format("%s/contexts/", compUri);
+
+        if (oldCompUri.endsWith("/")) compUri += "/";
+
+        String sModel = ModelUtils.modelToDialect(compModel, "TURTLE");
+        sModel = sModel.replaceAll(Pattern.quote(oldCompUri), compUri);
+        sModel = sModel.replaceAll("context://localhost/", contextBase);
+
+        compModel.removeAll();
+        ModelUtils.readModelFromString(compModel, sModel);
+    }
+
+    /**
+     * The Turtle round-trip rewriting that Tools.rewriteFlowModel used to do
+     */
+    private static void legacyRewriteFlowModel(Model flowModel, UUID flowId, int version,
+                                               HttpServletRequest request) throws IOException {
+        Resource resFlow = flowModel.listSubjectsWithProperty(
+                RDF.type, RepositoryVocabulary.flow_component).nextResource();
+        String oldFlowUri = resFlow.getURI();
+        String flowUri = Tools.getFlowBaseAccessUrl(request, flowId.toString(), version);
+
+        if (oldFlowUri.endsWith("/")) flowUri += "/";
+
+        String sModel = ModelUtils.modelToDialect(flowModel, "TURTLE");
+        sModel = sModel.replaceAll(Pattern.quote(oldFlowUri), flowUri);
+
+        flowModel.removeAll();
+        ModelUtils.readModelFromString(flowModel, sModel);
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.ws.restlets;
+
+import com.google.gdata.util.ContentType;
+import org.junit.Test;
+import org.seasr.central.storage.BackendStoreLink;
+import org.seasr.central.ws.restlets.component.*;
+import org.seasr.central.ws.restlets.flow.*;
+import org.seasr.central.ws.restlets.group.*;
+import org.seasr.central.ws.restlets.role.ListRolesRestlet;
+import org.seasr.central.ws.restlets.user.AddUserRestlet;
+import org.seasr.central.ws.restlets.user.DeleteUserRestlet;
+import org.seasr.central.ws.restlets.user.ListUsersRestlet;
+import org.seasr.central.ws.restlets.user.UserInfoRestlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the route table based dispatcher against the linear regular expression scan
+ * it replaced, using the restlets configured in sc-server-config.xml and a replayed request mix.
+ * The test checks that both pick the same restlet with the same values; main() runs the benchmark.
+ *
+ * @author Boris Capitanu
+ */
+public class RestfulExtensibleDispatcherTest {
+
+    private static final String COMP_ID = "0e4ab3a8-5d1c-4a7f-9f2e-3b6f0d6b3c11";
+    private static final String FLOW_ID = "7c9b2d14-4e55-4c3a-8d3e-92a1f0b7e6a2";
+    private static final String MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+
+    /** The request mix: method, request URI, Accept header */
+    private static final String[][] REQUESTS = {
+            { "GET",    "/services/components/" + COMP_ID + "/versions/3.ttl",            null },
+            { "GET",    "/services/components/" + COMP_ID + "/versions/3",                "application/rdf+xml" },
+            { "GET",    "/services/components/" + COMP_ID + "/versions/1/contexts/" + MD5 + "/lib.jar", null },
+            { "GET",    "/services/components/" + COMP_ID + "/versions/2/meta.json",       null },
+            { "GET",    "/services/components/" + COMP_ID + "/versions/2/groups.json",     null },
+            { "GET",    "/services/flows/" + FLOW_ID + "/versions/1.rdf",                 null },
+            { "GET",    "/services/flows/" + FLOW_ID + "/versions/1/meta",                "application/json" },
+            { "GET",    "/services/flows/" + FLOW_ID + "/versions/1/groups/",             "application/json" },
+            { "GET",    "/services/users.json",                                           null },
+            { "POST",   "/services/users.json",                                           null },
+            { "GET",    "/services/users/admin",                                          "text/plain, */*" },
+            { "DELETE", "/services/users/john.json",                                      null },
+            { "GET",    "/services/users/admin/components.json",                          null },
+            { "GET",    "/services/users/admin/components.ttl",                           null },
+            { "POST",   "/services/users/admin/components",                               "application/json" },
+            { "GET",    "/services/users/admin/flows.xml",                                null },
+            { "POST",   "/services/users/admin/flows/",                                   "application/json" },
+            { "GET",    "/services/users/admin/groups.json",                              null },
+            { "POST",   "/services/users/admin/groups.json",                              null },
+            { "GET",    "/services/groups/",                                              "application/json" },
+            { "GET",    "/services/groups/seasr.json",                                    null },
+            { "GET",    "/services/groups/seasr/components.json",                         null },
+            { "POST",   "/services/groups/seasr/components.json",                         null },
+            { "GET",    "/services/groups/seasr/flows.nt",                                null },
+            { "GET",    "/services/groups/seasr/members.json",                            null },
+            { "POST",   "/services/groups/seasr/members/pending.json",                    null },
+            { "GET",    "/services/roles",                                                "text/html,application/xhtml+xml" },
+            { "GET",    "/services/unknown/resource.json",                                null },
+            { "PUT",    "/services/users.json",                                           null },
+    };
+
+
+    @Test
+    public void testSameRoutesAsLinearScan() throws Exception {
+        List<StubRestlet> restlets = createRestlets();
+
+        LinearDispatcher linear = new LinearDispatcher();
+        RestfulExtensibleDispatcher red = new RestfulExtensibleDispatcher();
+        for (StubRestlet restlet : restlets) {
+            linear.add(restlet);
+            red.add(restlet);
+        }
+
+        for (int pass = 0; pass < 2; pass++)
+            for (String[] req : REQUESTS) {
+                String expected = linear.dispatch(req[0], createRequest(req[0], req[1], req[2]));
+
+                red.service(createRequest(req[0], req[1], req[2]), createResponse());
+                String actual = StubRestlet.lastHandled;
+                StubRestlet.lastHandled = null;
+
+                assertEquals(req[0] + " " + req[1], expected, actual);
+            }
+    }
+
+    @Test
+    public void testDeclinedRequestDoesNotSkipLaterRequests() throws Exception {
+        final List<String> handled = new ArrayList<String>();
+
+        RestServlet restlet = new StubRestlet(new ListRolesRestlet(), "GET") {
+            @Override
+            public String getRestContextPathRegexp() {
+                return "/services/roles/([^/]+)$";
+            }
+
+            @Override
+            public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
+                if (values[0].equals("ignored")) return false;
+                handled.add(values[0]);
+                return true;
+            }
+        };
+
+        RestfulExtensibleDispatcher red = new RestfulExtensibleDispatcher();
+        red.add(restlet);
+
+        red.service(createRequest("GET", "/services/roles/ignored", null), createResponse());
+        red.service(createRequest("GET", "/services/roles/admin", null), createResponse());
+        red.service(createRequest("POST", "/services/roles/admin", null), createResponse());
+
+        assertEquals(Arrays.asList("admin"), handled);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+
+        List<StubRestlet> restlets = createRestlets();
+        LinearDispatcher linear = new LinearDispatcher();
+        RestfulExtensibleDispatcher red = new RestfulExtensibleDispatcher();
+        for (StubRestlet restlet : restlets) {
+            linear.add(restlet);
+            red.add(restlet);
+        }
+
+        HttpServletRequest[] requests = new HttpServletRequest[REQUESTS.length];
+        for (int i = 0; i < REQUESTS.length; i++)
+            requests[i] = createRequest(REQUESTS[i][0], REQUESTS[i][1], REQUESTS[i][2]);
+        HttpServletResponse response = createResponse();
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                HttpServletRequest request = requests[i % requests.length];
+                linear.dispatch(request.getMethod(), request);
+            }
+            long linearTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                red.service(requests[i % requests.length], response);
+            long redTime = System.nanoTime() - start;
+
+            System.out.println(String.format("Round %d: linear scan %,d ns/request, route table %,d ns/request",
+                    round + 1, linearTime / iterations, redTime / iterations));
+        }
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private static List<StubRestlet> createRestlets() {
+        List<StubRestlet> restlets = new ArrayList<StubRestlet>();
+
+        // Same order as in sc-server-config.xml
+        restlets.add(new StubRestlet(new ListRolesRestlet(), "GET"));
+        restlets.add(new StubRestlet(new AddUserRestlet(), "POST"));
+        restlets.add(new StubRestlet(new DeleteUserRestlet(), "DELETE"));
+        restlets.add(new StubRestlet(new ListUsersRestlet(), "GET"));
+        restlets.add(new StubRestlet(new UserInfoRestlet(), "GET"));
+        restlets.add(new StubRestlet(new CreateGroupRestlet(), "POST"));
+        restlets.add(new StubRestlet(new ListGroupsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new GroupInfoRestlet(), "GET"));
+        restlets.add(new StubRestlet(new AddPendingGroupMemberRestlet(), "POST"));
+        restlets.add(new StubRestlet(new ListPendingGroupMembersRestlet(), "GET"));
+        restlets.add(new StubRestlet(new AddGroupMemberRestlet(), "POST"));
+        restlets.add(new StubRestlet(new ListGroupMembersRestlet(), "GET"));
+        restlets.add(new StubRestlet(new ListUserGroupsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new ListComponentGroupsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new ListFlowGroupsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new UploadComponentRestlet(), "POST"));
+        restlets.add(new StubRestlet(new RetrieveComponentRestlet(), "GET"));
+        restlets.add(new StubRestlet(new RetrieveComponentMetaRestlet(), "GET"));
+        restlets.add(new StubRestlet(new RetrieveComponentContextRestlet(), "GET"));
+        restlets.add(new StubRestlet(new ShareComponentRestlet(), "POST"));
+        restlets.add(new StubRestlet(new ListUserComponentsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new RetrieveUserComponentsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new ListGroupComponentsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new RetrieveGroupComponentsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new UploadFlowRestlet(), "POST"));
+        restlets.add(new StubRestlet(new RetrieveFlowRestlet(), "GET"));
+        restlets.add(new StubRestlet(new RetrieveFlowMetaRestlet(), "GET"));
+        restlets.add(new StubRestlet(new ListUserFlowsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new RetrieveUserFlowsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new ListGroupFlowsRestlet(), "GET"));
+        restlets.add(new StubRestlet(new RetrieveGroupFlowsRestlet(), "GET"));
+
+        return restlets;
+    }
+
+    private static HttpServletRequest createRequest(final String method, final String uri, final String accept) {
+        return (HttpServletRequest) Proxy.newProxyInstance(RestfulExtensibleDispatcherTest.class.getClassLoader(),
+                new Class[] { HttpServletRequest.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        String name = m.getName();
+                        if (name.equals("getMethod")) return method;
+                        if (name.equals("getRequestURI")) return uri;
+                        if (name.equals("getHeader") && "Accept".equals(args[0])) return accept;
+                        if (name.equals("getProtocol")) return "HTTP/1.1";
+                        if (name.equals("getDateHeader") || name.equals("getIntHeader")) return -1L;
+                        return defaultValue(m.getReturnType());
+                    }
+                });
+    }
+
+    private static HttpServletResponse createResponse() {
+        return (HttpServletResponse) Proxy.newProxyInstance(RestfulExtensibleDispatcherTest.class.getClassLoader(),
+                new Class[] { HttpServletResponse.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        if (m.getName().equals("sendError"))
+                            StubRestlet.lastHandled = "404";
+                        return defaultValue(m.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+
+    /**
+     * Wraps a real restlet so that its path expression and content negotiation are used,
+     * without touching the backend store
+     */
+    private static class StubRestlet implements RestServlet {
+        static String lastHandled;
+
+        private final AbstractBaseRestlet restlet;
+        private final String method;
+
+        StubRestlet(AbstractBaseRestlet restlet, String method) {
+            this.restlet = restlet;
+            this.method = method;
+        }
+
+        @Override
+        public void setLogger(Logger logger) {
+        }
+
+        @Override
+        public void setBackendStoreLink(BackendStoreLink bsl) {
+        }
+
+        @Override
+        public String getRestContextPathRegexp() {
+            return restlet.getRestContextPathRegexp();
+        }
+
+        @Override
+        public Set<String> getSupportedMethods() {
+            return Collections.singleton(method);
+        }
+
+        @Override
+        public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
+
+            ContentType ct = (restlet.getSupportedResponseTypes() != null) ?
+                    restlet.getDesiredResponseContentType(request) : null;
+            lastHandled = restlet.getClass().getSimpleName() + " " + Arrays.toString(values) + " " + ct;
+
+            return true;
+        }
+
+        ContentType legacyContentType(HttpServletRequest request) {
+            ContentType ct = null;
+
+            Map<String, ContentType> allowedTypes = restlet.getSupportedResponseTypes();
+            if (allowedTypes == null) return null;
+
+            Matcher m = LinearDispatcher.patternExtension.matcher(request.getRequestURI().toLowerCase());
+            if (m.find())
+                ct = allowedTypes.get(m.group(1));
+            else {
+                String accept = request.getHeader("Accept");
+                if (accept != null)
+                    ct = ContentType.getBestContentType(accept, new ArrayList<ContentType>(allowedTypes.values()));
+            }
+
+            return ct;
+        }
+    }
+
+    /**
+     * The linear regular expression scan previously done by RestfulExtensibleDispatcher
+     */
+    private static class LinearDispatcher {
+        static final Pattern patternExtension = Pattern.compile("\\.([a-z]+)$");
+
+        private final List<StubRestlet> lstServlets = new ArrayList<StubRestlet>();
+        private final List<Pattern> lstPatterns = new ArrayList<Pattern>();
+
+        void add(StubRestlet restlet) {
+            lstPatterns.add(Pattern.compile(restlet.getRestContextPathRegexp()));
+            lstServlets.add(restlet);
+        }
+
+        String dispatch(String method, HttpServletRequest req) {
+            String sReqPath = req.getRequestURI();
+
+            for (int idx = 0; idx < lstPatterns.size(); idx++) {
+                Matcher m = lstPatterns.get(idx).matcher(sReqPath);
+                if (m.find()) {
+                    int iGroups = m.groupCount();
+                    String[] values = new String[iGroups];
+                    for (int i = 1; i <= iGroups; i++)
+                        values[i - 1] = m.group(i);
+
+                    StubRestlet restlet = lstServlets.get(idx);
+                    if (method.equalsIgnoreCase(restlet.method)) {
+                        ContentType ct = restlet.legacyContentType(req);
+                        return restlet.restlet.getClass().getSimpleName() + " " + Arrays.toString(values) + " " + ct;
+                    }
+                }
+            }
+
+            return "404";
+        }
+    }
+}
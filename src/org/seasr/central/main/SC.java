@@ -45,6 +45,7 @@ import org.mortbay.jetty.Connector;
 import org.mortbay.xml.XmlConfiguration;
 import org.seasr.central.exceptions.ServerConfigurationException;
 import org.seasr.central.storage.BackendStoreLink;
+import org.seasr.central.storage.CachingBackendStoreLink;
 import org.seasr.central.storage.db.properties.DBProperties;
 import org.seasr.central.util.Version;
 
@@ -99,7 +100,13 @@ public class SC {
 
         try {
             // Attempt to instantiate the backend store link driver
-            bsl = (BackendStoreLink) Class.forName(bslClass).newInstance();
+            BackendStoreLink link = (BackendStoreLink) Class.forName(bslClass).newInstance();
+
+            // Wrap it with the identity cache, if enabled
+            if (Boolean.parseBoolean(bslProps.getProperty(DBProperties.CACHE_ENABLED, "false").trim()))
+                link = new CachingBackendStoreLink(link);
+
+            bsl = link;
         }
         catch (Exception e) {
             throw new ServerConfigurationException(
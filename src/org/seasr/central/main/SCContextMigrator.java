@@ -0,0 +1,117 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.main;
+
+import com.martiansoftware.jsap.*;
+import org.seasr.central.storage.db.SQLLink;
+import org.seasr.central.storage.db.properties.DBProperties;
+
+import java.io.FileInputStream;
+import java.util.Properties;
+
+/**
+ * Command line tool that moves the component contexts kept in the database to the
+ * configured blob store (see DBProperties.BLOB_STORE_DIR). It can be safely re-run,
+ * for example after being interrupted, and only moves the contexts not already moved.
+ *
+ * @author Boris Capitanu
+ */
+public class SCContextMigrator {
+
+    /**
+     * SCContextMigrator entry point
+     *
+     * @param args The command line arguments
+     * @throws Exception Thrown if an error occurs
+     */
+    public static void main(String[] args) throws Exception {
+        // Parse the command line
+        SimpleJSAP jsap = getArgumentParser();
+        JSAPResult config = jsap.parse(args);
+        if (jsap.messagePrinted()) {
+            if (!config.success())
+                System.err.println(String.format("%nUsage: %s %s",
+                        SCContextMigrator.class.getSimpleName(), jsap.getUsage()));
+            System.exit(1);
+        }
+
+        // Turn off c3p0 logging
+        System.setProperty("com.mchange.v2.log.MLog", "com.mchange.v2.log.FallbackMLog");
+        System.setProperty("com.mchange.v2.log.FallbackMLog.DEFAULT_CUTOFF_LEVEL", "OFF");
+
+        String storeConfigFile = config.getString("store_configuration_file");
+
+        Properties bslProps = new Properties();
+        bslProps.loadFromXML(new FileInputStream(storeConfigFile));
+
+        if (bslProps.getProperty(DBProperties.BLOB_STORE_DIR, "").trim().length() == 0) {
+            System.err.println("No blob store is configured in " + storeConfigFile);
+            System.exit(1);
+        }
+
+        SQLLink link = new SQLLink();
+        link.init(bslProps);
+
+        int count = link.migrateContextsToBlobStore();
+        System.out.println(String.format("Moved %,d contexts to the blob store", count));
+    }
+
+    /**
+     * Creates a command line argument parser
+     *
+     * @return The parser
+     * @throws JSAPException Thrown if a problem occurs
+     */
+    public static SimpleJSAP getArgumentParser() throws JSAPException {
+        String generalHelp = "Moves the component contexts stored in the database to the blob store";
+
+        Parameter storeConfOption = new FlaggedOption("store_configuration_file")
+                .setStringParser(JSAP.STRING_PARSER)
+                .setRequired(JSAP.NOT_REQUIRED)
+                .setDefault(SC.DEFAULT_STORE_CONFIG_FILE)
+                .setShortFlag('s')
+                .setLongFlag("storeconfig")
+                .setHelp("Specifies the backend store configuration file to use");
+
+        return new SimpleJSAP(SCContextMigrator.class.getSimpleName(), generalHelp,
+                new Parameter[] { storeConfOption });
+    }
+}
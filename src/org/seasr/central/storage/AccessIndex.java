@@ -0,0 +1,323 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+
+package org.seasr.central.storage;
+
+import org.seasr.central.util.IdVersionPair;
+import org.seasr.central.util.TimedLRUCache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-memory index of the data behind the authorization checks: the owner of each component and flow version,
+ * the groups each version is shared with, and the groups (and roles) of each user. Entries are loaded lazily
+ * by the caller and kept as sorted primitive arrays of interned group numbers, so that an access check
+ * takes a couple of hash probes and a few binary searches.
+ *
+ * Entries that can change are stored together with the generation read before they were loaded from the
+ * back end store. Every invalidation starts a new generation, so an entry loaded concurrently with a change
+ * (and possibly holding the old data) is discarded instead of being stored after the invalidation.
+ *
+ * @author Boris Capitanu
+ */
+public class AccessIndex {
+
+    /** The group number of the PUBLIC group */
+    public static final int PUBLIC_GROUP = 0;
+
+    private final TimedLRUCache<IdVersionPair, UUID> componentOwners;
+    private final TimedLRUCache<IdVersionPair, UUID> flowOwners;
+    private final TimedLRUCache<IdVersionPair, int[]> componentGroups;
+    private final TimedLRUCache<IdVersionPair, int[]> flowGroups;
+    private final TimedLRUCache<UUID, long[]> userMemberships;
+
+    /** The interned group numbers, keyed on the group id */
+    private final Map<UUID, Integer> groupNumbers = new HashMap<UUID, Integer>();
+
+    private long generation = 0;
+
+
+    /**
+     * Creates a new index
+     *
+     * @param maxEntries The maximum number of entries kept for each kind of data
+     * @param ttl        The time (in milliseconds) after which an entry expires, or 0 if entries never expire
+     */
+    public AccessIndex(int maxEntries, long ttl) {
+        componentOwners = new TimedLRUCache<IdVersionPair, UUID>(maxEntries, ttl);
+        flowOwners = new TimedLRUCache<IdVersionPair, UUID>(maxEntries, ttl);
+        componentGroups = new TimedLRUCache<IdVersionPair, int[]>(maxEntries, ttl);
+        flowGroups = new TimedLRUCache<IdVersionPair, int[]>(maxEntries, ttl);
+        userMemberships = new TimedLRUCache<UUID, long[]>(maxEntries, ttl);
+
+        groupNumbers.put(BackendStoreLink.PUBLIC_GROUP, PUBLIC_GROUP);
+    }
+
+    /**
+     * Returns the current generation; it must be read before loading the data to be stored in the index
+     *
+     * @return The generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public UUID getComponentOwner(UUID componentId, int version) {
+        return componentOwners.get(new IdVersionPair(componentId, version));
+    }
+
+    public void putComponentOwner(UUID componentId, int version, UUID ownerId) {
+        // The owner of a version never changes
+        componentOwners.put(new IdVersionPair(componentId, version), ownerId);
+    }
+
+    public UUID getFlowOwner(UUID flowId, int version) {
+        return flowOwners.get(new IdVersionPair(flowId, version));
+    }
+
+    public void putFlowOwner(UUID flowId, int version, UUID ownerId) {
+        flowOwners.put(new IdVersionPair(flowId, version), ownerId);
+    }
+
+    /**
+     * Returns the groups a component version is shared with
+     *
+     * @param componentId The component id
+     * @param version The version
+     * @return The sorted group numbers, or null if not indexed
+     */
+    public int[] getComponentGroups(UUID componentId, int version) {
+        return componentGroups.get(new IdVersionPair(componentId, version));
+    }
+
+    /**
+     * Stores the groups a component version is shared with
+     *
+     * @param componentId The component id
+     * @param version The version
+     * @param groupIds The ids of the groups
+     * @param generation The generation read before the groups were loaded
+     * @return The sorted group numbers
+     */
+    public int[] putComponentGroups(UUID componentId, int version, Iterable<UUID> groupIds, long generation) {
+        return putGroups(componentGroups, new IdVersionPair(componentId, version), groupIds, generation);
+    }
+
+    public int[] getFlowGroups(UUID flowId, int version) {
+        return flowGroups.get(new IdVersionPair(flowId, version));
+    }
+
+    public int[] putFlowGroups(UUID flowId, int version, Iterable<UUID> groupIds, long generation) {
+        return putGroups(flowGroups, new IdVersionPair(flowId, version), groupIds, generation);
+    }
+
+    /**
+     * Returns the group memberships of a user
+     *
+     * @param userId The user id
+     * @return The sorted memberships, or null if not indexed
+     */
+    public long[] getUserMemberships(UUID userId) {
+        return userMemberships.get(userId);
+    }
+
+    /**
+     * Stores the group memberships of a user
+     *
+     * @param userId The user id
+     * @param groupIds The ids of the groups the user is a member of
+     * @param roleIds The ids of the roles the user has in each of these groups
+     * @param generation The generation read before the memberships were loaded
+     * @return The sorted memberships
+     */
+    public long[] putUserMemberships(UUID userId, UUID[] groupIds, int[] roleIds, long generation) {
+        long[] memberships = new long[groupIds.length];
+        synchronized (this) {
+            for (int i = 0; i < groupIds.length; i++)
+                memberships[i] = ((long) intern(groupIds[i]) << 32) | roleIds[i];
+
+            Arrays.sort(memberships);
+
+            if (generation == this.generation)
+                userMemberships.put(userId, memberships);
+        }
+
+        return memberships;
+    }
+
+    /**
+     * Removes the sharing data of a component version
+     *
+     * @param componentId The component id
+     * @param version The version
+     */
+    public synchronized void invalidateComponent(UUID componentId, int version) {
+        generation++;
+        componentGroups.remove(new IdVersionPair(componentId, version));
+    }
+
+    public synchronized void invalidateFlow(UUID flowId, int version) {
+        generation++;
+        flowGroups.remove(new IdVersionPair(flowId, version));
+    }
+
+    /**
+     * Removes the group memberships of a user
+     *
+     * @param userId The user id
+     */
+    public synchronized void invalidateUser(UUID userId) {
+        generation++;
+        userMemberships.remove(userId);
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public synchronized void clear() {
+        generation++;
+        componentOwners.clear();
+        flowOwners.clear();
+        componentGroups.clear();
+        flowGroups.clear();
+        userMemberships.clear();
+    }
+
+    /**
+     * Returns the number of an indexed group
+     *
+     * @param groupId The group id
+     * @return The group number, or -1 if the group does not appear in the index
+     */
+    public synchronized int getGroupNumber(UUID groupId) {
+        Integer group = groupNumbers.get(groupId);
+        return (group != null) ? group : -1;
+    }
+
+    /**
+     * Checks whether a user is a member of a group
+     *
+     * @param memberships The memberships of the user
+     * @param group The group number
+     * @return True if the user is a member of the group
+     */
+    public static boolean isMember(long[] memberships, int group) {
+        if (group < 0) return false;
+
+        int i = Arrays.binarySearch(memberships, (long) group << 32);
+        if (i < 0) i = -i - 1;
+
+        return i < memberships.length && (memberships[i] >>> 32) == group;
+    }
+
+    /**
+     * Checks whether a user has a role in a group
+     *
+     * @param memberships The memberships of the user
+     * @param group The group number
+     * @param roleId The role id
+     * @return True if the user has the role in the group
+     */
+    public static boolean hasRole(long[] memberships, int group, int roleId) {
+        return group >= 0 && Arrays.binarySearch(memberships, ((long) group << 32) | roleId) >= 0;
+    }
+
+    /**
+     * Checks whether a version is shared with the PUBLIC group or with a group a user is a member of
+     *
+     * @param groups The groups the version is shared with
+     * @param memberships The memberships of the user, or null for unauthenticated users
+     * @return True if the version is accessible to the user through one of its groups
+     */
+    public static boolean isShared(int[] groups, long[] memberships) {
+        if (Arrays.binarySearch(groups, PUBLIC_GROUP) >= 0)
+            return true;
+
+        if (memberships != null)
+            for (int group : groups)
+                if (isMember(memberships, group))
+                    return true;
+
+        return false;
+    }
+
+    //-------------------------------------------------------------------------------------
+
+    private int[] putGroups(TimedLRUCache<IdVersionPair, int[]> cache, IdVersionPair key,
+                            Iterable<UUID> groupIds, long generation) {
+        int[] groups;
+        synchronized (this) {
+            int size = 0;
+            for (UUID ignored : groupIds) size++;
+
+            groups = new int[size];
+            int i = 0;
+            for (UUID groupId : groupIds)
+                groups[i++] = intern(groupId);
+
+            Arrays.sort(groups);
+
+            if (generation == this.generation)
+                cache.put(key, groups);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Returns the number of a group, assigning one if needed (the caller must hold the lock)
+     *
+     * @param groupId The group id
+     * @return The group number
+     */
+    private int intern(UUID groupId) {
+        Integer group = groupNumbers.get(groupId);
+        if (group == null) {
+            group = groupNumbers.size();
+            groupNumbers.put(groupId, group);
+        }
+
+        return group;
+    }
+}
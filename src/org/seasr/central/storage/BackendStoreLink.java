@@ -46,12 +46,17 @@ import org.json.JSONObject;
 import org.meandre.core.repository.ExecutableComponentDescription;
 import org.meandre.core.repository.FlowDescription;
 import org.seasr.central.storage.exceptions.*;
+import org.seasr.central.storage.search.SearchIndex;
+import org.seasr.central.util.IdVersionPair;
 import org.seasr.central.ws.restlets.ComponentContext;
 
 import java.net.URL;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -74,8 +79,78 @@ public interface BackendStoreLink {
 
     //-------------------------------------------------------------------------------------
 
+    /**
+     * Returns the message for an error, from the error catalog loaded at initialization
+     *
+     * @param error The error
+     * @return The error message
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
     public String getErrorMessage(SCError error) throws BackendStoreException;
 
+    /**
+     * Reloads the error catalog from the backend
+     *
+     * @return The number of error messages loaded
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public int reloadErrorMessages() throws BackendStoreException;
+
+    /**
+     * Returns the runtime statistics of the backend store (cache sizes and hit rates, queue depths)
+     *
+     * @return A JSON object keyed on the statistics group name
+     * @throws BackendStoreException Thrown if the statistics cannot be obtained
+     */
+    public JSONObject getStatistics() throws BackendStoreException;
+
+    /**
+     * Returns the feed of the recently committed events
+     *
+     * @return The change feed
+     */
+    public ChangeFeed getChangeFeed();
+
+    /**
+     * Searches the component and flow versions visible to a user (owned by the user or shared
+     * with one of the user's groups, like the listings)
+     *
+     * @param query The query (Lucene query syntax)
+     * @param type The type of versions to search, or null for both
+     * @param remoteUserId The id of the remote user, or null for unauthenticated requests
+     * @param unrestricted True to search all versions regardless of sharing
+     * @param offset The number of hits to skip
+     * @param count The maximum number of hits to return
+     * @return The hits, best first
+     * @throws InvalidQueryException Thrown if the query cannot be parsed or is too broad
+     * @throws UserNotFoundException Thrown if the remote user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public JSONArray search(String query, SearchIndex.Type type, UUID remoteUserId, boolean unrestricted,
+                            long offset, long count)
+            throws InvalidQueryException, UserNotFoundException, BackendStoreException;
+
+    /**
+     * Lists the events that occurred in a time range, oldest first
+     *
+     * @param from The start of the range (inclusive)
+     * @param to The end of the range (exclusive)
+     * @param events The events to list, or null for all events
+     * @param count The maximum number of events to return
+     * @return The events
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public JSONArray listEvents(Date from, Date to, Set<SCEvent> events, long count) throws BackendStoreException;
+
+    /**
+     * Same as {@link #listEvents(Date, Date, Set, long)}, but passes the events to a handler
+     * as they are read instead of collecting them
+     *
+     * @param handler The handler receiving the events
+     */
+    public void listEvents(Date from, Date to, Set<SCEvent> events, long count, EntryHandler handler)
+            throws BackendStoreException;
+
     public JSONArray listRoles(long offset, long count) throws BackendStoreException;
     public boolean hasRole(String roleName) throws BackendStoreException;
 
@@ -180,9 +255,29 @@ public interface BackendStoreLink {
      */
     public JSONArray listUsers(long offset, long count) throws BackendStoreException;
 
+    /**
+     * Lists the users stored in the backend store, continuing after a cursor in key order
+     *
+     * @param after The cursor to continue after (PageCursor.START for the first page)
+     * @param count  The number of users to be returned
+     * @return The list of users
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public JSONArray listUsers(PageCursor after, long count) throws BackendStoreException;
+
+    /**
+     * Same as {@link #listUsers(PageCursor, long)}, but passes the users to a handler
+     * as they are read instead of collecting them
+     *
+     * @param handler The handler receiving the users
+     */
+    public void listUsers(PageCursor after, long count, EntryHandler handler) throws BackendStoreException;
+
 
     public UUID createGroup(UUID userId, String groupName, JSONObject profile) throws BackendStoreException, UserNotFoundException;
     public JSONArray listGroups(long offset, long count) throws BackendStoreException;
+    public JSONArray listGroups(PageCursor after, long count) throws BackendStoreException;
+    public void listGroups(PageCursor after, long count, EntryHandler handler) throws BackendStoreException;
     public UUID getGroupId(String groupName) throws BackendStoreException, GroupNotFoundException;
     public String getGroupName(UUID groupId) throws GroupNotFoundException, BackendStoreException;
     public JSONObject getGroupProfile(UUID groupId) throws BackendStoreException, GroupNotFoundException;
@@ -190,14 +285,75 @@ public interface BackendStoreLink {
     public boolean isUserInGroupRole(UUID userId, UUID groupId, SCRole role) throws BackendStoreException, UserNotFoundException, GroupNotFoundException;
     public void addPendingGroupMember(UUID userId, UUID groupId) throws BackendStoreException, UserNotFoundException, GroupNotFoundException;
     public JSONArray listPendingGroupMembers(UUID groupId, long offset, long count) throws BackendStoreException, GroupNotFoundException;
+    public JSONArray listPendingGroupMembers(UUID groupId, PageCursor after, long count) throws BackendStoreException, GroupNotFoundException;
     public void addGroupMember(UUID userId, UUID groupId, SCRole role) throws BackendStoreException, UserNotFoundException, GroupNotFoundException;
     public boolean isGroupMember(UUID userId, UUID groupId) throws BackendStoreException, UserNotFoundException, GroupNotFoundException;
     public JSONArray listGroupMembers(UUID groupId, long offset, long count) throws BackendStoreException, GroupNotFoundException;
+    public JSONArray listGroupMembers(UUID groupId, PageCursor after, long count) throws BackendStoreException, GroupNotFoundException;
     public JSONArray listUserGroups(UUID userId, long offset, long count) throws BackendStoreException, UserNotFoundException;
+    public JSONArray listUserGroups(UUID userId, PageCursor after, long count) throws BackendStoreException, UserNotFoundException;
     public JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId, long offset, long count)
             throws BackendStoreException, ComponentNotFoundException, UserNotFoundException;
+    public JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId, PageCursor after, long count)
+            throws BackendStoreException, ComponentNotFoundException, UserNotFoundException;
     public JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, long offset, long count)
             throws BackendStoreException, FlowNotFoundException, UserNotFoundException;
+    public JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, PageCursor after, long count)
+            throws BackendStoreException, FlowNotFoundException, UserNotFoundException;
+
+    /**
+     * Lists all the groups a component version is shared with, regardless of who is asking
+     *
+     * @param componentId The component id
+     * @param version The version
+     * @return The groups
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     * @throws ComponentNotFoundException Thrown if the component version does not exist
+     */
+    public JSONArray listComponentGroups(UUID componentId, int version)
+            throws BackendStoreException, ComponentNotFoundException;
+    public JSONArray listFlowGroups(UUID flowId, int version)
+            throws BackendStoreException, FlowNotFoundException;
+
+    /**
+     * Checks whether a component version is shared with the PUBLIC group or with a group the user is a member of
+     *
+     * @param componentId The component id
+     * @param version The version
+     * @param userId The user id, or null for unauthenticated requests
+     * @return True if the version is shared with the user through one of its groups
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     * @throws ComponentNotFoundException Thrown if the component version does not exist
+     * @throws UserNotFoundException Thrown if the user does not exist
+     */
+    public boolean isComponentSharedWithUser(UUID componentId, int version, UUID userId)
+            throws BackendStoreException, ComponentNotFoundException, UserNotFoundException;
+    public boolean isFlowSharedWithUser(UUID flowId, int version, UUID userId)
+            throws BackendStoreException, FlowNotFoundException, UserNotFoundException;
+
+    /**
+     * Retrieves the owners of a set of component versions in bulk
+     *
+     * @param componentVersions The component versions
+     * @return The owner of each component version found; versions that do not exist are left out
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public Map<IdVersionPair, UUID> getComponentOwners(Collection<IdVersionPair> componentVersions)
+            throws BackendStoreException;
+    public Map<IdVersionPair, UUID> getFlowOwners(Collection<IdVersionPair> flowVersions)
+            throws BackendStoreException;
+
+    /**
+     * Filters a set of groups down to the ones a user is a member of
+     *
+     * @param userId The user id
+     * @param groupIds The group ids
+     * @return The subset of the given groups the user is a member of (the PUBLIC group is always included, if given)
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     * @throws UserNotFoundException Thrown if the user does not exist
+     */
+    public Set<UUID> getGroupMemberships(UUID userId, Collection<UUID> groupIds)
+            throws BackendStoreException, UserNotFoundException;
 
     /**
      * Adds (or updates) a component
@@ -211,6 +367,19 @@ public interface BackendStoreLink {
     public JSONObject addComponent(UUID userId, ExecutableComponentDescription component, Map<URL, String> contexts)
             throws UserNotFoundException, BackendStoreException;
 
+    /**
+     * Adds (or updates) a batch of components. A component that cannot be added does not prevent
+     * the others from being added.
+     *
+     * @param userId           The user to be credited with the upload
+     * @param components       The components, each with its (remote or staged) context files
+     * @return The upload result for each component, in the iteration order of the given components
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public Map<ExecutableComponentDescription, UploadResult> addComponents(UUID userId,
+            Map<ExecutableComponentDescription, List<ContextFile>> components)
+            throws UserNotFoundException, BackendStoreException;
+
     /**
      * Retrieves a component given the component id and version
      *
@@ -222,7 +391,35 @@ public interface BackendStoreLink {
     public Model getComponent(UUID componentId, int version) throws ComponentNotFoundException, BackendStoreException;
 
     /**
-     * Retrieves a component context for a particular component version
+     * Retrieves a component descriptor pre-rendered (at upload time) in a given format.
+     * The access URLs in the rendering start with Tools.BASE_URL_PLACEHOLDER instead of the base access URL.
+     *
+     * @param componentId The component id
+     * @param version     The component version
+     * @param format      The format (one of Tools.DESCRIPTOR_FORMATS)
+     * @return The rendered component descriptor, or null if not available in the given format
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public byte[] getComponentRendering(UUID componentId, int version, String format)
+            throws ComponentNotFoundException, BackendStoreException;
+
+    /**
+     * Retrieves the length of a pre-rendered component descriptor once sent, without retrieving the rendering,
+     * from the size and the number of Tools.BASE_URL_PLACEHOLDER occurrences recorded when it was stored.
+     *
+     * @param componentId The component id
+     * @param version     The component version
+     * @param format      The format (one of Tools.DESCRIPTOR_FORMATS)
+     * @param baseUrl     The base access URL that replaces Tools.BASE_URL_PLACEHOLDER
+     * @return The length in bytes, or -1 if the rendering or its length is not available
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public long getComponentRenderingLength(UUID componentId, int version, String format, String baseUrl)
+            throws ComponentNotFoundException, BackendStoreException;
+
+    /**
+     * Retrieves a component context for a particular component version.
+     * The caller must close the returned context to release the resources held by its data stream.
      *
      * @param componentId The component id
      * @param version     The component version
@@ -242,6 +439,17 @@ public interface BackendStoreLink {
      */
     public boolean hasComponentContext(String contextId) throws BackendStoreException;
 
+    /**
+     * Checks whether a context belongs to a component version
+     *
+     * @param componentId The component id
+     * @param version The component version
+     * @param contextId The id of the context file
+     * @return True if the component version exists and has the context, False otherwise
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public boolean hasComponentContext(UUID componentId, int version, String contextId) throws BackendStoreException;
+
     public UUID getComponentOwner(UUID componentId, int version) throws BackendStoreException, ComponentNotFoundException;
 
     /**
@@ -281,6 +489,14 @@ public interface BackendStoreLink {
      */
     public JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, long offset, long count, boolean includeOldVersions) throws BackendStoreException, UserNotFoundException;
 
+    /**
+     * Same as {@link #listAccessibleUserComponentsAsUser(UUID, UUID, long, long, boolean)},
+     * but continues after a cursor instead of an offset and returns the entries in key order
+     *
+     * @param after The cursor to continue after (PageCursor.START for the first page)
+     */
+    public JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, PageCursor after, long count, boolean includeOldVersions) throws BackendStoreException, UserNotFoundException;
+
     public JSONArray listPublicComponents(long offset, long count, boolean includeOldVersions) throws BackendStoreException, GroupNotFoundException;
 
     /**
@@ -295,6 +511,22 @@ public interface BackendStoreLink {
      */
     public JSONArray listGroupComponents(UUID groupId, long offset, long count, boolean includeOldVersions) throws BackendStoreException, GroupNotFoundException;
 
+    /**
+     * Same as {@link #listGroupComponents(UUID, long, long, boolean)},
+     * but continues after a cursor instead of an offset and returns the entries in key order
+     *
+     * @param after The cursor to continue after (PageCursor.START for the first page)
+     */
+    public JSONArray listGroupComponents(UUID groupId, PageCursor after, long count, boolean includeOldVersions) throws BackendStoreException, GroupNotFoundException;
+
+    /**
+     * Same as {@link #listGroupComponents(UUID, PageCursor, long, boolean)}, but passes the components
+     * to a handler as they are read instead of collecting them
+     *
+     * @param handler The handler receiving the components
+     */
+    public void listGroupComponents(UUID groupId, PageCursor after, long count, boolean includeOldVersions, EntryHandler handler) throws BackendStoreException, GroupNotFoundException;
+
     /**
      * Adds (or updates) a flow
      *
@@ -315,6 +547,33 @@ public interface BackendStoreLink {
      */
     public Model getFlow(UUID flowId, int version) throws BackendStoreException, FlowNotFoundException;
 
+    /**
+     * Retrieves a flow descriptor pre-rendered (at upload time) in a given format.
+     * The access URLs in the rendering start with Tools.BASE_URL_PLACEHOLDER instead of the base access URL.
+     *
+     * @param flowId  The flow id
+     * @param version The flow version
+     * @param format  The format (one of Tools.DESCRIPTOR_FORMATS)
+     * @return The rendered flow descriptor, or null if not available in the given format
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public byte[] getFlowRendering(UUID flowId, int version, String format)
+            throws BackendStoreException, FlowNotFoundException;
+
+    /**
+     * Retrieves the length of a pre-rendered flow descriptor once sent, without retrieving the rendering,
+     * from the size and the number of Tools.BASE_URL_PLACEHOLDER occurrences recorded when it was stored.
+     *
+     * @param flowId  The flow id
+     * @param version The flow version
+     * @param format  The format (one of Tools.DESCRIPTOR_FORMATS)
+     * @param baseUrl The base access URL that replaces Tools.BASE_URL_PLACEHOLDER
+     * @return The length in bytes, or -1 if the rendering or its length is not available
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public long getFlowRenderingLength(UUID flowId, int version, String format, String baseUrl)
+            throws BackendStoreException, FlowNotFoundException;
+
     public UUID getFlowOwner(UUID flowId, int version) throws BackendStoreException, FlowNotFoundException;
 
     /**
@@ -333,9 +592,12 @@ public interface BackendStoreLink {
     public JSONArray listPublicUserFlows(UUID userId, long offset, long count, boolean includeOldVersions) throws BackendStoreException, UserNotFoundException;
 
     public JSONArray listAccessibleUserFlowsAsUser(UUID userId, UUID remoteUserId, long offset, long count, boolean includeOldVersions) throws BackendStoreException, UserNotFoundException;
+    public JSONArray listAccessibleUserFlowsAsUser(UUID userId, UUID remoteUserId, PageCursor after, long count, boolean includeOldVersions) throws BackendStoreException, UserNotFoundException;
 
     public JSONArray listPublicFlows(long offset, long count, boolean includeOldVersions) throws BackendStoreException;
 
     public JSONArray listGroupFlows(UUID groupId, long offset, long count, boolean includeOldVersions) throws BackendStoreException, GroupNotFoundException;
+    public JSONArray listGroupFlows(UUID groupId, PageCursor after, long count, boolean includeOldVersions) throws BackendStoreException, GroupNotFoundException;
+    public void listGroupFlows(UUID groupId, PageCursor after, long count, boolean includeOldVersions, EntryHandler handler) throws BackendStoreException, GroupNotFoundException;
 
 }
@@ -0,0 +1,955 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.meandre.core.repository.ExecutableComponentDescription;
+import org.meandre.core.repository.FlowDescription;
+import org.seasr.central.storage.db.properties.DBProperties;
+import org.seasr.central.storage.exceptions.*;
+import org.seasr.central.storage.search.SearchIndex;
+import org.seasr.central.util.IdVersionPair;
+import org.seasr.central.util.TimedLRUCache;
+import org.seasr.central.ws.restlets.ComponentContext;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Backend store link decorator that caches the user and group identity lookups
+ * (screen name <-> user id, group name <-> group id, deleted users) of the wrapped link,
+ * and answers the ownership, sharing and group membership checks from an {@link AccessIndex}.
+ * Entries are bounded in number, expire after a configurable time-to-live, and are
+ * invalidated by the operations of this link that modify them.
+ *
+ * @author Boris Capitanu
+ */
+public class CachingBackendStoreLink implements BackendStoreLink {
+
+    /** The default maximum number of entries per cache */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** The default time-to-live (in seconds) of the cached entries */
+    public static final long DEFAULT_TTL = 300;
+
+    /** The wrapped backend store link */
+    private final BackendStoreLink bsl;
+
+    private TimedLRUCache<String, UUID> userIds;
+    private TimedLRUCache<UUID, String> userNames;
+    private TimedLRUCache<UUID, Boolean> deletedUsers;
+    private TimedLRUCache<String, UUID> groupIds;
+    private TimedLRUCache<UUID, String> groupNames;
+    private AccessIndex accessIndex;
+
+
+    public CachingBackendStoreLink(BackendStoreLink bsl) {
+        this.bsl = bsl;
+        createCaches(DEFAULT_MAX_ENTRIES, DEFAULT_TTL * 1000);
+    }
+
+    /**
+     * Returns the wrapped backend store link
+     *
+     * @return The wrapped backend store link
+     */
+    public BackendStoreLink getBackendStoreLink() {
+        return bsl;
+    }
+
+    @Override
+    public void init(Properties properties) throws BackendStoreException {
+        try {
+            int maxEntries = Integer.parseInt(properties.getProperty(
+                    DBProperties.CACHE_MAX_ENTRIES, Integer.toString(DEFAULT_MAX_ENTRIES)).trim());
+            long ttl = Long.parseLong(properties.getProperty(
+                    DBProperties.CACHE_TTL, Long.toString(DEFAULT_TTL)).trim());
+
+            createCaches(maxEntries, ttl * 1000);
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid cache configuration", e);
+        }
+
+        bsl.init(properties);
+    }
+
+    /**
+     * Returns the statistics (size, capacity, hits, misses) of each of the caches
+     *
+     * @return A JSON object keyed on the cache name
+     */
+    public JSONObject getCacheStatistics() {
+        JSONObject joStats = new JSONObject();
+
+        try {
+            joStats.put("user_id", getCacheStatistics(userIds));
+            joStats.put("user_screen_name", getCacheStatistics(userNames));
+            joStats.put("user_deleted", getCacheStatistics(deletedUsers));
+            joStats.put("group_id", getCacheStatistics(groupIds));
+            joStats.put("group_name", getCacheStatistics(groupNames));
+        }
+        catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+
+        return joStats;
+    }
+
+    /**
+     * Removes all the cached entries
+     */
+    public void clearCaches() {
+        userIds.clear();
+        userNames.clear();
+        deletedUsers.clear();
+        groupIds.clear();
+        groupNames.clear();
+        accessIndex.clear();
+    }
+
+    //-------------------------------------------------------------------------------------
+
+    @Override
+    public String getErrorMessage(SCError error) throws BackendStoreException {
+        return bsl.getErrorMessage(error);
+    }
+
+    @Override
+    public int reloadErrorMessages() throws BackendStoreException {
+        return bsl.reloadErrorMessages();
+    }
+
+    @Override
+    public JSONObject getStatistics() throws BackendStoreException {
+        JSONObject joStats = bsl.getStatistics();
+
+        try {
+            joStats.put("identity_cache", getCacheStatistics());
+        }
+        catch (JSONException e) {
+            throw new BackendStoreException(e);
+        }
+
+        return joStats;
+    }
+
+    @Override
+    public ChangeFeed getChangeFeed() {
+        return bsl.getChangeFeed();
+    }
+
+    @Override
+    public JSONArray search(String query, SearchIndex.Type type, UUID remoteUserId, boolean unrestricted,
+                            long offset, long count)
+            throws InvalidQueryException, UserNotFoundException, BackendStoreException {
+        checkUserNotDeleted(remoteUserId);
+        return bsl.search(query, type, remoteUserId, unrestricted, offset, count);
+    }
+
+    @Override
+    public JSONArray listEvents(Date from, Date to, Set<SCEvent> events, long count) throws BackendStoreException {
+        return bsl.listEvents(from, to, events, count);
+    }
+
+    @Override
+    public void listEvents(Date from, Date to, Set<SCEvent> events, long count, EntryHandler handler)
+            throws BackendStoreException {
+        bsl.listEvents(from, to, events, count, handler);
+    }
+
+    @Override
+    public JSONArray listRoles(long offset, long count) throws BackendStoreException {
+        return bsl.listRoles(offset, count);
+    }
+
+    @Override
+    public boolean hasRole(String roleName) throws BackendStoreException {
+        return bsl.hasRole(roleName);
+    }
+
+    @Override
+    public UUID addUser(String userName, String password, JSONObject profile) throws BackendStoreException {
+        userIds.remove(userName);
+        return bsl.addUser(userName, password, profile);
+    }
+
+    @Override
+    public void removeUser(UUID userId) throws BackendStoreException, UserNotFoundException {
+        try {
+            bsl.removeUser(userId);
+        }
+        finally {
+            invalidateUser(userId);
+            accessIndex.invalidateUser(userId);
+        }
+
+        deletedUsers.put(userId, Boolean.TRUE);
+    }
+
+    @Override
+    public void updateUserPassword(UUID userId, String password) throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        bsl.updateUserPassword(userId, password);
+    }
+
+    @Override
+    public void updateUserProfile(UUID userId, JSONObject profile) throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+
+        try {
+            bsl.updateUserProfile(userId, profile);
+        }
+        finally {
+            invalidateUser(userId);
+        }
+    }
+
+    @Override
+    public UUID getUserId(String userName) throws UserNotFoundException, BackendStoreException {
+        if (userName == null) return null;
+
+        UUID userId = userIds.get(userName);
+        if (userId == null) {
+            long generation = userIds.getGeneration();
+            userId = bsl.getUserId(userName);
+            userIds.put(userName, userId, generation);
+        }
+
+        return userId;
+    }
+
+    @Override
+    public String getUserScreenName(UUID userId) throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+
+        String screenName = userNames.get(userId);
+        if (screenName == null) {
+            long generation = userNames.getGeneration();
+            screenName = bsl.getUserScreenName(userId);
+            userNames.put(userId, screenName, generation);
+        }
+
+        return screenName;
+    }
+
+    @Override
+    public JSONObject getUserProfile(UUID userId) throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.getUserProfile(userId);
+    }
+
+    @Override
+    public Date getUserCreationTime(UUID userId) throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.getUserCreationTime(userId);
+    }
+
+    @Override
+    public boolean isUserPasswordValid(UUID userId, String password) throws BackendStoreException, UserNotFoundException {
+        return bsl.isUserPasswordValid(userId, password);
+    }
+
+    @Override
+    public long getUserCount() throws BackendStoreException {
+        return bsl.getUserCount();
+    }
+
+    @Override
+    public JSONArray listUsers(long offset, long count) throws BackendStoreException {
+        return bsl.listUsers(offset, count);
+    }
+
+    @Override
+    public JSONArray listUsers(PageCursor after, long count) throws BackendStoreException {
+        return bsl.listUsers(after, count);
+    }
+
+    @Override
+    public void listUsers(PageCursor after, long count, EntryHandler handler) throws BackendStoreException {
+        bsl.listUsers(after, count, handler);
+    }
+
+    @Override
+    public UUID createGroup(UUID userId, String groupName, JSONObject profile) throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        groupIds.remove(groupName);
+
+        try {
+            return bsl.createGroup(userId, groupName, profile);
+        }
+        finally {
+            // The user becomes the administrator of the new group
+            accessIndex.invalidateUser(userId);
+        }
+    }
+
+    @Override
+    public JSONArray listGroups(long offset, long count) throws BackendStoreException {
+        return bsl.listGroups(offset, count);
+    }
+
+    @Override
+    public JSONArray listGroups(PageCursor after, long count) throws BackendStoreException {
+        return bsl.listGroups(after, count);
+    }
+
+    @Override
+    public void listGroups(PageCursor after, long count, EntryHandler handler) throws BackendStoreException {
+        bsl.listGroups(after, count, handler);
+    }
+
+    @Override
+    public UUID getGroupId(String groupName) throws BackendStoreException, GroupNotFoundException {
+        UUID groupId = groupIds.get(groupName);
+        if (groupId == null) {
+            long generation = groupIds.getGeneration();
+            groupId = bsl.getGroupId(groupName);
+            groupIds.put(groupName, groupId, generation);
+        }
+
+        return groupId;
+    }
+
+    @Override
+    public String getGroupName(UUID groupId) throws GroupNotFoundException, BackendStoreException {
+        String groupName = groupNames.get(groupId);
+        if (groupName == null) {
+            long generation = groupNames.getGeneration();
+            groupName = bsl.getGroupName(groupId);
+            groupNames.put(groupId, groupName, generation);
+        }
+
+        return groupName;
+    }
+
+    @Override
+    public JSONObject getGroupProfile(UUID groupId) throws BackendStoreException, GroupNotFoundException {
+        return bsl.getGroupProfile(groupId);
+    }
+
+    @Override
+    public Date getGroupCreationTime(UUID groupId) throws BackendStoreException, GroupNotFoundException {
+        return bsl.getGroupCreationTime(groupId);
+    }
+
+    @Override
+    public boolean isUserInGroupRole(UUID userId, UUID groupId, SCRole role)
+            throws BackendStoreException, UserNotFoundException, GroupNotFoundException {
+        checkUserNotDeleted(userId);
+        if (userId == null || groupId == null)
+            return bsl.isUserInGroupRole(userId, groupId, role);
+
+        long[] memberships = getUserMemberships(userId);
+        if (AccessIndex.hasRole(memberships, accessIndex.getGroupNumber(groupId), role.getRoleId()))
+            return true;
+
+        // Fail for groups that do not exist
+        getGroupName(groupId);
+
+        return false;
+    }
+
+    @Override
+    public void addPendingGroupMember(UUID userId, UUID groupId)
+            throws BackendStoreException, UserNotFoundException, GroupNotFoundException {
+        checkUserNotDeleted(userId);
+        bsl.addPendingGroupMember(userId, groupId);
+    }
+
+    @Override
+    public JSONArray listPendingGroupMembers(UUID groupId, long offset, long count)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listPendingGroupMembers(groupId, offset, count);
+    }
+
+    @Override
+    public JSONArray listPendingGroupMembers(UUID groupId, PageCursor after, long count)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listPendingGroupMembers(groupId, after, count);
+    }
+
+    @Override
+    public void addGroupMember(UUID userId, UUID groupId, SCRole role)
+            throws BackendStoreException, UserNotFoundException, GroupNotFoundException {
+        checkUserNotDeleted(userId);
+
+        try {
+            bsl.addGroupMember(userId, groupId, role);
+        }
+        finally {
+            accessIndex.invalidateUser(userId);
+        }
+    }
+
+    @Override
+    public boolean isGroupMember(UUID userId, UUID groupId)
+            throws BackendStoreException, UserNotFoundException, GroupNotFoundException {
+        checkUserNotDeleted(userId);
+
+        // Everyone is in the PUBLIC group
+        if (PUBLIC_GROUP.equals(groupId))
+            return true;
+        else
+            if (userId == null || groupId == null)
+                return false;
+
+        long[] memberships = getUserMemberships(userId);
+        if (AccessIndex.isMember(memberships, accessIndex.getGroupNumber(groupId)))
+            return true;
+
+        // Fail for groups that do not exist
+        getGroupName(groupId);
+
+        return false;
+    }
+
+    @Override
+    public Set<UUID> getGroupMemberships(UUID userId, Collection<UUID> groupIds)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+
+        Set<UUID> memberships = new HashSet<UUID>();
+        long[] userMemberships = (userId != null) ? getUserMemberships(userId) : null;
+
+        for (UUID groupId : groupIds) {
+            // Everyone is in the PUBLIC group
+            if (PUBLIC_GROUP.equals(groupId))
+                memberships.add(groupId);
+            else
+                if (userMemberships != null && groupId != null &&
+                        AccessIndex.isMember(userMemberships, accessIndex.getGroupNumber(groupId)))
+                    memberships.add(groupId);
+        }
+
+        return memberships;
+    }
+
+    @Override
+    public JSONArray listGroupMembers(UUID groupId, long offset, long count)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listGroupMembers(groupId, offset, count);
+    }
+
+    @Override
+    public JSONArray listGroupMembers(UUID groupId, PageCursor after, long count)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listGroupMembers(groupId, after, count);
+    }
+
+    @Override
+    public JSONArray listUserGroups(UUID userId, long offset, long count)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listUserGroups(userId, offset, count);
+    }
+
+    @Override
+    public JSONArray listUserGroups(UUID userId, PageCursor after, long count)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listUserGroups(userId, after, count);
+    }
+
+    @Override
+    public JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId, long offset, long count)
+            throws BackendStoreException, ComponentNotFoundException, UserNotFoundException {
+        return bsl.listComponentGroupsAsUser(componentId, version, remoteUserId, offset, count);
+    }
+
+    @Override
+    public JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId, PageCursor after,
+                                               long count)
+            throws BackendStoreException, ComponentNotFoundException, UserNotFoundException {
+        return bsl.listComponentGroupsAsUser(componentId, version, remoteUserId, after, count);
+    }
+
+    @Override
+    public JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, long offset, long count)
+            throws BackendStoreException, FlowNotFoundException, UserNotFoundException {
+        return bsl.listFlowGroupsAsUser(flowId, version, remoteUserId, offset, count);
+    }
+
+    @Override
+    public JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, PageCursor after,
+                                          long count)
+            throws BackendStoreException, FlowNotFoundException, UserNotFoundException {
+        return bsl.listFlowGroupsAsUser(flowId, version, remoteUserId, after, count);
+    }
+
+    @Override
+    public JSONArray listComponentGroups(UUID componentId, int version)
+            throws BackendStoreException, ComponentNotFoundException {
+        return bsl.listComponentGroups(componentId, version);
+    }
+
+    @Override
+    public JSONArray listFlowGroups(UUID flowId, int version) throws BackendStoreException, FlowNotFoundException {
+        return bsl.listFlowGroups(flowId, version);
+    }
+
+    @Override
+    public boolean isComponentSharedWithUser(UUID componentId, int version, UUID userId)
+            throws BackendStoreException, ComponentNotFoundException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        long[] memberships = (userId != null) ? getUserMemberships(userId) : null;
+
+        int[] groups = accessIndex.getComponentGroups(componentId, version);
+        if (groups == null) {
+            long generation = accessIndex.getGeneration();
+            groups = accessIndex.putComponentGroups(componentId, version,
+                    getGroupIds(bsl.listComponentGroups(componentId, version)), generation);
+        }
+
+        return AccessIndex.isShared(groups, memberships);
+    }
+
+    @Override
+    public boolean isFlowSharedWithUser(UUID flowId, int version, UUID userId)
+            throws BackendStoreException, FlowNotFoundException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        long[] memberships = (userId != null) ? getUserMemberships(userId) : null;
+
+        int[] groups = accessIndex.getFlowGroups(flowId, version);
+        if (groups == null) {
+            long generation = accessIndex.getGeneration();
+            groups = accessIndex.putFlowGroups(flowId, version,
+                    getGroupIds(bsl.listFlowGroups(flowId, version)), generation);
+        }
+
+        return AccessIndex.isShared(groups, memberships);
+    }
+
+    @Override
+    public JSONObject addComponent(UUID userId, ExecutableComponentDescription component, Map<URL, String> contexts)
+            throws UserNotFoundException, BackendStoreException {
+        checkUserNotDeleted(userId);
+        return bsl.addComponent(userId, component, contexts);
+    }
+
+    @Override
+    public Map<ExecutableComponentDescription, UploadResult> addComponents(UUID userId,
+            Map<ExecutableComponentDescription, List<ContextFile>> components)
+            throws UserNotFoundException, BackendStoreException {
+        checkUserNotDeleted(userId);
+        return bsl.addComponents(userId, components);
+    }
+
+    @Override
+    public Model getComponent(UUID componentId, int version) throws ComponentNotFoundException, BackendStoreException {
+        return bsl.getComponent(componentId, version);
+    }
+
+    @Override
+    public byte[] getComponentRendering(UUID componentId, int version, String format)
+            throws ComponentNotFoundException, BackendStoreException {
+        return bsl.getComponentRendering(componentId, version, format);
+    }
+
+    @Override
+    public long getComponentRenderingLength(UUID componentId, int version, String format, String baseUrl)
+            throws ComponentNotFoundException, BackendStoreException {
+        return bsl.getComponentRenderingLength(componentId, version, format, baseUrl);
+    }
+
+    @Override
+    public ComponentContext getComponentContext(UUID componentId, int version, String contextId)
+            throws BackendStoreException, ComponentNotFoundException, ComponentContextNotFoundException {
+        return bsl.getComponentContext(componentId, version, contextId);
+    }
+
+    @Override
+    public boolean hasComponentContext(String contextId) throws BackendStoreException {
+        return bsl.hasComponentContext(contextId);
+    }
+
+    @Override
+    public boolean hasComponentContext(UUID componentId, int version, String contextId) throws BackendStoreException {
+        return bsl.hasComponentContext(componentId, version, contextId);
+    }
+
+    @Override
+    public UUID getComponentOwner(UUID componentId, int version) throws BackendStoreException, ComponentNotFoundException {
+        UUID ownerId = accessIndex.getComponentOwner(componentId, version);
+        if (ownerId == null) {
+            ownerId = bsl.getComponentOwner(componentId, version);
+            accessIndex.putComponentOwner(componentId, version, ownerId);
+        }
+
+        return ownerId;
+    }
+
+    @Override
+    public Map<IdVersionPair, UUID> getComponentOwners(Collection<IdVersionPair> componentVersions)
+            throws BackendStoreException {
+        Map<IdVersionPair, UUID> owners = new HashMap<IdVersionPair, UUID>();
+        List<IdVersionPair> missing = new ArrayList<IdVersionPair>();
+
+        for (IdVersionPair componentVersion : componentVersions) {
+            UUID ownerId = accessIndex.getComponentOwner(componentVersion.getId(), componentVersion.getVersion());
+            if (ownerId != null)
+                owners.put(componentVersion, ownerId);
+            else
+                missing.add(componentVersion);
+        }
+
+        if (!missing.isEmpty())
+            for (Map.Entry<IdVersionPair, UUID> entry : bsl.getComponentOwners(missing).entrySet()) {
+                IdVersionPair componentVersion = entry.getKey();
+                accessIndex.putComponentOwner(componentVersion.getId(), componentVersion.getVersion(), entry.getValue());
+                owners.put(componentVersion, entry.getValue());
+            }
+
+        return owners;
+    }
+
+    @Override
+    public Integer getComponentVersionCount(UUID componentId) throws BackendStoreException, ComponentNotFoundException {
+        return bsl.getComponentVersionCount(componentId);
+    }
+
+    @Override
+    public void shareComponent(UUID componentId, int version, UUID groupId, UUID remoteUserId)
+            throws BackendStoreException, ComponentNotFoundException, GroupNotFoundException, UserNotFoundException {
+        try {
+            bsl.shareComponent(componentId, version, groupId, remoteUserId);
+        }
+        finally {
+            accessIndex.invalidateComponent(componentId, version);
+        }
+    }
+
+    @Override
+    public JSONArray listUserComponents(UUID userId, long offset, long count, boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listUserComponents(userId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listPublicUserComponents(UUID userId, long offset, long count, boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listPublicUserComponents(userId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, long offset, long count,
+                                                        boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listAccessibleUserComponentsAsUser(userId, remoteUserId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, PageCursor after,
+                                                        long count, boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listAccessibleUserComponentsAsUser(userId, remoteUserId, after, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listPublicComponents(long offset, long count, boolean includeOldVersions)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listPublicComponents(offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listGroupComponents(UUID groupId, long offset, long count, boolean includeOldVersions)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listGroupComponents(groupId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listGroupComponents(UUID groupId, PageCursor after, long count, boolean includeOldVersions)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listGroupComponents(groupId, after, count, includeOldVersions);
+    }
+
+    @Override
+    public void listGroupComponents(UUID groupId, PageCursor after, long count, boolean includeOldVersions,
+                               EntryHandler handler) throws BackendStoreException, GroupNotFoundException {
+        bsl.listGroupComponents(groupId, after, count, includeOldVersions, handler);
+    }
+
+    @Override
+    public JSONObject addFlow(UUID userId, FlowDescription flow) throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.addFlow(userId, flow);
+    }
+
+    @Override
+    public Model getFlow(UUID flowId, int version) throws BackendStoreException, FlowNotFoundException {
+        return bsl.getFlow(flowId, version);
+    }
+
+    @Override
+    public byte[] getFlowRendering(UUID flowId, int version, String format)
+            throws BackendStoreException, FlowNotFoundException {
+        return bsl.getFlowRendering(flowId, version, format);
+    }
+
+    @Override
+    public long getFlowRenderingLength(UUID flowId, int version, String format, String baseUrl)
+            throws BackendStoreException, FlowNotFoundException {
+        return bsl.getFlowRenderingLength(flowId, version, format, baseUrl);
+    }
+
+    @Override
+    public UUID getFlowOwner(UUID flowId, int version) throws BackendStoreException, FlowNotFoundException {
+        UUID ownerId = accessIndex.getFlowOwner(flowId, version);
+        if (ownerId == null) {
+            ownerId = bsl.getFlowOwner(flowId, version);
+            accessIndex.putFlowOwner(flowId, version, ownerId);
+        }
+
+        return ownerId;
+    }
+
+    @Override
+    public Map<IdVersionPair, UUID> getFlowOwners(Collection<IdVersionPair> flowVersions)
+            throws BackendStoreException {
+        Map<IdVersionPair, UUID> owners = new HashMap<IdVersionPair, UUID>();
+        List<IdVersionPair> missing = new ArrayList<IdVersionPair>();
+
+        for (IdVersionPair flowVersion : flowVersions) {
+            UUID ownerId = accessIndex.getFlowOwner(flowVersion.getId(), flowVersion.getVersion());
+            if (ownerId != null)
+                owners.put(flowVersion, ownerId);
+            else
+                missing.add(flowVersion);
+        }
+
+        if (!missing.isEmpty())
+            for (Map.Entry<IdVersionPair, UUID> entry : bsl.getFlowOwners(missing).entrySet()) {
+                IdVersionPair flowVersion = entry.getKey();
+                accessIndex.putFlowOwner(flowVersion.getId(), flowVersion.getVersion(), entry.getValue());
+                owners.put(flowVersion, entry.getValue());
+            }
+
+        return owners;
+    }
+
+    @Override
+    public Integer getFlowVersionCount(UUID flowId) throws BackendStoreException, FlowNotFoundException {
+        return bsl.getFlowVersionCount(flowId);
+    }
+
+    @Override
+    public void shareFlow(UUID flowId, int version, UUID groupId, UUID remoteUserId)
+            throws BackendStoreException, FlowNotFoundException, GroupNotFoundException, UserNotFoundException {
+        try {
+            bsl.shareFlow(flowId, version, groupId, remoteUserId);
+        }
+        finally {
+            accessIndex.invalidateFlow(flowId, version);
+        }
+    }
+
+    @Override
+    public JSONArray listUserFlows(UUID userId, long offset, long count, boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listUserFlows(userId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listPublicUserFlows(UUID userId, long offset, long count, boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listPublicUserFlows(userId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listAccessibleUserFlowsAsUser(UUID userId, UUID remoteUserId, long offset, long count,
+                                                   boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listAccessibleUserFlowsAsUser(userId, remoteUserId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listAccessibleUserFlowsAsUser(UUID userId, UUID remoteUserId, PageCursor after, long count,
+                                                   boolean includeOldVersions)
+            throws BackendStoreException, UserNotFoundException {
+        checkUserNotDeleted(userId);
+        return bsl.listAccessibleUserFlowsAsUser(userId, remoteUserId, after, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listPublicFlows(long offset, long count, boolean includeOldVersions) throws BackendStoreException {
+        return bsl.listPublicFlows(offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listGroupFlows(UUID groupId, long offset, long count, boolean includeOldVersions)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listGroupFlows(groupId, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listGroupFlows(UUID groupId, PageCursor after, long count, boolean includeOldVersions)
+            throws BackendStoreException, GroupNotFoundException {
+        return bsl.listGroupFlows(groupId, after, count, includeOldVersions);
+    }
+
+    @Override
+    public void listGroupFlows(UUID groupId, PageCursor after, long count, boolean includeOldVersions,
+                               EntryHandler handler) throws BackendStoreException, GroupNotFoundException {
+        bsl.listGroupFlows(groupId, after, count, includeOldVersions, handler);
+    }
+
+    //-------------------------------------------------------------------------------------
+
+    private void createCaches(int maxEntries, long ttl) {
+        userIds = new TimedLRUCache<String, UUID>(maxEntries, ttl);
+        userNames = new TimedLRUCache<UUID, String>(maxEntries, ttl);
+        deletedUsers = new TimedLRUCache<UUID, Boolean>(maxEntries, ttl);
+        groupIds = new TimedLRUCache<String, UUID>(maxEntries, ttl);
+        groupNames = new TimedLRUCache<UUID, String>(maxEntries, ttl);
+        accessIndex = new AccessIndex(maxEntries, ttl);
+    }
+
+    /**
+     * Removes the cached identity entries of a user
+     *
+     * @param userId The user id
+     */
+    private void invalidateUser(UUID userId) {
+        userNames.remove(userId);
+        userIds.removeValue(userId);
+        deletedUsers.remove(userId);
+    }
+
+    /**
+     * Returns the group memberships of a user, loading them into the access index if needed
+     *
+     * @param userId The user id
+     * @return The memberships
+     * @throws UserNotFoundException Thrown if the user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    private long[] getUserMemberships(UUID userId) throws UserNotFoundException, BackendStoreException {
+        long[] memberships = accessIndex.getUserMemberships(userId);
+        if (memberships != null)
+            return memberships;
+
+        long generation = accessIndex.getGeneration();
+        JSONArray jaGroups = bsl.listUserGroups(userId, 0, Long.MAX_VALUE);
+
+        UUID[] groupIds = new UUID[jaGroups.length()];
+        int[] roleIds = new int[jaGroups.length()];
+
+        try {
+            for (int i = 0, iMax = jaGroups.length(); i < iMax; i++) {
+                JSONObject joGroup = jaGroups.getJSONObject(i);
+                groupIds[i] = UUID.fromString(joGroup.getString("uuid"));
+                try {
+                    roleIds[i] = SCRole.valueOf(joGroup.getString("role")).getRoleId();
+                }
+                catch (IllegalArgumentException e) {
+                    // Not one of the roles that can be checked; keep the membership only
+                    roleIds[i] = 0;
+                }
+            }
+        }
+        catch (JSONException e) {
+            throw new BackendStoreException(e);
+        }
+
+        return accessIndex.putUserMemberships(userId, groupIds, roleIds, generation);
+    }
+
+    /**
+     * Returns the ids of a list of groups
+     *
+     * @param jaGroups The groups
+     * @return The group ids
+     * @throws BackendStoreException Thrown if the list cannot be read
+     */
+    private static List<UUID> getGroupIds(JSONArray jaGroups) throws BackendStoreException {
+        List<UUID> groupIds = new ArrayList<UUID>(jaGroups.length());
+
+        try {
+            for (int i = 0, iMax = jaGroups.length(); i < iMax; i++)
+                groupIds.add(UUID.fromString(jaGroups.getJSONObject(i).getString("uuid")));
+        }
+        catch (JSONException e) {
+            throw new BackendStoreException(e);
+        }
+
+        return groupIds;
+    }
+
+    /**
+     * Fails fast for users known to have been deleted
+     *
+     * @param userId The user id
+     * @throws UserNotFoundException Thrown if the user is known to have been deleted
+     */
+    private void checkUserNotDeleted(UUID userId) throws UserNotFoundException {
+        if (userId != null && deletedUsers.containsKey(userId))
+            throw new UserNotFoundException(userId);
+    }
+
+    private static JSONObject getCacheStatistics(TimedLRUCache<?, ?> cache) throws JSONException {
+        JSONObject joStats = new JSONObject();
+        joStats.put("size", cache.size());
+        joStats.put("max_entries", cache.getMaxEntries());
+        joStats.put("hits", cache.getHitCount());
+        joStats.put("misses", cache.getMissCount());
+
+        return joStats;
+    }
+}
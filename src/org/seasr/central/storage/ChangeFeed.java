@@ -0,0 +1,281 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps the most recent committed SC events in a fixed size ring buffer so that clients can
+ * follow the changes incrementally instead of re-listing everything.
+ *
+ * Every event gets a sequence number; a client resumes reading with the token returned by the
+ * previous read. A token is only valid for the feed that issued it (it is invalidated by a restart)
+ * and only as long as the events following it are still in the buffer; otherwise the read reports
+ * a reset and the client has to re-list before following the feed again.
+ *
+ * @author Boris Capitanu
+ */
+public class ChangeFeed {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Entry[] ring;
+
+    /** The sequence number of the last event published (guarded by this) */
+    private long lastSequence = 0;
+
+
+    /**
+     * Creates a change feed
+     *
+     * @param capacity The number of events retained
+     */
+    public ChangeFeed(int capacity) {
+        ring = new Entry[Math.max(1, capacity)];
+    }
+
+    /**
+     * Appends an event to the feed and wakes up the waiting readers
+     *
+     * @param event The event
+     * @param userId The user id, or null
+     * @param groupId The group id, or null
+     * @param compId The component id, or null
+     * @param flowId The flow id, or null
+     * @param metadata The event metadata (JSON), or null
+     * @param timestamp The time the event occurred
+     */
+    public synchronized void publish(SCEvent event, UUID userId, UUID groupId, UUID compId, UUID flowId,
+                                     String metadata, long timestamp) {
+        lastSequence++;
+        ring[(int) (lastSequence % ring.length)] =
+                new Entry(lastSequence, event, userId, groupId, compId, flowId, metadata, timestamp);
+
+        notifyAll();
+    }
+
+    /**
+     * Returns the token designating the current end of the feed
+     *
+     * @return The token
+     */
+    public synchronized String getToken() {
+        return toToken(lastSequence);
+    }
+
+    /**
+     * Reads the events following a token, waiting for one to be published if there is none
+     *
+     * @param token The token returned by a previous read, or null to start from the end of the feed
+     * @param count The maximum number of events returned
+     * @param timeout The maximum time (ms) to wait for an event
+     * @return The events read, and the token from which to resume
+     * @throws IllegalArgumentException Thrown if the token is malformed
+     * @throws InterruptedException Thrown if the thread was interrupted while waiting
+     */
+    public synchronized Batch read(String token, int count, long timeout) throws InterruptedException {
+        long after = (token != null) ? fromToken(token) : lastSequence;
+
+        // Issued before a restart, or the events following it were overwritten
+        if (after < 0 || after > lastSequence || after < lastSequence - ring.length)
+            return new Batch(Collections.<Entry>emptyList(), toToken(lastSequence), true);
+
+        long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while (after == lastSequence && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+
+        // The reader may have waited long enough for the buffer to wrap around
+        if (after < lastSequence - ring.length)
+            return new Batch(Collections.<Entry>emptyList(), toToken(lastSequence), true);
+
+        long last = Math.min(lastSequence, after + Math.max(1, count));
+        List<Entry> entries = new ArrayList<Entry>((int) (last - after));
+        for (long seq = after + 1; seq <= last; seq++)
+            entries.add(ring[(int) (seq % ring.length)]);
+
+        return new Batch(entries, toToken(last), false);
+    }
+
+    /**
+     * Returns the number of events retained
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private String toToken(long sequence) {
+        return epoch + "-" + Long.toString(sequence, 36);
+    }
+
+    /**
+     * Returns the sequence number designated by a token, or -1 if the token was issued by another feed
+     */
+    private long fromToken(String token) {
+        int pos = token.lastIndexOf('-');
+        if (pos <= 0)
+            throw new IllegalArgumentException("Invalid token: " + token);
+
+        try {
+            long sequence = Long.parseLong(token.substring(pos + 1), 36);
+            if (sequence < 0)
+                throw new IllegalArgumentException("Invalid token: " + token);
+
+            return epoch.equals(token.substring(0, pos)) ? sequence : -1;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid token: " + token, e);
+        }
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    /**
+     * The result of a read
+     */
+    public static class Batch {
+        private final List<Entry> entries;
+        private final String token;
+        private final boolean reset;
+
+        private Batch(List<Entry> entries, String token, boolean reset) {
+            this.entries = entries;
+            this.token = token;
+            this.reset = reset;
+        }
+
+        /**
+         * @return The events read, oldest first
+         */
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return The token from which to resume reading
+         */
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * @return True if events were missed since the token used for the read (the client has to re-list)
+         */
+        public boolean isReset() {
+            return reset;
+        }
+    }
+
+    /**
+     * An event in the feed
+     */
+    public static class Entry {
+        private final long sequence;
+        private final SCEvent event;
+        private final UUID userId;
+        private final UUID groupId;
+        private final UUID compId;
+        private final UUID flowId;
+        private final String metadata;
+        private final long timestamp;
+
+        private Entry(long sequence, SCEvent event, UUID userId, UUID groupId, UUID compId, UUID flowId,
+                      String metadata, long timestamp) {
+            this.sequence = sequence;
+            this.event = event;
+            this.userId = userId;
+            this.groupId = groupId;
+            this.compId = compId;
+            this.flowId = flowId;
+            this.metadata = metadata;
+            this.timestamp = timestamp;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public SCEvent getEvent() {
+            return event;
+        }
+
+        public UUID getUserId() {
+            return userId;
+        }
+
+        public UUID getGroupId() {
+            return groupId;
+        }
+
+        public UUID getComponentId() {
+            return compId;
+        }
+
+        public UUID getFlowId() {
+            return flowId;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the event metadata
+         *
+         * @return The metadata, or null if the event has none
+         * @throws JSONException Thrown if the metadata is not valid JSON
+         */
+        public JSONObject getMetadata() throws JSONException {
+            return (metadata != null) ? new JSONObject(metadata) : null;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+
+/**
+ * A component context file. A context is either staged (its content is available locally, as
+ * a file or in memory, and its MD5 hash is known) or remote (it has to be retrieved from its URL).
+ *
+ * @author Boris Capitanu
+ */
+public class ContextFile {
+    private final String fileName;
+    private final String contentType;
+    private final URL url;
+    private final File file;
+    private final byte[] data;
+    private final BigInteger md5;
+
+    /**
+     * Creates a context that has to be retrieved from the specified URL
+     *
+     * @param url The context URL
+     * @param contentType The context content type
+     */
+    public ContextFile(URL url, String contentType) {
+        this(getFileName(url), contentType, url, null, null, null);
+    }
+
+    /**
+     * Creates a context staged in a file
+     *
+     * @param fileName The context file name
+     * @param file The file holding the context
+     * @param contentType The context content type
+     * @param md5 The MD5 hash of the context
+     */
+    public ContextFile(String fileName, File file, String contentType, BigInteger md5) {
+        this(fileName, contentType, null, file, null, md5);
+    }
+
+    /**
+     * Creates a context staged in memory
+     *
+     * @param fileName The context file name
+     * @param data The context content
+     * @param contentType The context content type
+     * @param md5 The MD5 hash of the context
+     */
+    public ContextFile(String fileName, byte[] data, String contentType, BigInteger md5) {
+        this(fileName, contentType, null, null, data, md5);
+    }
+
+    private ContextFile(String fileName, String contentType, URL url, File file, byte[] data, BigInteger md5) {
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.url = url;
+        this.file = file;
+        this.data = data;
+        this.md5 = md5;
+    }
+
+    /**
+     * Returns the file name of the context referenced by the specified URL
+     *
+     * @param url The context URL
+     * @return The file name (may be empty)
+     */
+    public static String getFileName(URL url) {
+        return url.toString().substring(url.toString().lastIndexOf("/") + 1);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the URL of the context, or null if the context is staged
+     *
+     * @return The URL
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the file holding the context, or null if the context is remote or staged in memory
+     *
+     * @return The file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the MD5 hash of the context, or null if the context is remote
+     *
+     * @return The MD5 hash
+     */
+    public BigInteger getMD5() {
+        return md5;
+    }
+
+    public boolean isStaged() {
+        return md5 != null;
+    }
+
+    /**
+     * Returns the size of a staged context
+     *
+     * @return The size (in bytes)
+     */
+    public long getSize() {
+        return (data != null) ? data.length : file.length();
+    }
+
+    /**
+     * Opens a stream for reading a staged context. The caller must close the stream.
+     *
+     * @return The stream
+     * @throws IOException Thrown if the context file cannot be opened
+     */
+    public InputStream openStream() throws IOException {
+        return (data != null) ? new ByteArrayInputStream(data) : new FileInputStream(file);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable catalog of the error messages, keyed on error code.
+ * The catalog is loaded from the back end store once and replaced as a whole on reload, so looking up
+ * a message never touches the back end store. Error codes missing from the catalog fall back to the
+ * message built into SCError.
+ *
+ * @author Boris Capitanu
+ */
+public class ErrorCatalog {
+
+    private final Map<Integer, String> messages;
+
+    /**
+     * Creates a catalog
+     *
+     * @param messages The error messages, keyed on error code
+     */
+    public ErrorCatalog(Map<Integer, String> messages) {
+        this.messages = Collections.unmodifiableMap(new HashMap<Integer, String>(messages));
+    }
+
+    /**
+     * Creates a catalog holding the messages built into SCError
+     *
+     * @return The catalog
+     */
+    public static ErrorCatalog getDefault() {
+        Map<Integer, String> messages = new HashMap<Integer, String>();
+        for (SCError error : SCError.values())
+            messages.put(error.getErrorCode(), error.getErrorMessage());
+
+        return new ErrorCatalog(messages);
+    }
+
+    /**
+     * Returns the message for an error
+     *
+     * @param error The error
+     * @return The message
+     */
+    public String getErrorMessage(SCError error) {
+        String message = messages.get(error.getErrorCode());
+        return (message != null) ? message : error.getErrorMessage();
+    }
+
+    /**
+     * Returns the number of messages in the catalog
+     *
+     * @return The number of messages
+     */
+    public int size() {
+        return messages.size();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+
+package org.seasr.central.storage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.seasr.meandre.support.generic.util.UUIDUtils;
+
+import java.math.BigInteger;
+import java.util.UUID;
+
+/**
+ * The position of a page in a listing ordered by (id, version). A listing continues with the entries
+ * that sort after the cursor, so retrieving the next page costs the same no matter how deep the page is.
+ * Clients receive the cursor as an opaque token.
+ *
+ * @author Boris Capitanu
+ */
+public class PageCursor {
+
+    /** The cursor positioned before the first entry of any listing (the ids are DECIMAL(39) values) */
+    public static final PageCursor START = new PageCursor(BigInteger.TEN.pow(39).negate(), 0);
+
+    private final BigInteger id;
+    private final int version;
+
+    /**
+     * Creates a cursor positioned after the given entry
+     *
+     * @param id The id of the last entry of the page
+     * @param version The version of the last entry of the page, or 0 for listings of unversioned entries
+     */
+    public PageCursor(BigInteger id, int version) {
+        this.id = id;
+        this.version = version;
+    }
+
+    /**
+     * Creates a cursor positioned after an entry returned by a listing
+     *
+     * @param entry The entry, as returned by the backend store ("uuid" and, for components and flows, "version")
+     * @return The cursor
+     * @throws JSONException Thrown if the entry does not have an id
+     */
+    public static PageCursor after(JSONObject entry) throws JSONException {
+        UUID id = UUID.fromString(entry.getString("uuid"));
+        return new PageCursor(UUIDUtils.toBigInteger(id), entry.optInt("version", 0));
+    }
+
+    /**
+     * Decodes a token obtained from toToken()
+     *
+     * @param token The token
+     * @return The cursor
+     * @throws NumberFormatException Thrown if the token is not valid
+     */
+    public static PageCursor fromToken(String token) {
+        int pos = token.indexOf('.');
+        if (pos <= 0)
+            throw new NumberFormatException("Invalid page cursor: " + token);
+
+        int version = Integer.parseInt(token.substring(pos + 1), 16);
+        if (version < 0)
+            throw new NumberFormatException("Invalid page cursor: " + token);
+
+        return new PageCursor(new BigInteger(token.substring(0, pos), 16), version);
+    }
+
+    public BigInteger getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the opaque token that clients pass back to continue the listing
+     *
+     * @return The token
+     */
+    public String toToken() {
+        return id.toString(16) + "." + Integer.toHexString(version);
+    }
+
+    @Override
+    public String toString() {
+        return toToken();
+    }
+}
@@ -87,4 +87,18 @@ public enum SCEvent {
     public int getEventCode() {
         return _code;
     }
+
+    /**
+     * Returns the event having a given event code
+     *
+     * @param code The event code
+     * @return The event, or null if the code is not known
+     */
+    public static SCEvent fromEventCode(int code) {
+        for (SCEvent event : values())
+            if (event._code == code)
+                return event;
+
+        return null;
+    }
 }
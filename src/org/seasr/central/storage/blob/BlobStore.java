@@ -0,0 +1,133 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.blob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content-addressed store for binary objects (such as component contexts).
+ * Blobs are immutable and keyed on the (lowercase hex) hash of their content, so storing
+ * the same content twice is a no-op. Stores keeping blobs as local files should return
+ * FileInputStream instances from get(), allowing callers to serve them through FileChannel.transferTo.
+ *
+ * @author Boris Capitanu
+ */
+public interface BlobStore {
+
+    /**
+     * Checks whether a blob exists in the store
+     *
+     * @param hash The blob hash
+     * @return True if the blob exists, False otherwise
+     */
+    public boolean contains(String hash);
+
+    /**
+     * Returns the size of a blob
+     *
+     * @param hash The blob hash
+     * @return The size (in bytes), or -1 if the blob does not exist
+     */
+    public long getSize(String hash);
+
+    /**
+     * Opens a blob for reading
+     *
+     * @param hash The blob hash
+     * @return The blob data stream
+     * @throws IOException Thrown if the blob does not exist or cannot be read
+     */
+    public InputStream get(String hash) throws IOException;
+
+    /**
+     * Stores a blob. The blob becomes visible atomically, once all of its data has been written.
+     *
+     * @param hash The blob hash
+     * @param file The file holding the blob data
+     * @throws IOException Thrown if an I/O error occurs
+     */
+    public void put(String hash, File file) throws IOException;
+
+    /**
+     * Stores a blob. The blob becomes visible atomically, once all of its data has been written.
+     *
+     * @param hash The blob hash
+     * @param data The blob data stream (not closed by this method)
+     * @throws IOException Thrown if an I/O error occurs
+     */
+    public void put(String hash, InputStream data) throws IOException;
+
+    /**
+     * Removes a blob from the store
+     *
+     * @param hash The blob hash
+     * @return True if the blob was removed, False if it did not exist
+     */
+    public boolean remove(String hash);
+
+    /**
+     * Removes the blobs that were last stored before a given time and are no longer referenced.
+     * Storing a blob that already exists counts as storing it again.
+     *
+     * @param before The time (ms); the blobs stored after it may belong to uploads still in progress
+     * @param references Tells which blobs are still referenced
+     * @return The number of blobs removed
+     * @throws IOException Thrown if an I/O error occurs or a reference cannot be checked
+     */
+    public int removeUnreferenced(long before, References references) throws IOException;
+
+    /**
+     * Tells whether a blob is referenced by the data of the store user
+     */
+    public interface References {
+
+        /**
+         * Checks whether a blob is still referenced
+         *
+         * @param hash The blob hash
+         * @return True if the blob is referenced, False otherwise
+         * @throws IOException Thrown if the references cannot be checked
+         */
+        public boolean isReferenced(String hash) throws IOException;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.blob;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.regex.Pattern;
+
+/**
+ * Blob store keeping each blob in a file named after its hash, in a directory tree sharded
+ * on the first two bytes of the hash (i.e. &lt;root&gt;/ab/cd/abcd...). Blobs are first written
+ * to a temporary file under the same root and then renamed into place, so readers never
+ * observe partially written blobs.
+ *
+ * @author Boris Capitanu
+ */
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final Pattern REGEX_HASH = Pattern.compile("[a-f\\d]{4,}");
+
+    private final File rootDir;
+    private final File tmpDir;
+
+    /**
+     * Creates a blob store rooted at the specified directory
+     *
+     * @param rootDir The root directory (created if it does not exist)
+     * @throws IOException Thrown if the root directory cannot be created
+     */
+    public FileSystemBlobStore(File rootDir) throws IOException {
+        this.rootDir = rootDir;
+        this.tmpDir = new File(rootDir, "tmp");
+
+        if (!tmpDir.isDirectory() && !tmpDir.mkdirs())
+            throw new IOException("Cannot create the blob store directory: " + tmpDir);
+    }
+
+    /**
+     * Returns the root directory of the store
+     *
+     * @return The root directory
+     */
+    public File getRootDir() {
+        return rootDir;
+    }
+
+    public boolean contains(String hash) {
+        return getBlobFile(hash).isFile();
+    }
+
+    public long getSize(String hash) {
+        File file = getBlobFile(hash);
+        return file.isFile() ? file.length() : -1;
+    }
+
+    public InputStream get(String hash) throws IOException {
+        return new FileInputStream(getBlobFile(hash));
+    }
+
+    public void put(String hash, File file) throws IOException {
+        File blobFile = getBlobFile(hash);
+        if (touch(blobFile)) return;
+
+        File tmpFile = File.createTempFile("blob", ".tmp", tmpDir);
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileOutputStream out = new FileOutputStream(tmpFile);
+                try {
+                    FileChannel src = in.getChannel();
+                    FileChannel dst = out.getChannel();
+                    long size = src.size();
+                    long pos = 0;
+                    while (pos < size)
+                        pos += src.transferTo(pos, size - pos, dst);
+
+                    out.getFD().sync();
+                }
+                finally {
+                    out.close();
+                }
+            }
+            finally {
+                in.close();
+            }
+
+            commit(tmpFile, blobFile);
+        }
+        finally {
+            tmpFile.delete();
+        }
+    }
+
+    public void put(String hash, InputStream data) throws IOException {
+        File blobFile = getBlobFile(hash);
+        if (touch(blobFile)) return;
+
+        File tmpFile = File.createTempFile("blob", ".tmp", tmpDir);
+        try {
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                IOUtils.copy(data, out);
+                out.getFD().sync();
+            }
+            finally {
+                out.close();
+            }
+
+            commit(tmpFile, blobFile);
+        }
+        finally {
+            tmpFile.delete();
+        }
+    }
+
+    public boolean remove(String hash) {
+        return getBlobFile(hash).delete();
+    }
+
+    public int removeUnreferenced(long before, References references) throws IOException {
+        int count = 0;
+
+        File[] dirs = rootDir.listFiles();
+        if (dirs == null)
+            throw new IOException("Cannot list the blob store directory: " + rootDir);
+
+        for (File dir : dirs) {
+            if (dir.equals(tmpDir) || !dir.isDirectory()) continue;
+
+            File[] subDirs = dir.listFiles();
+            if (subDirs == null) continue;
+
+            for (File subDir : subDirs) {
+                File[] blobFiles = subDir.listFiles();
+                if (blobFiles == null) continue;
+
+                for (File blobFile : blobFiles) {
+                    String hash = blobFile.getName();
+                    if (!REGEX_HASH.matcher(hash).matches() || blobFile.lastModified() >= before)
+                        continue;
+
+                    // Check the time again in case the blob was stored again while checking the references
+                    if (!references.isReferenced(hash) && blobFile.lastModified() < before && blobFile.delete())
+                        count++;
+                }
+            }
+        }
+
+        // Remove the temporary files left by interrupted writes
+        File[] tmpFiles = tmpDir.listFiles();
+        if (tmpFiles != null)
+            for (File tmpFile : tmpFiles)
+                if (tmpFile.lastModified() < before)
+                    tmpFile.delete();
+
+        return count;
+    }
+
+    /**
+     * Moves a fully written temporary file into its final location
+     *
+     * @param tmpFile The temporary file
+     * @param blobFile The blob file
+     * @throws IOException Thrown if the file cannot be moved
+     */
+    protected void commit(File tmpFile, File blobFile) throws IOException {
+        File dir = blobFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+            throw new IOException("Cannot create the blob directory: " + dir);
+
+        if (!tmpFile.renameTo(blobFile) && !blobFile.isFile())
+            throw new IOException("Cannot move blob into place: " + blobFile);
+    }
+
+    /**
+     * Marks an existing blob as just stored, so that it is not removed as unreferenced
+     * while the upload storing it again is in progress
+     *
+     * @param blobFile The blob file
+     * @return True if the blob exists, False otherwise
+     */
+    protected boolean touch(File blobFile) {
+        return blobFile.isFile() && (blobFile.setLastModified(System.currentTimeMillis()) || blobFile.isFile());
+    }
+
+    /**
+     * Returns the file that holds (or would hold) the specified blob
+     *
+     * @param hash The blob hash
+     * @return The blob file
+     */
+    protected File getBlobFile(String hash) {
+        hash = hash.toLowerCase();
+        if (!REGEX_HASH.matcher(hash).matches())
+            throw new IllegalArgumentException("Invalid blob hash: " + hash);
+
+        File dir = new File(new File(rootDir, hash.substring(0, 2)), hash.substring(2, 4));
+
+        return new File(dir, hash);
+    }
+}
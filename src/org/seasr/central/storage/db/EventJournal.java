@@ -0,0 +1,642 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.db;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.seasr.central.storage.ChangeFeed;
+import org.seasr.central.storage.SCEvent;
+import org.seasr.central.storage.db.properties.DBProperties;
+import org.seasr.meandre.support.generic.util.UUIDUtils;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the SC events in the monthly event tables (see {@link EventPartitions}).
+ *
+ * In SYNC mode the events are inserted in the event tables as part of the transaction that generated them.
+ * In OUTBOX mode they are inserted in the sc_event_outbox table instead, which has no secondary indexes,
+ * and a background writer moves them to the event tables in batches; an event is as durable as the
+ * transaction that generated it. In ASYNC mode the events are kept in a bounded in-memory queue until the
+ * transaction commits and then written to the event tables in batches by the background writer; events are dropped when the
+ * queue is full, and the events still queued are lost if the server stops abruptly.
+ *
+ * The events recorded on a connection that is not in auto-commit mode only become visible to the
+ * writer once {@link #committed(Connection)} is called, and are forgotten on {@link #discard(Connection)}.
+ * Committed events are also published to the change feed, if one is given, regardless of the mode.
+ *
+ * @author Boris Capitanu
+ */
+public class EventJournal {
+
+    public enum Mode { SYNC, OUTBOX, ASYNC }
+
+    private final Mode mode;
+    private final DataSource dataSource;
+    private final Properties properties;
+    private final EventPartitions partitions;
+    private final Logger logger;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushInterval;
+    private final ChangeFeed feed;
+
+    /** The events queued for the writer (ASYNC mode) */
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<Event>();
+
+    /** The number of events waiting for the writer, in the queue (ASYNC) or in the outbox (OUTBOX) */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /** The events recorded in transactions that have not committed yet, keyed on connection */
+    private final Map<Connection, List<Event>> pending =
+            Collections.synchronizedMap(new IdentityHashMap<Connection, List<Event>>());
+
+    private final AtomicLong eventsWritten = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private volatile long lastFlushTime = 0;
+    private volatile long maxFlushTime = 0;
+    private volatile long lastFlushLag = 0;
+    private volatile long maxFlushLag = 0;
+
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile boolean running = true;
+
+
+    /**
+     * Creates an event journal
+     *
+     * @param mode The durability mode
+     * @param dataSource The connection pool used by the background writer
+     * @param properties The DB configuration properties (for the queries)
+     * @param partitions The event tables
+     * @param capacity The maximum number of events queued (ASYNC mode)
+     * @param batchSize The maximum number of events written per statement
+     * @param flushInterval The maximum time (ms) an event waits before the writer runs
+     * @param feed The change feed the committed events are published to, or null
+     * @param logger The logger
+     */
+    public EventJournal(Mode mode, DataSource dataSource, Properties properties, EventPartitions partitions,
+                        int capacity, int batchSize, long flushInterval, ChangeFeed feed, Logger logger) {
+        this.mode = mode;
+        this.dataSource = dataSource;
+        this.properties = properties;
+        this.partitions = partitions;
+        this.capacity = capacity;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.feed = feed;
+        this.logger = logger;
+
+        if (mode == Mode.SYNC) {
+            writer = null;
+            shutdownHook = null;
+            return;
+        }
+
+        writer = new Thread(new Runnable() {
+            public void run() {
+                runWriter();
+            }
+        }, "sc-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        // Write what is still queued when the server stops
+        shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                stopWriter();
+            }
+        }, "sc-event-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Records an event
+     *
+     * @param eventCode The event code
+     * @param userId The user id, or null
+     * @param groupId The group id, or null
+     * @param compId The component id, or null
+     * @param flowId The flow id, or null
+     * @param metadata The event metadata, or null
+     * @param conn The connection of the transaction generating the event
+     * @throws SQLException Thrown if the event could not be written (SYNC and OUTBOX modes)
+     */
+    public void add(SCEvent eventCode, BigInteger userId, BigInteger groupId, BigInteger compId,
+                    BigInteger flowId, JSONObject metadata, Connection conn) throws SQLException {
+
+        Event event = new Event(System.currentTimeMillis(), eventCode.getEventCode(), userId, groupId, compId, flowId,
+                (metadata != null) ? metadata.toString() : null);
+
+        switch (mode) {
+            case SYNC:
+                storeEvents(DBProperties.Q_EVENT_ADD, Collections.singletonList(event), conn);
+                if (feed == null) return;
+                break;
+
+            case OUTBOX:
+                insertEvents(DBProperties.Q_EVENT_OUTBOX_ADD, null, Collections.singletonList(event), conn);
+                break;
+        }
+
+        if (conn.getAutoCommit()) {
+            publish(Collections.singletonList(event));
+            return;
+        }
+
+        synchronized (pending) {
+            List<Event> events = pending.get(conn);
+            if (events == null) {
+                events = new ArrayList<Event>();
+                pending.put(conn, events);
+            }
+            events.add(event);
+        }
+    }
+
+    /**
+     * Hands the events recorded in a transaction to the writer, once the transaction committed
+     *
+     * @param conn The connection of the transaction
+     */
+    public void committed(Connection conn) {
+        if (mode == Mode.SYNC && feed == null) return;
+
+        List<Event> events = pending.remove(conn);
+        if (events != null)
+            publish(events);
+    }
+
+    /**
+     * Forgets the events recorded in a transaction that rolled back or was abandoned
+     *
+     * @param conn The connection of the transaction
+     */
+    public void discard(Connection conn) {
+        if (mode != Mode.SYNC || feed != null)
+            pending.remove(conn);
+    }
+
+    /**
+     * Stops the writer, after writing the events still queued
+     */
+    public void shutdown() {
+        if (writer == null) return;
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException e) {
+            // Already shutting down
+        }
+
+        stopWriter();
+    }
+
+    /**
+     * Returns the journal statistics (queue depth, events written and dropped, flush duration and lag)
+     *
+     * @return The statistics
+     */
+    public JSONObject getStatistics() {
+        JSONObject joStats = new JSONObject();
+
+        try {
+            joStats.put("mode", mode.name());
+            joStats.put("queue_depth", queueDepth.get());
+            joStats.put("queue_capacity", capacity);
+            joStats.put("batch_size", batchSize);
+            joStats.put("events_written", eventsWritten.get());
+            joStats.put("events_dropped", eventsDropped.get());
+            joStats.put("batches_written", batchesWritten.get());
+            joStats.put("flush_failures", flushFailures.get());
+            joStats.put("last_flush_ms", lastFlushTime);
+            joStats.put("max_flush_ms", maxFlushTime);
+            joStats.put("last_flush_lag_ms", lastFlushLag);
+            joStats.put("max_flush_lag_ms", maxFlushLag);
+        }
+        catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+
+        return joStats;
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    /**
+     * Makes committed events visible to the writer and the change feed
+     *
+     * @param events The events
+     */
+    private void publish(List<Event> events) {
+        if (feed != null)
+            for (Event event : events)
+                feed.publish(SCEvent.fromEventCode(event.eventCode), getUUID(event.userId), getUUID(event.groupId),
+                        getUUID(event.compId), getUUID(event.flowId), event.metadata, event.timestamp);
+
+        if (mode == Mode.SYNC) return;
+
+        int depth;
+
+        if (mode == Mode.OUTBOX)
+            // The events are already stored in the outbox
+            depth = queueDepth.addAndGet(events.size());
+
+        else {
+            depth = 0;
+            for (Event event : events) {
+                int current;
+                do {
+                    current = queueDepth.get();
+                    if (current >= capacity) break;
+                } while (!queueDepth.compareAndSet(current, current + 1));
+
+                if (current >= capacity) {
+                    // Best effort: do not block the request when the writer falls behind
+                    eventsDropped.incrementAndGet();
+                    continue;
+                }
+
+                queue.offer(event);
+                depth = current + 1;
+            }
+        }
+
+        if (depth >= batchSize)
+            LockSupport.unpark(writer);
+    }
+
+    private void runWriter() {
+        while (running) {
+            if (queueDepth.get() < batchSize)
+                LockSupport.parkNanos(this, flushInterval * 1000000L);
+
+            try {
+                // Write everything waiting, a batch at a time
+                int written;
+                do {
+                    written = flush();
+                } while (written == batchSize && running);
+            }
+            catch (Exception e) {
+                flushFailures.incrementAndGet();
+                logger.log(Level.SEVERE, "Cannot write the queued events", e);
+
+                // Back off before retrying
+                LockSupport.parkNanos(this, flushInterval * 1000000L);
+            }
+        }
+    }
+
+    private void stopWriter() {
+        running = false;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join(flushInterval * 10);
+
+            // Write whatever the writer left behind
+            int written;
+            do {
+                written = flush();
+            } while (written > 0);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, "Cannot write the queued events", e);
+        }
+    }
+
+    /**
+     * Writes one batch of events to the event tables
+     *
+     * @return The number of events written
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    private synchronized int flush() throws SQLException {
+        return (mode == Mode.OUTBOX) ? flushOutbox() : flushQueue();
+    }
+
+    private int flushQueue() throws SQLException {
+        List<Event> events = new ArrayList<Event>(batchSize);
+        Event event;
+        while (events.size() < batchSize && (event = queue.poll()) != null) {
+            queueDepth.decrementAndGet();
+            events.add(event);
+        }
+
+        if (events.isEmpty()) return 0;
+
+        long start = System.currentTimeMillis();
+        Connection conn = null;
+
+        try {
+            conn = dataSource.getConnection();
+            storeEvents(DBProperties.Q_EVENT_ADD_BATCH, events, conn);
+        }
+        catch (SQLException e) {
+            // The events are not kept for a retry in this mode
+            eventsDropped.addAndGet(events.size());
+            throw e;
+        }
+        finally {
+            closeConnection(conn);
+        }
+
+        recordFlush(events, start);
+
+        return events.size();
+    }
+
+    private int flushOutbox() throws SQLException {
+        long start = System.currentTimeMillis();
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_EVENT_OUTBOX_LIST).trim());
+            ps.setInt(1, batchSize);
+            ResultSet rs = ps.executeQuery();
+
+            List<Event> events = new ArrayList<Event>(batchSize);
+            List<Long> eventIds = new ArrayList<Long>(batchSize);
+
+            while (rs.next()) {
+                eventIds.add(rs.getLong(1));
+                events.add(new Event(
+                        rs.getTimestamp(2).getTime(),
+                        rs.getInt(3),
+                        getBigInteger(rs.getBigDecimal(4)),
+                        getBigInteger(rs.getBigDecimal(5)),
+                        getBigInteger(rs.getBigDecimal(6)),
+                        getBigInteger(rs.getBigDecimal(7)),
+                        rs.getString(8)));
+            }
+            ps.close();
+            ps = null;
+
+            if (events.isEmpty()) {
+                conn.commit();
+                queueDepth.set(0);
+                return 0;
+            }
+
+            storeEvents(DBProperties.Q_EVENT_ADD_BATCH, events, conn);
+
+            // Only remove the events read: ids below the last one may belong to transactions not yet committed
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < eventIds.size(); i++)
+                placeholders.append((i == 0) ? "?" : ", ?");
+
+            ps = conn.prepareStatement(String.format(
+                    properties.getProperty(DBProperties.Q_EVENT_OUTBOX_REMOVE).trim(), placeholders));
+            for (int i = 0; i < eventIds.size(); i++)
+                ps.setLong(i + 1, eventIds.get(i));
+            ps.executeUpdate();
+
+            conn.commit();
+
+            // The outbox can hold events from before a restart that were never counted
+            int current;
+            do {
+                current = queueDepth.get();
+            } while (!queueDepth.compareAndSet(current, Math.max(0, current - events.size())));
+
+            recordFlush(events, start);
+
+            return events.size();
+        }
+        catch (SQLException e) {
+            if (conn != null)
+                try {
+                    conn.rollback();
+                }
+                catch (SQLException ex) {
+                    logger.log(Level.WARNING, null, ex);
+                }
+            throw e;
+        }
+        finally {
+            if (ps != null)
+                try {
+                    ps.close();
+                }
+                catch (SQLException e) {
+                    logger.log(Level.WARNING, null, e);
+                }
+            closeConnection(conn);
+        }
+    }
+
+    private void recordFlush(List<Event> events, long start) {
+        long now = System.currentTimeMillis();
+
+        long oldest = now;
+        for (Event event : events)
+            oldest = Math.min(oldest, event.timestamp);
+
+        eventsWritten.addAndGet(events.size());
+        batchesWritten.incrementAndGet();
+
+        lastFlushTime = now - start;
+        maxFlushTime = Math.max(maxFlushTime, lastFlushTime);
+        lastFlushLag = now - oldest;
+        maxFlushLag = Math.max(maxFlushLag, lastFlushLag);
+    }
+
+    /**
+     * Inserts events in the tables of the months they occurred in
+     *
+     * @param queryKey The query (see insertEvents)
+     * @param events The events
+     * @param conn The DB connection to use
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    private void storeEvents(String queryKey, List<Event> events, Connection conn) throws SQLException {
+        Map<String, List<Event>> tableEvents = new LinkedHashMap<String, List<Event>>();
+
+        for (Event event : events) {
+            String table = partitions.getTable(event.timestamp);
+            List<Event> list = tableEvents.get(table);
+            if (list == null) {
+                list = new ArrayList<Event>();
+                tableEvents.put(table, list);
+            }
+            list.add(event);
+        }
+
+        for (Map.Entry<String, List<Event>> entry : tableEvents.entrySet())
+            insertEvents(queryKey, entry.getKey(), entry.getValue(), conn);
+    }
+
+    /**
+     * Inserts events using a query where %1$s is replaced with the table name and %2$s with
+     * one (?, ?, ?, ?, ?, ?, ?) tuple per event
+     *
+     * @param queryKey The query
+     * @param table The table name, or null if the query names its table
+     * @param events The events
+     * @param conn The DB connection to use
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    private void insertEvents(String queryKey, String table, List<Event> events, Connection conn)
+            throws SQLException {
+        String sqlQuery = properties.getProperty(queryKey).trim();
+
+        if (sqlQuery.contains("%")) {
+            StringBuilder tuples = new StringBuilder();
+            for (int i = 0; i < events.size(); i++)
+                tuples.append((i == 0) ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+            sqlQuery = String.format(sqlQuery, table, tuples);
+        }
+
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+
+            int param = 1;
+            for (Event event : events) {
+                ps.setTimestamp(param++, new Timestamp(event.timestamp));
+                ps.setInt(param++, event.eventCode);
+                setDecimal(ps, param++, event.userId);
+                setDecimal(ps, param++, event.groupId);
+                setDecimal(ps, param++, event.compId);
+                setDecimal(ps, param++, event.flowId);
+
+                if (event.metadata != null)
+                    ps.setString(param++, event.metadata);
+                else
+                    ps.setNull(param++, Types.VARCHAR);
+            }
+
+            ps.executeUpdate();
+        }
+        finally {
+            if (ps != null)
+                try {
+                    ps.close();
+                }
+                catch (SQLException e) {
+                    logger.log(Level.WARNING, null, e);
+                }
+        }
+    }
+
+    private void closeConnection(Connection conn) {
+        if (conn != null)
+            try {
+                conn.close();
+            }
+            catch (SQLException e) {
+                logger.log(Level.WARNING, null, e);
+            }
+    }
+
+    private static void setDecimal(PreparedStatement ps, int param, BigInteger value) throws SQLException {
+        if (value != null)
+            ps.setBigDecimal(param, new BigDecimal(value));
+        else
+            ps.setNull(param, Types.DECIMAL);
+    }
+
+    private static BigInteger getBigInteger(BigDecimal value) {
+        return (value != null) ? value.toBigInteger() : null;
+    }
+
+    private static UUID getUUID(BigInteger value) {
+        return (value != null) ? UUIDUtils.fromBigInteger(value) : null;
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private static class Event {
+        private final long timestamp;
+        private final int eventCode;
+        private final BigInteger userId;
+        private final BigInteger groupId;
+        private final BigInteger compId;
+        private final BigInteger flowId;
+        private final String metadata;
+
+        private Event(long timestamp, int eventCode, BigInteger userId, BigInteger groupId,
+                      BigInteger compId, BigInteger flowId, String metadata) {
+            this.timestamp = timestamp;
+            this.eventCode = eventCode;
+            this.userId = userId;
+            this.groupId = groupId;
+            this.compId = compId;
+            this.flowId = flowId;
+            this.metadata = metadata;
+        }
+    }
+}
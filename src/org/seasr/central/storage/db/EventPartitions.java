@@ -0,0 +1,491 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.db;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.seasr.central.storage.SCEvent;
+import org.seasr.central.storage.db.properties.DBProperties;
+import org.seasr.meandre.support.generic.util.UUIDUtils;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Manages the monthly sc_event_YYYYMM tables holding the SC events.
+ *
+ * Each table is clustered on (timestamp, evt_code) so that inserts append to the most recent month
+ * and time range queries only read the months they cover. The table of a month is created ahead of
+ * time by the maintenance task (and on demand, on a separate connection, since DDL commits the
+ * current transaction). Tables older than the retention period are written to a compressed archive
+ * (one JSON event per line) and dropped. The events of the single sc_event table used by earlier versions
+ * are moved to the tables of their months by the first maintenance run, in the background.
+ *
+ * @author Boris Capitanu
+ */
+public class EventPartitions {
+
+    public static final String TABLE_PREFIX = "sc_event_";
+
+    private static final Pattern TABLE_NAME = Pattern.compile(TABLE_PREFIX + "\\d{6}");
+    private static final long MAINTENANCE_INTERVAL = TimeUnit.HOURS.toMillis(24);
+
+    private final DataSource dataSource;
+    private final Properties properties;
+    private final File archiveDir;
+    private final int retention;
+    private final Logger logger;
+
+    /** The names of the existing event tables, in chronological order */
+    private final ConcurrentSkipListSet<String> tables = new ConcurrentSkipListSet<String>();
+
+    private final ScheduledExecutorService maintenance;
+
+
+    /**
+     * Creates the event partition manager: the tables of the current and the next month are created
+     * right away, and the first maintenance run is started in the background
+     *
+     * @param dataSource The connection pool
+     * @param properties The DB configuration properties (for the queries)
+     * @param archiveDir The folder where the expired tables are archived
+     * @param retention The number of months kept in the database (0 keeps everything)
+     * @param logger The logger
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    public EventPartitions(DataSource dataSource, Properties properties, File archiveDir, int retention, Logger logger)
+            throws SQLException {
+        this.dataSource = dataSource;
+        this.properties = properties;
+        this.archiveDir = archiveDir;
+        this.retention = Math.max(0, retention);
+        this.logger = logger;
+
+        createTables();
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sc-event-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        maintenance.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    maintain();
+                }
+                catch (Exception e) {
+                    EventPartitions.this.logger.log(Level.SEVERE, "Event table maintenance failed", e);
+                }
+            }
+        }, 0, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the maintenance task
+     */
+    public void shutdown() {
+        maintenance.shutdownNow();
+    }
+
+    /**
+     * Returns the name of the table holding the events of the month of a given time
+     *
+     * @param timestamp The time
+     * @return The table name
+     */
+    public static String getTableName(long timestamp) {
+        return TABLE_PREFIX + new SimpleDateFormat("yyyyMM").format(new Date(timestamp));
+    }
+
+    /**
+     * Returns the table where an event occurring at a given time is stored, creating it if needed
+     *
+     * @param timestamp The time
+     * @return The table name
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    public String getTable(long timestamp) throws SQLException {
+        String table = getTableName(timestamp);
+        if (!tables.contains(table))
+            createTable(table);
+
+        return table;
+    }
+
+    /**
+     * Returns the existing tables holding the events of a time range, in chronological order
+     *
+     * @param from The start of the range (inclusive)
+     * @param to The end of the range (exclusive)
+     * @return The table names
+     */
+    public List<String> getTables(long from, long to) {
+        if (from >= to) return new ArrayList<String>();
+
+        return new ArrayList<String>(tables.subSet(getTableName(from), true, getTableName(to - 1), true));
+    }
+
+    /**
+     * Creates the tables of the current and the next month, moves the events of the legacy sc_event table,
+     * and archives and drops the tables that are older than the retention period
+     *
+     * @return The number of tables archived
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    public synchronized int maintain() throws SQLException {
+        createTables();
+        migrateLegacyEvents();
+
+        if (retention == 0) return 0;
+
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.MONTH, -retention);
+        String oldest = getTableName(cal.getTimeInMillis());
+
+        int archived = 0;
+        for (String table : new ArrayList<String>(tables.headSet(oldest, false))) {
+            try {
+                archive(table);
+            }
+            catch (IOException e) {
+                // Keep the table until it can be archived
+                logger.log(Level.SEVERE, String.format("Cannot archive the events in table %s", table), e);
+                continue;
+            }
+
+            execute(String.format(properties.getProperty(DBProperties.Q_EVENT_PARTITION_DROP).trim(), table));
+            tables.remove(table);
+            archived++;
+
+            logger.info(String.format("Archived and dropped event table %s", table));
+        }
+
+        return archived;
+    }
+
+    /**
+     * Converts a row of an event table to JSON
+     * (columns: timestamp, evt_code, user_uuid, group_uuid, comp_uuid, flow_uuid, metadata)
+     *
+     * @param rs The result set, positioned on the row
+     * @return The event
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     * @throws JSONException Thrown if the metadata is not valid JSON
+     */
+    public static JSONObject readEvent(ResultSet rs) throws SQLException, JSONException {
+        JSONObject joEvent = new JSONObject();
+
+        SCEvent event = SCEvent.fromEventCode(rs.getInt(2));
+        joEvent.put("event", (event != null) ? event.name() : Integer.toString(rs.getInt(2)));
+        joEvent.put("timestamp", rs.getTimestamp(1).getTime());
+
+        putUUID(joEvent, "user", rs.getBigDecimal(3));
+        putUUID(joEvent, "group", rs.getBigDecimal(4));
+        putUUID(joEvent, "component", rs.getBigDecimal(5));
+        putUUID(joEvent, "flow", rs.getBigDecimal(6));
+
+        String metadata = rs.getString(7);
+        if (metadata != null)
+            joEvent.put("metadata", new JSONObject(metadata));
+
+        return joEvent;
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    /**
+     * Loads the names of the existing tables and creates the tables of the current and the next month
+     */
+    private void createTables() throws SQLException {
+        loadTables();
+
+        Calendar cal = Calendar.getInstance();
+        createTable(getTableName(cal.getTimeInMillis()));
+        cal.add(Calendar.MONTH, 1);
+        createTable(getTableName(cal.getTimeInMillis()));
+    }
+
+    private void loadTables() throws SQLException {
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_EVENT_PARTITION_LIST).trim());
+            ResultSet rs = ps.executeQuery();
+
+            List<String> existing = new ArrayList<String>();
+            while (rs.next()) {
+                String table = rs.getString(1).toLowerCase();
+                if (TABLE_NAME.matcher(table).matches())
+                    existing.add(table);
+            }
+
+            tables.retainAll(existing);
+            tables.addAll(existing);
+        }
+        finally {
+            close(conn, ps);
+        }
+    }
+
+    /**
+     * Moves the events of the sc_event table used before the monthly tables to the tables of their months,
+     * one month per transaction (so an interrupted move resumes where it stopped), and then renames
+     * the emptied table to sc_event_legacy. Does nothing once the table was renamed.
+     */
+    private void migrateLegacyEvents() throws SQLException {
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_EVENT_LEGACY_EXISTS).trim());
+            ResultSet rs = ps.executeQuery();
+            boolean exists = rs.next() && rs.getInt(1) > 0;
+            ps.close();
+            ps = null;
+
+            if (!exists) return;
+
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_EVENT_LEGACY_RANGE).trim());
+            rs = ps.executeQuery();
+            Timestamp first = null;
+            Timestamp last = null;
+            if (rs.next()) {
+                first = rs.getTimestamp(1);
+                last = rs.getTimestamp(2);
+            }
+            ps.close();
+            ps = null;
+
+            if (first != null) {
+                logger.info("Moving the events of table sc_event to the monthly event tables");
+
+                Calendar cal = Calendar.getInstance();
+                cal.setTime(first);
+                cal.set(Calendar.DAY_OF_MONTH, 1);
+                cal.set(Calendar.HOUR_OF_DAY, 0);
+                cal.set(Calendar.MINUTE, 0);
+                cal.set(Calendar.SECOND, 0);
+                cal.set(Calendar.MILLISECOND, 0);
+
+                conn.setAutoCommit(false);
+
+                while (cal.getTimeInMillis() <= last.getTime()) {
+                    Timestamp from = new Timestamp(cal.getTimeInMillis());
+                    cal.add(Calendar.MONTH, 1);
+                    Timestamp to = new Timestamp(cal.getTimeInMillis());
+
+                    String table = getTable(from.getTime());
+
+                    ps = conn.prepareStatement(
+                            String.format(properties.getProperty(DBProperties.Q_EVENT_LEGACY_MOVE).trim(), table));
+                    ps.setTimestamp(1, from);
+                    ps.setTimestamp(2, to);
+                    int moved = ps.executeUpdate();
+                    ps.close();
+                    ps = null;
+
+                    ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_EVENT_LEGACY_REMOVE).trim());
+                    ps.setTimestamp(1, from);
+                    ps.setTimestamp(2, to);
+                    ps.executeUpdate();
+                    ps.close();
+                    ps = null;
+
+                    conn.commit();
+
+                    if (moved > 0)
+                        logger.info(String.format("Moved %d events to table %s", moved, table));
+                }
+
+                conn.setAutoCommit(true);
+            }
+
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_EVENT_LEGACY_RENAME).trim());
+            ps.executeUpdate();
+
+            logger.info("Renamed the emptied sc_event table to sc_event_legacy");
+        }
+        catch (SQLException e) {
+            if (conn != null)
+                try {
+                    if (!conn.getAutoCommit()) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                }
+                catch (SQLException ex) {
+                    logger.log(Level.WARNING, null, ex);
+                }
+            throw e;
+        }
+        finally {
+            close(conn, ps);
+        }
+    }
+
+    private void createTable(String table) throws SQLException {
+        execute(String.format(properties.getProperty(DBProperties.Q_EVENT_PARTITION_CREATE).trim(), table));
+        tables.add(table);
+    }
+
+    /**
+     * Writes the events of a table to a gzipped file in the archive folder
+     */
+    private void archive(String table) throws IOException, SQLException {
+        if (!archiveDir.exists() && !archiveDir.mkdirs())
+            throw new IOException("Cannot create the event archive folder: " + archiveDir);
+
+        File archive = new File(archiveDir, table + ".json.gz");
+        File tmpArchive = new File(archiveDir, table + ".json.gz.tmp");
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        Writer writer = null;
+
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(
+                    String.format(properties.getProperty(DBProperties.Q_EVENT_PARTITION_EXPORT).trim(), table),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            int fetchSize = Integer.parseInt(properties.getProperty(DBProperties.STREAM_FETCH_SIZE, "0").trim());
+            if (fetchSize != 0)
+                ps.setFetchSize(fetchSize);
+            ResultSet rs = ps.executeQuery();
+
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(tmpArchive)), "UTF-8"));
+
+            while (rs.next()) {
+                writer.write(readEvent(rs).toString());
+                writer.write('\n');
+            }
+
+            writer.close();
+            writer = null;
+        }
+        catch (JSONException e) {
+            throw new IOException("Invalid event metadata in table " + table, e);
+        }
+        finally {
+            if (writer != null)
+                try {
+                    writer.close();
+                }
+                catch (IOException e) {
+                    logger.log(Level.WARNING, null, e);
+                }
+            close(conn, ps);
+        }
+
+        if ((archive.exists() && !archive.delete()) || !tmpArchive.renameTo(archive))
+            throw new IOException("Cannot create the event archive: " + archive);
+    }
+
+    private void execute(String sqlQuery) throws SQLException {
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(sqlQuery);
+            ps.executeUpdate();
+        }
+        finally {
+            close(conn, ps);
+        }
+    }
+
+    private void close(Connection conn, PreparedStatement ps) {
+        if (ps != null)
+            try {
+                ps.close();
+            }
+            catch (SQLException e) {
+                logger.log(Level.WARNING, null, e);
+            }
+
+        if (conn != null)
+            try {
+                conn.close();
+            }
+            catch (SQLException e) {
+                logger.log(Level.WARNING, null, e);
+            }
+    }
+
+    private static void putUUID(JSONObject joEvent, String key, BigDecimal value) throws JSONException {
+        if (value != null)
+            joEvent.put(key, UUIDUtils.fromBigInteger(value.toBigInteger()).toString());
+    }
+}
@@ -41,24 +41,41 @@
 package org.seasr.central.storage.db;
 
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.vocabulary.RDF;
 import com.mchange.v2.c3p0.ComboPooledDataSource;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.meandre.core.repository.ExecutableComponentDescription;
 import org.meandre.core.repository.ExecutableComponentInstanceDescription;
 import org.meandre.core.repository.FlowDescription;
+import org.meandre.core.repository.RepositoryImpl;
 import org.meandre.core.utils.vocabulary.RepositoryVocabulary;
 import org.seasr.central.storage.BackendStoreLink;
+import org.seasr.central.storage.ChangeFeed;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.SCEvent;
+import org.seasr.central.storage.ContextFile;
+import org.seasr.central.storage.EntryHandler;
+import org.seasr.central.storage.ErrorCatalog;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCRole;
+import org.seasr.central.storage.UploadResult;
+import org.seasr.central.storage.blob.BlobStore;
+import org.seasr.central.storage.blob.FileSystemBlobStore;
+import org.seasr.central.storage.fetch.ContextFetcher;
+import org.seasr.central.storage.search.SearchIndex;
 import org.seasr.central.storage.db.properties.DBProperties;
 import org.seasr.central.storage.exceptions.*;
+import org.seasr.central.util.IdVersionPair;
+import org.seasr.central.util.SCJDBCLoginModule;
 import org.seasr.central.util.SCLogFormatter;
+import org.seasr.central.util.Tools;
+import org.seasr.central.util.WeightedLRUCache;
 import org.seasr.central.ws.restlets.ComponentContext;
 import org.seasr.meandre.support.generic.crypto.Crypto;
 import org.seasr.meandre.support.generic.io.ModelUtils;
@@ -68,12 +85,14 @@ import java.beans.PropertyVetoException;
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.*;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -105,6 +124,59 @@ public class SQLLink implements BackendStoreLink {
     /** The DB connection pool manager */
     private final ComboPooledDataSource dataSource = new ComboPooledDataSource();
 
+    /** Records the events in sc_event */
+    private EventJournal eventJournal = null;
+    private ChangeFeed changeFeed = null;
+
+    /** Manages the monthly event tables */
+    private EventPartitions eventPartitions = null;
+
+    /** Backfills the version numbers of databases created before sc_component and sc_flow had a version column */
+    private VersionBackfill versionBackfill = null;
+
+    /** The full-text index of the components and flows (null if search is disabled) */
+    private SearchIndex searchIndex = null;
+
+    /** Keeps the search index up to date by following the change feed */
+    private Thread searchIndexer = null;
+
+    /** The error messages, loaded from the sc_error table */
+    private volatile ErrorCatalog errorCatalog = ErrorCatalog.getDefault();
+
+    /** The maximum number of components resolved by a single query */
+    private static final int RESOLVE_CHUNK_SIZE = 100;
+
+    /** The approximate in-memory size of a parsed model relative to the size of its descriptor */
+    private static final int MODEL_WEIGHT_FACTOR = 8;
+
+    /**
+     * Cache of the component and flow descriptors (a version never changes once written), keyed on
+     * "type/id/version", and of their pre-rendered formats, keyed on "type/id/version/format".
+     * All the entries count against the same byte budget. Null if disabled.
+     */
+    private WeightedLRUCache<String, Object> descriptorCache = null;
+
+    /** True to also cache the parsed descriptor models */
+    private boolean cacheDescriptorModels = false;
+
+    /** The store holding the component contexts, or null if the contexts are kept in the DB */
+    private BlobStore blobStore = null;
+
+    /** Removes the blobs left without a context by failed uploads, or null if disabled */
+    private ScheduledExecutorService blobSweeper = null;
+
+    /** The executor retrieving and hashing the context files of batch uploads */
+    private ExecutorService uploadExecutor = null;
+
+    /** The number of components stored per transaction in batch uploads (0 for the whole batch) */
+    private int uploadChunkSize = 0;
+
+    /** The fetcher retrieving the contexts specified as URLs */
+    private ContextFetcher contextFetcher = null;
+
+    /** The fetch size of the listing queries whose rows are passed to an EntryHandler (0 for the driver default) */
+    private int streamFetchSize = 0;
+
 
     static {
         logger = Logger.getLogger(SQLLink.class.getName());
@@ -138,6 +210,93 @@ public class SQLLink implements BackendStoreLink {
 
         this.properties = properties;
 
+        // Set up the descriptor caches
+        try {
+            long cacheMaxBytes = Long.parseLong(
+                    properties.getProperty(DBProperties.DESCRIPTOR_CACHE_MAX_BYTES, "0").trim());
+            cacheDescriptorModels = Boolean.parseBoolean(
+                    properties.getProperty(DBProperties.DESCRIPTOR_CACHE_MODELS, "false").trim());
+
+            if (cacheMaxBytes > 0)
+                descriptorCache = new WeightedLRUCache<String, Object>(cacheMaxBytes);
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid descriptor cache size", e);
+        }
+
+        // Set up the streaming of listings
+        try {
+            streamFetchSize = Integer.parseInt(properties.getProperty(DBProperties.STREAM_FETCH_SIZE, "0").trim());
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid stream fetch size", e);
+        }
+
+        // Set up the batch upload pipeline
+        try {
+            int uploadThreads = Integer.parseInt(properties.getProperty(DBProperties.UPLOAD_THREADS, "4").trim());
+            uploadChunkSize = Integer.parseInt(properties.getProperty(DBProperties.UPLOAD_CHUNK_SIZE, "0").trim());
+
+            if (uploadExecutor != null) uploadExecutor.shutdown();
+            uploadExecutor = Executors.newFixedThreadPool(Math.max(1, uploadThreads), new ThreadFactory() {
+                private int count = 0;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "sc-upload-" + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid upload configuration", e);
+        }
+
+        // Set up the remote context fetcher
+        try {
+            String fetchCacheDir = properties.getProperty(DBProperties.FETCH_CACHE_DIR, "").trim();
+
+            if (contextFetcher != null) contextFetcher.shutdown();
+            contextFetcher = new ContextFetcher(
+                    (fetchCacheDir.length() > 0) ? new File(fetchCacheDir) : null,
+                    Integer.parseInt(properties.getProperty(DBProperties.FETCH_THREADS, "8").trim()),
+                    Integer.parseInt(properties.getProperty(DBProperties.FETCH_MAX_PER_HOST, "2").trim()),
+                    Integer.parseInt(properties.getProperty(DBProperties.FETCH_CONNECT_TIMEOUT, "10").trim()) * 1000,
+                    Integer.parseInt(properties.getProperty(DBProperties.FETCH_READ_TIMEOUT, "30").trim()) * 1000,
+                    Long.parseLong(properties.getProperty(DBProperties.FETCH_TOTAL_TIMEOUT, "300").trim()) * 1000,
+                    Long.parseLong(properties.getProperty(DBProperties.FETCH_CACHE_TTL, "600").trim()) * 1000,
+                    Long.parseLong(properties.getProperty(DBProperties.FETCH_CACHE_RETENTION, "604800").trim()) * 1000);
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid context fetcher configuration", e);
+        }
+        catch (IOException e) {
+            throw new BackendStoreException("Cannot initialize the context fetcher", e);
+        }
+
+        // Set up the context blob store
+        String blobStoreDir = properties.getProperty(DBProperties.BLOB_STORE_DIR, "").trim();
+        if (blobSweeper != null) {
+            blobSweeper.shutdown();
+            blobSweeper = null;
+        }
+        if (blobStoreDir.length() > 0) {
+            try {
+                blobStore = new FileSystemBlobStore(new File(blobStoreDir));
+
+                long sweepAge = Long.parseLong(
+                        properties.getProperty(DBProperties.BLOB_STORE_SWEEP_AGE, "24").trim()) * 3600 * 1000;
+                if (sweepAge > 0)
+                    startBlobSweeper(sweepAge);
+            }
+            catch (NumberFormatException e) {
+                throw new BackendStoreException("Invalid blob store sweep age", e);
+            }
+            catch (IOException e) {
+                throw new BackendStoreException("Cannot initialize the context blob store", e);
+            }
+        }
+
         // Prepare the SQL driver
         String dbDriverClass = properties.getProperty(DBProperties.DRIVER, "").trim();
         String dbJDBCUrl = properties.getProperty(DBProperties.JDBC_URL, "").trim();
@@ -155,6 +314,9 @@ public class SQLLink implements BackendStoreLink {
             dataSource.setJdbcUrl(dbJDBCUrl);
             dataSource.setUser(dbUser);
             dataSource.setPassword(dbPassword);
+
+            // Let the login module authenticate through the same pool
+            SCJDBCLoginModule.setDataSource(dataSource);
         }
         catch (PropertyVetoException e) {
             throw new BackendStoreException(e);
@@ -208,6 +370,9 @@ public class SQLLink implements BackendStoreLink {
             for (String sql : parseSQLString(properties.getProperty(DBProperties.SC_SCHEMA)))
                 stmt.executeUpdate(sql);
 
+            // Upgrade the schema of existing databases
+            upgradeSchema(conn, stmt);
+
             // Create the "public" group
             stmt.executeUpdate(String.format(
                     "INSERT IGNORE INTO sc_group (group_uuid, name, created_at, profile) " +
@@ -245,7 +410,7 @@ public class SQLLink implements BackendStoreLink {
                 ps = null;
             }
 
-            conn.commit();
+            commitTransaction(conn);
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -255,21 +420,259 @@ public class SQLLink implements BackendStoreLink {
         finally {
             releaseConnection(conn, stmt);
         }
+
+        // Load the error catalog
+        reloadErrorMessages();
+
+        // Backfill the version numbers of the existing components and flows, in the background
+        try {
+            if (versionBackfill != null) versionBackfill.shutdown();
+            versionBackfill = new VersionBackfill(dataSource, properties,
+                    Integer.parseInt(properties.getProperty(DBProperties.VERSION_BACKFILL_BATCH_SIZE, "500").trim()),
+                    logger);
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid version backfill batch size", e);
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+
+        // Set up the event tables
+        try {
+            if (eventPartitions != null) eventPartitions.shutdown();
+            eventPartitions = new EventPartitions(dataSource, properties,
+                    new File(properties.getProperty(DBProperties.EVENT_ARCHIVE_DIR, "events").trim()),
+                    Integer.parseInt(properties.getProperty(DBProperties.EVENT_RETENTION, "0").trim()),
+                    logger);
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid event retention", e);
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+
+        // Set up the event journal and the change feed
+        try {
+            int feedSize = Integer.parseInt(properties.getProperty(DBProperties.EVENT_FEED_SIZE, "10000").trim());
+            if (changeFeed == null || changeFeed.getCapacity() != feedSize)
+                changeFeed = new ChangeFeed(feedSize);
+
+            EventJournal.Mode mode = EventJournal.Mode.valueOf(
+                    properties.getProperty(DBProperties.EVENT_JOURNAL_MODE, "outbox").trim().toUpperCase());
+
+            if (eventJournal != null) eventJournal.shutdown();
+            eventJournal = new EventJournal(mode, dataSource, properties, eventPartitions,
+                    Integer.parseInt(properties.getProperty(DBProperties.EVENT_JOURNAL_QUEUE_SIZE, "10000").trim()),
+                    Integer.parseInt(properties.getProperty(DBProperties.EVENT_JOURNAL_BATCH_SIZE, "500").trim()),
+                    Long.parseLong(properties.getProperty(DBProperties.EVENT_JOURNAL_FLUSH_INTERVAL, "1000").trim()),
+                    changeFeed, logger);
+        }
+        catch (IllegalArgumentException e) {
+            throw new BackendStoreException("Invalid event journal configuration", e);
+        }
+
+        // Set up the search index
+        try {
+            closeSearchIndex();
+
+            String searchIndexDir = properties.getProperty(DBProperties.SEARCH_INDEX_DIR, "").trim();
+            if (searchIndexDir.length() > 0) {
+                searchIndex = new SearchIndex(new File(searchIndexDir),
+                        Long.parseLong(properties.getProperty(DBProperties.SEARCH_REFRESH_INTERVAL, "1000").trim()),
+                        Integer.parseInt(properties.getProperty(DBProperties.SEARCH_MAX_RESULTS, "1000").trim()));
+
+                if (searchIndex.size() == 0)
+                    logger.warning("The search index is empty; build it with SCSearchIndexer");
+
+                startSearchIndexer(searchIndex, changeFeed);
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new BackendStoreException("Invalid search configuration", e);
+        }
+        catch (IOException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException("Cannot open the search index", e);
+        }
+    }
+
+    @Override
+    public JSONObject getStatistics() throws BackendStoreException {
+        JSONObject joStats = new JSONObject();
+
+        try {
+            if (descriptorCache != null) {
+                JSONObject joCache = new JSONObject();
+                joCache.put("size", descriptorCache.size());
+                joCache.put("bytes", descriptorCache.getWeight());
+                joCache.put("max_bytes", descriptorCache.getMaxWeight());
+                joCache.put("hits", descriptorCache.getHitCount());
+                joCache.put("misses", descriptorCache.getMissCount());
+                joStats.put("descriptor_cache", joCache);
+            }
+
+            // Queue depth, events written and dropped, flush duration and lag
+            if (eventJournal != null)
+                joStats.put("event_journal", eventJournal.getStatistics());
+        }
+        catch (JSONException e) {
+            throw new BackendStoreException(e);
+        }
+
+        return joStats;
+    }
+
+    @Override
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    @Override
+    public JSONArray search(String query, SearchIndex.Type type, UUID remoteUserId, boolean unrestricted,
+                            long offset, long count)
+            throws InvalidQueryException, UserNotFoundException, BackendStoreException {
+
+        SearchIndex index = searchIndex;
+        if (index == null)
+            throw new BackendStoreException("Search is not enabled");
+
+        // Same visibility as the listings: owned by the remote user or shared with one of its groups
+        Collection<UUID> groupIds = unrestricted ? null : getUserGroupIds(remoteUserId);
+
+        try {
+            return index.search(query, type, remoteUserId, groupIds, offset, count);
+        }
+        catch (IOException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+    }
+
+    /**
+     * Rebuilds the search index from the components and flows in the database
+     *
+     * @return The number of versions indexed
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    public synchronized int rebuildSearchIndex() throws BackendStoreException {
+        SearchIndex index = searchIndex;
+        if (index == null)
+            throw new BackendStoreException("Search is not enabled");
+
+        Map<IdVersionPair, UUID> components = listVersionOwners(DBProperties.Q_COMP_LIST_INDEXABLE, VersionBackfill.Table.COMPONENT);
+        Map<IdVersionPair, UUID> flows = listVersionOwners(DBProperties.Q_FLOW_LIST_INDEXABLE, VersionBackfill.Table.FLOW);
+        int count = 0;
+
+        try {
+            index.clear();
+
+            for (Map.Entry<IdVersionPair, UUID> entry : components.entrySet())
+                if (indexComponent(index, entry.getKey().getId(), entry.getKey().getVersion(), entry.getValue()))
+                    count++;
+
+            for (Map.Entry<IdVersionPair, UUID> entry : flows.entrySet())
+                if (indexFlow(index, entry.getKey().getId(), entry.getKey().getVersion(), entry.getValue()))
+                    count++;
+
+            index.flush();
+            index.optimize();
+        }
+        catch (IOException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(String.format("Search index rebuild failed after %,d versions", count), e);
+        }
+
+        return count;
+    }
+
+    @Override
+    public JSONArray listEvents(Date from, Date to, Set<SCEvent> events, long count) throws BackendStoreException {
+        CollectingEntryHandler handler = new CollectingEntryHandler();
+        listEvents(from, to, events, count, handler);
+
+        return handler.getEntries();
+    }
+
+    @Override
+    public void listEvents(Date from, Date to, Set<SCEvent> events, long count, EntryHandler handler)
+            throws BackendStoreException {
+        if (events != null && events.isEmpty()) return;
+
+        List<SCEvent> codes = (events != null) ? new ArrayList<SCEvent>(events) : null;
+        String sqlQuery = properties.getProperty(
+                (codes == null) ? DBProperties.Q_EVENT_LIST : DBProperties.Q_EVENT_LIST_CODES).trim();
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+
+            // Only the tables of the months in the range are read
+            long remaining = count;
+            for (String table : eventPartitions.getTables(from.getTime(), to.getTime())) {
+                if (remaining <= 0) break;
+
+                try {
+                    ps = prepareStreamingStatement(conn, String.format(sqlQuery, table,
+                            (codes != null) ? getPlaceholders(codes.size()) : ""));
+
+                    int param = 1;
+                    ps.setTimestamp(param++, new Timestamp(from.getTime()));
+                    ps.setTimestamp(param++, new Timestamp(to.getTime()));
+                    if (codes != null)
+                        for (SCEvent code : codes)
+                            ps.setInt(param++, code.getEventCode());
+                    ps.setLong(param, remaining);
+                    ResultSet rs = ps.executeQuery();
+
+                    while (rs.next()) {
+                        handler.handleEntry(EventPartitions.readEvent(rs));
+                        remaining--;
+                    }
+                }
+                finally {
+                    closeStatement(ps);
+                    ps = null;
+                }
+            }
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    @Override
+    public String getErrorMessage(SCError error) {
+        return errorCatalog.getErrorMessage(error);
     }
 
     @Override
-    public String getErrorMessage(SCError error) throws BackendStoreException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_ERROR_MSG).trim();
+    public int reloadErrorMessages() throws BackendStoreException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_ERROR_LIST).trim();
         Connection conn = null;
         PreparedStatement ps = null;
 
         try {
             conn = dataSource.getConnection();
             ps = conn.prepareStatement(sqlQuery);
-            ps.setInt(1, error.getErrorCode());
             ResultSet rs = ps.executeQuery();
 
-            return rs.next() ? rs.getString(1) : null;
+            Map<Integer, String> messages = new HashMap<Integer, String>();
+            while (rs.next())
+                messages.put(rs.getInt(1), rs.getString(2));
+
+            errorCatalog = new ErrorCatalog(messages);
+            logger.fine(String.format("Loaded %,d error messages", errorCatalog.size()));
+
+            return errorCatalog.size();
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -365,7 +768,10 @@ public class SQLLink implements BackendStoreLink {
             // Record this event
             addEvent(SCEvent.USER_CREATED, uid, null, null, null, null, conn);
 
-            conn.commit();
+            commitTransaction(conn);
+
+            // Forget that the user name was unknown
+            SCJDBCLoginModule.invalidateUser(userName);
 
             return userId;
         }
@@ -400,7 +806,7 @@ public class SQLLink implements BackendStoreLink {
             // Record the event
             addEvent(SCEvent.USER_DELETED, uid, null, null, null, null, conn);
 
-            conn.commit();
+            commitTransaction(conn);
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -409,6 +815,7 @@ public class SQLLink implements BackendStoreLink {
         }
         finally {
             releaseConnection(conn, ps);
+            SCJDBCLoginModule.invalidateUser(uid);
         }
     }
 
@@ -437,6 +844,7 @@ public class SQLLink implements BackendStoreLink {
         }
         finally {
             releaseConnection(conn, ps);
+            SCJDBCLoginModule.invalidateUser(uid);
         }
     }
 
@@ -462,7 +870,7 @@ public class SQLLink implements BackendStoreLink {
             // Record the event
             addEvent(SCEvent.USER_PROFILE_UPDATED, uid, null, null, null, profile, conn);
 
-            conn.commit();
+            commitTransaction(conn);
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -634,16 +1042,55 @@ public class SQLLink implements BackendStoreLink {
 
     @Override
     public JSONArray listUsers(long offset, long count) throws BackendStoreException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_USER_LIST).trim();
-        JSONArray jaUsers = new JSONArray();
+        return listUsers(null, offset, count);
+    }
+
+    @Override
+    public JSONArray listUsers(PageCursor after, long count) throws BackendStoreException {
+        return listUsers(after, 0, count);
+    }
+
+    @Override
+    public void listUsers(PageCursor after, long count, EntryHandler handler) throws BackendStoreException {
+        listUsers(after, 0, count, handler);
+    }
+
+    /**
+     * Lists the users, either from an offset or after a cursor
+     *
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @return The entries, in key order when a cursor is given
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listUsers(PageCursor after, long offset, long count) throws BackendStoreException {
+        CollectingEntryHandler handler = new CollectingEntryHandler();
+        listUsers(after, offset, count, handler);
+
+        return handler.getEntries();
+    }
+
+    /**
+     * Passes to a handler the users, as they are read, either from an offset or after a cursor
+     *
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param handler The handler receiving the entries, in key order when a cursor is given
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected void listUsers(PageCursor after, long offset, long count, EntryHandler handler)
+            throws BackendStoreException {
+        String sqlQuery = properties.getProperty(
+                (after == null) ? DBProperties.Q_USER_LIST : DBProperties.Q_USER_LIST_AFTER).trim();
         Connection conn = null;
         PreparedStatement ps = null;
 
         try {
             conn = dataSource.getConnection();
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setLong(1, offset);
-            ps.setLong(2, count);
+            ps = prepareStreamingStatement(conn, sqlQuery);
+            bindPage(ps, 1, after, offset, count, false);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -651,10 +1098,8 @@ public class SQLLink implements BackendStoreLink {
                 joUser.put("uuid", UUIDUtils.fromBigInteger(rs.getBigDecimal("user_uuid").toBigInteger()).toString());
                 joUser.put("screen_name", rs.getString("screen_name"));
                 joUser.put("profile", new JSONObject(rs.getString("profile")));
-                jaUsers.put(joUser);
+                handler.handleEntry(joUser);
             }
-
-            return jaUsers;
         }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
@@ -698,7 +1143,7 @@ public class SQLLink implements BackendStoreLink {
             // Record this event
             addEvent(SCEvent.GROUP_CREATED, uid, gid, null, null, null, conn);
 
-            conn.commit();
+            commitTransaction(conn);
 
             return groupId;
         }
@@ -714,16 +1159,55 @@ public class SQLLink implements BackendStoreLink {
 
     @Override
     public JSONArray listGroups(long offset, long count) throws BackendStoreException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_GROUP_LIST).trim();
-        JSONArray jaGroups = new JSONArray();
+        return listGroups(null, offset, count);
+    }
+
+    @Override
+    public JSONArray listGroups(PageCursor after, long count) throws BackendStoreException {
+        return listGroups(after, 0, count);
+    }
+
+    @Override
+    public void listGroups(PageCursor after, long count, EntryHandler handler) throws BackendStoreException {
+        listGroups(after, 0, count, handler);
+    }
+
+    /**
+     * Lists the groups, either from an offset or after a cursor
+     *
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @return The entries, in key order when a cursor is given
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listGroups(PageCursor after, long offset, long count) throws BackendStoreException {
+        CollectingEntryHandler handler = new CollectingEntryHandler();
+        listGroups(after, offset, count, handler);
+
+        return handler.getEntries();
+    }
+
+    /**
+     * Passes to a handler the groups, as they are read, either from an offset or after a cursor
+     *
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param handler The handler receiving the entries, in key order when a cursor is given
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected void listGroups(PageCursor after, long offset, long count, EntryHandler handler)
+            throws BackendStoreException {
+        String sqlQuery = properties.getProperty(
+                (after == null) ? DBProperties.Q_GROUP_LIST : DBProperties.Q_GROUP_LIST_AFTER).trim();
         Connection conn = null;
         PreparedStatement ps = null;
 
         try {
             conn = dataSource.getConnection();
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setLong(1, offset);
-            ps.setLong(2, count);
+            ps = prepareStreamingStatement(conn, sqlQuery);
+            bindPage(ps, 1, after, offset, count, false);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -731,10 +1215,8 @@ public class SQLLink implements BackendStoreLink {
                 joGroup.put("uuid", UUIDUtils.fromBigInteger(rs.getBigDecimal("group_uuid").toBigInteger()).toString());
                 joGroup.put("name", rs.getString("name"));
                 joGroup.put("profile", new JSONObject(rs.getString("profile")));
-                jaGroups.put(joGroup);
+                handler.handleEntry(joGroup);
             }
-
-            return jaGroups;
         }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
@@ -920,8 +1402,31 @@ public class SQLLink implements BackendStoreLink {
     @Override
     public JSONArray listPendingGroupMembers(UUID groupId, long offset, long count)
             throws GroupNotFoundException, BackendStoreException {
+        return listPendingGroupMembers(groupId, null, offset, count);
+    }
+
+    @Override
+    public JSONArray listPendingGroupMembers(UUID groupId, PageCursor after, long count)
+            throws GroupNotFoundException, BackendStoreException {
+        return listPendingGroupMembers(groupId, after, 0, count);
+    }
+
+    /**
+     * Lists the users waiting to join a group, either from an offset or after a cursor
+     *
+     * @param groupId The group id
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @return The entries, in key order when a cursor is given
+     * @throws GroupNotFoundException Thrown if the group does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listPendingGroupMembers(UUID groupId, PageCursor after, long offset, long count)
+            throws GroupNotFoundException, BackendStoreException {
 
-        String sqlQuery = properties.getProperty(DBProperties.Q_GROUP_PENDING_LIST).trim();
+        String sqlQuery = properties.getProperty(
+                (after == null) ? DBProperties.Q_GROUP_PENDING_LIST : DBProperties.Q_GROUP_PENDING_LIST_AFTER).trim();
         JSONArray jaUsers = new JSONArray();
         Connection conn = null;
         PreparedStatement ps = null;
@@ -935,8 +1440,7 @@ public class SQLLink implements BackendStoreLink {
 
             ps = conn.prepareStatement(sqlQuery);
             ps.setBigDecimal(1, new BigDecimal(gid));
-            ps.setLong(2, offset);
-            ps.setLong(3, count);
+            bindPage(ps, 2, after, offset, count, false);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -990,7 +1494,7 @@ public class SQLLink implements BackendStoreLink {
             // Record the event
             addEvent(SCEvent.USER_JOINED_GROUP, uid, gid, null, null, null, conn);
 
-            conn.commit();
+            commitTransaction(conn);
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -1044,37 +1548,57 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public JSONArray listGroupMembers(UUID groupId, long offset, long count)
-            throws GroupNotFoundException, BackendStoreException {
+    public Set<UUID> getGroupMemberships(UUID userId, Collection<UUID> groupIds)
+            throws UserNotFoundException, BackendStoreException {
+        Set<UUID> memberships = new HashSet<UUID>();
 
-        String sqlQuery = properties.getProperty(DBProperties.Q_GROUP_MEMBERS_LIST).trim();
-        JSONArray jaUsers = new JSONArray();
+        Map<BigInteger, UUID> candidates = new LinkedHashMap<BigInteger, UUID>();
+        for (UUID groupId : groupIds) {
+            // Everyone is in the PUBLIC group
+            if (PUBLIC_GROUP.equals(groupId))
+                memberships.add(groupId);
+            else
+                if (groupId != null)
+                    candidates.put(UUIDUtils.toBigInteger(groupId), groupId);
+        }
+
+        if (userId == null || candidates.isEmpty())
+            return memberships;
+
+        String sqlQuery = properties.getProperty(DBProperties.Q_USER_GROUP_FILTER).trim();
         Connection conn = null;
         PreparedStatement ps = null;
-        BigInteger gid = UUIDUtils.toBigInteger(groupId);
+        BigInteger uid = UUIDUtils.toBigInteger(userId);
+        List<BigInteger> ids = new ArrayList<BigInteger>(candidates.keySet());
 
         try {
             conn = dataSource.getConnection();
 
-            if (!Boolean.TRUE.equals(isGroupActive(gid, conn)))
-                throw new GroupNotFoundException(groupId);
+            if (!Boolean.TRUE.equals(isUserActive(uid, conn)))
+                throw new UserNotFoundException(userId);
 
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(gid));
-            ps.setLong(2, offset);
-            ps.setLong(3, count);
-            ResultSet rs = ps.executeQuery();
+            for (int start = 0; start < ids.size(); start += RESOLVE_CHUNK_SIZE) {
+                List<BigInteger> chunk = ids.subList(start, Math.min(start + RESOLVE_CHUNK_SIZE, ids.size()));
 
-            while (rs.next()) {
-                JSONObject joUser = new JSONObject();
-                joUser.put("uuid", UUIDUtils.fromBigInteger(rs.getBigDecimal("user_uuid").toBigInteger()).toString());
-                joUser.put("role", rs.getString("role_name"));
-                jaUsers.put(joUser);
+                try {
+                    ps = conn.prepareStatement(String.format(sqlQuery, getPlaceholders(chunk.size())));
+                    ps.setBigDecimal(1, new BigDecimal(uid));
+                    for (int i = 0; i < chunk.size(); i++)
+                        ps.setBigDecimal(i + 2, new BigDecimal(chunk.get(i)));
+                    ResultSet rs = ps.executeQuery();
+
+                    while (rs.next())
+                        memberships.add(candidates.get(rs.getBigDecimal(1).toBigInteger()));
+                }
+                finally {
+                    closeStatement(ps);
+                    ps = null;
+                }
             }
 
-            return jaUsers;
+            return memberships;
         }
-        catch (Exception e) {
+        catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
             throw new BackendStoreException(e);
         }
@@ -1084,14 +1608,99 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public JSONArray listUserGroups(UUID userId, long offset, long count)
-            throws UserNotFoundException, BackendStoreException {
+    public JSONArray listGroupMembers(UUID groupId, long offset, long count)
+            throws GroupNotFoundException, BackendStoreException {
+        return listGroupMembers(groupId, null, offset, count);
+    }
 
-        String sqlQuery = properties.getProperty(DBProperties.Q_USER_GROUP_LIST).trim();
-        JSONArray jaGroups = new JSONArray();
-        Connection conn = null;
-        PreparedStatement ps = null;
-        BigInteger uid = UUIDUtils.toBigInteger(userId);
+    @Override
+    public JSONArray listGroupMembers(UUID groupId, PageCursor after, long count)
+            throws GroupNotFoundException, BackendStoreException {
+        return listGroupMembers(groupId, after, 0, count);
+    }
+
+    /**
+     * Lists the members of a group, either from an offset or after a cursor
+     *
+     * @param groupId The group id
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @return The entries, in key order when a cursor is given
+     * @throws GroupNotFoundException Thrown if the group does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listGroupMembers(UUID groupId, PageCursor after, long offset, long count)
+            throws GroupNotFoundException, BackendStoreException {
+
+        String sqlQuery = properties.getProperty(
+                (after == null) ? DBProperties.Q_GROUP_MEMBERS_LIST : DBProperties.Q_GROUP_MEMBERS_LIST_AFTER).trim();
+        JSONArray jaUsers = new JSONArray();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        BigInteger gid = UUIDUtils.toBigInteger(groupId);
+
+        try {
+            conn = dataSource.getConnection();
+
+            if (!Boolean.TRUE.equals(isGroupActive(gid, conn)))
+                throw new GroupNotFoundException(groupId);
+
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(gid));
+            bindPage(ps, 2, after, offset, count, false);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                JSONObject joUser = new JSONObject();
+                joUser.put("uuid", UUIDUtils.fromBigInteger(rs.getBigDecimal("user_uuid").toBigInteger()).toString());
+                joUser.put("role", rs.getString("role_name"));
+                jaUsers.put(joUser);
+            }
+
+            return jaUsers;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    @Override
+    public JSONArray listUserGroups(UUID userId, long offset, long count)
+            throws UserNotFoundException, BackendStoreException {
+        return listUserGroups(userId, null, offset, count);
+    }
+
+    @Override
+    public JSONArray listUserGroups(UUID userId, PageCursor after, long count)
+            throws UserNotFoundException, BackendStoreException {
+        return listUserGroups(userId, after, 0, count);
+    }
+
+    /**
+     * Lists the groups a user belongs to, either from an offset or after a cursor
+     *
+     * @param userId The user id
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @return The entries, in key order when a cursor is given
+     * @throws UserNotFoundException Thrown if a user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listUserGroups(UUID userId, PageCursor after, long offset, long count)
+            throws UserNotFoundException, BackendStoreException {
+
+        String sqlQuery = properties.getProperty(
+                (after == null) ? DBProperties.Q_USER_GROUP_LIST : DBProperties.Q_USER_GROUP_LIST_AFTER).trim();
+        JSONArray jaGroups = new JSONArray();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        BigInteger uid = UUIDUtils.toBigInteger(userId);
 
         try {
             conn = dataSource.getConnection();
@@ -1101,8 +1710,7 @@ public class SQLLink implements BackendStoreLink {
 
             ps = conn.prepareStatement(sqlQuery);
             ps.setBigDecimal(1, new BigDecimal(uid));
-            ps.setLong(2, offset);
-            ps.setLong(3, count);
+            bindPage(ps, 2, after, offset, count, false);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -1114,6 +1722,9 @@ public class SQLLink implements BackendStoreLink {
 
             return jaGroups;
         }
+        catch (UserNotFoundException e) {
+            throw e;
+        }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
             throw new BackendStoreException(e);
@@ -1124,10 +1735,40 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId, long offset, long count)
+    public JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId, long offset,
+                                               long count)
+            throws ComponentNotFoundException, UserNotFoundException, BackendStoreException {
+        return listComponentGroupsAsUser(componentId, version, remoteUserId, null, offset, count);
+    }
+
+    @Override
+    public JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId,
+                                               PageCursor after, long count)
+            throws ComponentNotFoundException, UserNotFoundException, BackendStoreException {
+        return listComponentGroupsAsUser(componentId, version, remoteUserId, after, 0, count);
+    }
+
+    /**
+     * Lists the groups a component version is shared with that the remote user can see, either from an
+     * offset or after a cursor
+     *
+     * @param componentId The component id
+     * @param version The version
+     * @param remoteUserId The id of the remote user, or null for unauthenticated requests
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @return The entries, in key order when a cursor is given
+     * @throws ComponentNotFoundException Thrown if the component version does not exist
+     * @throws UserNotFoundException Thrown if a user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listComponentGroupsAsUser(UUID componentId, int version, UUID remoteUserId,
+                                                  PageCursor after, long offset, long count)
             throws ComponentNotFoundException, UserNotFoundException, BackendStoreException {
 
-        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GROUP_LIST).trim();
+        String sqlQuery = properties.getProperty(
+                (after == null) ? DBProperties.Q_COMP_GROUP_LIST : DBProperties.Q_COMP_GROUP_LIST_AFTER).trim();
         Connection conn = null;
         PreparedStatement ps = null;
         JSONArray jaGroups = new JSONArray();
@@ -1152,8 +1793,7 @@ public class SQLLink implements BackendStoreLink {
                 ps.setNull(3, Types.DECIMAL);
             else
                 ps.setBigDecimal(3, new BigDecimal(ruid));
-            ps.setLong(4, offset);
-            ps.setLong(5, count);
+            bindPage(ps, 4, after, offset, count, false);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -1164,6 +1804,12 @@ public class SQLLink implements BackendStoreLink {
 
             return jaGroups;
         }
+        catch (ComponentNotFoundException e) {
+            throw e;
+        }
+        catch (UserNotFoundException e) {
+            throw e;
+        }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
             throw new BackendStoreException(e);
@@ -1174,10 +1820,40 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, long offset, long count)
+    public JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, long offset,
+                                          long count)
+            throws FlowNotFoundException, UserNotFoundException, BackendStoreException {
+        return listFlowGroupsAsUser(flowId, version, remoteUserId, null, offset, count);
+    }
+
+    @Override
+    public JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, PageCursor after,
+                                          long count)
+            throws FlowNotFoundException, UserNotFoundException, BackendStoreException {
+        return listFlowGroupsAsUser(flowId, version, remoteUserId, after, 0, count);
+    }
+
+    /**
+     * Lists the groups a flow version is shared with that the remote user can see, either from an offset
+     * or after a cursor
+     *
+     * @param flowId The flow id
+     * @param version The version
+     * @param remoteUserId The id of the remote user, or null for unauthenticated requests
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @return The entries, in key order when a cursor is given
+     * @throws FlowNotFoundException Thrown if the flow version does not exist
+     * @throws UserNotFoundException Thrown if a user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listFlowGroupsAsUser(UUID flowId, int version, UUID remoteUserId, PageCursor after,
+                                             long offset, long count)
             throws FlowNotFoundException, UserNotFoundException, BackendStoreException {
 
-        String sqlQuery = properties.getProperty(DBProperties.Q_FLOW_GROUP_LIST).trim();
+        String sqlQuery = properties.getProperty(
+                (after == null) ? DBProperties.Q_FLOW_GROUP_LIST : DBProperties.Q_FLOW_GROUP_LIST_AFTER).trim();
         Connection conn = null;
         PreparedStatement ps = null;
         JSONArray jaGroups = new JSONArray();
@@ -1202,8 +1878,7 @@ public class SQLLink implements BackendStoreLink {
                 ps.setNull(3, Types.DECIMAL);
             else
                 ps.setBigDecimal(3, new BigDecimal(ruid));
-            ps.setLong(4, offset);
-            ps.setLong(5, count);
+            bindPage(ps, 4, after, offset, count, false);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -1214,6 +1889,12 @@ public class SQLLink implements BackendStoreLink {
 
             return jaGroups;
         }
+        catch (FlowNotFoundException e) {
+            throw e;
+        }
+        catch (UserNotFoundException e) {
+            throw e;
+        }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
             throw new BackendStoreException(e);
@@ -1227,115 +1908,160 @@ public class SQLLink implements BackendStoreLink {
     public JSONObject addComponent(UUID userId, ExecutableComponentDescription component, Map<URL, String> contexts)
             throws UserNotFoundException, BackendStoreException {
 
-        JSONObject joResult = new JSONObject();
+        JSONObject joResult;
         BigInteger uid = UUIDUtils.toBigInteger(userId);
+        List<Future<ContextFile>> fetches = new ArrayList<Future<ContextFile>>();
         Connection conn = null;
 
         try {
+            // Retrieve the contexts before starting the transaction
+            SortedMap<BigInteger, ContextFile> contextHashes = retrieveContextsAndComputeHashes(contexts, fetches);
+
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
 
             if (!Boolean.TRUE.equals(isUserActive(uid, conn)))
                 throw new UserNotFoundException(userId);
 
-            SortedMap<BigInteger, ContextFile> contextHashes = retrieveContextsAndComputeHashes(contexts);
-            BigInteger coreHash = new BigInteger(getComponentCoreHash(component, (SortedSet)contextHashes.keySet()));
+            joResult = addComponent(uid, component, contextHashes, conn);
 
-            String compRights = component.getRights();
-            BigInteger rightsHash = new BigInteger(getRightsHash(compRights));
+            commitTransaction(conn);
+        }
+        catch (BackendStoreException e) {
+            logger.log(Level.SEVERE, null, e);
+            rollbackTransaction(conn);
+            throw e;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, null, e);
+            rollbackTransaction(conn);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn);
+            ContextFetcher.releaseAll(fetches);
+        }
 
-            BigInteger compId = null;
-            Integer version = null;
+        return joResult;
+    }
 
-            // Check whether the rights text already exists
-            if (getRightsTextForHash(rightsHash, conn) == null)
-                // Insert the license text into the DB
-                addRights(compRights, rightsHash, conn);
-            else
-                compId = getComponentId(component, conn);
+    @Override
+    public Map<ExecutableComponentDescription, UploadResult> addComponents(UUID userId,
+            Map<ExecutableComponentDescription, List<ContextFile>> components)
+            throws UserNotFoundException, BackendStoreException {
 
-            if (compId == null) {
-                // Generate a new id for the component
-                compId = UUIDUtils.toBigInteger(UUID.randomUUID());
-                version = 1;
-            } else {
-                Component lastAddComp = getLastAddedComponent(compId, conn);
-                if (lastAddComp == null) // sanity check - should not happen
-                    throw new BackendStoreException("Problem retrieving last added component for existing comp id: "
-                            + UUIDUtils.fromBigInteger(compId));
-
-                // Check whether this component is identical to last added
-                if (coreHash.equals(lastAddComp.getComponentCoreHash())
-                        && component.getName().equals(lastAddComp.getName())
-                        && component.getCreator().equals(lastAddComp.getCreator())
-                        && component.getDescription().equals(lastAddComp.getDescription())
-                        && rightsHash.equals(lastAddComp.getRightsHash())
-                        && component.getExecutableComponent().getURI().equals(lastAddComp.getUri())
-                        && component.getTags().getTags().containsAll(lastAddComp.getTags())
-                        && lastAddComp.getTags().containsAll(component.getTags().getTags())) {
-
-                    // Component identical to last inserted version, get its version and return info to user
-                    int qCompVersion = getComponentVersionCount(compId, conn);
-
-                    joResult.put("uuid", UUIDUtils.fromBigInteger(compId).toString());
-                    joResult.put("version", qCompVersion);
+        Map<ExecutableComponentDescription, UploadResult> results =
+                new LinkedHashMap<ExecutableComponentDescription, UploadResult>();
+        BigInteger uid = UUIDUtils.toBigInteger(userId);
+        final List<Future<ContextFile>> fetches = Collections.synchronizedList(new ArrayList<Future<ContextFile>>());
 
-                    // Record the event
-                    addEvent(SCEvent.COMPONENT_UPLOADED, uid, null, compId, null, joResult, conn);
+        // Retrieve and hash the context files of all the components in parallel
+        Map<ExecutableComponentDescription, Future<SortedMap<BigInteger, ContextFile>>> contextHashes =
+                new LinkedHashMap<ExecutableComponentDescription, Future<SortedMap<BigInteger, ContextFile>>>();
+
+        for (final Map.Entry<ExecutableComponentDescription, List<ContextFile>> entry : components.entrySet()) {
+            results.put(entry.getKey(), null);
+            contextHashes.put(entry.getKey(), uploadExecutor.submit(new Callable<SortedMap<BigInteger, ContextFile>>() {
+                public SortedMap<BigInteger, ContextFile> call() throws Exception {
+                    return retrieveContextsAndComputeHashes(entry.getValue(), fetches);
+                }
+            }));
+        }
 
-                    conn.commit();
+        // Wait for all the contexts to be available before starting the transaction
+        Map<ExecutableComponentDescription, SortedMap<BigInteger, ContextFile>> retrieved =
+                new LinkedHashMap<ExecutableComponentDescription, SortedMap<BigInteger, ContextFile>>();
 
-                    logger.fine(String.format("Ignoring repeated upload of component %s, version %d",
-                            joResult.getString("uuid"), qCompVersion));
+        for (Map.Entry<ExecutableComponentDescription, Future<SortedMap<BigInteger, ContextFile>>> entry :
+                contextHashes.entrySet()) {
+            ExecutableComponentDescription component = entry.getKey();
 
-                    return joResult;
+            try {
+                retrieved.put(component, entry.getValue().get());
+            }
+            catch (ExecutionException e) {
+                logger.log(Level.WARNING, "Cannot retrieve the contexts of component " +
+                        component.getExecutableComponent().getURI(), e.getCause());
+                results.put(component, new UploadResult(new BackendStoreException(e.getCause())));
+            }
+            catch (InterruptedException e) {
+                for (Future<SortedMap<BigInteger, ContextFile>> future : contextHashes.values())
+                    future.cancel(true);
+                synchronized (fetches) {
+                    ContextFetcher.releaseAll(fetches);
                 }
+                throw new BackendStoreException(e);
             }
+        }
 
-            // Insert this component version into the DB
-            long timestamp = addComponent(compId, coreHash, rightsHash, contextHashes, component, conn);
+        // Store the components in chunks, each chunk in a single transaction
+        Map<ExecutableComponentDescription, JSONObject> uncommitted =
+                new LinkedHashMap<ExecutableComponentDescription, JSONObject>();
+        Connection conn = null;
 
-            // Insert the user -> component mapping
-            String sqlQuery = properties.getProperty(DBProperties.Q_USER_COMPONENT_ADD).trim();
-            PreparedStatement ps = null;
-            try {
-                ps = conn.prepareStatement(sqlQuery);
-                ps.setBigDecimal(1, new BigDecimal(uid));
-                ps.setBigDecimal(2, new BigDecimal(compId));
-                ps.setTimestamp(3, new Timestamp(timestamp));
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
 
-                ps.executeUpdate();
-            }
-            finally {
-                closeStatement(ps);
-            }
+            if (!Boolean.TRUE.equals(isUserActive(uid, conn)))
+                throw new UserNotFoundException(userId);
 
-            if (version == null)
-                version = getComponentVersionCount(compId, conn);
+            int remaining = retrieved.size();
 
-            joResult.put("uuid", UUIDUtils.fromBigInteger(compId).toString());
-            joResult.put("version", version);
+            for (Map.Entry<ExecutableComponentDescription, SortedMap<BigInteger, ContextFile>> entry :
+                    retrieved.entrySet()) {
+                ExecutableComponentDescription component = entry.getKey();
+                remaining--;
 
-            // Record the event
-            addEvent(SCEvent.COMPONENT_UPLOADED, uid, null, compId, null, joResult, conn);
+                // A failing component only rolls back its own changes
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    uncommitted.put(component, addComponent(uid, component, entry.getValue(), conn));
+                }
+                catch (Exception e) {
+                    // The transaction itself is gone, so the whole chunk fails
+                    if (e instanceof SQLException && isTransactionLost((SQLException) e))
+                        throw (SQLException) e;
+
+                    // Statement-level errors (duplicate keys, data too long, ...) only fail this component
+                    conn.rollback(savepoint);
+
+                    logger.log(Level.WARNING, "Cannot add component " + component.getExecutableComponent().getURI(), e);
+                    results.put(component, new UploadResult((e instanceof BackendStoreException) ?
+                            (BackendStoreException) e : new BackendStoreException(e)));
+                }
 
-            conn.commit();
+                if (remaining == 0 || (uploadChunkSize > 0 && uncommitted.size() >= uploadChunkSize)) {
+                    commitTransaction(conn);
+
+                    for (Map.Entry<ExecutableComponentDescription, JSONObject> stored : uncommitted.entrySet())
+                        results.put(stored.getKey(), new UploadResult(stored.getValue()));
+                    uncommitted.clear();
+                }
+            }
         }
-        catch (BackendStoreException e) {
-            logger.log(Level.SEVERE, null, e);
+        catch (UserNotFoundException e) {
             rollbackTransaction(conn);
             throw e;
         }
-        catch (Exception e) {
+        catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
             rollbackTransaction(conn);
-            throw new BackendStoreException(e);
+
+            // Fail the components of the current chunk and the ones not yet stored
+            BackendStoreException error = new BackendStoreException(e);
+            for (Map.Entry<ExecutableComponentDescription, UploadResult> result : results.entrySet())
+                if (result.getValue() == null)
+                    result.setValue(new UploadResult(error));
         }
         finally {
             releaseConnection(conn);
+            synchronized (fetches) {
+                ContextFetcher.releaseAll(fetches);
+            }
         }
 
-        return joResult;
+        return results;
     }
 
     @Override
@@ -1343,8 +2069,13 @@ public class SQLLink implements BackendStoreLink {
         Connection conn = null;
 
         BigInteger compId = UUIDUtils.toBigInteger(componentId);
+        String key = String.format("component/%s/%d", componentId, version);
 
         try {
+            CachedDescriptor descriptor = getCachedDescriptor(key);
+            if (descriptor != null)
+                return descriptor.getModel();
+
             conn = dataSource.getConnection();
 
             Long versionId = getComponentVersionId(compId, version, conn);
@@ -1353,7 +2084,9 @@ public class SQLLink implements BackendStoreLink {
             InputStream is = getComponentDescriptor(compId, versionId, conn);
             if (is == null) throw new ComponentNotFoundException(componentId, version);
 
-            return ModelUtils.getModel(is, null);
+            descriptor = cacheDescriptor(key, IOUtils.toByteArray(is));
+
+            return descriptor.getModel();
         }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
@@ -1365,8 +2098,13 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public ComponentContext getComponentContext(UUID componentId, int version, String contextId)
-            throws ComponentNotFoundException, ComponentContextNotFoundException, BackendStoreException {
+    public byte[] getComponentRendering(UUID componentId, int version, String format)
+            throws ComponentNotFoundException, BackendStoreException {
+
+        String key = String.format("component/%s/%d/%s", componentId, version, format);
+        byte[] rendering = getCachedRendering(key);
+        if (rendering != null)
+            return rendering;
 
         Connection conn = null;
         BigInteger compId = UUIDUtils.toBigInteger(componentId);
@@ -1377,13 +2115,11 @@ public class SQLLink implements BackendStoreLink {
             Long versionId = getComponentVersionId(compId, version, conn);
             if (versionId == null) throw new ComponentNotFoundException(componentId, version);
 
-            BigInteger ctxHash = new BigInteger(Crypto.fromHexString(contextId));
-            ComponentContext context = getComponentContext(compId, versionId, ctxHash, conn);
+            rendering = getRendering(DBProperties.Q_COMP_GET_RENDERING, compId, versionId, format, conn);
+            if (rendering != null && descriptorCache != null)
+                descriptorCache.put(key, rendering, rendering.length);
 
-            if (context != null)
-                return context;
-            else
-                throw new ComponentContextNotFoundException(componentId, version, contextId);
+            return rendering;
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -1395,13 +2131,23 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public boolean hasComponentContext(String contextId) throws BackendStoreException {
+    public long getComponentRenderingLength(UUID componentId, int version, String format, String baseUrl)
+            throws ComponentNotFoundException, BackendStoreException {
+
+        byte[] rendering = getCachedRendering(String.format("component/%s/%d/%s", componentId, version, format));
+        if (rendering != null)
+            return Tools.getRenderingLength(rendering.length, Tools.countPlaceholders(rendering), baseUrl);
+
         Connection conn = null;
+        BigInteger compId = UUIDUtils.toBigInteger(componentId);
 
         try {
             conn = dataSource.getConnection();
 
-            return hasContext(new BigInteger(Crypto.fromHexString(contextId)), conn);
+            Long versionId = getComponentVersionId(compId, version, conn);
+            if (versionId == null) throw new ComponentNotFoundException(componentId, version);
+
+            return getRenderingLength(DBProperties.Q_COMP_GET_RENDERING_LENGTH, compId, versionId, format, baseUrl, conn);
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -1413,92 +2159,84 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public UUID getComponentOwner(UUID componentId, int version) throws ComponentNotFoundException, BackendStoreException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_OWNER).trim();
-        Connection conn = null;
-        PreparedStatement ps = null;
+    public ComponentContext getComponentContext(UUID componentId, int version, String contextId)
+            throws ComponentNotFoundException, ComponentContextNotFoundException, BackendStoreException {
 
+        Connection conn = null;
         BigInteger compId = UUIDUtils.toBigInteger(componentId);
 
         try {
             conn = dataSource.getConnection();
 
-            Long compVerId = getComponentVersionId(compId, version, conn);
-            if (compVerId == null) throw new ComponentNotFoundException(componentId, version);
+            Long versionId = getComponentVersionId(compId, version, conn);
+            if (versionId == null) throw new ComponentNotFoundException(componentId, version);
 
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(compId));
-            ps.setTimestamp(2, new Timestamp(compVerId));
-            ResultSet rs = ps.executeQuery();
+            BigInteger ctxHash = new BigInteger(Crypto.fromHexString(contextId));
+            ComponentContext context = getComponentContext(compId, versionId, ctxHash, conn);
 
-            return rs.next() ? UUIDUtils.fromBigInteger(rs.getBigDecimal("user_uuid").toBigInteger()) : null;
+            if (context == null)
+                throw new ComponentContextNotFoundException(componentId, version, contextId);
+
+            // Contexts read from the DB release the connection when their data stream is closed
+            if (context.getDataStream() instanceof ContextDataInputStream)
+                conn = null;
+
+            return context;
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
             throw new BackendStoreException(e);
         }
+        catch (IOException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
         finally {
-            releaseConnection(conn, ps);
+            releaseConnection(conn);
         }
     }
 
     @Override
-    public Integer getComponentVersionCount(UUID compId) throws ComponentNotFoundException, BackendStoreException {
-        Connection conn;
+    public boolean hasComponentContext(String contextId) throws BackendStoreException {
+        Connection conn = null;
 
         try {
             conn = dataSource.getConnection();
-            Integer verCount = getComponentVersionCount(UUIDUtils.toBigInteger(compId), conn);
-            if (verCount != null)
-                return verCount;
-            else
-                throw new ComponentNotFoundException(compId, -1);
+
+            return hasContext(new BigInteger(Crypto.fromHexString(contextId)), conn);
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
             throw new BackendStoreException(e);
         }
+        finally {
+            releaseConnection(conn);
+        }
     }
 
     @Override
-    public void shareComponent(UUID componentId, int version, UUID groupId, UUID remoteUserId)
-            throws ComponentNotFoundException, GroupNotFoundException, UserNotFoundException, BackendStoreException {
-
-        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_SHARE).trim();
+    public boolean hasComponentContext(UUID componentId, int version, String contextId) throws BackendStoreException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_CONTEXT_EXISTS).trim();
         Connection conn = null;
         PreparedStatement ps = null;
         BigInteger compId = UUIDUtils.toBigInteger(componentId);
-        BigInteger ruid = (remoteUserId != null) ? UUIDUtils.toBigInteger(remoteUserId) : null;
-        BigInteger gid = UUIDUtils.toBigInteger(groupId);
 
         try {
             conn = dataSource.getConnection();
-            conn.setAutoCommit(false);
 
-            Long compVerId = getComponentVersionId(compId, version, conn);
-            if (compVerId == null) throw new ComponentNotFoundException(componentId, version);
-
-            if (!Boolean.TRUE.equals(isGroupActive(gid, conn)))
-                throw new GroupNotFoundException(groupId);
-
-            if (remoteUserId != null)
-                if (!Boolean.TRUE.equals(isUserActive(ruid, conn)))
-                    throw new UserNotFoundException(remoteUserId);
+            Long versionId = getComponentVersionId(compId, version, conn);
+            if (versionId == null) return false;
 
             ps = conn.prepareStatement(sqlQuery);
             ps.setBigDecimal(1, new BigDecimal(compId));
-            ps.setTimestamp(2, new Timestamp(compVerId));
-            ps.setBigDecimal(3, new BigDecimal(gid));
-            ps.executeUpdate();
-
-            // Record the event
-            addEvent(SCEvent.COMPONENT_SHARED, ruid, UUIDUtils.toBigInteger(groupId), compId, null, null, conn);
+            ps.setTimestamp(2, new Timestamp(versionId));
+            ps.setBigDecimal(3, new BigDecimal(new BigInteger(Crypto.fromHexString(contextId))));
+            ResultSet rs = ps.executeQuery();
 
-            conn.commit();
+            return rs.next();
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
-            rollbackTransaction(conn);
             throw new BackendStoreException(e);
         }
         finally {
@@ -1506,11 +2244,294 @@ public class SQLLink implements BackendStoreLink {
         }
     }
 
-    @Override
-    public JSONArray listUserComponents(UUID userId, long offset, long count,
-                                        boolean includeOldVersions)
-            throws UserNotFoundException, BackendStoreException {
-        return listAccessibleUserComponentsAsUser(userId, userId, offset, count, includeOldVersions);
+    /**
+     * Moves the component contexts still kept in the DB to the blob store.
+     * Each context is committed separately, so the migration can be interrupted and resumed at any time.
+     *
+     * @return The number of contexts moved
+     * @throws BackendStoreException Thrown if no blob store is configured or an error occurred while moving a context
+     */
+    public int migrateContextsToBlobStore() throws BackendStoreException {
+        if (blobStore == null)
+            throw new BackendStoreException("No blob store is configured");
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        int count = 0;
+
+        try {
+            conn = dataSource.getConnection();
+
+            // Find the contexts kept in the DB
+            Map<BigInteger, Long> contexts = new LinkedHashMap<BigInteger, Long>();
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_CONTEXT_LIST_INTERNAL).trim());
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                long size = rs.getLong("size");
+                contexts.put(rs.getBigDecimal("context_hash").toBigInteger(), rs.wasNull() ? -1 : size);
+            }
+            closeStatement(ps);
+
+            logger.info(String.format("Moving %,d contexts to the blob store", contexts.size()));
+
+            conn.setAutoCommit(false);
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_CONTEXT_SET_EXTERNAL).trim());
+
+            for (Map.Entry<BigInteger, Long> context : contexts.entrySet()) {
+                BigInteger ctxHash = context.getKey();
+                long size = context.getValue();
+                String hash = Crypto.toHexString(ctxHash.toByteArray());
+
+                if (!blobStore.contains(hash)) {
+                    InputStream data = new ContextDataInputStream(ctxHash, size, dataSource.getConnection());
+                    try {
+                        blobStore.put(hash, data);
+                    }
+                    finally {
+                        data.close();
+                    }
+                }
+
+                // Only drop the DB copy once the stored blob is known to be intact
+                long storedSize = blobStore.getSize(hash);
+                if (size >= 0 && storedSize != size) {
+                    blobStore.remove(hash);
+                    throw new IOException(String.format("Size mismatch for context %s: expected %,d bytes, stored %,d",
+                            hash, size, storedSize));
+                }
+
+                BigInteger storedHash = getBlobHash(hash);
+                if (!storedHash.equals(ctxHash)) {
+                    blobStore.remove(hash);
+                    throw new IOException(String.format("Hash mismatch for context %s: stored data hashes to %s",
+                            hash, Crypto.toHexString(storedHash.toByteArray())));
+                }
+
+                ps.setBigDecimal(1, new BigDecimal(ctxHash));
+                ps.executeUpdate();
+                commitTransaction(conn);
+
+                count++;
+                logger.fine(String.format("Moved context %s (%,d bytes) to the blob store", hash, size));
+            }
+
+            return count;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, null, e);
+            rollbackTransaction(conn);
+            throw new BackendStoreException(String.format("Context migration failed after %,d contexts", count), e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    /**
+     * Removes the blobs stored before a given time that no context refers to anymore (left by uploads
+     * whose transaction was rolled back after their contexts were written to the blob store)
+     *
+     * @param before The time (ms); newer blobs may belong to uploads still in progress
+     * @return The number of blobs removed
+     * @throws BackendStoreException Thrown if no blob store is configured or an error occurred while sweeping
+     */
+    public int sweepBlobStore(long before) throws BackendStoreException {
+        if (blobStore == null)
+            throw new BackendStoreException("No blob store is configured");
+
+        Connection conn = null;
+
+        try {
+            conn = dataSource.getConnection();
+            final Connection refConn = conn;
+
+            int count = blobStore.removeUnreferenced(before, new BlobStore.References() {
+                public boolean isReferenced(String hash) throws IOException {
+                    try {
+                        return hasContext(new BigInteger(Crypto.fromHexString(hash)), refConn);
+                    }
+                    catch (SQLException e) {
+                        throw new IOException(e);
+                    }
+                }
+            });
+
+            if (count > 0)
+                logger.info(String.format("Removed %,d unreferenced blobs from the blob store", count));
+
+            return count;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn);
+        }
+    }
+
+    @Override
+    public UUID getComponentOwner(UUID componentId, int version) throws ComponentNotFoundException, BackendStoreException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_OWNER).trim();
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        BigInteger compId = UUIDUtils.toBigInteger(componentId);
+
+        try {
+            conn = dataSource.getConnection();
+
+            Long compVerId = getComponentVersionId(compId, version, conn);
+            if (compVerId == null) throw new ComponentNotFoundException(componentId, version);
+
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(compId));
+            ps.setTimestamp(2, new Timestamp(compVerId));
+            ResultSet rs = ps.executeQuery();
+
+            return rs.next() ? UUIDUtils.fromBigInteger(rs.getBigDecimal("user_uuid").toBigInteger()) : null;
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    @Override
+    public Map<IdVersionPair, UUID> getComponentOwners(Collection<IdVersionPair> componentVersions)
+            throws BackendStoreException {
+        return listOwners(componentVersions, DBProperties.Q_COMP_LIST_OWNERS, VersionBackfill.Table.COMPONENT);
+    }
+
+    @Override
+    public JSONArray listComponentGroups(UUID componentId, int version) throws ComponentNotFoundException, BackendStoreException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GROUP_LIST_ALL).trim();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        JSONArray jaGroups = new JSONArray();
+
+        BigInteger compId = UUIDUtils.toBigInteger(componentId);
+
+        try {
+            conn = dataSource.getConnection();
+
+            Long versionId = getComponentVersionId(compId, version, conn);
+            if (versionId == null) throw new ComponentNotFoundException(componentId, version);
+
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(compId));
+            ps.setTimestamp(2, new Timestamp(versionId));
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                JSONObject joGroup = new JSONObject();
+                joGroup.put("uuid", UUIDUtils.fromBigInteger(rs.getBigDecimal("group_uuid").toBigInteger()).toString());
+                jaGroups.put(joGroup);
+            }
+
+            return jaGroups;
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        catch (JSONException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    @Override
+    public boolean isComponentSharedWithUser(UUID componentId, int version, UUID userId)
+            throws ComponentNotFoundException, UserNotFoundException, BackendStoreException {
+        return listComponentGroupsAsUser(componentId, version, userId, null, 0, 1).length() > 0;
+    }
+
+    @Override
+    public Integer getComponentVersionCount(UUID compId) throws ComponentNotFoundException, BackendStoreException {
+        Connection conn;
+
+        try {
+            conn = dataSource.getConnection();
+            Integer verCount = getComponentVersionCount(UUIDUtils.toBigInteger(compId), conn);
+            if (verCount != null)
+                return verCount;
+            else
+                throw new ComponentNotFoundException(compId, -1);
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+    }
+
+    @Override
+    public void shareComponent(UUID componentId, int version, UUID groupId, UUID remoteUserId)
+            throws ComponentNotFoundException, GroupNotFoundException, UserNotFoundException, BackendStoreException {
+
+        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_SHARE).trim();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        BigInteger compId = UUIDUtils.toBigInteger(componentId);
+        BigInteger ruid = (remoteUserId != null) ? UUIDUtils.toBigInteger(remoteUserId) : null;
+        BigInteger gid = UUIDUtils.toBigInteger(groupId);
+
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+
+            Long compVerId = getComponentVersionId(compId, version, conn);
+            if (compVerId == null) throw new ComponentNotFoundException(componentId, version);
+
+            if (!Boolean.TRUE.equals(isGroupActive(gid, conn)))
+                throw new GroupNotFoundException(groupId);
+
+            if (remoteUserId != null)
+                if (!Boolean.TRUE.equals(isUserActive(ruid, conn)))
+                    throw new UserNotFoundException(remoteUserId);
+
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(compId));
+            ps.setTimestamp(2, new Timestamp(compVerId));
+            ps.setBigDecimal(3, new BigDecimal(gid));
+            ps.executeUpdate();
+            closeStatement(ps);
+
+            // Keep track of the latest version shared with the group
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_COMP_GROUP_LATEST_UPDATE).trim());
+            ps.setBigDecimal(1, new BigDecimal(compId));
+            ps.setBigDecimal(2, new BigDecimal(gid));
+            ps.setInt(3, version);
+            ps.setTimestamp(4, new Timestamp(compVerId));
+            ps.executeUpdate();
+
+            // Record the event
+            addEvent(SCEvent.COMPONENT_SHARED, ruid, UUIDUtils.toBigInteger(groupId), compId, null,
+                    getVersionMetadata(componentId, version), conn);
+
+            commitTransaction(conn);
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            rollbackTransaction(conn);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    @Override
+    public JSONArray listUserComponents(UUID userId, long offset, long count,
+                                        boolean includeOldVersions)
+            throws UserNotFoundException, BackendStoreException {
+        return listAccessibleUserComponentsAsUser(userId, userId, offset, count, includeOldVersions);
     }
 
     @Override
@@ -1521,8 +2542,35 @@ public class SQLLink implements BackendStoreLink {
     }
 
     @Override
-    public JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, long offset, long count,
-                                                        boolean includeOldVersions)
+    public JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, long offset,
+                                                        long count, boolean includeOldVersions)
+            throws UserNotFoundException, BackendStoreException {
+        return listAccessibleUserComponentsAsUser(userId, remoteUserId, null, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, PageCursor after,
+                                                        long count, boolean includeOldVersions)
+            throws UserNotFoundException, BackendStoreException {
+        return listAccessibleUserComponentsAsUser(userId, remoteUserId, after, 0, count, includeOldVersions);
+    }
+
+    /**
+     * Lists the components owned by a user that can be accessed by a remote user, either from an offset or
+     * after a cursor
+     *
+     * @param userId The user id
+     * @param remoteUserId The id of the remote user, or null for unauthenticated requests
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param includeOldVersions True to include old versions, False to only return latest versions
+     * @return The entries, in key order when a cursor is given
+     * @throws UserNotFoundException Thrown if a user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listAccessibleUserComponentsAsUser(UUID userId, UUID remoteUserId, PageCursor after,
+                                                           long offset, long count, boolean includeOldVersions)
             throws UserNotFoundException, BackendStoreException {
         Connection conn = null;
         PreparedStatement ps = null;
@@ -1540,32 +2588,55 @@ public class SQLLink implements BackendStoreLink {
                 if (!Boolean.TRUE.equals(isUserActive(ruid.toBigInteger(), conn)))
                     throw new UserNotFoundException(remoteUserId);
 
-            if (includeOldVersions) {
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_USER_COMPONENT_SHARING_LIST_ALL_ASUSER).trim());
-                ps.setBigDecimal(1, uid);
-                ps.setBigDecimal(2, ruid);
-                ps.setBigDecimal(3, uid);
-                ps.setBigDecimal(4, ruid);
-                ps.setLong(5, offset);
-                ps.setLong(6, count);
+            // The latest queries pick, per component, the most recent version the remote user can
+            // access: the latest version shared with any of its groups or, for the owner, the latest upload
+            if (after == null) {
+                if (includeOldVersions) {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_COMPONENT_SHARING_LIST_ALL_ASUSER).trim());
+
+                    ps.setBigDecimal(1, uid);
+                    ps.setBigDecimal(2, ruid);
+                    ps.setBigDecimal(3, uid);
+                    ps.setBigDecimal(4, ruid);
+                    ps.setLong(5, offset);
+                    ps.setLong(6, count);
+                } else {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_COMPONENT_SHARING_LIST_LATEST_ASUSER).trim());
+
+                    bindLatestAccessible(ps, uid, ruid);
+                    ps.setBigDecimal(5, ruid);
+                    ps.setBigDecimal(6, uid);
+                    ps.setBigDecimal(7, ruid);
+                    ps.setLong(8, offset);
+                    ps.setLong(9, count);
+                }
             } else {
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_USER_COMPONENT_SHARING_LIST_LATEST_ASUSER).trim());
-                ps.setBigDecimal(1, uid);
-                ps.setBigDecimal(2, ruid);
-                ps.setBigDecimal(3, uid);
-                ps.setBigDecimal(4, ruid);
-                ps.setBigDecimal(5, uid);
-                ps.setBigDecimal(6, ruid);
-                ps.setBigDecimal(7, uid);
-                ps.setBigDecimal(8, ruid);
-                ps.setLong(9, offset);
-                ps.setLong(10, count);
+                // The cursor queries page over the accessible versions and return one row per
+                // accessible group; the owner's NULL group entry is added below
+                if (includeOldVersions) {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_COMPONENT_SHARING_LIST_ALL_ASUSER_AFTER).trim());
+
+                    ps.setBigDecimal(1, uid);
+                    ps.setBigDecimal(2, ruid);
+                    ps.setBigDecimal(3, ruid);
+                    bindPage(ps, 4, after, offset, count, true);
+                    ps.setBigDecimal(8, ruid);
+                } else {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_COMPONENT_SHARING_LIST_LATEST_ASUSER_AFTER).trim());
+
+                    bindLatestAccessible(ps, uid, ruid);
+                    bindPage(ps, 5, after, offset, count, true);
+                    ps.setBigDecimal(9, ruid);
+                }
             }
             ResultSet rs = ps.executeQuery();
 
-            Map<String, JSONObject> map = new HashMap<String, JSONObject>();
+            // The cursor queries return the rows in key order, which the response preserves
+            Map<String, JSONObject> map = new LinkedHashMap<String, JSONObject>();
             while (rs.next()) {
                 UUID componentId = UUIDUtils.fromBigInteger(rs.getBigDecimal("comp_uuid").toBigInteger());
                 int version = rs.getInt("version");
@@ -1582,8 +2653,13 @@ public class SQLLink implements BackendStoreLink {
                     joCompVer.put("version", version);
                     joCompVer.put("groups", new JSONArray());
                     map.put(key, joCompVer);
+
+                    if (after != null && uid.equals(ruid))
+                        joCompVer.getJSONArray("groups").put(JSONObject.NULL);
                 }
 
+                if (after != null && groupId == null) continue;
+
                 joCompVer.getJSONArray("groups").put(groupId != null ? groupId.toString() : JSONObject.NULL);
             }
 
@@ -1610,9 +2686,61 @@ public class SQLLink implements BackendStoreLink {
     @Override
     public JSONArray listGroupComponents(UUID groupId, long offset, long count, boolean includeOldVersions)
             throws GroupNotFoundException, BackendStoreException {
+        return listGroupComponents(groupId, null, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listGroupComponents(UUID groupId, PageCursor after, long count,
+                                         boolean includeOldVersions)
+            throws GroupNotFoundException, BackendStoreException {
+        return listGroupComponents(groupId, after, 0, count, includeOldVersions);
+    }
+
+    @Override
+    public void listGroupComponents(UUID groupId, PageCursor after, long count, boolean includeOldVersions,
+                                    EntryHandler handler) throws GroupNotFoundException, BackendStoreException {
+        listGroupComponents(groupId, after, 0, count, includeOldVersions, handler);
+    }
+
+    /**
+     * Lists the components shared with a group, either from an offset or after a cursor
+     *
+     * @param groupId The group id
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param includeOldVersions True to include old versions, False to only return latest versions
+     * @return The entries, in key order when a cursor is given
+     * @throws GroupNotFoundException Thrown if the group does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listGroupComponents(UUID groupId, PageCursor after, long offset, long count,
+                                            boolean includeOldVersions)
+            throws GroupNotFoundException, BackendStoreException {
+        CollectingEntryHandler handler = new CollectingEntryHandler();
+        listGroupComponents(groupId, after, offset, count, includeOldVersions, handler);
+
+        return handler.getEntries();
+    }
+
+    /**
+     * Passes to a handler the components shared with a group, as they are read,
+     * either from an offset or after a cursor
+     *
+     * @param groupId The group id
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param includeOldVersions True to include old versions, False to only return latest versions
+     * @param handler The handler receiving the entries, in key order when a cursor is given
+     * @throws GroupNotFoundException Thrown if the group does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected void listGroupComponents(UUID groupId, PageCursor after, long offset, long count,
+                                       boolean includeOldVersions, EntryHandler handler)
+            throws GroupNotFoundException, BackendStoreException {
         Connection conn = null;
         PreparedStatement ps = null;
-        JSONArray jaResult = new JSONArray();
         BigInteger gid = UUIDUtils.toBigInteger(groupId);
 
         try {
@@ -1621,16 +2749,17 @@ public class SQLLink implements BackendStoreLink {
             if (!Boolean.TRUE.equals(isGroupActive(gid, conn)))
                 throw new GroupNotFoundException(groupId);
 
+            String sqlQuery;
             if (includeOldVersions)
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_GROUP_COMPONENTS_LIST_ALL).trim());
+                sqlQuery = (after == null) ?
+                        DBProperties.Q_GROUP_COMPONENTS_LIST_ALL : DBProperties.Q_GROUP_COMPONENTS_LIST_ALL_AFTER;
             else
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_GROUP_COMPONENTS_LIST_LATEST).trim());
+                sqlQuery = (after == null) ?
+                        DBProperties.Q_GROUP_COMPONENTS_LIST_LATEST : DBProperties.Q_GROUP_COMPONENTS_LIST_LATEST_AFTER;
 
+            ps = prepareStreamingStatement(conn, properties.getProperty(sqlQuery).trim());
             ps.setBigDecimal(1, new BigDecimal(gid));
-            ps.setLong(2, offset);
-            ps.setLong(3, count);
+            bindPage(ps, 2, after, offset, count, true);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -1641,10 +2770,8 @@ public class SQLLink implements BackendStoreLink {
                 joCompVer.put("uuid", componentId.toString());
                 joCompVer.put("version", version);
 
-                jaResult.put(joCompVer);
+                handler.handleEntry(joCompVer);
             }
-
-            return jaResult;
         }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
@@ -1668,27 +2795,31 @@ public class SQLLink implements BackendStoreLink {
             if (!Boolean.TRUE.equals(isUserActive(uid, conn)))
                 throw new UserNotFoundException(userId);
 
-            // Check whether this flow contains any unknown components
-            // and also build the list of components used in the flow
-            List<Component> components = new ArrayList<Component>();
-            List<String> unknownComponents = new ArrayList<String>();
+            // Resolve the distinct components referenced by the flow instances
+            Map<String, IdVersionPair> componentRefs = new HashMap<String, IdVersionPair>();
             for (ExecutableComponentInstanceDescription ecid : flow.getExecutableComponentInstances()) {
                 String compUri = ecid.getExecutableComponent().getURI();
                 Matcher m = REGEX_UUID_VERSION.matcher(compUri);
-                if (m.matches()) {
-                    BigInteger compId = UUIDUtils.toBigInteger(UUID.fromString(m.group(1)));
-                    int compVer = Integer.parseInt(m.group(2));
-                    Long compVerId = getComponentVersionId(compId, compVer, conn);
-                    if (compVerId == null)
+                if (m.matches() && !componentRefs.containsKey(compUri))
+                    componentRefs.put(compUri,
+                            new IdVersionPair(UUID.fromString(m.group(1)), Integer.parseInt(m.group(2))));
+            }
+            Map<IdVersionPair, Component> resolved =
+                    resolveComponentVersions(new HashSet<IdVersionPair>(componentRefs.values()), conn);
+
+            // Check whether this flow contains any unknown components
+            // and also build the list of components used in the flow
+            List<Component> components = new ArrayList<Component>();
+            List<String> unknownComponents = new ArrayList<String>();
+            for (ExecutableComponentInstanceDescription ecid : flow.getExecutableComponentInstances()) {
+                String compUri = ecid.getExecutableComponent().getURI();
+                IdVersionPair ref = componentRefs.get(compUri);
+                Component comp = (ref != null) ? resolved.get(ref) : null;
+                if (comp == null) {
+                    if (!unknownComponents.contains(compUri))
                         unknownComponents.add(compUri);
-                    else {
-                        Component comp = new Component();
-                        comp.setComponentVersionId(compVerId);
-                        comp.setComponentCoreHash(getComponentCore(compId, compVerId, conn));
-                        components.add(comp);
-                    }
                 } else
-                    unknownComponents.add(compUri);
+                    components.add(comp);
             }
 
             if (unknownComponents.size() > 0)
@@ -1738,7 +2869,7 @@ public class SQLLink implements BackendStoreLink {
                     // Record the event
                     addEvent(SCEvent.FLOW_UPLOADED, uid, null, null, flowId, joResult, conn);
 
-                    conn.commit();
+                    commitTransaction(conn);
 
                     logger.fine(String.format("Ignoring repeated upload of flow %s, version %d",
                             joResult.getString("uuid"), qFlowVersion));
@@ -1786,13 +2917,32 @@ public class SQLLink implements BackendStoreLink {
             if (version == null)
                 version = getFlowVersionCount(flowId, conn);
 
+            // Record this version as the latest uploaded by the user
+            sqlQuery = properties.getProperty(DBProperties.Q_FLOW_LATEST_UPDATE).trim();
+            try {
+                ps = conn.prepareStatement(sqlQuery);
+                ps.setBigDecimal(1, new BigDecimal(flowId));
+                ps.setBigDecimal(2, new BigDecimal(uid));
+                ps.setInt(3, version);
+                ps.setTimestamp(4, new Timestamp(timestamp));
+
+                ps.executeUpdate();
+            }
+            finally {
+                closeStatement(ps);
+            }
+
+            // Pre-render the flow descriptor in the supported formats
+            addRenderings(DBProperties.Q_FLOW_ADD_RENDERING, flowId, timestamp,
+                    renderFlowModel(flow.getModel(), UUIDUtils.fromBigInteger(flowId), version), conn);
+
             joResult.put("uuid", UUIDUtils.fromBigInteger(flowId).toString());
             joResult.put("version", version);
 
             // Record the event
             addEvent(SCEvent.FLOW_UPLOADED, uid, null, null, flowId, joResult, conn);
 
-            conn.commit();
+            commitTransaction(conn);
         }
         catch (BackendStoreException e) {
             logger.log(Level.SEVERE, null, e);
@@ -1817,8 +2967,13 @@ public class SQLLink implements BackendStoreLink {
         Connection conn = null;
 
         BigInteger fId = UUIDUtils.toBigInteger(flowId);
+        String key = String.format("flow/%s/%d", flowId, version);
 
         try {
+            CachedDescriptor descriptor = getCachedDescriptor(key);
+            if (descriptor != null)
+                return descriptor.getModel();
+
             conn = dataSource.getConnection();
 
             Long versionId = getFlowVersionId(fId, version, conn);
@@ -1827,7 +2982,9 @@ public class SQLLink implements BackendStoreLink {
             InputStream is = getFlowDescriptor(fId, versionId, conn);
             if (is == null) return null;
 
-            return ModelUtils.getModel(is, null);
+            descriptor = cacheDescriptor(key, IOUtils.toByteArray(is));
+
+            return descriptor.getModel();
         }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
@@ -1838,6 +2995,67 @@ public class SQLLink implements BackendStoreLink {
         }
     }
 
+    @Override
+    public byte[] getFlowRendering(UUID flowId, int version, String format)
+            throws BackendStoreException, FlowNotFoundException {
+
+        String key = String.format("flow/%s/%d/%s", flowId, version, format);
+        byte[] rendering = getCachedRendering(key);
+        if (rendering != null)
+            return rendering;
+
+        Connection conn = null;
+        BigInteger fId = UUIDUtils.toBigInteger(flowId);
+
+        try {
+            conn = dataSource.getConnection();
+
+            Long versionId = getFlowVersionId(fId, version, conn);
+            if (versionId == null) throw new FlowNotFoundException(flowId, version);
+
+            rendering = getRendering(DBProperties.Q_FLOW_GET_RENDERING, fId, versionId, format, conn);
+            if (rendering != null && descriptorCache != null)
+                descriptorCache.put(key, rendering, rendering.length);
+
+            return rendering;
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn);
+        }
+    }
+
+    @Override
+    public long getFlowRenderingLength(UUID flowId, int version, String format, String baseUrl)
+            throws BackendStoreException, FlowNotFoundException {
+
+        byte[] rendering = getCachedRendering(String.format("flow/%s/%d/%s", flowId, version, format));
+        if (rendering != null)
+            return Tools.getRenderingLength(rendering.length, Tools.countPlaceholders(rendering), baseUrl);
+
+        Connection conn = null;
+        BigInteger fId = UUIDUtils.toBigInteger(flowId);
+
+        try {
+            conn = dataSource.getConnection();
+
+            Long versionId = getFlowVersionId(fId, version, conn);
+            if (versionId == null) throw new FlowNotFoundException(flowId, version);
+
+            return getRenderingLength(DBProperties.Q_FLOW_GET_RENDERING_LENGTH, fId, versionId, format, baseUrl, conn);
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn);
+        }
+    }
+
     @Override
     public UUID getFlowOwner(UUID flowId, int version) throws FlowNotFoundException, BackendStoreException {
         String sqlQuery = properties.getProperty(DBProperties.Q_FLOW_GET_OWNER).trim();
@@ -1868,6 +3086,59 @@ public class SQLLink implements BackendStoreLink {
         }
     }
 
+    @Override
+    public Map<IdVersionPair, UUID> getFlowOwners(Collection<IdVersionPair> flowVersions)
+            throws BackendStoreException {
+        return listOwners(flowVersions, DBProperties.Q_FLOW_LIST_OWNERS, VersionBackfill.Table.FLOW);
+    }
+
+    @Override
+    public JSONArray listFlowGroups(UUID flowId, int version) throws FlowNotFoundException, BackendStoreException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_FLOW_GROUP_LIST_ALL).trim();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        JSONArray jaGroups = new JSONArray();
+
+        BigInteger fId = UUIDUtils.toBigInteger(flowId);
+
+        try {
+            conn = dataSource.getConnection();
+
+            Long versionId = getFlowVersionId(fId, version, conn);
+            if (versionId == null) throw new FlowNotFoundException(flowId, version);
+
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(fId));
+            ps.setTimestamp(2, new Timestamp(versionId));
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                JSONObject joGroup = new JSONObject();
+                joGroup.put("uuid", UUIDUtils.fromBigInteger(rs.getBigDecimal("group_uuid").toBigInteger()).toString());
+                jaGroups.put(joGroup);
+            }
+
+            return jaGroups;
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        catch (JSONException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    @Override
+    public boolean isFlowSharedWithUser(UUID flowId, int version, UUID userId)
+            throws FlowNotFoundException, UserNotFoundException, BackendStoreException {
+        return listFlowGroupsAsUser(flowId, version, userId, null, 0, 1).length() > 0;
+    }
+
     @Override
     public Integer getFlowVersionCount(UUID flowId) throws FlowNotFoundException, BackendStoreException {
         Connection conn;
@@ -1915,11 +3186,21 @@ public class SQLLink implements BackendStoreLink {
             ps.setTimestamp(2, new Timestamp(versionId));
             ps.setBigDecimal(3, new BigDecimal(gid));
             ps.executeUpdate();
+            closeStatement(ps);
+
+            // Keep track of the latest version shared with the group
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_FLOW_GROUP_LATEST_UPDATE).trim());
+            ps.setBigDecimal(1, new BigDecimal(fId));
+            ps.setBigDecimal(2, new BigDecimal(gid));
+            ps.setInt(3, version);
+            ps.setTimestamp(4, new Timestamp(versionId));
+            ps.executeUpdate();
 
             // Record the event
-            addEvent(SCEvent.FLOW_SHARED, ruid, UUIDUtils.toBigInteger(groupId), null, fId, null, conn);
+            addEvent(SCEvent.FLOW_SHARED, ruid, UUIDUtils.toBigInteger(groupId), null, fId,
+                    getVersionMetadata(flowId, version), conn);
 
-            conn.commit();
+            commitTransaction(conn);
         }
         catch (SQLException e) {
             logger.log(Level.SEVERE, null, e);
@@ -1947,6 +3228,33 @@ public class SQLLink implements BackendStoreLink {
     public JSONArray listAccessibleUserFlowsAsUser(UUID userId, UUID remoteUserId, long offset, long count,
                                                    boolean includeOldVersions)
             throws UserNotFoundException, BackendStoreException {
+        return listAccessibleUserFlowsAsUser(userId, remoteUserId, null, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listAccessibleUserFlowsAsUser(UUID userId, UUID remoteUserId, PageCursor after,
+                                                   long count, boolean includeOldVersions)
+            throws UserNotFoundException, BackendStoreException {
+        return listAccessibleUserFlowsAsUser(userId, remoteUserId, after, 0, count, includeOldVersions);
+    }
+
+    /**
+     * Lists the flows owned by a user that can be accessed by a remote user, either from an offset or
+     * after a cursor
+     *
+     * @param userId The user id
+     * @param remoteUserId The id of the remote user, or null for unauthenticated requests
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param includeOldVersions True to include old versions, False to only return latest versions
+     * @return The entries, in key order when a cursor is given
+     * @throws UserNotFoundException Thrown if a user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listAccessibleUserFlowsAsUser(UUID userId, UUID remoteUserId, PageCursor after,
+                                                      long offset, long count, boolean includeOldVersions)
+            throws UserNotFoundException, BackendStoreException {
 
         Connection conn = null;
         PreparedStatement ps = null;
@@ -1964,32 +3272,55 @@ public class SQLLink implements BackendStoreLink {
                 if (!Boolean.TRUE.equals(isUserActive(ruid.toBigInteger(), conn)))
                     throw new UserNotFoundException(remoteUserId);
 
-            if (includeOldVersions) {
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_USER_FLOW_SHARING_LIST_ALL_ASUSER).trim());
-                ps.setBigDecimal(1, uid);
-                ps.setBigDecimal(2, ruid);
-                ps.setBigDecimal(3, uid);
-                ps.setBigDecimal(4, ruid);
-                ps.setLong(5, offset);
-                ps.setLong(6, count);
+            // The latest queries pick, per flow, the most recent version the remote user can
+            // access: the latest version shared with any of its groups or, for the owner, the latest upload
+            if (after == null) {
+                if (includeOldVersions) {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_FLOW_SHARING_LIST_ALL_ASUSER).trim());
+
+                    ps.setBigDecimal(1, uid);
+                    ps.setBigDecimal(2, ruid);
+                    ps.setBigDecimal(3, uid);
+                    ps.setBigDecimal(4, ruid);
+                    ps.setLong(5, offset);
+                    ps.setLong(6, count);
+                } else {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_FLOW_SHARING_LIST_LATEST_ASUSER).trim());
+
+                    bindLatestAccessible(ps, uid, ruid);
+                    ps.setBigDecimal(5, ruid);
+                    ps.setBigDecimal(6, uid);
+                    ps.setBigDecimal(7, ruid);
+                    ps.setLong(8, offset);
+                    ps.setLong(9, count);
+                }
             } else {
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_USER_FLOW_SHARING_LIST_LATEST_ASUSER).trim());
-                ps.setBigDecimal(1, uid);
-                ps.setBigDecimal(2, ruid);
-                ps.setBigDecimal(3, uid);
-                ps.setBigDecimal(4, ruid);
-                ps.setBigDecimal(5, uid);
-                ps.setBigDecimal(6, ruid);
-                ps.setBigDecimal(7, uid);
-                ps.setBigDecimal(8, ruid);
-                ps.setLong(9, offset);
-                ps.setLong(10, count);
+                // The cursor queries page over the accessible versions and return one row per
+                // accessible group; the owner's NULL group entry is added below
+                if (includeOldVersions) {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_FLOW_SHARING_LIST_ALL_ASUSER_AFTER).trim());
+
+                    ps.setBigDecimal(1, uid);
+                    ps.setBigDecimal(2, ruid);
+                    ps.setBigDecimal(3, ruid);
+                    bindPage(ps, 4, after, offset, count, true);
+                    ps.setBigDecimal(8, ruid);
+                } else {
+                    ps = conn.prepareStatement(properties.getProperty(
+                            DBProperties.Q_USER_FLOW_SHARING_LIST_LATEST_ASUSER_AFTER).trim());
+
+                    bindLatestAccessible(ps, uid, ruid);
+                    bindPage(ps, 5, after, offset, count, true);
+                    ps.setBigDecimal(9, ruid);
+                }
             }
             ResultSet rs = ps.executeQuery();
 
-            Map<String, JSONObject> map = new HashMap<String, JSONObject>();
+            // The cursor queries return the rows in key order, which the response preserves
+            Map<String, JSONObject> map = new LinkedHashMap<String, JSONObject>();
             while (rs.next()) {
                 UUID flowId = UUIDUtils.fromBigInteger(rs.getBigDecimal("flow_uuid").toBigInteger());
                 int version = rs.getInt("version");
@@ -2006,8 +3337,13 @@ public class SQLLink implements BackendStoreLink {
                     joFlowVer.put("version", version);
                     joFlowVer.put("groups", new JSONArray());
                     map.put(key, joFlowVer);
+
+                    if (after != null && uid.equals(ruid))
+                        joFlowVer.getJSONArray("groups").put(JSONObject.NULL);
                 }
 
+                if (after != null && groupId == null) continue;
+
                 joFlowVer.getJSONArray("groups").put(groupId != null ? groupId.toString() : JSONObject.NULL);
             }
 
@@ -2039,9 +3375,60 @@ public class SQLLink implements BackendStoreLink {
     @Override
     public JSONArray listGroupFlows(UUID groupId, long offset, long count, boolean includeOldVersions)
             throws GroupNotFoundException, BackendStoreException {
+        return listGroupFlows(groupId, null, offset, count, includeOldVersions);
+    }
+
+    @Override
+    public JSONArray listGroupFlows(UUID groupId, PageCursor after, long count, boolean includeOldVersions)
+            throws GroupNotFoundException, BackendStoreException {
+        return listGroupFlows(groupId, after, 0, count, includeOldVersions);
+    }
+
+    @Override
+    public void listGroupFlows(UUID groupId, PageCursor after, long count, boolean includeOldVersions,
+                               EntryHandler handler) throws GroupNotFoundException, BackendStoreException {
+        listGroupFlows(groupId, after, 0, count, includeOldVersions, handler);
+    }
+
+    /**
+     * Lists the flows shared with a group, either from an offset or after a cursor
+     *
+     * @param groupId The group id
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param includeOldVersions True to include old versions, False to only return latest versions
+     * @return The entries, in key order when a cursor is given
+     * @throws GroupNotFoundException Thrown if the group does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected JSONArray listGroupFlows(UUID groupId, PageCursor after, long offset, long count,
+                                       boolean includeOldVersions)
+            throws GroupNotFoundException, BackendStoreException {
+        CollectingEntryHandler handler = new CollectingEntryHandler();
+        listGroupFlows(groupId, after, offset, count, includeOldVersions, handler);
+
+        return handler.getEntries();
+    }
+
+    /**
+     * Passes to a handler the flows shared with a group, as they are read,
+     * either from an offset or after a cursor
+     *
+     * @param groupId The group id
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param includeOldVersions True to include old versions, False to only return latest versions
+     * @param handler The handler receiving the entries, in key order when a cursor is given
+     * @throws GroupNotFoundException Thrown if the group does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected void listGroupFlows(UUID groupId, PageCursor after, long offset, long count,
+                                  boolean includeOldVersions, EntryHandler handler)
+            throws GroupNotFoundException, BackendStoreException {
         Connection conn = null;
         PreparedStatement ps = null;
-        JSONArray jaResult = new JSONArray();
         BigInteger gid = UUIDUtils.toBigInteger(groupId);
 
         try {
@@ -2050,16 +3437,17 @@ public class SQLLink implements BackendStoreLink {
             if (!Boolean.TRUE.equals(isGroupActive(gid, conn)))
                 throw new GroupNotFoundException(groupId);
 
+            String sqlQuery;
             if (includeOldVersions)
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_GROUP_FLOWS_LIST_ALL).trim());
+                sqlQuery = (after == null) ?
+                        DBProperties.Q_GROUP_FLOWS_LIST_ALL : DBProperties.Q_GROUP_FLOWS_LIST_ALL_AFTER;
             else
-                ps = conn.prepareStatement(properties.getProperty(
-                        DBProperties.Q_GROUP_FLOWS_LIST_LATEST).trim());
+                sqlQuery = (after == null) ?
+                        DBProperties.Q_GROUP_FLOWS_LIST_LATEST : DBProperties.Q_GROUP_FLOWS_LIST_LATEST_AFTER;
 
+            ps = prepareStreamingStatement(conn, properties.getProperty(sqlQuery).trim());
             ps.setBigDecimal(1, new BigDecimal(gid));
-            ps.setLong(2, offset);
-            ps.setLong(3, count);
+            bindPage(ps, 2, after, offset, count, true);
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -2070,10 +3458,8 @@ public class SQLLink implements BackendStoreLink {
                 joFlowVer.put("uuid", flowId.toString());
                 joFlowVer.put("version", version);
 
-                jaResult.put(joFlowVer);
+                handler.handleEntry(joFlowVer);
             }
-
-            return jaResult;
         }
         catch (Exception e) {
             logger.log(Level.SEVERE, null, e);
@@ -2086,6 +3472,64 @@ public class SQLLink implements BackendStoreLink {
 
 
 
+    /**
+     * Returns a query that reads or assigns version numbers. While the version numbers of the table are
+     * being backfilled, its derived variant (which counts the earlier uploads) is returned instead.
+     *
+     * @param queryKey The query key
+     * @param table The table holding the versions
+     * @return The query
+     */
+    protected String getVersionQuery(String queryKey, VersionBackfill.Table table) {
+        if (versionBackfill != null && versionBackfill.isPending(table)) {
+            String derived = properties.getProperty(queryKey + DBProperties.DERIVED_SUFFIX);
+            if (derived != null)
+                return derived.trim();
+        }
+
+        return properties.getProperty(queryKey).trim();
+    }
+
+    /**
+     * Applies the schema upgrades whose columns do not exist yet. The upgrades are the configuration
+     * entries keyed on DBProperties.SC_SCHEMA_UPGRADE_PREFIX + "table.column", applied in key order.
+     *
+     * @param conn The DB connection to use
+     * @param stmt The statement to use
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected void upgradeSchema(Connection conn, Statement stmt) throws SQLException {
+        SortedSet<String> upgrades = new TreeSet<String>();
+        for (String key : properties.stringPropertyNames())
+            if (key.startsWith(DBProperties.SC_SCHEMA_UPGRADE_PREFIX))
+                upgrades.add(key);
+
+        DatabaseMetaData metaData = conn.getMetaData();
+
+        for (String key : upgrades) {
+            String[] tableColumn = key.substring(DBProperties.SC_SCHEMA_UPGRADE_PREFIX.length()).split("\\.", 2);
+            if (tableColumn.length != 2) {
+                logger.warning("Ignoring malformed schema upgrade entry: " + key);
+                continue;
+            }
+
+            ResultSet rs = metaData.getColumns(conn.getCatalog(), null, tableColumn[0], tableColumn[1]);
+            boolean hasColumn;
+            try {
+                hasColumn = rs.next();
+            }
+            finally {
+                rs.close();
+            }
+
+            if (hasColumn) continue;
+
+            logger.info(String.format("Upgrading schema: adding %s.%s", tableColumn[0], tableColumn[1]));
+            for (String sql : parseSQLString(properties.getProperty(key)))
+                stmt.executeUpdate(sql);
+        }
+    }
+
     /**
      * Parses a multiline SQL string with comments into individual SQL statement strings
      *
@@ -2124,6 +3568,19 @@ public class SQLLink implements BackendStoreLink {
         return lines;
     }
 
+    /**
+     * Commits the current DB transaction for a connection, and hands the events it recorded to the event journal
+     *
+     * @param connection The connection
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected void commitTransaction(Connection connection) throws SQLException {
+        connection.commit();
+
+        if (eventJournal != null)
+            eventJournal.committed(connection);
+    }
+
     /**
      * Rolls back the last DB transaction for a connection
      *
@@ -2133,6 +3590,9 @@ public class SQLLink implements BackendStoreLink {
     protected boolean rollbackTransaction(Connection connection) {
         if (connection == null) return false;
 
+        if (eventJournal != null)
+            eventJournal.discard(connection);
+
         try {
             connection.rollback();
             return true;
@@ -2155,6 +3615,10 @@ public class SQLLink implements BackendStoreLink {
                 closeStatement(stmt);
 
         if (connection != null) {
+            // Forget the events of a transaction that did not commit
+            if (eventJournal != null)
+                eventJournal.discard(connection);
+
             try {
                 connection.close();
             }
@@ -2164,6 +3628,68 @@ public class SQLLink implements BackendStoreLink {
         }
     }
 
+    /**
+     * Binds the paging parameters of a listing query. Offset queries end with "LIMIT ?, ?", cursor queries
+     * end with the keyset condition followed by "LIMIT ?"; the keyset is "id > ?" for unversioned listings
+     * and "(id > ? OR (id = ? AND version > ?))" for versioned ones.
+     *
+     * @param ps The statement
+     * @param index The index of the first paging parameter
+     * @param after The cursor to continue after, or null to page by offset
+     * @param offset The offset where to start (ignored when a cursor is given)
+     * @param count The maximum number of entries to return
+     * @param versioned True if the listing is ordered by (id, version), False if ordered by id
+     * @throws SQLException Thrown if a parameter cannot be set
+     */
+    protected void bindPage(PreparedStatement ps, int index, PageCursor after, long offset, long count,
+                            boolean versioned) throws SQLException {
+        if (after == null) {
+            ps.setLong(index, offset);
+            ps.setLong(index + 1, count);
+            return;
+        }
+
+        ps.setBigDecimal(index++, new BigDecimal(after.getId()));
+        if (versioned) {
+            ps.setBigDecimal(index++, new BigDecimal(after.getId()));
+            ps.setInt(index++, after.getVersion());
+        }
+        ps.setLong(index, count);
+    }
+
+    /**
+     * Binds the first four parameters of the queries that select the latest version of each entry owned
+     * by a user that a remote user can access
+     *
+     * @param ps The statement
+     * @param uid The owner id
+     * @param ruid The remote user id, or null for unauthenticated requests
+     * @throws SQLException Thrown if a parameter cannot be bound
+     */
+    protected void bindLatestAccessible(PreparedStatement ps, BigDecimal uid, BigDecimal ruid) throws SQLException {
+        ps.setBigDecimal(1, uid);
+        ps.setBigDecimal(2, ruid);
+        ps.setBigDecimal(3, uid);
+        ps.setBigDecimal(4, ruid);
+    }
+
+    /**
+     * Prepares a read-only, forward-only listing query whose rows are fetched with the stream fetch size,
+     * so that the driver does not have to hold the whole result in memory
+     *
+     * @param conn The connection
+     * @param sqlQuery The query
+     * @return The statement
+     * @throws SQLException Thrown if the statement cannot be prepared
+     */
+    protected PreparedStatement prepareStreamingStatement(Connection conn, String sqlQuery) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (streamFetchSize != 0)
+            ps.setFetchSize(streamFetchSize);
+
+        return ps;
+    }
+
     /**
      * Closes a Statement
      *
@@ -2181,83 +3707,242 @@ public class SQLLink implements BackendStoreLink {
     }
 
     /**
-     * Retrieves and calculates hash signature for the set of component context files
+     * Adds (or updates) a component, as part of the current transaction
      *
-     * @param contexts The context files
-     * @return A map holding the sorted hash values and File references of the context files
-     * @throws IOException Thrown if a I/O error occurs
-     * @throws URISyntaxException Thrown if there is a problem with the context URLs
+     * @param uid The user to be credited with the upload
+     * @param component The component
+     * @param contextHashes The component context files, keyed on their hash
+     * @param conn The DB connection to use
+     * @return A JSON object keyed on uuid and version containing information about the component
+     * @throws BackendStoreException Thrown if the component cannot be added
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     * @throws IOException Thrown if the component context files cannot be stored
+     * @throws JSONException Thrown if the result cannot be created (should not happen)
      */
-    protected SortedMap<BigInteger, ContextFile> retrieveContextsAndComputeHashes(Map<URL, String> contexts)
-            throws IOException, URISyntaxException {
+    @SuppressWarnings("unchecked")
+    protected JSONObject addComponent(BigInteger uid, ExecutableComponentDescription component,
+                                      SortedMap<BigInteger, ContextFile> contextHashes, Connection conn)
+            throws BackendStoreException, SQLException, IOException, JSONException {
 
-        SortedMap<BigInteger, ContextFile> sortedMap = new TreeMap<BigInteger, ContextFile>();
+        JSONObject joResult = new JSONObject();
 
-        for (Map.Entry<URL, String> context : contexts.entrySet()) {
-            URL url = context.getKey();
-            String ctxFileName = url.toString().substring(url.toString().lastIndexOf("/") + 1);
+        BigInteger coreHash = new BigInteger(getComponentCoreHash(component, (SortedSet)contextHashes.keySet()));
 
-            logger.finer("Processing context file: " + ((ctxFileName.length() > 0) ? ctxFileName : "<unnamed>"));
+        String compRights = component.getRights();
+        BigInteger rightsHash = new BigInteger(getRightsHash(compRights));
 
-            File tmpFile;
+        BigInteger compId = null;
+        Integer version = null;
 
-            if (url.getProtocol().equals("file"))
-                tmpFile = new File(url.toURI());
-            else {
-                tmpFile = File.createTempFile("sc_context", ".tmp");
-                // TODO: We should probably use a timeout in case the URL is not responding to prevent hangs
-                FileUtils.copyURLToFile(url, tmpFile);
+        // Check whether the rights text already exists
+        if (getRightsTextForHash(rightsHash, conn) == null)
+            // Insert the license text into the DB
+            addRights(compRights, rightsHash, conn);
+        else
+            compId = getComponentId(component, conn);
+
+        if (compId == null) {
+            // Generate a new id for the component
+            compId = UUIDUtils.toBigInteger(UUID.randomUUID());
+            version = 1;
+        } else {
+            Component lastAddComp = getLastAddedComponent(compId, conn);
+            if (lastAddComp == null) // sanity check - should not happen
+                throw new BackendStoreException("Problem retrieving last added component for existing comp id: "
+                        + UUIDUtils.fromBigInteger(compId));
+
+            // Check whether this component is identical to last added
+            if (coreHash.equals(lastAddComp.getComponentCoreHash())
+                    && component.getName().equals(lastAddComp.getName())
+                    && component.getCreator().equals(lastAddComp.getCreator())
+                    && component.getDescription().equals(lastAddComp.getDescription())
+                    && rightsHash.equals(lastAddComp.getRightsHash())
+                    && component.getExecutableComponent().getURI().equals(lastAddComp.getUri())
+                    && component.getTags().getTags().containsAll(lastAddComp.getTags())
+                    && lastAddComp.getTags().containsAll(component.getTags().getTags())) {
+
+                // Component identical to last inserted version, get its version and return info to user
+                int qCompVersion = getComponentVersionCount(compId, conn);
+
+                joResult.put("uuid", UUIDUtils.fromBigInteger(compId).toString());
+                joResult.put("version", qCompVersion);
+
+                // Record the event
+                addEvent(SCEvent.COMPONENT_UPLOADED, uid, null, compId, null, joResult, conn);
+
+                logger.fine(String.format("Ignoring repeated upload of component %s, version %d",
+                        joResult.getString("uuid"), qCompVersion));
+
+                return joResult;
             }
-
-            // Compute the MD5 hash for the context file
-            final BigInteger md5 = new BigInteger(Crypto.createMD5Hash(tmpFile));
-
-            sortedMap.put(md5, new ContextFile(ctxFileName, tmpFile, context.getValue()));
         }
 
-        return sortedMap;
-    }
+        // Insert this component version into the DB
+        long timestamp = addComponent(compId, coreHash, rightsHash, contextHashes, component, conn);
 
-    /**
-     * Checks whether a user is active (i.e. user exists and is not deleted) or not
-     *
-     * @param userId The user id
-     * @param conn The DB connection to use
-     * @return True if user exists and is not deleted, False if user exists and is marked as deleted, null if user does not exist
-     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
-     */
-    protected Boolean isUserActive(BigInteger userId, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_USER_GET_DELETED).trim();
+        // Insert the user -> component mapping
+        String sqlQuery = properties.getProperty(DBProperties.Q_USER_COMPONENT_ADD).trim();
         PreparedStatement ps = null;
-
         try {
             ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(userId));
-            ResultSet rs = ps.executeQuery();
+            ps.setBigDecimal(1, new BigDecimal(uid));
+            ps.setBigDecimal(2, new BigDecimal(compId));
+            ps.setTimestamp(3, new Timestamp(timestamp));
 
-            return rs.next() ? !rs.getBoolean(1) : null;
+            ps.executeUpdate();
         }
         finally {
             closeStatement(ps);
         }
-    }
 
-    /**
-     * Checks whether a group is active (i.e. group exists and is not deleted) or not
-     *
-     * @param groupId The group id
-     * @param conn The DB connection to use
-     * @return True if group exists and is not deleted, False if group exists and is marked as deleted, null if group does not exist
-     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
-     */
-    protected Boolean isGroupActive(BigInteger groupId, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_GROUP_GET_DELETED).trim();
-        PreparedStatement ps = null;
+        if (version == null)
+            version = getComponentVersionCount(compId, conn);
 
+        // Record this version as the latest uploaded by the user
+        sqlQuery = properties.getProperty(DBProperties.Q_COMP_LATEST_UPDATE).trim();
         try {
             ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(groupId));
-            ResultSet rs = ps.executeQuery();
+            ps.setBigDecimal(1, new BigDecimal(compId));
+            ps.setBigDecimal(2, new BigDecimal(uid));
+            ps.setInt(3, version);
+            ps.setTimestamp(4, new Timestamp(timestamp));
+
+            ps.executeUpdate();
+        }
+        finally {
+            closeStatement(ps);
+        }
+
+        // Pre-render the component descriptor in the supported formats
+        addRenderings(DBProperties.Q_COMP_ADD_RENDERING, compId, timestamp,
+                renderComponentModel(component.getExecutableComponent().getModel(),
+                        UUIDUtils.fromBigInteger(compId), version), conn);
+
+        joResult.put("uuid", UUIDUtils.fromBigInteger(compId).toString());
+        joResult.put("version", version);
+
+        // Record the event
+        addEvent(SCEvent.COMPONENT_UPLOADED, uid, null, compId, null, joResult, conn);
+
+        return joResult;
+    }
+
+    /**
+     * Retrieves and calculates hash signature for the set of component context files
+     *
+     * @param contexts The context files
+     * @param fetches Receives the fetches of the remote contexts, to be released once the contexts are stored
+     * @return A map holding the sorted hash values and File references of the context files
+     * @throws IOException Thrown if a context cannot be retrieved
+     */
+    protected SortedMap<BigInteger, ContextFile> retrieveContextsAndComputeHashes(Map<URL, String> contexts,
+            Collection<Future<ContextFile>> fetches) throws IOException {
+
+        List<ContextFile> contextFiles = new ArrayList<ContextFile>(contexts.size());
+        for (Map.Entry<URL, String> context : contexts.entrySet())
+            contextFiles.add(new ContextFile(context.getKey(), context.getValue()));
+
+        return retrieveContextsAndComputeHashes(contextFiles, fetches);
+    }
+
+    /**
+     * Retrieves and calculates hash signature for the set of component context files.
+     * Staged contexts are used as they are.
+     *
+     * @param contexts The context files
+     * @param fetches Receives the fetches of the remote contexts, to be released once the contexts are stored
+     * @return A map holding the sorted hash values and the staged context files
+     * @throws IOException Thrown if a context cannot be retrieved
+     */
+    protected SortedMap<BigInteger, ContextFile> retrieveContextsAndComputeHashes(Collection<ContextFile> contexts,
+            Collection<Future<ContextFile>> fetches) throws IOException {
+
+        SortedMap<BigInteger, ContextFile> sortedMap = new TreeMap<BigInteger, ContextFile>();
+
+        // Start retrieving all the remote contexts at once
+        List<URL> urls = new ArrayList<URL>();
+        for (ContextFile context : contexts)
+            if (!context.isStaged())
+                urls.add(context.getUrl());
+        Map<URL, Future<ContextFile>> fetched = contextFetcher.fetchAll(urls);
+        fetches.addAll(fetched.values());
+
+        for (ContextFile context : contexts) {
+            if (context.isStaged()) {
+                sortedMap.put(context.getMD5(), context);
+                continue;
+            }
+
+            String ctxFileName = context.getFileName();
+
+            logger.finer("Processing context file: " + ((ctxFileName.length() > 0) ? ctxFileName : "<unnamed>"));
+
+            ContextFile retrieved = ContextFetcher.getResult(fetched.get(context.getUrl()));
+            String contentType = (context.getContentType() != null) ?
+                    context.getContentType() : retrieved.getContentType();
+
+            sortedMap.put(retrieved.getMD5(),
+                    new ContextFile(ctxFileName, retrieved.getFile(), contentType, retrieved.getMD5()));
+        }
+
+        return sortedMap;
+    }
+
+    /**
+     * Checks whether an error ended the current transaction rather than failing a single statement:
+     * connection errors (SQLState class 08), and deadlocks or serialization failures, which roll
+     * the whole transaction back (SQLState 40001, MySQL error 1213)
+     *
+     * @param e The error
+     * @return True if the transaction can no longer be used
+     */
+    protected static boolean isTransactionLost(SQLException e) {
+        String sqlState = e.getSQLState();
+
+        return (sqlState != null && (sqlState.startsWith("08") || sqlState.equals("40001"))) ||
+                e.getErrorCode() == 1213;
+    }
+
+    /**
+     * Checks whether a user is active (i.e. user exists and is not deleted) or not
+     *
+     * @param userId The user id
+     * @param conn The DB connection to use
+     * @return True if user exists and is not deleted, False if user exists and is marked as deleted, null if user does not exist
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected Boolean isUserActive(BigInteger userId, Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_USER_GET_DELETED).trim();
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(userId));
+            ResultSet rs = ps.executeQuery();
+
+            return rs.next() ? !rs.getBoolean(1) : null;
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Checks whether a group is active (i.e. group exists and is not deleted) or not
+     *
+     * @param groupId The group id
+     * @param conn The DB connection to use
+     * @return True if group exists and is not deleted, False if group exists and is marked as deleted, null if group does not exist
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected Boolean isGroupActive(BigInteger groupId, Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_GROUP_GET_DELETED).trim();
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(groupId));
+            ResultSet rs = ps.executeQuery();
 
             return rs.next() ? !rs.getBoolean(1) : null;
         }
@@ -2275,7 +3960,7 @@ public class SQLLink implements BackendStoreLink {
      * @throws SQLException Thrown if an error occurred while communicating with the SQL server
      */
     protected Integer getComponentVersionCount(BigInteger compId, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_VERCOUNT).trim();
+        String sqlQuery = getVersionQuery(DBProperties.Q_COMP_GET_VERCOUNT, VersionBackfill.Table.COMPONENT);
         PreparedStatement ps = null;
 
         try {
@@ -2298,137 +3983,615 @@ public class SQLLink implements BackendStoreLink {
      * @return The version count, or null if no flow with that id has been found
      * @throws SQLException Thrown if an error occurred while communicating with the SQL server
      */
-    protected Integer getFlowVersionCount(BigInteger flowId, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_FLOW_GET_VERCOUNT).trim();
-        PreparedStatement ps = null;
-
+    protected Integer getFlowVersionCount(BigInteger flowId, Connection conn) throws SQLException {
+        String sqlQuery = getVersionQuery(DBProperties.Q_FLOW_GET_VERCOUNT, VersionBackfill.Table.FLOW);
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(flowId));
+            ResultSet rs = ps.executeQuery();
+
+            return rs.next() ? rs.getInt(1) : null;
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Retrieves the rights text for a particular hash value
+     *
+     * @param rightsHash The hash value
+     * @param conn The DB connection to use
+     * @return The rights text, or null if the hash value is not known to the DB
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected String getRightsTextForHash(BigInteger rightsHash, Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_RIGHTS_GET_TEXT).trim();
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(rightsHash));
+            ResultSet rs = ps.executeQuery();
+
+            return rs.next() ? rs.getString(1) : null;
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Adds a rights text (license) to the DB
+     *
+     * @param rights The text of the license
+     * @param rightsHash The hash signature of the license if known, or null if unknown
+     * @param conn The DB connection to use
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected void addRights(String rights, BigInteger rightsHash, Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_RIGHTS_ADD).trim();
+
+        if (rightsHash == null)
+            rightsHash = new BigInteger(getRightsHash(rights));
+
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(rightsHash));
+            ps.setString(2, rights);
+            ps.executeUpdate();
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Retrieves the last added version for a particular component
+     *
+     * @param compId The component id
+     * @param conn The DB connection to use
+     * @return The last added component for the given component id, or null if none found
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected Component getLastAddedComponent(BigInteger compId, Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_LASTINSERT).trim();
+        Component component = null;
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(compId));
+            ResultSet rs = ps.executeQuery();
+
+            if (rs.next()) {
+                component = new Component();
+                component.setComponentId(compId);
+                component.setComponentCoreHash(rs.getBigDecimal("core_hash").toBigInteger());
+                component.setName(rs.getString("name"));
+                component.setDescription(rs.getString("description"));
+                component.setCreator(rs.getString("creator"));
+                component.setRightsHash(rs.getBigDecimal("rights_hash").toBigInteger());
+                component.setUri(rs.getString("uri"));
+
+                do {
+                    component.addTag(rs.getString("tag"));
+                } while (rs.next());
+            }
+
+            return component;
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Returns the component id based on the attributes that determine its uniqueness.
+     * This method should be overridden in case the meaning of what constitutes a unique component
+     * is changed from its default assumption that 'uri' values determine the uniqueness of a component.
+     * NOTE: If this method is overridden it is very likely that the SQL query associated with it needs to be changed
+     *
+     * @param component The component whose (subset of) attributes will be used to determine its uniqueness
+     * @param conn The DB connection to use
+     * @return The component id, or null if no matching component was found
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected BigInteger getComponentId(ExecutableComponentDescription component, Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_ID).trim();
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setString(1, component.getExecutableComponent().getURI());
+            ResultSet rs = ps.executeQuery();
+
+            return rs.next() ? rs.getBigDecimal(1).toBigInteger() : null;
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Wraps a descriptor retrieved from the DB and adds it to the descriptor cache
+     *
+     * @param key The "type/id/version" key of the component or flow
+     * @param data The descriptor
+     * @return The wrapped descriptor
+     * @throws IOException Thrown if the descriptor cannot be parsed
+     */
+    protected CachedDescriptor cacheDescriptor(String key, byte[] data) throws IOException {
+        CachedDescriptor descriptor = new CachedDescriptor(data, cacheDescriptorModels);
+
+        if (descriptorCache != null)
+            descriptorCache.put(key, descriptor,
+                    cacheDescriptorModels ? data.length * MODEL_WEIGHT_FACTOR : data.length);
+
+        return descriptor;
+    }
+
+    /**
+     * Returns a cached descriptor
+     *
+     * @param key The "type/id/version" key of the component or flow
+     * @return The descriptor, or null if not cached
+     */
+    protected CachedDescriptor getCachedDescriptor(String key) {
+        return (descriptorCache != null) ? (CachedDescriptor) descriptorCache.get(key) : null;
+    }
+
+    /**
+     * Returns a cached rendering
+     *
+     * @param key The "type/id/version/format" key of the rendering
+     * @return The rendering, or null if not cached
+     */
+    protected byte[] getCachedRendering(String key) {
+        return (descriptorCache != null) ? (byte[]) descriptorCache.get(key) : null;
+    }
+
+    /**
+     * Resolves a set of component versions to their version ids and core hashes, using one query
+     * for up to RESOLVE_CHUNK_SIZE distinct components
+     *
+     * @param componentVersions The component versions
+     * @param conn The DB connection to use
+     * @return The components found (component id, version id and core hash set), keyed on component version
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected Map<IdVersionPair, Component> resolveComponentVersions(Set<IdVersionPair> componentVersions,
+                                                                     Connection conn) throws SQLException {
+
+        Map<IdVersionPair, Component> resolved = new HashMap<IdVersionPair, Component>();
+
+        Map<BigInteger, UUID> componentIds = new LinkedHashMap<BigInteger, UUID>();
+        for (IdVersionPair componentVersion : componentVersions)
+            componentIds.put(UUIDUtils.toBigInteger(componentVersion.getId()), componentVersion.getId());
+
+        List<BigInteger> ids = new ArrayList<BigInteger>(componentIds.keySet());
+        String sqlQuery = getVersionQuery(DBProperties.Q_COMP_LIST_VERSIONS, VersionBackfill.Table.COMPONENT);
+
+        for (int start = 0; start < ids.size(); start += RESOLVE_CHUNK_SIZE) {
+            List<BigInteger> chunk = ids.subList(start, Math.min(start + RESOLVE_CHUNK_SIZE, ids.size()));
+
+            PreparedStatement ps = null;
+            try {
+                ps = conn.prepareStatement(String.format(sqlQuery, getPlaceholders(chunk.size())));
+                for (int i = 0; i < chunk.size(); i++)
+                    ps.setBigDecimal(i + 1, new BigDecimal(chunk.get(i)));
+                ResultSet rs = ps.executeQuery();
+
+                while (rs.next()) {
+                    BigInteger compId = rs.getBigDecimal(1).toBigInteger();
+
+                    IdVersionPair key = new IdVersionPair(componentIds.get(compId), rs.getInt(2));
+                    if (!componentVersions.contains(key)) continue;
+
+                    Component comp = new Component();
+                    comp.setComponentId(compId);
+                    comp.setComponentVersionId(rs.getTimestamp(3).getTime());
+                    comp.setComponentCoreHash(rs.getBigDecimal(4).toBigInteger());
+                    resolved.put(key, comp);
+                }
+            }
+            finally {
+                closeStatement(ps);
+            }
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Retrieves the owners of a set of component or flow versions, using one query
+     * for up to RESOLVE_CHUNK_SIZE distinct ids
+     *
+     * @param versions The component or flow versions
+     * @param queryKey The owner query to use (one of Q_COMP_LIST_OWNERS or Q_FLOW_LIST_OWNERS)
+     * @param table The table holding the versions
+     * @return The owners found, keyed on version
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected Map<IdVersionPair, UUID> listOwners(Collection<IdVersionPair> versions, String queryKey,
+                                                  VersionBackfill.Table table) throws BackendStoreException {
+
+        Map<IdVersionPair, UUID> owners = new HashMap<IdVersionPair, UUID>();
+        if (versions.isEmpty()) return owners;
+
+        Set<IdVersionPair> wanted = new HashSet<IdVersionPair>(versions);
+        Map<BigInteger, UUID> ids = new LinkedHashMap<BigInteger, UUID>();
+        for (IdVersionPair pair : wanted)
+            ids.put(UUIDUtils.toBigInteger(pair.getId()), pair.getId());
+
+        List<BigInteger> idList = new ArrayList<BigInteger>(ids.keySet());
+        String sqlQuery = getVersionQuery(queryKey, table);
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+
+            for (int start = 0; start < idList.size(); start += RESOLVE_CHUNK_SIZE) {
+                List<BigInteger> chunk = idList.subList(start, Math.min(start + RESOLVE_CHUNK_SIZE, idList.size()));
+
+                try {
+                    ps = conn.prepareStatement(String.format(sqlQuery, getPlaceholders(chunk.size())));
+                    for (int i = 0; i < chunk.size(); i++)
+                        ps.setBigDecimal(i + 1, new BigDecimal(chunk.get(i)));
+                    ResultSet rs = ps.executeQuery();
+
+                    while (rs.next()) {
+                        IdVersionPair key = new IdVersionPair(ids.get(rs.getBigDecimal(1).toBigInteger()), rs.getInt(2));
+                        if (wanted.contains(key))
+                            owners.put(key, UUIDUtils.fromBigInteger(rs.getBigDecimal(3).toBigInteger()));
+                    }
+                }
+                finally {
+                    closeStatement(ps);
+                    ps = null;
+                }
+            }
+
+            return owners;
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    /**
+     * Retrieves all the component or flow versions and their owners
+     *
+     * @param queryKey The query to use (one of Q_COMP_LIST_INDEXABLE or Q_FLOW_LIST_INDEXABLE)
+     * @param table The table holding the versions
+     * @return The owners, keyed on version
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected Map<IdVersionPair, UUID> listVersionOwners(String queryKey, VersionBackfill.Table table)
+            throws BackendStoreException {
+        Map<IdVersionPair, UUID> owners = new LinkedHashMap<IdVersionPair, UUID>();
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+            ps = prepareStreamingStatement(conn, getVersionQuery(queryKey, table));
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next())
+                owners.put(new IdVersionPair(UUIDUtils.fromBigInteger(rs.getBigDecimal(1).toBigInteger()), rs.getInt(2)),
+                        UUIDUtils.fromBigInteger(rs.getBigDecimal(3).toBigInteger()));
+
+            return owners;
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    /**
+     * Returns the groups of a user, including the PUBLIC group
+     *
+     * @param userId The user id, or null for unauthenticated requests (only PUBLIC is returned)
+     * @return The group ids
+     * @throws UserNotFoundException Thrown if the user does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     */
+    protected Set<UUID> getUserGroupIds(UUID userId) throws UserNotFoundException, BackendStoreException {
+        Set<UUID> groupIds = new HashSet<UUID>();
+
+        // Everyone is in the PUBLIC group
+        groupIds.add(PUBLIC_GROUP);
+        if (userId == null) return groupIds;
+
+        BigInteger uid = UUIDUtils.toBigInteger(userId);
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+
+            if (!Boolean.TRUE.equals(isUserActive(uid, conn)))
+                throw new UserNotFoundException(userId);
+
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_USER_GROUP_IDS).trim());
+            ps.setBigDecimal(1, new BigDecimal(uid));
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next())
+                groupIds.add(UUIDUtils.fromBigInteger(rs.getBigDecimal(1).toBigInteger()));
+
+            return groupIds;
+        }
+        catch (SQLException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new BackendStoreException(e);
+        }
+        finally {
+            releaseConnection(conn, ps);
+        }
+    }
+
+    /**
+     * Indexes a component version for search, or removes it from the index if it no longer exists
+     *
+     * @param index The search index
+     * @param componentId The component id
+     * @param version The component version
+     * @param ownerId The owner, or null to look it up
+     * @return True if the version was indexed, false if it does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     * @throws IOException Thrown if the search index cannot be updated
+     */
+    protected boolean indexComponent(SearchIndex index, UUID componentId, int version, UUID ownerId)
+            throws BackendStoreException, IOException {
         try {
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(flowId));
-            ResultSet rs = ps.executeQuery();
+            ExecutableComponentDescription ecd = new RepositoryImpl(getComponent(componentId, version))
+                    .getAvailableExecutableComponentDescriptions().iterator().next();
 
-            return rs.next() ? rs.getInt(1) : null;
+            index.updateComponent(componentId, version,
+                    (ownerId != null) ? ownerId : getComponentOwner(componentId, version),
+                    getGroupIds(listComponentGroups(componentId, version)), ecd);
+
+            return true;
         }
-        finally {
-            closeStatement(ps);
+        catch (ComponentNotFoundException e) {
+            index.remove(SearchIndex.Type.COMPONENT, componentId, version);
+            return false;
         }
     }
 
     /**
-     * Retrieves the rights text for a particular hash value
+     * Indexes a flow version for search, or removes it from the index if it no longer exists
      *
-     * @param rightsHash The hash value
-     * @param conn The DB connection to use
-     * @return The rights text, or null if the hash value is not known to the DB
-     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     * @param index The search index
+     * @param flowId The flow id
+     * @param version The flow version
+     * @param ownerId The owner, or null to look it up
+     * @return True if the version was indexed, false if it does not exist
+     * @throws BackendStoreException Thrown if an error occurred while communicating with the backend
+     * @throws IOException Thrown if the search index cannot be updated
      */
-    protected String getRightsTextForHash(BigInteger rightsHash, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_RIGHTS_GET_TEXT).trim();
-        PreparedStatement ps = null;
-
+    protected boolean indexFlow(SearchIndex index, UUID flowId, int version, UUID ownerId)
+            throws BackendStoreException, IOException {
         try {
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(rightsHash));
-            ResultSet rs = ps.executeQuery();
+            FlowDescription fd = new RepositoryImpl(getFlow(flowId, version))
+                    .getAvailableFlowDescriptions().iterator().next();
 
-            return rs.next() ? rs.getString(1) : null;
+            index.updateFlow(flowId, version,
+                    (ownerId != null) ? ownerId : getFlowOwner(flowId, version),
+                    getGroupIds(listFlowGroups(flowId, version)), fd);
+
+            return true;
         }
-        finally {
-            closeStatement(ps);
+        catch (FlowNotFoundException e) {
+            index.remove(SearchIndex.Type.FLOW, flowId, version);
+            return false;
         }
     }
 
     /**
-     * Adds a rights text (license) to the DB
+     * Schedules the daily removal of the unreferenced blobs
      *
-     * @param rights The text of the license
-     * @param rightsHash The hash signature of the license if known, or null if unknown
-     * @param conn The DB connection to use
-     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     * @param sweepAge The age (ms) after which an unreferenced blob is removed
      */
-    protected void addRights(String rights, BigInteger rightsHash, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_RIGHTS_ADD).trim();
+    private void startBlobSweeper(final long sweepAge) {
+        blobSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sc-blob-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
-        if (rightsHash == null)
-            rightsHash = new BigInteger(getRightsHash(rights));
+        long interval = TimeUnit.DAYS.toMillis(1);
+        blobSweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    sweepBlobStore(System.currentTimeMillis() - sweepAge);
+                }
+                catch (BackendStoreException e) {
+                    logger.log(Level.WARNING, "Blob store sweep failed", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
 
-        PreparedStatement ps = null;
+    /**
+     * Computes the MD5 hash of a stored blob
+     *
+     * @param hash The blob hash
+     * @return The hash of the blob data, in the form used for the context hashes
+     * @throws IOException Thrown if the blob cannot be read
+     */
+    private BigInteger getBlobHash(String hash) throws IOException {
+        InputStream data = blobStore.get(hash);
         try {
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(rightsHash));
-            ps.setString(2, rights);
-            ps.executeUpdate();
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[65536];
+            int nRead;
+            while ((nRead = data.read(buffer)) > 0)
+                md5.update(buffer, 0, nRead);
+
+            return new BigInteger(md5.digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
         }
         finally {
-            closeStatement(ps);
+            data.close();
         }
     }
 
     /**
-     * Retrieves the last added version for a particular component
+     * Starts the thread that follows the change feed and re-indexes the versions that were uploaded
+     * or whose sharing changed. If the thread falls behind the feed, the index is rebuilt.
      *
-     * @param compId The component id
-     * @param conn The DB connection to use
-     * @return The last added component for the given component id, or null if none found
-     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     * @param index The search index
+     * @param feed The change feed
      */
-    protected Component getLastAddedComponent(BigInteger compId, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_LASTINSERT).trim();
-        Component component = null;
-        PreparedStatement ps = null;
+    private void startSearchIndexer(final SearchIndex index, final ChangeFeed feed) {
+        searchIndexer = new Thread(new Runnable() {
+            public void run() {
+                String token = feed.getToken();
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        ChangeFeed.Batch batch = feed.read(token, 500, 60000);
+                        token = batch.getToken();
+
+                        if (batch.isReset()) {
+                            logger.warning("The search indexer fell behind the change feed, rebuilding the search index");
+                            rebuildSearchIndex();
+                            continue;
+                        }
+
+                        boolean updated = false;
+                        for (ChangeFeed.Entry entry : batch.getEntries())
+                            updated |= indexEvent(index, entry);
+
+                        if (updated)
+                            index.flush();
+                    }
+                    catch (InterruptedException e) {
+                        break;
+                    }
+                    catch (Exception e) {
+                        logger.log(Level.SEVERE, "Cannot update the search index", e);
+                    }
+                }
+            }
+        }, "sc-search-indexer");
+        searchIndexer.setDaemon(true);
+        searchIndexer.start();
+    }
 
+    /**
+     * Re-indexes the version affected by an event, if any
+     *
+     * @return True if the index was updated
+     */
+    private boolean indexEvent(SearchIndex index, ChangeFeed.Entry entry) {
         try {
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setBigDecimal(1, new BigDecimal(compId));
-            ResultSet rs = ps.executeQuery();
+            JSONObject joMeta = entry.getMetadata();
+            if (joMeta == null || !joMeta.has("version")) return false;
+
+            switch (entry.getEvent()) {
+                case COMPONENT_UPLOADED:
+                case COMPONENT_SHARED:
+                case COMPONENT_UNSHARED:
+                    indexComponent(index, entry.getComponentId(), joMeta.getInt("version"), null);
+                    return true;
+
+                case FLOW_UPLOADED:
+                case FLOW_SHARED:
+                case FLOW_UNSHARED:
+                    indexFlow(index, entry.getFlowId(), joMeta.getInt("version"), null);
+                    return true;
+
+                default:
+                    return false;
+            }
+        }
+        catch (Exception e) {
+            // Only this version is missed; a rebuild picks it up
+            logger.log(Level.WARNING, "Cannot index the version affected by event " + entry.getEvent(), e);
+            return false;
+        }
+    }
 
-            if (rs.next()) {
-                component = new Component();
-                component.setComponentId(compId);
-                component.setComponentCoreHash(rs.getBigDecimal("core_hash").toBigInteger());
-                component.setName(rs.getString("name"));
-                component.setDescription(rs.getString("description"));
-                component.setCreator(rs.getString("creator"));
-                component.setRightsHash(rs.getBigDecimal("rights_hash").toBigInteger());
-                component.setUri(rs.getString("uri"));
+    private void closeSearchIndex() {
+        if (searchIndexer != null) {
+            searchIndexer.interrupt();
+            try {
+                searchIndexer.join(10000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            searchIndexer = null;
+        }
 
-                do {
-                    component.addTag(rs.getString("tag"));
-                } while (rs.next());
+        if (searchIndex != null) {
+            try {
+                searchIndex.close();
+            }
+            catch (IOException e) {
+                logger.log(Level.WARNING, null, e);
             }
+            searchIndex = null;
+        }
+    }
 
-            return component;
+    private static List<UUID> getGroupIds(JSONArray jaGroups) throws BackendStoreException {
+        List<UUID> groupIds = new ArrayList<UUID>(jaGroups.length());
+
+        try {
+            for (int i = 0, iMax = jaGroups.length(); i < iMax; i++)
+                groupIds.add(UUID.fromString(jaGroups.getJSONObject(i).getString("uuid")));
         }
-        finally {
-            closeStatement(ps);
+        catch (JSONException e) {
+            throw new BackendStoreException(e);
         }
+
+        return groupIds;
     }
 
     /**
-     * Returns the component id based on the attributes that determine its uniqueness.
-     * This method should be overridden in case the meaning of what constitutes a unique component
-     * is changed from its default assumption that 'uri' values determine the uniqueness of a component.
-     * NOTE: If this method is overridden it is very likely that the SQL query associated with it needs to be changed
-     *
-     * @param component The component whose (subset of) attributes will be used to determine its uniqueness
-     * @param conn The DB connection to use
-     * @return The component id, or null if no matching component was found
-     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     * Returns the metadata identifying a component or flow version in an event
      */
-    protected BigInteger getComponentId(ExecutableComponentDescription component, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_ID).trim();
-        PreparedStatement ps = null;
+    private static JSONObject getVersionMetadata(UUID id, int version) {
+        Map<String, Object> metadata = new HashMap<String, Object>();
+        metadata.put("uuid", id.toString());
+        metadata.put("version", version);
 
-        try {
-            ps = conn.prepareStatement(sqlQuery);
-            ps.setString(1, component.getExecutableComponent().getURI());
-            ResultSet rs = ps.executeQuery();
+        return new JSONObject(metadata);
+    }
 
-            return rs.next() ? rs.getBigDecimal(1).toBigInteger() : null;
-        }
-        finally {
-            closeStatement(ps);
-        }
+    /**
+     * Builds a comma separated list of JDBC placeholders
+     *
+     * @param count The number of placeholders
+     * @return The placeholder list
+     */
+    protected static String getPlaceholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            placeholders.append((i == 0) ? "?" : ", ?");
+
+        return placeholders.toString();
     }
 
     /**
@@ -2441,13 +4604,13 @@ public class SQLLink implements BackendStoreLink {
      * @throws SQLException Thrown if an error occurred while communicating with the SQL server
      */
     protected Long getComponentVersionId(BigInteger componentId, int version, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_COMP_GET_VERID).trim();
+        String sqlQuery = getVersionQuery(DBProperties.Q_COMP_GET_VERID, VersionBackfill.Table.COMPONENT);
         PreparedStatement ps = null;
 
         try {
             ps = conn.prepareStatement(sqlQuery);
             ps.setBigDecimal(1, new BigDecimal(componentId));
-            ps.setInt(2, version-1);
+            ps.setInt(2, version);
             ResultSet rs = ps.executeQuery();
 
             return rs.next() ? rs.getTimestamp(1).getTime() : null;
@@ -2486,17 +4649,21 @@ public class SQLLink implements BackendStoreLink {
     }
 
     /**
-     * Retrieves the specified component context for a particular component version
+     * Retrieves the specified component context for a particular component version.
+     * Contexts kept in the blob store are read from there. Otherwise the data of the context is read
+     * from the DB, through one streamed query, as the context data stream is consumed, using the given connection;
+     * in that case closing the context data stream releases the connection.
      *
      * @param componentId The component id
      * @param verId The component version id
      * @param ctxHash The context hash
      * @param conn The DB connection to use
-     * @return The component context
+     * @return The component context, or null if no results were obtained
      * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     * @throws IOException Thrown if the context cannot be read from the blob store
      */
     protected ComponentContext getComponentContext(BigInteger componentId, long verId, BigInteger ctxHash,
-                                                   Connection conn) throws SQLException {
+                                                   Connection conn) throws SQLException, IOException {
         String sqlQuery = properties.getProperty(DBProperties.Q_COMP_CONTEXT_GET).trim();
         PreparedStatement ps = null;
 
@@ -2507,7 +4674,22 @@ public class SQLLink implements BackendStoreLink {
             ps.setBigDecimal(3, new BigDecimal(ctxHash));
             ResultSet rs = ps.executeQuery();
 
-            return rs.next() ? new ComponentContext(rs.getString("mime_type"), rs.getBinaryStream("data")) : null;
+            if (!rs.next()) return null;
+
+            String mimeType = rs.getString("mime_type");
+            long size = rs.getLong("size");
+            if (rs.wasNull()) size = -1;
+
+            if (rs.getBoolean("external")) {
+                if (blobStore == null)
+                    throw new IOException("No blob store is configured for externally stored contexts");
+
+                String hash = Crypto.toHexString(ctxHash.toByteArray());
+
+                return new ComponentContext(mimeType, blobStore.getSize(hash), blobStore.get(hash));
+            }
+
+            return new ComponentContext(mimeType, size, new ContextDataInputStream(ctxHash, size, conn));
         }
         finally {
             closeStatement(ps);
@@ -2525,24 +4707,41 @@ public class SQLLink implements BackendStoreLink {
      * @param conn The DB connection to use
      * @return The component version id assigned by the DB
      * @throws SQLException Thrown if an error occurred while communicating with the SQL server
-     * @throws FileNotFoundException Thrown if one of the specified contexts cannot be found
+     * @throws IOException Thrown if one of the specified contexts cannot be read or stored
      */
     protected long addComponent(BigInteger compId, BigInteger coreHash, BigInteger rightsHash,
                                 Map<BigInteger, ContextFile> contextHashes, ExecutableComponentDescription component,
-                                Connection conn) throws SQLException, FileNotFoundException {
+                                Connection conn) throws SQLException, IOException {
 
         long timestamp = getCurrentDateTime(conn).getTime();
         PreparedStatement ps = null;
 
         try {
-            // Insert the component contexts
-            String sqlQuery = properties.getProperty(DBProperties.Q_CONTEXT_ADD).trim();
+            // Insert the component contexts (the data goes to the blob store, if one is configured)
+            String sqlQuery = properties.getProperty((blobStore != null) ?
+                    DBProperties.Q_CONTEXT_ADD_EXTERNAL : DBProperties.Q_CONTEXT_ADD).trim();
             ps = conn.prepareStatement(sqlQuery);
             for (Map.Entry<BigInteger, ContextFile> context : contextHashes.entrySet()) {
                 if (!hasContext(context.getKey(), conn)) {
                     ps.setBigDecimal(1, new BigDecimal(context.getKey()));
-                    File file = context.getValue().getFile();
-                    ps.setBinaryStream(2, new FileInputStream(file), (int)file.length());
+                    ContextFile contextFile = context.getValue();
+                    long size = contextFile.getSize();
+                    ps.setLong(2, size);
+                    if (blobStore != null) {
+                        String hash = Crypto.toHexString(context.getKey().toByteArray());
+                        if (contextFile.getFile() != null)
+                            blobStore.put(hash, contextFile.getFile());
+                        else {
+                            InputStream data = contextFile.openStream();
+                            try {
+                                blobStore.put(hash, data);
+                            }
+                            finally {
+                                data.close();
+                            }
+                        }
+                    } else
+                        ps.setBinaryStream(3, contextFile.openStream(), (int) size);
                     ps.addBatch();
                 }
             }
@@ -2598,7 +4797,7 @@ public class SQLLink implements BackendStoreLink {
 
         try {
             // Insert this component version into the DB
-            String sqlQuery = properties.getProperty(DBProperties.Q_COMP_ADD).trim();
+            String sqlQuery = getVersionQuery(DBProperties.Q_COMP_ADD, VersionBackfill.Table.COMPONENT);
             ps = conn.prepareStatement(sqlQuery);
             ps.setBigDecimal(1, new BigDecimal(compId));
             ps.setTimestamp(2, new Timestamp(timestamp));
@@ -2608,6 +4807,7 @@ public class SQLLink implements BackendStoreLink {
             ps.setTimestamp(6, new Timestamp(component.getCreationDate().getTime()));
             ps.setBigDecimal(7, new BigDecimal(rightsHash));
             ps.setString(8, component.getExecutableComponent().getURI());
+            ps.setBigDecimal(9, new BigDecimal(compId));
             ps.executeUpdate();
         }
         finally {
@@ -2886,13 +5086,13 @@ public class SQLLink implements BackendStoreLink {
      * @throws SQLException Thrown if an error occurred while communicating with the SQL server
      */
     protected Long getFlowVersionId(BigInteger flowId, int version, Connection conn) throws SQLException {
-        String sqlQuery = properties.getProperty(DBProperties.Q_FLOW_GET_VERID).trim();
+        String sqlQuery = getVersionQuery(DBProperties.Q_FLOW_GET_VERID, VersionBackfill.Table.FLOW);
         PreparedStatement ps = null;
 
         try {
             ps = conn.prepareStatement(sqlQuery);
             ps.setBigDecimal(1, new BigDecimal(flowId));
-            ps.setInt(2, version-1);
+            ps.setInt(2, version);
             ResultSet rs = ps.executeQuery();
 
             return rs.next() ? rs.getTimestamp(1).getTime() : null;
@@ -2946,7 +5146,7 @@ public class SQLLink implements BackendStoreLink {
 
         try {
             // Insert this flow version into the DB
-            String sqlQuery = properties.getProperty(DBProperties.Q_FLOW_ADD).trim();
+            String sqlQuery = getVersionQuery(DBProperties.Q_FLOW_ADD, VersionBackfill.Table.FLOW);
             ps = conn.prepareStatement(sqlQuery);
             ps.setBigDecimal(1, new BigDecimal(flowId));
             ps.setTimestamp(2, new Timestamp(timestamp));
@@ -2956,6 +5156,7 @@ public class SQLLink implements BackendStoreLink {
             ps.setTimestamp(6, new Timestamp(flow.getCreationDate().getTime()));
             ps.setBigDecimal(7, new BigDecimal(rightsHash));
             ps.setString(8, flow.getFlowComponent().getURI());
+            ps.setBigDecimal(9, new BigDecimal(flowId));
             ps.executeUpdate();
         }
         finally {
@@ -3014,59 +5215,128 @@ public class SQLLink implements BackendStoreLink {
     }
 
     /**
-     * Adds a new event
+     * Stores the pre-rendered descriptors of a component or flow version
      *
-     * @param eventCode The event code
-     * @param userId The user id (or null if not applicable)
-     * @param groupId The group id (or null if not applicable)
-     * @param compId The component id (or null if not applicable)
-     * @param flowId The flow id (or null if not applicable)
-     * @param metadata The event metadata (or null)
+     * @param queryKey The key of the insert query (component or flow)
+     * @param id The component or flow id
+     * @param verId The version id
+     * @param renderings The renderings, keyed by format
      * @param conn The DB connection to use
      * @throws SQLException Thrown if an error occurred while communicating with the SQL server
      */
-    protected void addEvent(SCEvent eventCode, BigInteger userId, BigInteger groupId, BigInteger compId,
-                            BigInteger flowId, JSONObject metadata, Connection conn) throws SQLException {
+    protected void addRenderings(String queryKey, BigInteger id, long verId, Map<String, byte[]> renderings,
+                                 Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(queryKey).trim();
+        PreparedStatement ps = null;
+
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            for (Map.Entry<String, byte[]> rendering : renderings.entrySet()) {
+                ps.setBigDecimal(1, new BigDecimal(id));
+                ps.setTimestamp(2, new Timestamp(verId));
+                ps.setString(3, rendering.getKey());
+                ps.setBytes(4, rendering.getValue());
+                ps.setInt(5, rendering.getValue().length);
+                ps.setInt(6, Tools.countPlaceholders(rendering.getValue()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
 
-        String sqlQuery = properties.getProperty(DBProperties.Q_EVENT_ADD).trim();
+    /**
+     * Retrieves a pre-rendered descriptor of a component or flow version
+     *
+     * @param queryKey The key of the select query (component or flow)
+     * @param id The component or flow id
+     * @param verId The version id
+     * @param format The format
+     * @param conn The DB connection to use
+     * @return The rendering, or null if not available
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected byte[] getRendering(String queryKey, BigInteger id, long verId, String format, Connection conn)
+            throws SQLException {
+        String sqlQuery = properties.getProperty(queryKey).trim();
         PreparedStatement ps = null;
 
         try {
             ps = conn.prepareStatement(sqlQuery);
-            ps.setInt(1, eventCode.getEventCode());
+            ps.setBigDecimal(1, new BigDecimal(id));
+            ps.setTimestamp(2, new Timestamp(verId));
+            ps.setString(3, format);
+            ResultSet rs = ps.executeQuery();
 
-            if (userId != null)
-                ps.setBigDecimal(2, new BigDecimal(userId));
-            else
-                ps.setNull(2, Types.DECIMAL);
+            return rs.next() ? rs.getBytes(1) : null;
+        }
+        finally {
+            closeStatement(ps);
+        }
+    }
 
-            if (groupId != null)
-                ps.setBigDecimal(3, new BigDecimal(groupId));
-            else
-                ps.setNull(3, Types.DECIMAL);
+    /**
+     * Retrieves the length of a pre-rendered descriptor of a component or flow version once sent
+     *
+     * @param queryKey The key of the select query (component or flow)
+     * @param id The component or flow id
+     * @param verId The version id
+     * @param format The format
+     * @param baseUrl The base access URL that replaces Tools.BASE_URL_PLACEHOLDER
+     * @param conn The DB connection to use
+     * @return The length in bytes, or -1 if the rendering or its length is not available
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected long getRenderingLength(String queryKey, BigInteger id, long verId, String format, String baseUrl,
+                                      Connection conn) throws SQLException {
+        String sqlQuery = properties.getProperty(queryKey).trim();
+        PreparedStatement ps = null;
 
-            if (compId != null)
-                ps.setBigDecimal(4, new BigDecimal(compId));
-            else
-                ps.setNull(4, Types.DECIMAL);
+        try {
+            ps = conn.prepareStatement(sqlQuery);
+            ps.setBigDecimal(1, new BigDecimal(id));
+            ps.setTimestamp(2, new Timestamp(verId));
+            ps.setString(3, format);
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next())
+                return -1;
 
-            if (flowId != null)
-                ps.setBigDecimal(5, new BigDecimal(flowId));
-            else
-                ps.setNull(5, Types.DECIMAL);
+            long size = rs.getLong(1);
+            if (rs.wasNull())
+                return -1;
 
-            if (metadata != null)
-                ps.setString(6, metadata.toString());
-            else
-                ps.setNull(6, Types.VARCHAR);
+            int placeholders = rs.getInt(2);
+            if (rs.wasNull())
+                return -1;
 
-            ps.executeUpdate();
+            return Tools.getRenderingLength(size, placeholders, baseUrl);
         }
         finally {
             closeStatement(ps);
         }
     }
 
+    /**
+     * Adds a new event
+     *
+     * @param eventCode The event code
+     * @param userId The user id (or null if not applicable)
+     * @param groupId The group id (or null if not applicable)
+     * @param compId The component id (or null if not applicable)
+     * @param flowId The flow id (or null if not applicable)
+     * @param metadata The event metadata (or null)
+     * @param conn The DB connection to use (the event is written by the event journal, according to its mode,
+     *             once the transaction commits)
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    protected void addEvent(SCEvent eventCode, BigInteger userId, BigInteger groupId, BigInteger compId,
+                            BigInteger flowId, JSONObject metadata, Connection conn) throws SQLException {
+
+        eventJournal.add(eventCode, userId, groupId, compId, flowId, metadata, conn);
+    }
+
     /**
      * Get the role id for a role name
      *
@@ -3370,27 +5640,171 @@ public class SQLLink implements BackendStoreLink {
         }
     }
 
-    protected class ContextFile {
-        private final String fileName;
-        private final File file;
-        private final String contentType;
+    /**
+     * Entry handler collecting the entries of a listing
+     */
+    protected static class CollectingEntryHandler implements EntryHandler {
+        private final JSONArray entries = new JSONArray();
+
+        public void handleEntry(JSONObject entry) {
+            entries.put(entry);
+        }
+
+        public JSONArray getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * A component or flow descriptor, as stored in the DB
+     */
+    protected static class CachedDescriptor {
+        private final byte[] data;
+        private final Model model;
+
+        public CachedDescriptor(byte[] data, boolean parse) throws IOException {
+            this.data = data;
+            this.model = parse ? parse() : null;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Returns the descriptor model. The caller is free to modify the model returned.
+         *
+         * @return The model
+         * @throws IOException Thrown if the descriptor cannot be parsed
+         */
+        public Model getModel() throws IOException {
+            if (model == null)
+                return parse();
+
+            Model copy = ModelFactory.createDefaultModel();
+            copy.setNsPrefixes(model);
+            copy.add(model);
+
+            return copy;
+        }
+
+        private Model parse() throws IOException {
+            return ModelUtils.getModel(new ByteArrayInputStream(data), null);
+        }
+    }
+
+
+    /**
+     * Input stream over the data of a context stored in the DB. The data is read from a single streamed
+     * result set, as it is consumed, so that large contexts are read once and never held in memory in their
+     * entirety by the server. Skipping before the first read moves the start of the query instead of reading.
+     * The connection is dedicated to the stream until it is closed; closing the stream releases it.
+     */
+    protected class ContextDataInputStream extends InputStream {
+        private final BigInteger ctxHash;
+        private final long size;
+        private Connection conn;
+        private PreparedStatement ps = null;
+        private ResultSet rs = null;
+
+        private InputStream data = null;
+        private long position = 0;
+        private boolean eof = false;
+
+        public ContextDataInputStream(BigInteger ctxHash, long size, Connection conn) {
+            this.ctxHash = ctxHash;
+            this.size = size;
+            this.conn = conn;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == 1) ? (b[0] & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (eof || (size >= 0 && position >= size)) return -1;
+
+            if (data == null)
+                open();
+
+            int n = data.read(b, off, len);
+            if (n < 0) {
+                if (size >= 0)
+                    throw new IOException(String.format("Unexpected end of context data at %,d / %,d bytes",
+                            position, size));
+                eof = true;
+                return -1;
+            }
+
+            position += n;
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) return 0;
+
+            long skipped = (size >= 0) ? Math.min(n, size - position) : n;
+            if (skipped <= 0) return 0;
+
+            // Once the data is being read, skipping has to read through it
+            if (data != null)
+                skipped = data.skip(skipped);
 
-        public ContextFile(String fileName, File file, String contentType) {
-            this.fileName = fileName;
-            this.file = file;
-            this.contentType = contentType;
+            position += skipped;
+
+            return skipped;
         }
 
-        public String getFileName() {
-            return fileName;
+        @Override
+        public int available() throws IOException {
+            return (data != null) ? data.available() : 0;
         }
 
-        public File getFile() {
-            return file;
+        @Override
+        public void close() throws IOException {
+            if (conn != null) {
+                try {
+                    if (rs != null) rs.close();
+                }
+                catch (SQLException e) {
+                    logger.log(Level.WARNING, null, e);
+                }
+
+                releaseConnection(conn, ps);
+                conn = null;
+                ps = null;
+                rs = null;
+                data = null;
+            }
         }
 
-        public String getContentType() {
-            return contentType;
+        private void open() throws IOException {
+            if (conn == null)
+                throw new IOException("Stream closed");
+
+            try {
+                // Have the driver stream the row instead of reading the whole result first
+                ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_CONTEXT_GET_DATA).trim(),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(Integer.MIN_VALUE);
+                ps.setLong(1, position + 1);
+                ps.setBigDecimal(2, new BigDecimal(ctxHash));
+
+                rs = ps.executeQuery();
+                data = rs.next() ? rs.getBinaryStream(1) : null;
+                if (data == null)
+                    data = new ByteArrayInputStream(new byte[0]);
+            }
+            catch (SQLException e) {
+                logger.log(Level.SEVERE, null, e);
+                throw new IOException(e);
+            }
         }
     }
 }
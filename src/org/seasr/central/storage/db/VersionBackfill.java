@@ -0,0 +1,350 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.db;
+
+import org.seasr.central.storage.db.properties.DBProperties;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Backfills the version numbers of the components and flows stored before sc_component and sc_flow had a
+ * version column.
+ *
+ * A table is migrated until it has the unique (uuid, version) index, which is added last, so a backfill
+ * interrupted at any point is simply run again at the next startup. The backfill runs in the background,
+ * a batch of uuids at a time (in uuid order), and numbers the uploads of each uuid in primary key order
+ * (by upload time). Once all the versions are set, the sc_*_latest tables are filled, the column is made
+ * mandatory and the unique index is added. Until then, isPending() tells SQLLink to use the derived
+ * version lookups, which count the earlier uploads instead of reading the version column.
+ *
+ * @author Boris Capitanu
+ */
+public class VersionBackfill {
+
+    /** The tables whose version numbers are backfilled */
+    public enum Table {
+        COMPONENT("sc_component", "comp_uuid",
+                DBProperties.Q_COMP_LATEST_BACKFILL, DBProperties.Q_COMP_GROUP_LATEST_BACKFILL),
+        FLOW("sc_flow", "flow_uuid",
+                DBProperties.Q_FLOW_LATEST_BACKFILL, DBProperties.Q_FLOW_GROUP_LATEST_BACKFILL);
+
+        private final String name;
+        private final String idColumn;
+        private final String[] latestQueries;
+
+        private Table(String name, String idColumn, String... latestQueries) {
+            this.name = name;
+            this.idColumn = idColumn;
+            this.latestQueries = latestQueries;
+        }
+    }
+
+    private static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /** Lower than any uuid stored as DECIMAL(39) */
+    private static final BigDecimal MIN_ID = BigDecimal.TEN.pow(39).negate();
+
+    private final DataSource dataSource;
+    private final Properties properties;
+    private final int batchSize;
+    private final Logger logger;
+
+    /** The tables that do not have the unique (uuid, version) index yet */
+    private final Set<Table> pending = Collections.newSetFromMap(new ConcurrentHashMap<Table, Boolean>());
+
+    private final ScheduledExecutorService executor;
+
+
+    /**
+     * Finds the tables that still need to be migrated and, if any, starts the backfill in the background
+     *
+     * @param dataSource The connection pool
+     * @param properties The DB configuration properties (for the queries)
+     * @param batchSize The number of uuids whose versions are numbered per transaction
+     * @param logger The logger
+     * @throws SQLException Thrown if an error occurred while communicating with the SQL server
+     */
+    public VersionBackfill(DataSource dataSource, Properties properties, int batchSize, Logger logger)
+            throws SQLException {
+        this.dataSource = dataSource;
+        this.properties = properties;
+        this.batchSize = Math.max(1, batchSize);
+        this.logger = logger;
+
+        for (Table table : Table.values())
+            if (!isIndexed(table))
+                pending.add(table);
+
+        if (pending.isEmpty()) {
+            executor = null;
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sc-version-backfill");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    for (Table table : Table.values())
+                        if (pending.contains(table))
+                            backfill(table);
+
+                    executor.shutdown();
+                }
+                catch (Exception e) {
+                    VersionBackfill.this.logger.log(Level.SEVERE, "Version backfill failed, will retry", e);
+                }
+            }
+        }, 0, RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the backfill (it resumes at the next startup)
+     */
+    public void shutdown() {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * Checks whether the version numbers of a table are still being backfilled
+     *
+     * @param table The table
+     * @return True if the version column of the table cannot be relied upon yet, false otherwise
+     */
+    public boolean isPending(Table table) {
+        return pending.contains(table);
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private void backfill(Table table) throws SQLException {
+        logger.info(String.format("Backfilling the version numbers of table %s", table.name));
+
+        int updated = numberVersions(table);
+        if (updated < 0) return;
+
+        for (String queryKey : table.latestQueries)
+            execute(properties.getProperty(queryKey).trim());
+
+        // The unique index marks the end of the migration
+        execute(String.format(properties.getProperty(DBProperties.Q_VERSION_BACKFILL_FINISH).trim(),
+                table.name, table.idColumn));
+        pending.remove(table);
+
+        logger.info(String.format("Backfilled the version numbers of table %s (%d rows updated)", table.name, updated));
+    }
+
+    /**
+     * Numbers the uploads of each uuid, a batch of uuids per transaction. The rows whose version is already
+     * right (numbered by an earlier run, or inserted with a derived version number) are left alone.
+     *
+     * @return The number of rows updated, or -1 if the backfill was stopped
+     */
+    private int numberVersions(Table table) throws SQLException {
+        String idsQuery = String.format(properties.getProperty(DBProperties.Q_VERSION_BACKFILL_IDS).trim(),
+                table.name, table.idColumn);
+        String rowsQuery = String.format(properties.getProperty(DBProperties.Q_VERSION_BACKFILL_ROWS).trim(),
+                table.name, table.idColumn);
+        String updateQuery = String.format(properties.getProperty(DBProperties.Q_VERSION_BACKFILL_UPDATE).trim(),
+                table.name, table.idColumn);
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        int updated = 0;
+
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+
+            BigDecimal lastId = MIN_ID;
+
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    updated = -1;
+                    break;
+                }
+
+                ps = conn.prepareStatement(idsQuery);
+                ps.setBigDecimal(1, lastId);
+                ps.setInt(2, batchSize);
+                ResultSet rs = ps.executeQuery();
+                BigDecimal firstId = null;
+                while (rs.next()) {
+                    if (firstId == null) firstId = rs.getBigDecimal(1);
+                    lastId = rs.getBigDecimal(1);
+                }
+                ps.close();
+                ps = null;
+
+                if (firstId == null) break;
+
+                ps = conn.prepareStatement(rowsQuery);
+                ps.setBigDecimal(1, firstId);
+                ps.setBigDecimal(2, lastId);
+                rs = ps.executeQuery();
+
+                BigDecimal id = null;
+                int version = 0;
+                PreparedStatement psUpdate = conn.prepareStatement(updateQuery);
+                try {
+                    while (rs.next()) {
+                        BigDecimal rowId = rs.getBigDecimal(1);
+                        Timestamp uploadedAt = rs.getTimestamp(2);
+                        int rowVersion = rs.getInt(3);
+                        boolean missing = rs.wasNull();
+
+                        version = rowId.equals(id) ? version + 1 : 1;
+                        id = rowId;
+
+                        if (missing || rowVersion != version) {
+                            psUpdate.setInt(1, version);
+                            psUpdate.setBigDecimal(2, rowId);
+                            psUpdate.setTimestamp(3, uploadedAt);
+                            psUpdate.addBatch();
+                            updated++;
+                        }
+                    }
+                    ps.close();
+                    ps = null;
+
+                    psUpdate.executeBatch();
+                }
+                finally {
+                    psUpdate.close();
+                }
+
+                conn.commit();
+            }
+
+            conn.setAutoCommit(true);
+        }
+        catch (SQLException e) {
+            if (conn != null)
+                try {
+                    if (!conn.getAutoCommit()) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                }
+                catch (SQLException ex) {
+                    logger.log(Level.WARNING, null, ex);
+                }
+            throw e;
+        }
+        finally {
+            close(conn, ps);
+        }
+
+        return updated;
+    }
+
+    private boolean isIndexed(Table table) throws SQLException {
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(properties.getProperty(DBProperties.Q_VERSION_BACKFILL_INDEXED).trim());
+            ps.setString(1, table.name);
+            ResultSet rs = ps.executeQuery();
+
+            return rs.next() && rs.getInt(1) > 0;
+        }
+        finally {
+            close(conn, ps);
+        }
+    }
+
+    private void execute(String sqlQuery) throws SQLException {
+        Connection conn = null;
+        PreparedStatement ps = null;
+
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(sqlQuery);
+            ps.executeUpdate();
+        }
+        finally {
+            close(conn, ps);
+        }
+    }
+
+    private void close(Connection conn, PreparedStatement ps) {
+        if (ps != null)
+            try {
+                ps.close();
+            }
+            catch (SQLException e) {
+                logger.log(Level.WARNING, null, e);
+            }
+
+        if (conn != null)
+            try {
+                conn.close();
+            }
+            catch (SQLException e) {
+                logger.log(Level.WARNING, null, e);
+            }
+    }
+}
@@ -54,13 +54,51 @@ public abstract class DBProperties {
     public static final String LOG_FILE = "org.seasr.central.storage.db.logfile";
     public static final String LOG_LEVEL = "org.seasr.central.storage.db.loglevel";
 
+    public static final String CACHE_ENABLED = "org.seasr.central.storage.cache.enabled";
+    public static final String CACHE_MAX_ENTRIES = "org.seasr.central.storage.cache.max_entries";
+    public static final String CACHE_TTL = "org.seasr.central.storage.cache.ttl";
+
+    public static final String DESCRIPTOR_CACHE_MAX_BYTES = "org.seasr.central.storage.db.cache.descriptors.max_bytes";
+    public static final String DESCRIPTOR_CACHE_MODELS = "org.seasr.central.storage.db.cache.descriptors.models";
+
+    public static final String BLOB_STORE_DIR = "org.seasr.central.storage.db.blobstore.dir";
+    public static final String BLOB_STORE_SWEEP_AGE = "org.seasr.central.storage.db.blobstore.sweep_age";
+
+    public static final String UPLOAD_THREADS = "org.seasr.central.storage.db.upload.threads";
+    public static final String UPLOAD_CHUNK_SIZE = "org.seasr.central.storage.db.upload.chunk_size";
+
+    public static final String FETCH_THREADS = "org.seasr.central.storage.db.fetch.threads";
+    public static final String FETCH_MAX_PER_HOST = "org.seasr.central.storage.db.fetch.max_per_host";
+    public static final String FETCH_CONNECT_TIMEOUT = "org.seasr.central.storage.db.fetch.connect_timeout";
+    public static final String FETCH_READ_TIMEOUT = "org.seasr.central.storage.db.fetch.read_timeout";
+    public static final String FETCH_TOTAL_TIMEOUT = "org.seasr.central.storage.db.fetch.total_timeout";
+    public static final String FETCH_CACHE_DIR = "org.seasr.central.storage.db.fetch.cache.dir";
+    public static final String FETCH_CACHE_TTL = "org.seasr.central.storage.db.fetch.cache.ttl";
+    public static final String FETCH_CACHE_RETENTION = "org.seasr.central.storage.db.fetch.cache.retention";
+
+    public static final String STREAM_FETCH_SIZE = "org.seasr.central.storage.db.stream.fetch_size";
+
+    public static final String EVENT_JOURNAL_MODE = "org.seasr.central.storage.db.event.journal.mode";
+    public static final String EVENT_JOURNAL_QUEUE_SIZE = "org.seasr.central.storage.db.event.journal.queue_size";
+    public static final String EVENT_JOURNAL_BATCH_SIZE = "org.seasr.central.storage.db.event.journal.batch_size";
+    public static final String EVENT_JOURNAL_FLUSH_INTERVAL = "org.seasr.central.storage.db.event.journal.flush_interval";
+    public static final String EVENT_FEED_SIZE = "org.seasr.central.storage.db.event.feed.size";
+    public static final String EVENT_RETENTION = "org.seasr.central.storage.db.event.retention";
+    public static final String EVENT_ARCHIVE_DIR = "org.seasr.central.storage.db.event.archive.dir";
+    public static final String VERSION_BACKFILL_BATCH_SIZE = "org.seasr.central.storage.db.version.backfill.batch_size";
+
+    public static final String SEARCH_INDEX_DIR = "org.seasr.central.storage.db.search.index.dir";
+    public static final String SEARCH_REFRESH_INTERVAL = "org.seasr.central.storage.db.search.refresh_interval";
+    public static final String SEARCH_MAX_RESULTS = "org.seasr.central.storage.db.search.max_results";
+
     public static final String COMP_VER_COLS = "org.seasr.central.storage.db.sc_component.version";
     public static final String FLOW_VER_COLS = "org.seasr.central.storage.db.sc_flow.version";
 
     public static final String AUTH_SCHEMA = "org.seasr.central.storage.db.auth_schema";
     public static final String SC_SCHEMA = "org.seasr.central.storage.db.schema";
+    public static final String SC_SCHEMA_UPGRADE_PREFIX = "org.seasr.central.storage.db.schema.upgrade.";
 
-    public static final String Q_ERROR_MSG = "org.seasr.central.storage.db.querry.error_msg";
+    public static final String Q_ERROR_LIST = "org.seasr.central.storage.db.query.error.list";
 
     public static final String Q_ROLE_GET_ID = "org.seasr.central.storage.db.query.role.get.id";
     public static final String Q_ROLE_LIST = "org.seasr.central.storage.db.query.role.list";
@@ -79,24 +117,33 @@ public abstract class DBProperties {
     public static final String Q_USER_PASSWORDVALID = "org.seasr.central.storage.db.query.user.password.valid";
     public static final String Q_USER_COUNT = "org.seasr.central.storage.db.query.user.count";
     public static final String Q_USER_LIST = "org.seasr.central.storage.db.query.user.list";
+    public static final String Q_USER_LIST_AFTER = "org.seasr.central.storage.db.query.user.list.after";
     public static final String Q_USER_GROUP_LIST = "org.seasr.central.storage.db.query.user.group.list";
+    public static final String Q_USER_GROUP_LIST_AFTER = "org.seasr.central.storage.db.query.user.group.list.after";
     public static final String Q_USER_GROUP_ISMEMBER = "org.seasr.central.storage.db.query.user.group.is_member";
+    public static final String Q_USER_GROUP_FILTER = "org.seasr.central.storage.db.query.user.group.filter";
+    public static final String Q_USER_GROUP_IDS = "org.seasr.central.storage.db.query.user.group.ids";
     public static final String Q_USER_COMPONENT_ADD = "org.seasr.central.storage.db.query.user.component.add";
     public static final String Q_USER_COMPONENT_LIST_ALL = "org.seasr.central.storage.db.query.user.component.list.all";
     public static final String Q_USER_COMPONENT_LIST_LATEST = "org.seasr.central.storage.db.query.user.component.list.latest";
     public static final String Q_USER_COMPONENT_SHARING_LIST_ALL = "org.seasr.central.storage.db.query.user.component.sharing.list.all";
     public static final String Q_USER_COMPONENT_SHARING_LIST_ALL_ASUSER = "org.seasr.central.storage.db.query.user.component.sharing.list.all.as_user";
+    public static final String Q_USER_COMPONENT_SHARING_LIST_ALL_ASUSER_AFTER = "org.seasr.central.storage.db.query.user.component.sharing.list.all.as_user.after";
     public static final String Q_USER_COMPONENT_SHARING_LIST_LATEST_ASUSER = "org.seasr.central.storage.db.query.user.component.sharing.list.latest.as_user";
+    public static final String Q_USER_COMPONENT_SHARING_LIST_LATEST_ASUSER_AFTER = "org.seasr.central.storage.db.query.user.component.sharing.list.latest.as_user.after";
 
     public static final String Q_USER_FLOW_ADD = "org.seasr.central.storage.db.query.user.flow.add";
     public static final String Q_USER_FLOW_LIST_ALL = "org.seasr.central.storage.db.query.user.flow.list.all";
     public static final String Q_USER_FLOW_LIST_LATEST = "org.seasr.central.storage.db.query.user.flow.list.latest";
     public static final String Q_USER_FLOW_SHARING_LIST_ALL = "org.seasr.central.storage.db.query.user.flow.sharing.list.all";
     public static final String Q_USER_FLOW_SHARING_LIST_ALL_ASUSER = "org.seasr.central.storage.db.query.user.flow.sharing.list.all.as_user";
+    public static final String Q_USER_FLOW_SHARING_LIST_ALL_ASUSER_AFTER = "org.seasr.central.storage.db.query.user.flow.sharing.list.all.as_user.after";
     public static final String Q_USER_FLOW_SHARING_LIST_LATEST_ASUSER = "org.seasr.central.storage.db.query.user.flow.sharing.list.latest.as_user";
+    public static final String Q_USER_FLOW_SHARING_LIST_LATEST_ASUSER_AFTER = "org.seasr.central.storage.db.query.user.flow.sharing.list.latest.as_user.after";
 
     public static final String Q_GROUP_ADD = "org.seasr.central.storage.db.query.group.add";
     public static final String Q_GROUP_LIST = "org.seasr.central.storage.db.query.group.list";
+    public static final String Q_GROUP_LIST_AFTER = "org.seasr.central.storage.db.query.group.list.after";
     public static final String Q_GROUP_GET_UUID = "org.seasr.central.storage.db.query.group.get.uuid";
     public static final String Q_GROUP_GET_NAME = "org.seasr.central.storage.db.query.group.get.name";
     public static final String Q_GROUP_GET_PROFILE = "org.seasr.central.storage.db.query.group.get.profile";
@@ -106,15 +153,44 @@ public abstract class DBProperties {
 
     public static final String Q_GROUP_PENDING_ADD = "org.seasr.central.storage.db.query.group.pending.add";
     public static final String Q_GROUP_PENDING_LIST = "org.seasr.central.storage.db.query.group.pending.list";
+    public static final String Q_GROUP_PENDING_LIST_AFTER = "org.seasr.central.storage.db.query.group.pending.list.after";
     public static final String Q_GROUP_PENDING_DELETE = "org.seasr.central.storage.db.query.group.pending.delete";
     public static final String Q_GROUP_MEMBERS_ADD = "org.seasr.central.storage.db.query.group.members.add";
     public static final String Q_GROUP_MEMBERS_LIST = "org.seasr.central.storage.db.query.group.members.list";
+    public static final String Q_GROUP_MEMBERS_LIST_AFTER = "org.seasr.central.storage.db.query.group.members.list.after";
     public static final String Q_GROUP_COMPONENTS_LIST_ALL = "org.seasr.central.storage.db.query.group.components.list.all";
+    public static final String Q_GROUP_COMPONENTS_LIST_ALL_AFTER = "org.seasr.central.storage.db.query.group.components.list.all.after";
     public static final String Q_GROUP_COMPONENTS_LIST_LATEST = "org.seasr.central.storage.db.query.group.components.list.latest";
+    public static final String Q_GROUP_COMPONENTS_LIST_LATEST_AFTER = "org.seasr.central.storage.db.query.group.components.list.latest.after";
     public static final String Q_GROUP_FLOWS_LIST_ALL = "org.seasr.central.storage.db.query.group.flows.list.all";
+    public static final String Q_GROUP_FLOWS_LIST_ALL_AFTER = "org.seasr.central.storage.db.query.group.flows.list.all.after";
     public static final String Q_GROUP_FLOWS_LIST_LATEST = "org.seasr.central.storage.db.query.group.flows.list.latest";
+    public static final String Q_GROUP_FLOWS_LIST_LATEST_AFTER = "org.seasr.central.storage.db.query.group.flows.list.latest.after";
 
     public static final String Q_EVENT_ADD = "org.seasr.central.storage.db.query.event.add";
+    public static final String Q_EVENT_ADD_BATCH = "org.seasr.central.storage.db.query.event.add.batch";
+    public static final String Q_EVENT_OUTBOX_ADD = "org.seasr.central.storage.db.query.event.outbox.add";
+    public static final String Q_EVENT_OUTBOX_LIST = "org.seasr.central.storage.db.query.event.outbox.list";
+    public static final String Q_EVENT_OUTBOX_REMOVE = "org.seasr.central.storage.db.query.event.outbox.remove";
+    public static final String Q_EVENT_LIST = "org.seasr.central.storage.db.query.event.list";
+    public static final String Q_EVENT_LIST_CODES = "org.seasr.central.storage.db.query.event.list.codes";
+    public static final String Q_EVENT_PARTITION_CREATE = "org.seasr.central.storage.db.query.event.partition.create";
+    public static final String Q_EVENT_PARTITION_LIST = "org.seasr.central.storage.db.query.event.partition.list";
+    public static final String Q_EVENT_PARTITION_EXPORT = "org.seasr.central.storage.db.query.event.partition.export";
+    public static final String Q_EVENT_PARTITION_DROP = "org.seasr.central.storage.db.query.event.partition.drop";
+    public static final String Q_EVENT_LEGACY_EXISTS = "org.seasr.central.storage.db.query.event.legacy.exists";
+    public static final String Q_EVENT_LEGACY_RANGE = "org.seasr.central.storage.db.query.event.legacy.range";
+    public static final String Q_EVENT_LEGACY_MOVE = "org.seasr.central.storage.db.query.event.legacy.move";
+    public static final String Q_EVENT_LEGACY_REMOVE = "org.seasr.central.storage.db.query.event.legacy.remove";
+    public static final String Q_EVENT_LEGACY_RENAME = "org.seasr.central.storage.db.query.event.legacy.rename";
+
+    public static final String Q_VERSION_BACKFILL_INDEXED = "org.seasr.central.storage.db.query.version.backfill.indexed";
+    public static final String Q_VERSION_BACKFILL_IDS = "org.seasr.central.storage.db.query.version.backfill.ids";
+    public static final String Q_VERSION_BACKFILL_ROWS = "org.seasr.central.storage.db.query.version.backfill.rows";
+    public static final String Q_VERSION_BACKFILL_UPDATE = "org.seasr.central.storage.db.query.version.backfill.update";
+    public static final String Q_VERSION_BACKFILL_FINISH = "org.seasr.central.storage.db.query.version.backfill.finish";
+
+    public static final String DERIVED_SUFFIX = ".derived";
 
     public static final String Q_RIGHTS_ADD = "org.seasr.central.storage.db.query.rights.add";
     public static final String Q_RIGHTS_GET_TEXT = "org.seasr.central.storage.db.query.rights.get.text";
@@ -127,37 +203,65 @@ public abstract class DBProperties {
     public static final String Q_CORE_CONTEXT_ADD = "org.seasr.central.storage.db.query.core.context.add";
     public static final String Q_COMP_CONTEXT_ADD = "org.seasr.central.storage.db.query.component.context.add";
     public static final String Q_COMP_CONTEXT_GET = "org.seasr.central.storage.db.query.component.context.get";
+    public static final String Q_COMP_CONTEXT_EXISTS = "org.seasr.central.storage.db.query.component.context.exists";
     public static final String Q_COMP_ADD_DESCRIPTOR = "org.seasr.central.storage.db.query.component.add.descriptor";
     public static final String Q_COMP_GET_DESCRIPTOR = "org.seasr.central.storage.db.query.component.get.descriptor";
+    public static final String Q_COMP_ADD_RENDERING = "org.seasr.central.storage.db.query.component.add.rendering";
+    public static final String Q_COMP_GET_RENDERING = "org.seasr.central.storage.db.query.component.get.rendering";
+    public static final String Q_COMP_GET_RENDERING_LENGTH = "org.seasr.central.storage.db.query.component.get.rendering.length";
 
     public static final String Q_COMP_GET_ID = "org.seasr.central.storage.db.query.component.get.id";
     public static final String Q_COMP_GET_COREHASH = "org.seasr.central.storage.db.query.component.get.core_hash";
     public static final String Q_COMP_GET_LASTINSERT = "org.seasr.central.storage.db.query.component.get.last_insert";
     public static final String Q_COMP_GET_VERCOUNT = "org.seasr.central.storage.db.query.component.get.ver_count";
     public static final String Q_COMP_SHARE = "org.seasr.central.storage.db.query.component.share";
+    public static final String Q_COMP_LATEST_UPDATE = "org.seasr.central.storage.db.query.component.latest.update";
+    public static final String Q_COMP_GROUP_LATEST_UPDATE = "org.seasr.central.storage.db.query.component.group.latest.update";
+    public static final String Q_COMP_LATEST_BACKFILL = "org.seasr.central.storage.db.query.component.latest.backfill";
+    public static final String Q_COMP_GROUP_LATEST_BACKFILL = "org.seasr.central.storage.db.query.component.group.latest.backfill";
     public static final String Q_COMP_GROUP_LIST = "org.seasr.central.storage.db.query.component.group.list";
+    public static final String Q_COMP_GROUP_LIST_ALL = "org.seasr.central.storage.db.query.component.group.list.all";
+    public static final String Q_COMP_GROUP_LIST_AFTER = "org.seasr.central.storage.db.query.component.group.list.after";
     public static final String Q_COMP_GET_VERID = "org.seasr.central.storage.db.query.component.get.ver_id";
+    public static final String Q_COMP_LIST_VERSIONS = "org.seasr.central.storage.db.query.component.list.versions";
 
     public static final String Q_COMP_CORE_EXISTS = "org.seasr.central.storage.db.query.component.core.exists";
     public static final String Q_COMP_CORE_ADD = "org.seasr.central.storage.db.query.component.core.add";
 
     public static final String Q_CONTEXT_EXISTS = "org.seasr.central.storage.db.query.context.exists";
     public static final String Q_CONTEXT_ADD = "org.seasr.central.storage.db.query.context.add";
+    public static final String Q_CONTEXT_GET_DATA = "org.seasr.central.storage.db.query.context.get.data";
+    public static final String Q_CONTEXT_ADD_EXTERNAL = "org.seasr.central.storage.db.query.context.add.external";
+    public static final String Q_CONTEXT_LIST_INTERNAL = "org.seasr.central.storage.db.query.context.list.internal";
+    public static final String Q_CONTEXT_SET_EXTERNAL = "org.seasr.central.storage.db.query.context.set.external";
 
     public static final String Q_COMP_GET_OWNER = "org.seasr.central.storage.db.query.component.get.owner";
+    public static final String Q_COMP_LIST_OWNERS = "org.seasr.central.storage.db.query.component.list.owners";
+    public static final String Q_COMP_LIST_INDEXABLE = "org.seasr.central.storage.db.query.component.list.indexable";
 
     public static final String Q_FLOW_ADD = "org.seasr.central.storage.db.query.flow.add";
     public static final String Q_FLOW_ADD_DESCRIPTION = "org.seasr.central.storage.db.query.flow.add.description";
     public static final String Q_FLOW_ADD_TAG = "org.seasr.central.storage.db.query.flow.add.tag";
     public static final String Q_FLOW_ADD_DESCRIPTOR = "org.seasr.central.storage.db.query.flow.add.descriptor";
     public static final String Q_FLOW_GET_DESCRIPTOR = "org.seasr.central.storage.db.query.flow.get.descriptor";
+    public static final String Q_FLOW_ADD_RENDERING = "org.seasr.central.storage.db.query.flow.add.rendering";
+    public static final String Q_FLOW_GET_RENDERING = "org.seasr.central.storage.db.query.flow.get.rendering";
+    public static final String Q_FLOW_GET_RENDERING_LENGTH = "org.seasr.central.storage.db.query.flow.get.rendering.length";
     public static final String Q_FLOW_GET_ID = "org.seasr.central.storage.db.query.flow.get.id";
     public static final String Q_FLOW_GET_LASTINSERT = "org.seasr.central.storage.db.query.flow.get.last_insert";
     public static final String Q_FLOW_GET_VERCOUNT = "org.seasr.central.storage.db.query.flow.get.ver_count";
     public static final String Q_FLOW_SHARE = "org.seasr.central.storage.db.query.flow.share";
+    public static final String Q_FLOW_LATEST_UPDATE = "org.seasr.central.storage.db.query.flow.latest.update";
+    public static final String Q_FLOW_GROUP_LATEST_UPDATE = "org.seasr.central.storage.db.query.flow.group.latest.update";
+    public static final String Q_FLOW_LATEST_BACKFILL = "org.seasr.central.storage.db.query.flow.latest.backfill";
+    public static final String Q_FLOW_GROUP_LATEST_BACKFILL = "org.seasr.central.storage.db.query.flow.group.latest.backfill";
     public static final String Q_FLOW_GROUP_LIST = "org.seasr.central.storage.db.query.flow.group.list";
+    public static final String Q_FLOW_GROUP_LIST_ALL = "org.seasr.central.storage.db.query.flow.group.list.all";
+    public static final String Q_FLOW_GROUP_LIST_AFTER = "org.seasr.central.storage.db.query.flow.group.list.after";
     public static final String Q_FLOW_GET_VERID = "org.seasr.central.storage.db.query.flow.get.ver_id";
 
     public static final String Q_FLOW_COMPONENT_ADD = "org.seasr.central.storage.db.query.flow.component.add";
     public static final String Q_FLOW_GET_OWNER = "org.seasr.central.storage.db.query.flow.get.owner";
+    public static final String Q_FLOW_LIST_OWNERS = "org.seasr.central.storage.db.query.flow.list.owners";
+    public static final String Q_FLOW_LIST_INDEXABLE = "org.seasr.central.storage.db.query.flow.list.indexable";
 }
@@ -0,0 +1,725 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.fetch;
+
+import org.seasr.central.storage.ContextFile;
+import org.seasr.meandre.support.generic.crypto.Crypto;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retrieves remote component contexts. URLs are fetched in parallel, with a bounded number of concurrent
+ * requests per host, and each fetch is bounded by connect, read and total deadlines. Concurrent requests
+ * for the same URL share a single fetch.
+ * <p/>
+ * Fetched contexts are kept in a local cache keyed on URL. A cached context is reused without contacting
+ * the server for a short time after it was fetched; after that it is revalidated using the ETag and
+ * Last-Modified values returned by the server. Cached content files are named after their MD5 hash and
+ * are never modified once written.
+ * <p/>
+ * Every fetch must be released by the caller once the context has been consumed. When caching is disabled
+ * the downloaded files are temporary and are deleted once all the requests sharing the fetch released it;
+ * a fetch released by all its requests before completing is cancelled.
+ *
+ * @author Boris Capitanu
+ */
+public class ContextFetcher {
+
+    private static final Logger logger = Logger.getLogger(ContextFetcher.class.getName());
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** How often the cache is checked for expired entries (ms) */
+    private static final long PURGE_INTERVAL = 60 * 60 * 1000;
+
+    private static final String ENTRY_CONTENT_TYPE = "content_type";
+    private static final String ENTRY_MD5 = "md5";
+    private static final String ENTRY_ETAG = "etag";
+    private static final String ENTRY_LAST_MODIFIED = "last_modified";
+    private static final String ENTRY_VALIDATED_AT = "validated_at";
+
+    private final File cacheDir;
+    private final File dataDir;
+    private final File tmpDir;
+    private final int maxPerHost;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long totalTimeout;
+    private final long cacheTtl;
+    private final long cacheRetention;
+
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, SharedFetch> inFlight = new ConcurrentHashMap<String, SharedFetch>();
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+    private final AtomicLong lastPurge = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Creates a context fetcher
+     *
+     * @param cacheDir The cache directory, or null to disable caching
+     * @param threads The maximum number of concurrent fetches
+     * @param maxPerHost The maximum number of concurrent fetches from the same host
+     * @param connectTimeout The connect timeout (ms)
+     * @param readTimeout The read timeout (ms)
+     * @param totalTimeout The maximum time a fetch can take, including the time spent waiting for its turn (ms)
+     * @param cacheTtl The time a cached context is used without being revalidated (ms)
+     * @param cacheRetention The time after which an unused cached context is removed (ms)
+     * @throws IOException Thrown if the cache directory cannot be created
+     */
+    public ContextFetcher(File cacheDir, int threads, int maxPerHost, int connectTimeout, int readTimeout,
+                          long totalTimeout, long cacheTtl, long cacheRetention) throws IOException {
+        this.cacheDir = cacheDir;
+        this.dataDir = (cacheDir != null) ? new File(cacheDir, "data") : null;
+        this.tmpDir = (cacheDir != null) ? new File(cacheDir, "tmp") : null;
+        this.maxPerHost = maxPerHost;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.totalTimeout = totalTimeout;
+        this.cacheTtl = cacheTtl;
+        this.cacheRetention = cacheRetention;
+
+        if (cacheDir != null)
+            for (File dir : new File[] { dataDir, tmpDir })
+                if (!dir.isDirectory() && !dir.mkdirs())
+                    throw new IOException("Cannot create the context cache directory: " + dir);
+
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sc-fetch-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts fetching the specified context. If a fetch of the same URL is already in progress,
+     * the returned future shares its outcome. The future must be passed to {@link #release(Future)}
+     * once the context is no longer needed.
+     *
+     * @param url The context URL
+     * @return The future staged context; it fails with an IOException if the context cannot be retrieved
+     */
+    public Future<ContextFile> fetch(URL url) {
+        return new Handle(join(url));
+    }
+
+    /**
+     * Starts fetching the specified context without waiting for it. The fetch is released as soon as it
+     * completes, so it only saves time for the requests that join it while it is in progress, or that find
+     * the context in the cache.
+     *
+     * @param url The context URL
+     */
+    public void prefetch(URL url) {
+        join(url).detach();
+    }
+
+    /**
+     * Joins the fetch of the specified context that is in progress, or starts a new one
+     *
+     * @param url The context URL
+     * @return The fetch, already counting the caller as one of its requests
+     */
+    private SharedFetch join(final URL url) {
+        final String key = url.toExternalForm();
+
+        while (true) {
+            SharedFetch fetch = inFlight.get(key);
+            if (fetch != null) {
+                if (!fetch.isDone() && fetch.join()) return fetch;
+
+                // Completed or abandoned, but not yet removed
+                inFlight.remove(key, fetch);
+                continue;
+            }
+
+            fetch = new SharedFetch(key, cacheDir == null && !url.getProtocol().equals("file"),
+                    new Callable<ContextFile>() {
+                        public ContextFile call() throws Exception {
+                            return retrieve(url, System.currentTimeMillis() + totalTimeout);
+                        }
+                    });
+
+            if (inFlight.putIfAbsent(key, fetch) == null) {
+                executor.execute(fetch);
+                purgeIfNeeded();
+
+                return fetch;
+            }
+        }
+    }
+
+    /**
+     * Starts fetching the specified contexts. Duplicate URLs are fetched once.
+     *
+     * @param urls The context URLs
+     * @return The future staged context for each distinct URL
+     */
+    public Map<URL, Future<ContextFile>> fetchAll(Collection<URL> urls) {
+        Map<URL, Future<ContextFile>> futures = new LinkedHashMap<URL, Future<ContextFile>>();
+        for (URL url : urls)
+            if (!futures.containsKey(url))
+                futures.put(url, fetch(url));
+
+        return futures;
+    }
+
+    /**
+     * Waits for a fetch to complete. If the wait is interrupted the fetch is released.
+     *
+     * @param future The fetch
+     * @return The staged context
+     * @throws IOException Thrown if the context could not be retrieved
+     */
+    public static ContextFile getResult(Future<ContextFile> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            release(future);
+            throw (IOException) new InterruptedIOException("Interrupted while retrieving context").initCause(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Cannot retrieve context: " + e.getCause());
+        }
+    }
+
+    /**
+     * Releases a fetch once the caller no longer needs the fetched context. Releasing a fetch more
+     * than once has no effect.
+     *
+     * @param future The fetch
+     */
+    public static void release(Future<ContextFile> future) {
+        if (future instanceof Handle)
+            ((Handle) future).release();
+    }
+
+    /**
+     * Releases a set of fetches
+     *
+     * @param futures The fetches
+     */
+    public static void releaseAll(Collection<Future<ContextFile>> futures) {
+        for (Future<ContextFile> future : futures)
+            release(future);
+    }
+
+    /**
+     * Stops the fetcher threads
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Retrieves a context, using the cached copy when possible
+     *
+     * @param url The context URL
+     * @param deadline The time by which the retrieval must complete
+     * @return The staged context
+     * @throws IOException Thrown if the context cannot be retrieved
+     * @throws URISyntaxException Thrown if a 'file' URL cannot be converted to a file
+     */
+    protected ContextFile retrieve(URL url, long deadline) throws IOException, URISyntaxException {
+        String fileName = ContextFile.getFileName(url);
+
+        // Local files are hashed in place
+        if (url.getProtocol().equals("file")) {
+            File file = new File(url.toURI());
+            InputStream in = new FileInputStream(file);
+            try {
+                MessageDigest md5 = createMD5();
+                copy(in, null, md5, Long.MAX_VALUE);
+                return new ContextFile(fileName, file, null, new BigInteger(md5.digest()));
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        String key = (cacheDir != null) ? hex(url.toExternalForm()) : null;
+        Properties entry = (key != null) ? readEntry(key) : null;
+
+        if (entry != null && System.currentTimeMillis() - getValidatedAt(entry) < cacheTtl)
+            return toContextFile(fileName, entry);
+
+        Semaphore permits = getHostPermits(url.getHost());
+        try {
+            if (!permits.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+                throw new InterruptedIOException("Timed out waiting to connect to " + url.getHost());
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting to connect to " + url.getHost());
+        }
+
+        try {
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+
+            if (connection instanceof HttpURLConnection) {
+                HttpURLConnection httpConnection = (HttpURLConnection) connection;
+
+                if (entry != null) {
+                    if (entry.getProperty(ENTRY_ETAG) != null)
+                        httpConnection.setRequestProperty("If-None-Match", entry.getProperty(ENTRY_ETAG));
+                    if (entry.getProperty(ENTRY_LAST_MODIFIED) != null)
+                        httpConnection.setIfModifiedSince(Long.parseLong(entry.getProperty(ENTRY_LAST_MODIFIED)));
+                }
+
+                int status = httpConnection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                    httpConnection.disconnect();
+                    logger.fine("Cached context is still valid: " + url);
+                    entry.setProperty(ENTRY_VALIDATED_AT, Long.toString(System.currentTimeMillis()));
+                    writeEntry(key, entry);
+                    return toContextFile(fileName, entry);
+                }
+
+                if (status != HttpURLConnection.HTTP_OK) {
+                    httpConnection.disconnect();
+                    throw new IOException(String.format("Cannot retrieve %s: HTTP %d %s",
+                            url, status, httpConnection.getResponseMessage()));
+                }
+            }
+
+            return download(url, connection, key, deadline);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Downloads a context, computing its MD5 hash on the fly
+     *
+     * @param url The context URL
+     * @param connection The open connection
+     * @param key The cache key, or null if caching is disabled
+     * @param deadline The time by which the download must complete
+     * @return The staged context
+     * @throws IOException Thrown if the context cannot be downloaded
+     */
+    protected ContextFile download(URL url, URLConnection connection, String key, long deadline) throws IOException {
+        File tmpFile = (tmpDir != null) ?
+                File.createTempFile("sc_context", ".tmp", tmpDir) : File.createTempFile("sc_context", ".tmp");
+        MessageDigest md5 = createMD5();
+        boolean keepTmpFile = false;
+
+        try {
+            InputStream in = connection.getInputStream();
+            try {
+                OutputStream out = new FileOutputStream(tmpFile);
+                try {
+                    copy(in, out, md5, deadline);
+                }
+                finally {
+                    out.close();
+                }
+            }
+            finally {
+                in.close();
+            }
+
+            BigInteger hash = new BigInteger(md5.digest());
+            String fileName = ContextFile.getFileName(url);
+            String contentType = connection.getContentType();
+
+            if (key == null) {
+                keepTmpFile = true;
+                return new ContextFile(fileName, tmpFile, contentType, hash);
+            }
+
+            // Move the content into the cache
+            File dataFile = getDataFile(hash);
+            if (!dataFile.isFile() && !tmpFile.renameTo(dataFile) && !dataFile.isFile())
+                throw new IOException("Cannot move context into the cache: " + dataFile);
+
+            Properties entry = new Properties();
+            entry.setProperty(ENTRY_MD5, hash.toString());
+            entry.setProperty(ENTRY_VALIDATED_AT, Long.toString(System.currentTimeMillis()));
+            if (contentType != null)
+                entry.setProperty(ENTRY_CONTENT_TYPE, contentType);
+            if (connection.getHeaderField("ETag") != null)
+                entry.setProperty(ENTRY_ETAG, connection.getHeaderField("ETag"));
+            if (connection.getLastModified() > 0)
+                entry.setProperty(ENTRY_LAST_MODIFIED, Long.toString(connection.getLastModified()));
+            writeEntry(key, entry);
+
+            return new ContextFile(fileName, dataFile, contentType, hash);
+        }
+        finally {
+            // Nothing to delete if the content was moved into the cache
+            if (!keepTmpFile)
+                tmpFile.delete();
+        }
+    }
+
+    /**
+     * Removes the cache entries that have not been used for longer than the retention period,
+     * and the content files no longer referenced by any entry
+     */
+    public void purge() {
+        if (cacheDir == null) return;
+
+        long expiry = System.currentTimeMillis() - cacheRetention;
+        Set<String> referenced = new HashSet<String>();
+
+        File[] entryFiles = cacheDir.listFiles();
+        if (entryFiles == null) return;
+
+        for (File entryFile : entryFiles) {
+            if (!entryFile.isFile() || !entryFile.getName().endsWith(".properties")) continue;
+
+            String key = entryFile.getName().substring(0, entryFile.getName().length() - ".properties".length());
+            Properties entry = readEntry(key);
+
+            if (entry == null || entryFile.lastModified() < expiry)
+                entryFile.delete();
+            else
+                referenced.add(getDataFile(new BigInteger(entry.getProperty(ENTRY_MD5))).getName());
+        }
+
+        File[] dataFiles = dataDir.listFiles();
+        if (dataFiles != null)
+            for (File dataFile : dataFiles)
+                if (!referenced.contains(dataFile.getName()) && dataFile.lastModified() < expiry)
+                    dataFile.delete();
+
+        // Left behind by interrupted downloads
+        File[] tmpFiles = tmpDir.listFiles();
+        if (tmpFiles != null)
+            for (File tmpFile : tmpFiles)
+                if (tmpFile.lastModified() < expiry)
+                    tmpFile.delete();
+    }
+
+    private void purgeIfNeeded() {
+        long last = lastPurge.get();
+        long now = System.currentTimeMillis();
+
+        if (cacheDir != null && now - last > PURGE_INTERVAL && lastPurge.compareAndSet(last, now))
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        purge();
+                    }
+                    catch (Exception e) {
+                        logger.log(Level.WARNING, "Cannot purge the context cache", e);
+                    }
+                }
+            });
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(maxPerHost, true);
+            permits = hostPermits.putIfAbsent(host, newPermits);
+            if (permits == null) permits = newPermits;
+        }
+
+        return permits;
+    }
+
+    private ContextFile toContextFile(String fileName, Properties entry) {
+        BigInteger hash = new BigInteger(entry.getProperty(ENTRY_MD5));
+        return new ContextFile(fileName, getDataFile(hash), entry.getProperty(ENTRY_CONTENT_TYPE), hash);
+    }
+
+    private long getValidatedAt(Properties entry) {
+        try {
+            return Long.parseLong(entry.getProperty(ENTRY_VALIDATED_AT, "0"));
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private File getDataFile(BigInteger hash) {
+        return new File(dataDir, Crypto.toHexString(hash.toByteArray()));
+    }
+
+    /**
+     * Reads a cache entry
+     *
+     * @param key The cache key
+     * @return The entry, or null if there is no usable entry for the key
+     */
+    private Properties readEntry(String key) {
+        File entryFile = new File(cacheDir, key + ".properties");
+        if (!entryFile.isFile()) return null;
+
+        Properties entry = new Properties();
+        try {
+            InputStream in = new FileInputStream(entryFile);
+            try {
+                entry.load(in);
+            }
+            finally {
+                in.close();
+            }
+
+            if (entry.getProperty(ENTRY_MD5) == null ||
+                    !getDataFile(new BigInteger(entry.getProperty(ENTRY_MD5))).isFile())
+                return null;
+        }
+        catch (Exception e) {
+            logger.log(Level.FINE, "Ignoring unreadable cache entry: " + entryFile, e);
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Writes a cache entry (the entry is replaced atomically)
+     *
+     * @param key The cache key
+     * @param entry The entry
+     * @throws IOException Thrown if the entry cannot be written
+     */
+    private void writeEntry(String key, Properties entry) throws IOException {
+        File entryFile = new File(cacheDir, key + ".properties");
+        File tmpFile = File.createTempFile("entry", ".tmp", tmpDir);
+
+        try {
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                entry.store(out, null);
+            }
+            finally {
+                out.close();
+            }
+
+            // renameTo does not replace existing files on all platforms
+            if (!tmpFile.renameTo(entryFile)) {
+                entryFile.delete();
+                if (!tmpFile.renameTo(entryFile))
+                    throw new IOException("Cannot write cache entry: " + entryFile);
+            }
+        }
+        finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Copies a stream, updating the digest with the bytes copied
+     *
+     * @param in The input stream
+     * @param out The output stream, or null to only compute the digest
+     * @param md5 The digest
+     * @param deadline The time by which the copy must complete
+     * @throws IOException Thrown if an I/O error occurs or the deadline passes
+     */
+    private static void copy(InputStream in, OutputStream out, MessageDigest md5, long deadline) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            md5.update(buffer, 0, read);
+            if (out != null)
+                out.write(buffer, 0, read);
+
+            if (System.currentTimeMillis() > deadline)
+                throw new InterruptedIOException("Timed out retrieving context");
+        }
+    }
+
+    private static MessageDigest createMD5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hex(String s) {
+        try {
+            return Crypto.toHexString(Crypto.createMD5Hash(s.getBytes("UTF-8")));
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A fetch shared by all the concurrent requests for the same URL. It keeps count of the requests
+     * that have not yet released it; once the count drops to zero no request can join it anymore.
+     */
+    private class SharedFetch extends FutureTask<ContextFile> {
+        private final String key;
+        private final boolean temporary;
+        private final AtomicInteger waiters = new AtomicInteger(1);
+        private final AtomicInteger detached = new AtomicInteger(0);
+
+        SharedFetch(String key, boolean temporary, Callable<ContextFile> retrieval) {
+            super(retrieval);
+            this.key = key;
+            this.temporary = temporary;
+        }
+
+        boolean join() {
+            while (true) {
+                int count = waiters.get();
+                if (count == 0) return false;
+                if (waiters.compareAndSet(count, count + 1)) return true;
+            }
+        }
+
+        void leave() {
+            if (waiters.decrementAndGet() > 0) return;
+
+            inFlight.remove(key, this);
+
+            // Either the cancellation or the completion discards a temporary download, whichever comes last
+            if (!cancel(true))
+                discard();
+        }
+
+        /**
+         * Leaves the fetch as soon as it completes
+         */
+        void detach() {
+            detached.incrementAndGet();
+            if (isDone())
+                leaveDetached();
+        }
+
+        private void leaveDetached() {
+            for (int count = detached.getAndSet(0); count > 0; count--)
+                leave();
+        }
+
+        @Override
+        protected void set(ContextFile context) {
+            super.set(context);
+            if (isCancelled())
+                discard(context);
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+            leaveDetached();
+        }
+
+        private void discard() {
+            try {
+                discard(get());
+            }
+            catch (Exception e) {
+                // Failed or cancelled, nothing was downloaded
+            }
+        }
+
+        private void discard(ContextFile context) {
+            if (temporary && context != null && context.getFile() != null && !context.getFile().delete())
+                logger.fine("Cannot delete the temporary context file: " + context.getFile());
+        }
+    }
+
+    /**
+     * A request's view of a shared fetch
+     */
+    private static class Handle implements Future<ContextFile> {
+        private final SharedFetch fetch;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        Handle(SharedFetch fetch) {
+            this.fetch = fetch;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true))
+                fetch.leave();
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            release();
+            return fetch.isCancelled();
+        }
+
+        public boolean isCancelled() {
+            return fetch.isCancelled();
+        }
+
+        public boolean isDone() {
+            return fetch.isDone();
+        }
+
+        public ContextFile get() throws InterruptedException, ExecutionException {
+            return fetch.get();
+        }
+
+        public ContextFile get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return fetch.get(timeout, unit);
+        }
+    }
+}
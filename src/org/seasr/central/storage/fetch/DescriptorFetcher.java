@@ -0,0 +1,159 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.fetch;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import org.seasr.central.storage.ContextFile;
+import org.seasr.central.util.WeightedLRUCache;
+import org.seasr.meandre.support.generic.io.ModelUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Retrieves remote component and flow descriptors. The descriptors are downloaded (and revalidated)
+ * through a {@link ContextFetcher}, which provides the timeouts, the parallel fetches and the on-disk
+ * cache. The parsed models are additionally kept in memory as plain triples, keyed on the MD5 hash
+ * of the descriptor, so an unchanged descriptor is not parsed again.
+ *
+ * @author Boris Capitanu
+ */
+public class DescriptorFetcher {
+
+    private final ContextFetcher fetcher;
+    private final WeightedLRUCache<BigInteger, ParsedDescriptor> parsedCache;
+
+    /**
+     * Creates a descriptor fetcher
+     *
+     * @param fetcher The fetcher used to retrieve the descriptors
+     * @param maxParsedBytes The maximum total size of the descriptors whose parsed model is kept in memory
+     */
+    public DescriptorFetcher(ContextFetcher fetcher, long maxParsedBytes) {
+        this.fetcher = fetcher;
+        this.parsedCache = new WeightedLRUCache<BigInteger, ParsedDescriptor>(maxParsedBytes);
+    }
+
+    /**
+     * Starts retrieving a descriptor, so that a later call to {@link #getModel(URI)} does not have to wait for it
+     *
+     * @param uri The descriptor location
+     * @throws IOException Thrown if the location is not a valid URL
+     */
+    public void prefetch(URI uri) throws IOException {
+        fetcher.prefetch(toURL(uri));
+    }
+
+    /**
+     * Retrieves and parses a descriptor
+     *
+     * @param uri The descriptor location
+     * @return The descriptor model; the caller is free to modify it
+     * @throws IOException Thrown if the descriptor cannot be retrieved or parsed
+     */
+    public Model getModel(URI uri) throws IOException {
+        Future<ContextFile> fetch = fetcher.fetch(toURL(uri));
+        try {
+            ContextFile descriptor = ContextFetcher.getResult(fetch);
+
+            ParsedDescriptor parsed = parsedCache.get(descriptor.getMD5());
+            if (parsed != null)
+                return parsed.toModel();
+
+            Model model;
+            InputStream in = descriptor.openStream();
+            try {
+                model = ModelUtils.getModel(in, null);
+            }
+            finally {
+                in.close();
+            }
+
+            parsedCache.put(descriptor.getMD5(), new ParsedDescriptor(model), descriptor.getSize());
+
+            return model;
+        }
+        finally {
+            ContextFetcher.release(fetch);
+        }
+    }
+
+    private static URL toURL(URI uri) throws IOException {
+        try {
+            return uri.toURL();
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Invalid descriptor location: " + uri);
+        }
+    }
+
+    /**
+     * A parsed descriptor, kept as its triples and namespace prefixes
+     */
+    private static class ParsedDescriptor {
+        private final Triple[] triples;
+        private final Map<String, String> prefixes;
+
+        @SuppressWarnings("unchecked")
+        public ParsedDescriptor(Model model) {
+            List<Triple> list = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY).toList();
+            this.triples = list.toArray(new Triple[list.size()]);
+            this.prefixes = model.getNsPrefixMap();
+        }
+
+        public Model toModel() {
+            Model model = ModelFactory.createDefaultModel();
+            model.setNsPrefixes(prefixes);
+            model.getGraph().getBulkUpdateHandler().add(triples);
+
+            return model;
+        }
+    }
+}
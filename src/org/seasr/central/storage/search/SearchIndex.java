@@ -0,0 +1,452 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.storage.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.MultiFieldQueryParser;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.NativeFSLockFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.meandre.core.repository.DataPortDescription;
+import org.meandre.core.repository.ExecutableComponentDescription;
+import org.meandre.core.repository.ExecutableComponentInstanceDescription;
+import org.meandre.core.repository.FlowDescription;
+import org.seasr.central.storage.exceptions.InvalidQueryException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Full-text index of the component and flow versions, with one document per version.
+ *
+ * The name, description, creator and tags of every version are indexed, along with the port names and
+ * property keys of the components, and the instance names and property keys of the flows. The owner and
+ * the groups a version is shared with are indexed as well, so that searches only return the versions
+ * visible to the remote user. Updates become visible to the searches at most 'refresh interval' ms after
+ * they are flushed, and a search never examines more than 'max results' hits.
+ *
+ * @author Boris Capitanu
+ */
+public class SearchIndex {
+
+    public enum Type { COMPONENT, FLOW }
+
+    public static final String FIELD_KEY = "key";
+    public static final String FIELD_TYPE = "type";
+    public static final String FIELD_UUID = "uuid";
+    public static final String FIELD_VERSION = "version";
+    public static final String FIELD_OWNER = "owner";
+    public static final String FIELD_GROUP = "group";
+    public static final String FIELD_NAME = "name";
+    public static final String FIELD_DESCRIPTION = "description";
+    public static final String FIELD_CREATOR = "creator";
+    public static final String FIELD_TAG = "tag";
+    public static final String FIELD_PORT = "port";
+    public static final String FIELD_PROPERTY = "property";
+
+    /** The fields searched when a query term names no field */
+    private static final String[] SEARCH_FIELDS = new String[] {
+            FIELD_NAME, FIELD_DESCRIPTION, FIELD_CREATOR, FIELD_TAG, FIELD_PORT, FIELD_PROPERTY
+    };
+
+    private final Directory directory;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final long refreshInterval;
+    private final int maxResults;
+
+    private final Object searcherLock = new Object();
+    private final Object refreshLock = new Object();
+
+    /** The searcher used by new searches (guarded by searcherLock) */
+    private SearcherRef current;
+
+    private volatile boolean stale = false;
+    private volatile long lastRefresh = System.currentTimeMillis();
+
+
+    /**
+     * Opens (or creates) a search index
+     *
+     * @param indexDir The index folder
+     * @param refreshInterval The minimum time (ms) between the refreshes of the searcher
+     * @param maxResults The maximum number of hits a search can page through
+     * @throws IOException Thrown if the index cannot be opened
+     */
+    public SearchIndex(File indexDir, long refreshInterval, int maxResults) throws IOException {
+        if (!indexDir.exists() && !indexDir.mkdirs())
+            throw new IOException("Cannot create the search index folder: " + indexDir);
+
+        this.refreshInterval = Math.max(0, refreshInterval);
+        this.maxResults = Math.max(1, maxResults);
+
+        // Native locks are released if the process dies, so a crash does not leave the index locked
+        directory = FSDirectory.getDirectory(indexDir, new NativeFSLockFactory(indexDir));
+        writer = new IndexWriter(directory, analyzer, !IndexReader.indexExists(directory));
+        current = new SearcherRef(IndexReader.open(directory));
+    }
+
+    /**
+     * Indexes a component version, replacing its previous document
+     *
+     * @param componentId The component id
+     * @param version The component version
+     * @param ownerId The owner of the component
+     * @param groupIds The groups the version is shared with
+     * @param ecd The component description
+     * @throws IOException Thrown if the index cannot be updated
+     */
+    public void updateComponent(UUID componentId, int version, UUID ownerId, Collection<UUID> groupIds,
+                                ExecutableComponentDescription ecd) throws IOException {
+        Document doc = createDocument(Type.COMPONENT, componentId, version, ownerId, groupIds,
+                ecd.getName(), ecd.getDescription(), ecd.getCreator(), ecd.getTags().getTags());
+
+        for (DataPortDescription port : ecd.getInputs())
+            addText(doc, FIELD_PORT, port.getName());
+        for (DataPortDescription port : ecd.getOutputs())
+            addText(doc, FIELD_PORT, port.getName());
+
+        if (ecd.getProperties() != null)
+            for (String key : ecd.getProperties().getKeys())
+                addText(doc, FIELD_PROPERTY, key);
+
+        writer.updateDocument(new Term(FIELD_KEY, getKey(Type.COMPONENT, componentId, version)), doc);
+    }
+
+    /**
+     * Indexes a flow version, replacing its previous document
+     *
+     * @param flowId The flow id
+     * @param version The flow version
+     * @param ownerId The owner of the flow
+     * @param groupIds The groups the version is shared with
+     * @param fd The flow description
+     * @throws IOException Thrown if the index cannot be updated
+     */
+    public void updateFlow(UUID flowId, int version, UUID ownerId, Collection<UUID> groupIds,
+                           FlowDescription fd) throws IOException {
+        Document doc = createDocument(Type.FLOW, flowId, version, ownerId, groupIds,
+                fd.getName(), fd.getDescription(), fd.getCreator(), fd.getTags().getTags());
+
+        for (ExecutableComponentInstanceDescription instance : fd.getExecutableComponentInstances()) {
+            addText(doc, FIELD_PORT, instance.getName());
+            if (instance.getProperties() != null)
+                for (String key : instance.getProperties().getKeys())
+                    addText(doc, FIELD_PROPERTY, key);
+        }
+
+        writer.updateDocument(new Term(FIELD_KEY, getKey(Type.FLOW, flowId, version)), doc);
+    }
+
+    /**
+     * Removes a version from the index
+     *
+     * @param type The version type
+     * @param id The component or flow id
+     * @param version The version
+     * @throws IOException Thrown if the index cannot be updated
+     */
+    public void remove(Type type, UUID id, int version) throws IOException {
+        writer.deleteDocuments(new Term(FIELD_KEY, getKey(type, id, version)));
+    }
+
+    /**
+     * Removes all the versions from the index
+     *
+     * @throws IOException Thrown if the index cannot be updated
+     */
+    public void clear() throws IOException {
+        for (Type type : Type.values())
+            writer.deleteDocuments(new Term(FIELD_TYPE, type.name().toLowerCase()));
+    }
+
+    /**
+     * Writes the pending updates; they become visible to the searches after the next refresh
+     *
+     * @throws IOException Thrown if the index cannot be updated
+     */
+    public void flush() throws IOException {
+        writer.flush();
+        stale = true;
+    }
+
+    /**
+     * Merges the index segments (after a rebuild)
+     *
+     * @throws IOException Thrown if the index cannot be updated
+     */
+    public void optimize() throws IOException {
+        writer.optimize();
+        stale = true;
+    }
+
+    /**
+     * Returns the number of versions indexed, as seen by the searches
+     *
+     * @return The number of versions
+     * @throws IOException Thrown if the index cannot be read
+     */
+    public int size() throws IOException {
+        SearcherRef ref = acquire();
+        try {
+            return ref.reader.numDocs();
+        }
+        finally {
+            release(ref);
+        }
+    }
+
+    /**
+     * Searches the versions visible to a user
+     *
+     * @param query The query (Lucene query syntax)
+     * @param type The type of versions to search, or null for all
+     * @param userId The remote user id, or null for unauthenticated requests
+     * @param groupIds The groups of the remote user (including PUBLIC), or null to search all versions
+     * @param offset The number of hits to skip
+     * @param count The maximum number of hits to return
+     * @return The hits, best first
+     * @throws InvalidQueryException Thrown if the query cannot be parsed or is too broad
+     * @throws IOException Thrown if the index cannot be read
+     */
+    public JSONArray search(String query, Type type, UUID userId, Collection<UUID> groupIds, long offset, long count)
+            throws InvalidQueryException, IOException {
+
+        JSONArray jaResults = new JSONArray();
+        int max = (int) Math.min(maxResults, offset + count);
+        if (count <= 0 || offset >= max) return jaResults;
+
+        BooleanQuery bq = new BooleanQuery();
+        try {
+            // The parser is not thread safe
+            bq.add(new MultiFieldQueryParser(SEARCH_FIELDS, analyzer).parse(query), BooleanClause.Occur.MUST);
+        }
+        catch (ParseException e) {
+            throw new InvalidQueryException(query, e);
+        }
+
+        if (type != null)
+            bq.add(new TermQuery(new Term(FIELD_TYPE, type.name().toLowerCase())), BooleanClause.Occur.MUST);
+
+        // Visible if owned by the remote user or shared with one of its groups
+        QueryWrapperFilter visibility = null;
+        if (groupIds != null) {
+            BooleanQuery vq = new BooleanQuery();
+            if (userId != null)
+                vq.add(new TermQuery(new Term(FIELD_OWNER, userId.toString())), BooleanClause.Occur.SHOULD);
+            for (UUID groupId : groupIds)
+                vq.add(new TermQuery(new Term(FIELD_GROUP, groupId.toString())), BooleanClause.Occur.SHOULD);
+            visibility = new QueryWrapperFilter(vq);
+        }
+
+        SearcherRef ref = acquire();
+        try {
+            TopDocs hits = ref.searcher.search(bq, visibility, max);
+
+            for (int i = (int) offset; i < hits.scoreDocs.length; i++) {
+                ScoreDoc hit = hits.scoreDocs[i];
+                Document doc = ref.searcher.doc(hit.doc);
+
+                JSONObject joHit = new JSONObject();
+                joHit.put("type", doc.get(FIELD_TYPE));
+                joHit.put("uuid", doc.get(FIELD_UUID));
+                joHit.put("version", Integer.parseInt(doc.get(FIELD_VERSION)));
+                joHit.put("name", doc.get(FIELD_NAME));
+                joHit.put("score", hit.score);
+                jaResults.put(joHit);
+            }
+        }
+        catch (BooleanQuery.TooManyClauses e) {
+            throw new InvalidQueryException(query, e);
+        }
+        catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            release(ref);
+        }
+
+        return jaResults;
+    }
+
+    /**
+     * Closes the index
+     *
+     * @throws IOException Thrown if the pending updates cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            writer.close();
+        }
+        finally {
+            SearcherRef ref;
+            synchronized (searcherLock) {
+                ref = current;
+                current = null;
+            }
+            if (ref != null) release(ref);
+            directory.close();
+        }
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private static String getKey(Type type, UUID id, int version) {
+        return String.format("%s/%s/%d", type.name().toLowerCase(), id, version);
+    }
+
+    private static Document createDocument(Type type, UUID id, int version, UUID ownerId, Collection<UUID> groupIds,
+                                           String name, String description, String creator,
+                                           Collection<String> tags) {
+        Document doc = new Document();
+        doc.add(new Field(FIELD_KEY, getKey(type, id, version), Field.Store.NO, Field.Index.UN_TOKENIZED));
+        doc.add(new Field(FIELD_TYPE, type.name().toLowerCase(), Field.Store.YES, Field.Index.UN_TOKENIZED));
+        doc.add(new Field(FIELD_UUID, id.toString(), Field.Store.YES, Field.Index.UN_TOKENIZED));
+        doc.add(new Field(FIELD_VERSION, Integer.toString(version), Field.Store.YES, Field.Index.NO));
+
+        if (ownerId != null)
+            doc.add(new Field(FIELD_OWNER, ownerId.toString(), Field.Store.NO, Field.Index.UN_TOKENIZED));
+        for (UUID groupId : groupIds)
+            doc.add(new Field(FIELD_GROUP, groupId.toString(), Field.Store.NO, Field.Index.UN_TOKENIZED));
+
+        if (name != null)
+            doc.add(new Field(FIELD_NAME, name, Field.Store.YES, Field.Index.TOKENIZED));
+        addText(doc, FIELD_DESCRIPTION, description);
+        addText(doc, FIELD_CREATOR, creator);
+        for (String tag : tags)
+            addText(doc, FIELD_TAG, tag);
+
+        return doc;
+    }
+
+    private static void addText(Document doc, String field, String text) {
+        if (text != null && text.length() > 0)
+            doc.add(new Field(field, text, Field.Store.NO, Field.Index.TOKENIZED));
+    }
+
+    /**
+     * Returns the current searcher, refreshing it first if updates were flushed since
+     * the last refresh and the refresh interval elapsed
+     */
+    private SearcherRef acquire() throws IOException {
+        if (stale && System.currentTimeMillis() - lastRefresh >= refreshInterval)
+            refresh();
+
+        synchronized (searcherLock) {
+            if (current == null)
+                throw new IOException("The search index is closed");
+
+            current.refs++;
+            return current;
+        }
+    }
+
+    private void release(SearcherRef ref) throws IOException {
+        synchronized (searcherLock) {
+            if (--ref.refs > 0) return;
+        }
+
+        ref.searcher.close();
+        ref.reader.close();
+    }
+
+    private void refresh() throws IOException {
+        synchronized (refreshLock) {
+            if (!stale) return;
+            stale = false;
+            lastRefresh = System.currentTimeMillis();
+
+            IndexReader reader;
+            synchronized (searcherLock) {
+                if (current == null) return;
+                reader = current.reader;
+            }
+
+            // Only the segments that changed are opened
+            IndexReader newReader = reader.reopen();
+            if (newReader == reader) return;
+
+            SearcherRef previous;
+            synchronized (searcherLock) {
+                previous = current;
+                current = new SearcherRef(newReader);
+            }
+
+            release(previous);
+        }
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    /**
+     * A searcher shared by the searches in progress, closed once the last one is done
+     */
+    private static class SearcherRef {
+        private final IndexReader reader;
+        private final IndexSearcher searcher;
+        private int refs = 1;
+
+        private SearcherRef(IndexReader reader) {
+            this.reader = reader;
+            this.searcher = new IndexSearcher(reader);
+        }
+    }
+}
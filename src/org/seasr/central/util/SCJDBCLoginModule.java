@@ -41,34 +41,68 @@
 package org.seasr.central.util;
 
 
+import com.mchange.v2.c3p0.ComboPooledDataSource;
 import org.mortbay.jetty.plus.jaas.spi.AbstractLoginModule;
 import org.mortbay.jetty.plus.jaas.spi.UserInfo;
 import org.mortbay.jetty.security.Credential;
 import org.mortbay.log.Log;
-import org.mortbay.util.Loader;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.CallbackHandler;
+import javax.sql.DataSource;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
  * JAAS JDBC authentication provider for SC
  *
+ * A new instance of the login module is created for every login, so the connection pool and the
+ * user cache are shared by all instances. The connection pool registered through
+ * {@link #setDataSource(DataSource)} (the backend store's) is used when available, otherwise a pool
+ * is created for the configured database. Users are cached for 'cachetime' seconds, and unknown
+ * users for 'negativecachetime' seconds; the backend store invalidates the cached users whose
+ * credentials change. The store has no operation that changes the roles of an existing user, so
+ * roles changed directly in the database take effect once the cached user expires ('cachetime').
+ *
  * @author Boris Capitanu
  */
 public class SCJDBCLoginModule extends AbstractLoginModule {
+
+    /** The maximum number of users cached */
+    private static final int MAX_CACHED_USERS = 10000;
+
+    /** The default number of seconds unknown users are remembered for */
+    private static final long DEFAULT_NEGATIVE_CACHE_TIME = 10;
+
+    /** The connection pool shared with the backend store, if registered */
+    private static volatile DataSource sharedDataSource = null;
+
+    /** The connection pools created by the login module, keyed on JDBC url and user */
+    private static final ConcurrentMap<String, ComboPooledDataSource> pools =
+            new ConcurrentHashMap<String, ComboPooledDataSource>();
+
+    private static final Object cacheLock = new Object();
+    private static TimedLRUCache<String, CachedUser> userCache = null;
+    private static TimedLRUCache<String, Boolean> unknownUserCache = null;
+    private static long userCacheTime = -1;
+    private static long unknownUserCacheTime = -1;
+    private static long generation = 0;
+
     private String dbDriver;
     private String dbUrl;
     private String dbUserName;
     private String dbPassword;
+    private boolean useSharedPool;
 
     private String userQuery;
     private String rolesQuery;
@@ -77,6 +111,7 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
     private String dbUserTableKey;
     private String dbUserTableUserField;
     private String dbUserTablePasswordField;
+    private String dbUserTableDeletedField;
 
     private String dbRoleTable;
     private String dbRoleTableKey;
@@ -89,6 +124,55 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
     private boolean debug = false;
 
 
+    /**
+     * Registers the connection pool to be used by the login module
+     *
+     * @param dataSource The connection pool, or null to use the pool configured for the login module
+     */
+    public static void setDataSource(DataSource dataSource) {
+        sharedDataSource = dataSource;
+    }
+
+    /**
+     * Removes a user from the cache
+     *
+     * @param userName The user name
+     */
+    public static void invalidateUser(String userName) {
+        synchronized (cacheLock) {
+            generation++;
+
+            if (userCache != null) userCache.remove(userName);
+            if (unknownUserCache != null) unknownUserCache.remove(userName);
+        }
+    }
+
+    /**
+     * Removes a user from the cache
+     *
+     * @param userKey The user key (the value of the user table key)
+     */
+    public static void invalidateUser(BigInteger userKey) {
+        synchronized (cacheLock) {
+            generation++;
+
+            // Cached users are equal when their keys are
+            if (userCache != null) userCache.removeValue(new CachedUser(userKey, null));
+        }
+    }
+
+    /**
+     * Removes all the users from the cache
+     */
+    public static void invalidateAll() {
+        synchronized (cacheLock) {
+            generation++;
+
+            if (userCache != null) userCache.clear();
+            if (unknownUserCache != null) unknownUserCache.clear();
+        }
+    }
+
     @Override
     public void initialize(Subject subject, CallbackHandler callbackHandler, Map sharedState, Map options) {
         try {
@@ -102,6 +186,7 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
             dbUserTableKey           = (String) options.get("usertablekey");
             dbUserTableUserField     = (String) options.get("usertableuserfield");
             dbUserTablePasswordField = (String) options.get("usertablepasswordfield");
+            dbUserTableDeletedField  = (String) options.get("usertabledeletedfield");
             dbRoleTable              = (String) options.get("roletable");
             dbRoleTableKey           = (String) options.get("roletablekey");
             dbRoleTableRoleField     = (String) options.get("roletablerolefield");
@@ -109,6 +194,10 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
             dbUserRoleTableUserKey   = (String) options.get("userroletableuserkey");
             dbUserRoleTableRoleKey   = (String) options.get("userroletablerolekey");
             debug                    = Boolean.parseBoolean((String) options.get("debug"));
+            useSharedPool            = !"false".equalsIgnoreCase((String) options.get("usesharedpool"));
+
+            String cacheTime = (String) options.get("cachetime");
+            String negativeCacheTime = (String) options.get("negativecachetime");
 
             if (dbUserName == null)
                 dbUserName = "";
@@ -116,14 +205,17 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
             if (dbPassword == null)
                 dbPassword = "";
 
-            if (dbDriver != null)
-                Loader.loadClass(getClass(), dbDriver).newInstance();
-
             userQuery = String.format("SELECT %s, %s FROM %s WHERE %s = ?",
                     dbUserTableKey, dbUserTablePasswordField, dbUserTable, dbUserTableUserField);
+            if (dbUserTableDeletedField != null)
+                userQuery += String.format(" AND %s = FALSE", dbUserTableDeletedField);
             rolesQuery = String.format("SELECT r.%s FROM %s r INNER JOIN %s ur ON r.%s = ur.%s WHERE ur.%s = ?",
                     dbRoleTableRoleField, dbRoleTable, dbUserRoleTable, dbUserRoleTableRoleKey, dbRoleTableKey, dbUserRoleTableUserKey);
 
+            setUpCaches(
+                    (cacheTime != null) ? Long.parseLong(cacheTime.trim()) : 0,
+                    (negativeCacheTime != null) ? Long.parseLong(negativeCacheTime.trim()) : DEFAULT_NEGATIVE_CACHE_TIME);
+
             if (debug) {
                 Log.debug("userQuery: " + userQuery);
                 Log.debug("rolesQuery: " + rolesQuery);
@@ -136,7 +228,97 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
 
     @Override
     public UserInfo getUserInfo(String userName) throws Exception {
+        long loadGeneration;
+
+        synchronized (cacheLock) {
+            if (userCache != null) {
+                CachedUser cachedUser = userCache.get(userName);
+                if (cachedUser != null)
+                    return cachedUser.userInfo;
+            }
+
+            if (unknownUserCache != null && unknownUserCache.containsKey(userName))
+                return null;
+
+            loadGeneration = generation;
+        }
+
+        CachedUser cachedUser = loadUser(userName);
+
+        synchronized (cacheLock) {
+            // Do not cache what was loaded before an invalidation
+            if (loadGeneration == generation) {
+                if (cachedUser != null) {
+                    if (userCache != null)
+                        userCache.put(userName, cachedUser);
+                } else
+                    if (unknownUserCache != null)
+                        unknownUserCache.put(userName, Boolean.TRUE);
+            }
+        }
+
+        return (cachedUser != null) ? cachedUser.userInfo : null;
+    }
+
+    public Connection getConnection() throws Exception {
+        DataSource dataSource = sharedDataSource;
+        if (dataSource != null && useSharedPool)
+            return dataSource.getConnection();
+
+        if (dbDriver == null || dbUrl == null)
+            throw new IllegalStateException("Database connection information not configured");
+
+        String poolKey = dbUserName + "@" + dbUrl;
+        ComboPooledDataSource pool = pools.get(poolKey);
+        if (pool == null) {
+            ComboPooledDataSource newPool = new ComboPooledDataSource();
+            newPool.setDriverClass(dbDriver);
+            newPool.setJdbcUrl(dbUrl);
+            newPool.setUser(dbUserName);
+            newPool.setPassword(dbPassword);
+
+            pool = pools.putIfAbsent(poolKey, newPool);
+            if (pool == null)
+                pool = newPool;
+            else
+                newPool.close();
+        }
+
+        return pool.getConnection();
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    /**
+     * Creates (or recreates, if the configured times changed) the user caches
+     *
+     * @param cacheTime The number of seconds users are cached for, or 0 to disable caching
+     * @param negativeCacheTime The number of seconds unknown users are cached for, or 0 to disable caching
+     */
+    private static void setUpCaches(long cacheTime, long negativeCacheTime) {
+        synchronized (cacheLock) {
+            if (cacheTime != userCacheTime) {
+                userCacheTime = cacheTime;
+                userCache = (cacheTime > 0) ?
+                        new TimedLRUCache<String, CachedUser>(MAX_CACHED_USERS, cacheTime * 1000) : null;
+            }
 
+            if (negativeCacheTime != unknownUserCacheTime) {
+                unknownUserCacheTime = negativeCacheTime;
+                unknownUserCache = (negativeCacheTime > 0) ?
+                        new TimedLRUCache<String, Boolean>(MAX_CACHED_USERS, negativeCacheTime * 1000) : null;
+            }
+        }
+    }
+
+    /**
+     * Loads the credential and the roles of a user from the database
+     *
+     * @param userName The user name
+     * @return The user, or null if the user does not exist
+     * @throws Exception Thrown if an error occurred while communicating with the database
+     */
+    private CachedUser loadUser(String userName) throws Exception {
         Connection connection = null;
         PreparedStatement ps = null;
 
@@ -166,7 +348,7 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
             ps.setBigDecimal(1, userKey);
             rs = ps.executeQuery();
 
-            List roles = new ArrayList();
+            List<String> roles = new ArrayList<String>();
 
             while (rs.next()) {
                 String roleName = rs.getString(1);
@@ -176,7 +358,8 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
             rs.close();
             ps.close();
 
-            return userPassword == null ? null : new UserInfo(userName, Credential.getCredential(userPassword), roles);
+            return userPassword == null ? null : new CachedUser(userKey.toBigInteger(),
+                    new UserInfo(userName, Credential.getCredential(userPassword), Collections.unmodifiableList(roles)));
         }
         finally {
             if (ps != null)
@@ -187,10 +370,29 @@ public class SCJDBCLoginModule extends AbstractLoginModule {
         }
     }
 
-    public Connection getConnection() throws Exception {
-        if (dbDriver == null || dbUrl == null)
-            throw new IllegalStateException("Database connection information not configured");
+    //--------------------------------------------------------------------------------------------
+
+    /**
+     * A cached user; cached users are equal when they have the same key, so that all the names
+     * cached for a user key can be removed at once
+     */
+    private static class CachedUser {
+        private final BigInteger userKey;
+        private final UserInfo userInfo;
+
+        private CachedUser(BigInteger userKey, UserInfo userInfo) {
+            this.userKey = userKey;
+            this.userInfo = userInfo;
+        }
 
-        return DriverManager.getConnection(dbUrl, dbUserName, dbPassword);
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CachedUser && userKey.equals(((CachedUser) obj).userKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return userKey.hashCode();
+        }
     }
 }
@@ -40,11 +40,19 @@
 
 package org.seasr.central.util;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.seasr.central.storage.BackendStoreLink;
+import org.seasr.central.storage.ChangeFeed;
 import org.seasr.central.storage.SCRole;
 import org.seasr.central.storage.exceptions.*;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -62,6 +70,26 @@ public abstract class SCSecurity {
         return false;
     }
 
+    public static boolean canReloadErrorMessages(UUID remoteUserId, BackendStoreLink bsl, HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        // Allowed if the remote user has the ADMIN role
+        if (request.isUserInRole(SCRole.ADMIN.name()))
+            return true;
+
+        return false;
+    }
+
+    public static boolean canViewStatistics(UUID remoteUserId, BackendStoreLink bsl, HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        // Allowed if the remote user has the ADMIN role
+        if (request.isUserInRole(SCRole.ADMIN.name()))
+            return true;
+
+        return false;
+    }
+
     public static boolean canListUsers(UUID remoteUserId, BackendStoreLink bsl, HttpServletRequest request)
         throws UserNotFoundException, BackendStoreException {
 
@@ -111,22 +139,20 @@ public abstract class SCSecurity {
                                              BackendStoreLink bsl, HttpServletRequest request)
         throws ComponentNotFoundException, UserNotFoundException, BackendStoreException {
 
+        // Fails for versions that do not exist, also for administrators
+        UUID ownerId = bsl.getComponentOwner(componentId, version);
+
         // Allowed if the remote user has the ADMIN role
         if (request.isUserInRole(SCRole.ADMIN.name()))
             return true;
 
-        UUID ownerId = bsl.getComponentOwner(componentId, version);
-
         // Allowed if the remote user is the owner of the component
         if (ownerId.equals(remoteUserId))
             return true;
 
-        // Get the number of groups common between the groups the remote user belongs to and the groups
-        // with which this component version is shared
-        int nCommonGroups = bsl.listComponentGroupsAsUser(componentId, version, remoteUserId, 0, Long.MAX_VALUE).length();
 
-        // Allowed if the remote user belong to a group with which this component version is shared
-        if (nCommonGroups > 0)
+        // Allowed if the remote user belongs to a group with which this component version is shared
+        if (bsl.isComponentSharedWithUser(componentId, version, remoteUserId))
             return true;
 
         return false;
@@ -136,22 +162,20 @@ public abstract class SCSecurity {
                                         BackendStoreLink bsl, HttpServletRequest request)
         throws FlowNotFoundException, UserNotFoundException, BackendStoreException {
 
+        // Fails for versions that do not exist, also for administrators
+        UUID ownerId = bsl.getFlowOwner(flowId, version);
+
         // Allowed if the remote user has the ADMIN role
         if (request.isUserInRole(SCRole.ADMIN.name()))
             return true;
 
-        UUID ownerId = bsl.getFlowOwner(flowId, version);
-
         // Allowed if the remote user is the owner of the flow
         if (ownerId.equals(remoteUserId))
             return true;
 
-        // Get the number of groups common between the groups the remote user belongs to and the groups
-        // with which this flow version is shared
-        int nCommonGroups = bsl.listFlowGroupsAsUser(flowId, version, remoteUserId, 0, Long.MAX_VALUE).length();
 
-        // Allowed if the remote user belong to a group with which this component version is shared
-        if (nCommonGroups > 0)
+        // Allowed if the remote user belongs to a group with which this flow version is shared
+        if (bsl.isFlowSharedWithUser(flowId, version, remoteUserId))
             return true;
 
         return false;
@@ -161,12 +185,13 @@ public abstract class SCSecurity {
                                             BackendStoreLink bsl, HttpServletRequest request)
         throws ComponentNotFoundException, UserNotFoundException, BackendStoreException {
 
+        // Fails for versions that do not exist, also for administrators
+        UUID ownerId = bsl.getComponentOwner(componentId, version);
+
         // Allowed if the remote user has the ADMIN role
         if (request.isUserInRole(SCRole.ADMIN.name()))
             return true;
 
-        UUID ownerId = bsl.getComponentOwner(componentId, version);
-
         // Allowed if the remote user is the owner of the component
         if (ownerId.equals(remoteUserId))
             return true;
@@ -174,16 +199,30 @@ public abstract class SCSecurity {
         return false;
     }
 
+    /**
+     * Bulk variant of canShareComponent
+     *
+     * @return The share permission for each component version found; versions that do not exist are left out
+     */
+    public static Map<IdVersionPair, Boolean> canShareComponents(Collection<IdVersionPair> componentVersions,
+                                                                 UUID remoteUserId, BackendStoreLink bsl,
+                                                                 HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        return canShare(bsl.getComponentOwners(componentVersions), remoteUserId, request);
+    }
+
     public static boolean canShareFlow(UUID flowId, int version, UUID remoteUserId,
                                        BackendStoreLink bsl, HttpServletRequest request)
         throws FlowNotFoundException, UserNotFoundException, BackendStoreException {
 
+        // Fails for versions that do not exist, also for administrators
+        UUID ownerId = bsl.getFlowOwner(flowId, version);
+
         // Allowed if the remote user has the ADMIN role
         if (request.isUserInRole(SCRole.ADMIN.name()))
             return true;
 
-        UUID ownerId = bsl.getFlowOwner(flowId, version);
-
         // Allowed if the remote user is the owner of the flow
         if (ownerId.equals(remoteUserId))
             return true;
@@ -191,6 +230,19 @@ public abstract class SCSecurity {
         return false;
     }
 
+    /**
+     * Bulk variant of canShareFlow
+     *
+     * @return The share permission for each flow version found; versions that do not exist are left out
+     */
+    public static Map<IdVersionPair, Boolean> canShareFlows(Collection<IdVersionPair> flowVersions,
+                                                            UUID remoteUserId, BackendStoreLink bsl,
+                                                            HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        return canShare(bsl.getFlowOwners(flowVersions), remoteUserId, request);
+    }
+
     public static boolean canUploadComponent(UUID userId, UUID remoteUserId, BackendStoreLink bsl, HttpServletRequest request)
         throws BackendStoreException {
 
@@ -280,6 +332,22 @@ public abstract class SCSecurity {
         return false;
     }
 
+    /**
+     * Bulk variant of canAccessPrivateGroupInfo
+     *
+     * @return The subset of the given groups whose private info the remote user can access
+     */
+    public static Set<UUID> canAccessPrivateGroupInfo(Collection<UUID> groupIds, UUID remoteUserId,
+                                                      BackendStoreLink bsl, HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        // Allowed if the remote user has the ADMIN role
+        if (request.isUserInRole(SCRole.ADMIN.name()))
+            return new HashSet<UUID>(groupIds);
+
+        return bsl.getGroupMemberships(remoteUserId, groupIds);
+    }
+
     public static boolean canListGroupMembers(UUID groupId, UUID remoteUserId,
                                              BackendStoreLink bsl, HttpServletRequest request)
         throws GroupNotFoundException, UserNotFoundException, BackendStoreException {
@@ -335,4 +403,139 @@ public abstract class SCSecurity {
 
         return false;
     }
+
+    /**
+     * Bulk variant of canAccessPrivateUserInfo
+     *
+     * @return The subset of the given users whose private info the remote user can access
+     */
+    public static Set<UUID> canAccessPrivateUserInfo(Collection<UUID> userIds, UUID remoteUserId,
+                                                     BackendStoreLink bsl, HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        // Allowed if the remote user has the ADMIN role
+        if (request.isUserInRole(SCRole.ADMIN.name()))
+            return new HashSet<UUID>(userIds);
+
+        // Allowed if the remote user wants to access his/her own info
+        Set<UUID> allowed = new HashSet<UUID>();
+        if (remoteUserId != null && userIds.contains(remoteUserId))
+            allowed.add(remoteUserId);
+
+        return allowed;
+    }
+
+    public static boolean canFollowChanges(UUID remoteUserId, BackendStoreLink bsl, HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        // Allow any authenticated user
+        if (remoteUserId != null)
+            return true;
+
+        return false;
+    }
+
+    public static boolean canSearchAllVersions(UUID remoteUserId, BackendStoreLink bsl, HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        // Allowed if the remote user has the ADMIN role
+        if (request.isUserInRole(SCRole.ADMIN.name()))
+            return true;
+
+        return false;
+    }
+
+    /**
+     * Checks whether a change feed event is visible to the remote user, applying the rules of the listing
+     * that the event affects. Events about entities that no longer exist are not visible.
+     *
+     * @return True if the event is visible, false otherwise
+     */
+    public static boolean canAccessEvent(ChangeFeed.Entry entry, UUID remoteUserId,
+                                         BackendStoreLink bsl, HttpServletRequest request)
+        throws UserNotFoundException, BackendStoreException {
+
+        // Allowed if the remote user has the ADMIN role
+        if (request.isUserInRole(SCRole.ADMIN.name()))
+            return true;
+
+        // Allowed if the remote user generated the event
+        if (entry.getUserId() != null && entry.getUserId().equals(remoteUserId))
+            return true;
+
+        try {
+            switch (entry.getEvent()) {
+                case USER_CREATED:
+                case USER_DELETED:
+                case USER_RENAMED:
+                    return canListUsers(remoteUserId, bsl, request);
+
+                case USER_PROFILE_UPDATED:
+                    return canAccessPrivateUserInfo(entry.getUserId(), remoteUserId, bsl, request);
+
+                case GROUP_CREATED:
+                case GROUP_DELETED:
+                case GROUP_RENAMED:
+                    return canListGroups(remoteUserId, bsl, request);
+
+                case USER_JOINED_GROUP:
+                case USER_PARTED_GROUP:
+                case GROUP_JOINED:
+                case GROUP_PARTED:
+                    return canListGroupMembers(entry.getGroupId(), remoteUserId, bsl, request);
+
+                case COMPONENT_UPLOADED:
+                case COMPONENT_DELETED: {
+                    JSONObject joMeta = entry.getMetadata();
+                    return joMeta != null && joMeta.has("version") && canAccessComponent(
+                            entry.getComponentId(), joMeta.getInt("version"), remoteUserId, bsl, request);
+                }
+
+                case FLOW_UPLOADED:
+                case FLOW_DELETED: {
+                    JSONObject joMeta = entry.getMetadata();
+                    return joMeta != null && joMeta.has("version") && canAccessFlow(
+                            entry.getFlowId(), joMeta.getInt("version"), remoteUserId, bsl, request);
+                }
+
+                case COMPONENT_SHARED:
+                case COMPONENT_UNSHARED:
+                    return canAccessGroupComponents(entry.getGroupId(), remoteUserId, bsl, request);
+
+                case FLOW_SHARED:
+                case FLOW_UNSHARED:
+                    return canAccessGroupFlows(entry.getGroupId(), remoteUserId, bsl, request);
+
+                default:
+                    return false;
+            }
+        }
+        catch (GroupNotFoundException e) {
+            return false;
+        }
+        catch (ComponentNotFoundException e) {
+            return false;
+        }
+        catch (FlowNotFoundException e) {
+            return false;
+        }
+        catch (JSONException e) {
+            return false;
+        }
+    }
+
+    //-------------------------------------------------------------------------------------
+
+    private static Map<IdVersionPair, Boolean> canShare(Map<IdVersionPair, UUID> owners, UUID remoteUserId,
+                                                        HttpServletRequest request) {
+        // Allowed if the remote user has the ADMIN role
+        boolean isAdmin = request.isUserInRole(SCRole.ADMIN.name());
+
+        Map<IdVersionPair, Boolean> permissions = new HashMap<IdVersionPair, Boolean>();
+        for (Map.Entry<IdVersionPair, UUID> entry : owners.entrySet())
+            // Allowed if the remote user is the owner of the version
+            permissions.put(entry.getKey(), isAdmin || entry.getValue().equals(remoteUserId));
+
+        return permissions;
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded LRU cache whose entries expire after a fixed time-to-live
+ *
+ * Every removal starts a new generation. Values loaded from the back end store should be stored
+ * together with the generation read before they were loaded, so a value loaded concurrently with
+ * a removal is not put back into the cache (see {@link #put(Object, Object, long)}).
+ *
+ * @author Boris Capitanu
+ */
+public class TimedLRUCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<K, CacheEntry<V>> map;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private long generation = 0;
+
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxEntries The maximum number of entries to keep
+     * @param ttl        The time (in milliseconds) after which an entry expires, or 0 if entries never expire
+     */
+    public TimedLRUCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.map = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > TimedLRUCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for a key
+     *
+     * @param key The key
+     * @return The value, or null if not cached or expired
+     */
+    public V get(K key) {
+        synchronized (map) {
+            CacheEntry<V> entry = map.get(key);
+            if (entry != null && entry.expiresAt != 0 && entry.expiresAt < System.currentTimeMillis()) {
+                map.remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Checks whether a key is cached, without affecting the LRU order or the hit/miss counters
+     *
+     * @param key The key
+     * @return True if cached and not expired, false otherwise
+     */
+    public boolean containsKey(K key) {
+        synchronized (map) {
+            CacheEntry<V> entry = map.get(key);
+            return entry != null && (entry.expiresAt == 0 || entry.expiresAt >= System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Caches a value
+     *
+     * @param key   The key
+     * @param value The value
+     */
+    public void put(K key, V value) {
+        if (value == null) return;
+
+        long expiresAt = (ttl > 0) ? System.currentTimeMillis() + ttl : 0;
+
+        synchronized (map) {
+            map.put(key, new CacheEntry<V>(value, expiresAt));
+        }
+    }
+
+    /**
+     * Caches a value, unless an entry was removed since the given generation
+     *
+     * @param key        The key
+     * @param value      The value
+     * @param generation The generation read before the value was loaded
+     */
+    public void put(K key, V value, long generation) {
+        if (value == null) return;
+
+        long expiresAt = (ttl > 0) ? System.currentTimeMillis() + ttl : 0;
+
+        synchronized (map) {
+            if (generation == this.generation)
+                map.put(key, new CacheEntry<V>(value, expiresAt));
+        }
+    }
+
+    /**
+     * Returns the current generation; it must be read before loading the value to be cached
+     *
+     * @return The generation
+     */
+    public long getGeneration() {
+        synchronized (map) {
+            return generation;
+        }
+    }
+
+    /**
+     * Removes a key from the cache
+     *
+     * @param key The key
+     */
+    public void remove(K key) {
+        synchronized (map) {
+            generation++;
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Removes all the keys mapped to a value
+     *
+     * @param value The value
+     */
+    public void removeValue(V value) {
+        synchronized (map) {
+            generation++;
+            for (Iterator<CacheEntry<V>> it = map.values().iterator(); it.hasNext(); )
+                if (it.next().value.equals(value))
+                    it.remove();
+        }
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public void clear() {
+        synchronized (map) {
+            generation++;
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
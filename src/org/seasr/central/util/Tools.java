@@ -41,8 +41,7 @@
 package org.seasr.central.util;
 
 import com.google.gdata.util.ContentType;
-import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.*;
 import com.hp.hpl.jena.vocabulary.RDF;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -53,18 +52,18 @@ import org.meandre.core.utils.vocabulary.RepositoryVocabulary;
 import org.seasr.central.main.SCServer;
 import org.seasr.central.ws.restlets.ContentTypes;
 import org.seasr.meandre.support.generic.crypto.Crypto;
-import org.seasr.meandre.support.generic.io.ModelUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 /**
  * @author Boris Capitanu
@@ -72,9 +71,6 @@ import java.util.regex.Pattern;
 public class Tools {
     private static final Logger logger = Logger.getLogger(SCServer.class.getName());
 
-    public static final int CONNECTION_TIMEOUT = 0;   // Used for connecting and reading from URLs
-    public static final int READ_TIMEOUT = 0;         // Setting this value to 0 signifies "wait-forever"
-
     /** The XSL transformation used to convert XML to HTML */
     //private static final Transformer xslTrans;
 
@@ -84,6 +80,12 @@ public class Tools {
     /** Defines the possible REST operation results */
     public enum OperationResult { SUCCESS, FAILURE }
 
+    /** Stands for the base access URL in the pre-rendered descriptors (replaced when the descriptors are sent) */
+    public static final String BASE_URL_PLACEHOLDER = "http://sc.base.url.placeholder";
+
+    /** The (Jena) formats in which the descriptors are pre-rendered */
+    public static final String[] DESCRIPTOR_FORMATS = { "RDF/XML", "N-TRIPLE", "TURTLE" };
+
 
     static {
 //        // Initialize the XSL transformation engine
@@ -315,6 +317,22 @@ public class Tools {
         }
     }
 
+    /**
+     * Sets the servlet response code to requested range not satisfiable (416)
+     *
+     * @param response The response object
+     * @param size The size of the resource (in bytes)
+     */
+    public static void sendErrorRangeNotSatisfiable(HttpServletResponse response, long size) {
+        try {
+            response.setHeader("Content-Range", "bytes */" + size);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+        catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
     /**
      * Sets the servlet response code to expectation failed (417)
      *
@@ -631,20 +649,96 @@ public class Tools {
         }
     }
 
-    public static String getComponentBaseAccessUrl(HttpServletRequest request, String compId, int compVersion) {
+    public static String getBaseAccessUrl(HttpServletRequest request) {
         Object servletPath = request.getAttribute("javax.servlet.forward.servlet_path");
         if (servletPath == null) servletPath = request.getServletPath();
-        return String.format("%s://%s:%d%s/components/%s/versions/%d",
-                request.getScheme(), request.getServerName(), request.getServerPort(),
-                servletPath.toString(), compId, compVersion);
+        return String.format("%s://%s:%d%s",
+                request.getScheme(), request.getServerName(), request.getServerPort(), servletPath.toString());
+    }
+
+    public static String getComponentBaseAccessUrl(HttpServletRequest request, String compId, int compVersion) {
+        return getComponentBaseAccessUrl(getBaseAccessUrl(request), compId, compVersion);
+    }
+
+    public static String getComponentBaseAccessUrl(String baseUrl, String compId, int compVersion) {
+        return String.format("%s/components/%s/versions/%d", baseUrl, compId, compVersion);
     }
 
     public static String getFlowBaseAccessUrl(HttpServletRequest request, String flowId, int flowVersion) {
-        Object servletPath = request.getAttribute("javax.servlet.forward.servlet_path");
-        if (servletPath == null) servletPath = request.getServletPath();
-        return String.format("%s://%s:%d%s/flows/%s/versions/%d",
-                request.getScheme(), request.getServerName(), request.getServerPort(),
-                servletPath.toString(), flowId, flowVersion);
+        return getFlowBaseAccessUrl(getBaseAccessUrl(request), flowId, flowVersion);
+    }
+
+    public static String getFlowBaseAccessUrl(String baseUrl, String flowId, int flowVersion) {
+        return String.format("%s/flows/%s/versions/%d", baseUrl, flowId, flowVersion);
+    }
+
+    /**
+     * Creates a strong entity tag for a representation of a versioned (and therefore immutable) resource.
+     * The entity tag is deterministic, so it stays the same across server restarts.
+     *
+     * @param id The resource id
+     * @param version The resource version
+     * @param contentType The content type of the representation
+     * @param request The HTTP request (when the representation embeds the access URLs), or null
+     * @return The quoted entity tag
+     */
+    public static String createVersionedETag(UUID id, int version, ContentType contentType,
+                                             HttpServletRequest request) {
+        StringBuilder key = new StringBuilder();
+        key.append(id).append('/').append(version).append('/').append(contentType.getMediaType());
+
+        if (request != null)
+            key.append('@').append(getBaseAccessUrl(request));
+
+        try {
+            return "\"" + Crypto.toHexString(Crypto.createMD5Hash(key.toString().getBytes("UTF-8"))) + "\"";
+        }
+        catch (UnsupportedEncodingException e) {
+            logger.log(Level.SEVERE, null, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Checks whether the If-None-Match header of a request matches the given entity tag
+     *
+     * @param request The HTTP request
+     * @param eTag The quoted entity tag of the current representation
+     * @return True if the client already has the current representation, False otherwise
+     */
+    public static boolean isNotModified(HttpServletRequest request, String eTag) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null) return false;
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(eTag)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the caching headers for a representation of a versioned (and therefore immutable) resource.
+     * The representations are access controlled, so they are only cacheable by the client.
+     *
+     * @param response The response object
+     * @param eTag The quoted entity tag of the representation
+     */
+    public static void setImmutableCacheHeaders(HttpServletResponse response, String eTag) {
+        response.setHeader("ETag", eTag);
+        response.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+    }
+
+    /**
+     * Sets the servlet response code to not modified (304), along with the caching headers
+     *
+     * @param response The response object
+     * @param eTag The quoted entity tag of the representation
+     */
+    public static void sendNotModified(HttpServletResponse response, String eTag) {
+        setImmutableCacheHeaders(response, eTag);
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
     }
 
     /**
@@ -659,21 +753,30 @@ public class Tools {
     public static void rewriteComponentModel(Model compModel, UUID componentId, int version, HttpServletRequest request)
             throws IOException {
 
+        rewriteComponentModel(compModel, componentId, version, getBaseAccessUrl(request));
+    }
+
+    /**
+     * Rewrites the component model to align the URIs with SC
+     *
+     * @param compModel The component model to rewrite
+     * @param componentId The SC component id
+     * @param version The SC component version
+     * @param baseUrl The base access URL
+     */
+    public static void rewriteComponentModel(Model compModel, UUID componentId, int version, String baseUrl) {
         Resource resExecComp = compModel.listSubjectsWithProperty(
                 RDF.type, RepositoryVocabulary.executable_component).nextResource();
         String oldCompUri = resExecComp.getURI();
-        String compUri = getComponentBaseAccessUrl(request, componentId.toString(), version);
+        String compUri = getComponentBaseAccessUrl(baseUrl, componentId.toString(), version);
         String contextBase = String.format("%s/contexts/", compUri);
 
         if (oldCompUri.endsWith("/")) compUri += "/";
 
-        // TODO: Find a better method to do this (one that relies on direct Model manipulation)
-        String sModel = ModelUtils.modelToDialect(compModel, "TURTLE");
-        sModel = sModel.replaceAll(Pattern.quote(oldCompUri), compUri);  // Update the component URI
-        sModel = sModel.replaceAll("context://localhost/", contextBase); // Update the component context(s) URIs
-
-        compModel.removeAll();
-        ModelUtils.readModelFromString(compModel, sModel);
+        // Update the component URI and the component context(s) URIs
+        rewriteModelUris(compModel,
+                new String[] { oldCompUri, "context://localhost/" },
+                new String[] { compUri, contextBase });
     }
 
     /**
@@ -688,20 +791,309 @@ public class Tools {
     public static void rewriteFlowModel(Model flowModel, UUID flowId, int version, HttpServletRequest request)
             throws IOException {
 
+        rewriteFlowModel(flowModel, flowId, version, getBaseAccessUrl(request));
+    }
+
+    /**
+     * Rewrites the flow model to align the URIs with SC
+     *
+     * @param flowModel The flow model to rewrite
+     * @param flowId The SC flow id
+     * @param version The SC flow version
+     * @param baseUrl The base access URL
+     */
+    public static void rewriteFlowModel(Model flowModel, UUID flowId, int version, String baseUrl) {
         Resource resFlow = flowModel.listSubjectsWithProperty(
                 RDF.type, RepositoryVocabulary.flow_component).nextResource();
         String oldFlowUri = resFlow.getURI();
-        String flowUri = getFlowBaseAccessUrl(request, flowId.toString(), version);
+        String flowUri = getFlowBaseAccessUrl(baseUrl, flowId.toString(), version);
 
         if (oldFlowUri.endsWith("/")) flowUri += "/";
 
         // Update the flow URI
-        // TODO: Find a better method to do this (one that relies on direct Model manipulation)
-        String sModel = ModelUtils.modelToDialect(flowModel, "TURTLE");
-        sModel = sModel.replaceAll(Pattern.quote(oldFlowUri), flowUri);  // Update the flow URI
+        rewriteModelUris(flowModel, new String[] { oldFlowUri }, new String[] { flowUri });
+    }
+
+    /**
+     * Returns the descriptor format corresponding to a response content type
+     *
+     * @param ct The content type
+     * @return The (Jena) format, or null if the content type is not a descriptor content type
+     */
+    public static String getDescriptorFormat(ContentType ct) {
+        if (ct.equals(ContentTypes.RDFXML)) return "RDF/XML";
+        if (ct.equals(ContentTypes.RDFNT)) return "N-TRIPLE";
+        if (ct.equals(ContentTypes.RDFTTL)) return "TURTLE";
+
+        return null;
+    }
+
+    /**
+     * Pre-renders a component descriptor in all the descriptor formats, using BASE_URL_PLACEHOLDER
+     * in place of the base access URL
+     *
+     * @param compModel The component model (not modified)
+     * @param componentId The SC component id
+     * @param version The SC component version
+     * @return The renderings, keyed by format
+     */
+    public static Map<String, byte[]> renderComponentModel(Model compModel, UUID componentId, int version) {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefixes(compModel.getNsPrefixMap());
+        model.add(compModel);
+
+        rewriteComponentModel(model, componentId, version, BASE_URL_PLACEHOLDER);
+
+        return renderModel(model);
+    }
+
+    /**
+     * Pre-renders a flow descriptor in all the descriptor formats, using BASE_URL_PLACEHOLDER
+     * in place of the base access URL
+     *
+     * @param flowModel The flow model (not modified)
+     * @param flowId The SC flow id
+     * @param version The SC flow version
+     * @return The renderings, keyed by format
+     */
+    public static Map<String, byte[]> renderFlowModel(Model flowModel, UUID flowId, int version) {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefixes(flowModel.getNsPrefixMap());
+        model.add(flowModel);
+
+        rewriteFlowModel(model, flowId, version, BASE_URL_PLACEHOLDER);
+
+        return renderModel(model);
+    }
+
+    /**
+     * Serializes a model in all the descriptor formats
+     *
+     * @param model The model
+     * @return The serialized model, keyed by format
+     */
+    private static Map<String, byte[]> renderModel(Model model) {
+        Map<String, byte[]> renderings = new HashMap<String, byte[]>();
+        for (String format : DESCRIPTOR_FORMATS) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            model.write(baos, format);
+            renderings.put(format, baos.toByteArray());
+        }
+
+        return renderings;
+    }
+
+    /**
+     * Sends a pre-rendered descriptor, replacing BASE_URL_PLACEHOLDER with the base access URL
+     *
+     * @param response The response object
+     * @param rendering The pre-rendered descriptor
+     * @param baseUrl The base access URL
+     * @throws IOException Thrown if an I/O error occurs
+     */
+    public static void sendRendering(HttpServletResponse response, byte[] rendering, String baseUrl)
+            throws IOException {
+
+        byte[] placeholder = BASE_URL_PLACEHOLDER.getBytes("US-ASCII");
+        byte[] replacement = baseUrl.getBytes("UTF-8");
+
+        // Find the placeholder occurrences
+        int[] positions = new int[16];
+        int count = 0;
+        for (int i = indexOf(rendering, placeholder, 0); i != -1; i = indexOf(rendering, placeholder, i + placeholder.length)) {
+            if (count == positions.length)
+                positions = Arrays.copyOf(positions, count * 2);
+            positions[count++] = i;
+        }
+
+        response.setContentLength((int) getRenderingLength(rendering.length, count, baseUrl));
+
+        OutputStream out = response.getOutputStream();
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            out.write(rendering, start, positions[i] - start);
+            out.write(replacement);
+            start = positions[i] + placeholder.length;
+        }
+        out.write(rendering, start, rendering.length - start);
+    }
+
+    /**
+     * Counts the occurrences of BASE_URL_PLACEHOLDER in a pre-rendered descriptor
+     *
+     * @param rendering The pre-rendered descriptor
+     * @return The number of occurrences
+     */
+    public static int countPlaceholders(byte[] rendering) {
+        byte[] placeholder;
+        try {
+            placeholder = BASE_URL_PLACEHOLDER.getBytes("US-ASCII");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        int count = 0;
+        for (int i = indexOf(rendering, placeholder, 0); i != -1; i = indexOf(rendering, placeholder, i + placeholder.length))
+            count++;
+
+        return count;
+    }
+
+    /**
+     * Computes the length of a pre-rendered descriptor once BASE_URL_PLACEHOLDER is replaced with the base access URL
+     *
+     * @param size The length of the pre-rendered descriptor
+     * @param placeholders The number of occurrences of BASE_URL_PLACEHOLDER in it
+     * @param baseUrl The base access URL
+     * @return The length of the descriptor sent
+     */
+    public static long getRenderingLength(long size, int placeholders, String baseUrl) {
+        try {
+            return size + (long) placeholders *
+                    (baseUrl.getBytes("UTF-8").length - BASE_URL_PLACEHOLDER.getBytes("US-ASCII").length);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Finds the first occurrence of a byte sequence
+     *
+     * @param data The data to search
+     * @param pattern The byte sequence to find
+     * @param fromIndex The index to start the search from
+     * @return The index of the first occurrence, or -1 if not found
+     */
+    private static int indexOf(byte[] data, byte[] pattern, int fromIndex) {
+        byte first = pattern[0];
+        int max = data.length - pattern.length;
+
+        for (int i = fromIndex; i <= max; i++) {
+            if (data[i] != first) continue;
+
+            int j = 1;
+            while (j < pattern.length && data[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Replaces, in place, all occurrences of the given strings in the URIs and literals of a model
+     * (and in its namespace prefix mappings). The replacements are applied in order.
+     * Only the statements that change are touched.
+     *
+     * @param model The model to rewrite
+     * @param targets The strings to replace
+     * @param replacements The replacement strings
+     */
+    protected static void rewriteModelUris(Model model, String[] targets, String[] replacements) {
+        List<Statement> removed = new ArrayList<Statement>();
+        List<Statement> added = new ArrayList<Statement>();
+        Map<RDFNode, RDFNode> rewritten = new HashMap<RDFNode, RDFNode>();
+
+        StmtIterator it = model.listStatements();
+        try {
+            while (it.hasNext()) {
+                Statement stmt = it.nextStatement();
+
+                Resource subject = (Resource) rewriteNode(model, stmt.getSubject(), targets, replacements, rewritten);
+                Property predicate = (Property) rewriteNode(model, stmt.getPredicate(), targets, replacements, rewritten);
+                RDFNode object = rewriteNode(model, stmt.getObject(), targets, replacements, rewritten);
+
+                if (subject != stmt.getSubject() || predicate != stmt.getPredicate() || object != stmt.getObject()) {
+                    removed.add(stmt);
+                    added.add(model.createStatement(subject, predicate, object));
+                }
+            }
+        }
+        finally {
+            it.close();
+        }
+
+        model.remove(removed);
+        model.add(added);
+
+        for (Map.Entry<String, String> prefix : new HashMap<String, String>(model.getNsPrefixMap()).entrySet()) {
+            String uri = replaceAll(prefix.getValue(), targets, replacements);
+            if (uri != prefix.getValue())
+                model.setNsPrefix(prefix.getKey(), uri);
+        }
+    }
+
+    /**
+     * Rewrites a node of a model
+     *
+     * @param model The model
+     * @param node The node
+     * @param targets The strings to replace
+     * @param replacements The replacement strings
+     * @param rewritten The nodes rewritten so far (used to avoid rewriting the same node repeatedly)
+     * @return The rewritten node, or the same node if it did not need rewriting
+     */
+    private static RDFNode rewriteNode(Model model, RDFNode node, String[] targets, String[] replacements,
+                                       Map<RDFNode, RDFNode> rewritten) {
+        RDFNode result = rewritten.get(node);
+        if (result != null) return result;
+
+        result = node;
+
+        if (node.isURIResource()) {
+            String uri = ((Resource) node).getURI();
+            String newUri = replaceAll(uri, targets, replacements);
+            if (newUri != uri)
+                result = (node instanceof Property) ? model.createProperty(newUri) : model.createResource(newUri);
+        }
+
+        else
+
+        if (node.isLiteral()) {
+            Literal literal = (Literal) node;
+            String lexical = literal.getLexicalForm();
+            String newLexical = replaceAll(lexical, targets, replacements);
+            if (newLexical != lexical) {
+                if (literal.getDatatypeURI() != null)
+                    result = model.createTypedLiteral(newLexical, literal.getDatatypeURI());
+                else
+                    result = model.createLiteral(newLexical, literal.getLanguage());
+            }
+        }
+
+        rewritten.put(node, result);
+
+        return result;
+    }
+
+    /**
+     * Replaces all occurrences of the given strings, in order, without using regular expressions
+     *
+     * @param s The string
+     * @param targets The strings to replace
+     * @param replacements The replacement strings
+     * @return The resulting string, or the same string instance if nothing was replaced
+     */
+    private static String replaceAll(String s, String[] targets, String[] replacements) {
+        for (int i = 0; i < targets.length; i++) {
+            String target = targets[i];
+            int pos = s.indexOf(target);
+            if (pos == -1) continue;
+
+            StringBuilder sb = new StringBuilder(s.length() + 32);
+            int start = 0;
+            do {
+                sb.append(s, start, pos).append(replacements[i]);
+                start = pos + target.length();
+                pos = s.indexOf(target, start);
+            } while (pos != -1);
+            sb.append(s, start, s.length());
+
+            s = sb.toString();
+        }
 
-        flowModel.removeAll();
-        ModelUtils.readModelFromString(flowModel, sModel);
+        return s;
     }
 
     /**
@@ -0,0 +1,175 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe LRU cache bounded by the total weight (ex: size in bytes) of its entries
+ * rather than by their number
+ *
+ * @author Boris Capitanu
+ */
+public class WeightedLRUCache<K, V> {
+
+    private final long maxWeight;
+    private final LinkedHashMap<K, WeightedValue<V>> map;
+    private long weight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxWeight The maximum total weight of the cached entries
+     */
+    public WeightedLRUCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+        this.map = new LinkedHashMap<K, WeightedValue<V>>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the cached value for a key
+     *
+     * @param key The key
+     * @return The value, or null if not cached
+     */
+    public V get(K key) {
+        synchronized (map) {
+            WeightedValue<V> entry = map.get(key);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Caches a value, evicting the least recently used entries as needed.
+     * Values heavier than the maximum weight of the cache are not cached.
+     *
+     * @param key         The key
+     * @param value       The value
+     * @param valueWeight The weight of the value
+     */
+    public void put(K key, V value, long valueWeight) {
+        if (value == null || valueWeight > maxWeight) return;
+
+        synchronized (map) {
+            WeightedValue<V> old = map.put(key, new WeightedValue<V>(value, valueWeight));
+            if (old != null)
+                weight -= old.weight;
+            weight += valueWeight;
+
+            for (Iterator<WeightedValue<V>> it = map.values().iterator(); weight > maxWeight && it.hasNext(); ) {
+                weight -= it.next().weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes a key from the cache
+     *
+     * @param key The key
+     */
+    public void remove(K key) {
+        synchronized (map) {
+            WeightedValue<V> old = map.remove(key);
+            if (old != null)
+                weight -= old.weight;
+        }
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+            weight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getWeight() {
+        synchronized (map) {
+            return weight;
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private static class WeightedValue<V> {
+        private final V value;
+        private final long weight;
+
+        private WeightedValue(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -45,6 +45,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.seasr.central.storage.BackendStoreLink;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.GroupNotFoundException;
 import org.seasr.central.storage.exceptions.UserNotFoundException;
@@ -56,13 +57,16 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.seasr.central.util.Tools.sendContent;
 import static org.seasr.central.util.Tools.sendErrorInternalServerError;
@@ -81,12 +85,23 @@ public abstract class AbstractBaseRestlet implements RestServlet {
     /** The back end storage link */
     protected BackendStoreLink bsl;
 
-    private static final Pattern patternExtension;
+    /** The default maximum number of entries returned by a single page of a listing */
+    public static final long DEFAULT_MAX_PAGE_SIZE = 1000;
 
+    /** The key holding the continuation cursor in the response of a paged listing */
+    public static final String NEXT_CURSOR = "NEXT";
 
-    static {
-        patternExtension = Pattern.compile("\\.([a-z]+)$");
-    }
+    /** The maximum number of entries returned by a single page of a listing */
+    protected long maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+
+    /** The maximum number of distinct 'Accept' headers for which the negotiated content type is remembered */
+    private static final int ACCEPT_CACHE_SIZE = 64;
+
+    /** The negotiated content types, keyed on the value of the 'Accept' header */
+    private final ConcurrentMap<String, ContentType> acceptCache = new ConcurrentHashMap<String, ContentType>();
+
+    /** The supported content types, as used for 'Accept' header negotiation */
+    private volatile List<ContentType> supportedTypesList;
 
     @Override
     public void setLogger(Logger logger) {
@@ -98,6 +113,25 @@ public abstract class AbstractBaseRestlet implements RestServlet {
         this.bsl = bsl;
     }
 
+    /**
+     * Returns the HTTP methods handled by this restlet (GET, unless overridden)
+     *
+     * @return The HTTP methods handled by this restlet
+     */
+    @Override
+    public Set<String> getSupportedMethods() {
+        return Collections.singleton("GET");
+    }
+
+    /**
+     * Sets the maximum number of entries returned by a single page of a listing
+     *
+     * @param maxPageSize The maximum page size
+     */
+    public void setMaxPageSize(long maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
     /**
      * Returns the supported 'Content-Type' values for this restlet
      * format is: <extension, ContentType>
@@ -129,21 +163,52 @@ public abstract class AbstractBaseRestlet implements RestServlet {
     public ContentType getDesiredResponseContentType(HttpServletRequest request) {
         ContentType ct = null;
 
-        Map<String, ContentType> allowedTypes = getSupportedResponseTypes();
-        String reqUri = request.getRequestURI().toLowerCase();
-        Matcher m = patternExtension.matcher(reqUri);
-        if (m.find())
-            ct = allowedTypes.get(m.group(1));
+        String ext = getResourceExtension(request.getRequestURI());
+        if (ext != null)
+            ct = getSupportedResponseTypes().get(ext);
         else {
             String accept = request.getHeader("Accept");
-            if (accept != null)
-                ct = ContentType.getBestContentType(accept,
-                        new ArrayList<ContentType>(allowedTypes.values()));
+            if (accept != null) {
+                ct = acceptCache.get(accept);
+                if (ct == null) {
+                    List<ContentType> allowedTypes = supportedTypesList;
+                    if (allowedTypes == null)
+                        supportedTypesList = allowedTypes =
+                                new ArrayList<ContentType>(getSupportedResponseTypes().values());
+
+                    ct = ContentType.getBestContentType(accept, allowedTypes);
+                    if (ct != null && acceptCache.size() < ACCEPT_CACHE_SIZE)
+                        acceptCache.put(accept, ct);
+                }
+            }
         }
 
         return ct;
     }
 
+    /**
+     * Returns the (lowercase) extension of the resource referenced by a request URI
+     * Example: /services/users.json  ---- returns json
+     *
+     * @param reqUri The request URI
+     * @return The extension, or null if the URI does not end with an extension
+     */
+    protected static String getResourceExtension(String reqUri) {
+        int end = reqUri.length();
+        int pos = end;
+
+        while (pos > 0) {
+            char c = Character.toLowerCase(reqUri.charAt(pos - 1));
+            if (c < 'a' || c > 'z') break;
+            pos--;
+        }
+
+        if (pos == end || pos == 0 || reqUri.charAt(pos - 1) != '.')
+            return null;
+
+        return reqUri.substring(pos).toLowerCase();
+    }
+
     /**
      * Interprets a string representing either a screen name or a user id
      *
@@ -210,6 +275,67 @@ public abstract class AbstractBaseRestlet implements RestServlet {
         return result;
     }
 
+    /**
+     * Returns the number of entries requested for a page of a listing, capped at the maximum page size
+     *
+     * @param request The request
+     * @return The page size
+     * @throws NumberFormatException Thrown if the 'count' parameter is not a number
+     */
+    protected long getPageSize(HttpServletRequest request) throws NumberFormatException {
+        String sCount = request.getParameter("count");
+        return (sCount != null) ? Math.min(Long.parseLong(sCount), maxPageSize) : maxPageSize;
+    }
+
+    /**
+     * Returns the cursor after which a page of a listing should start.
+     * Requests that page by 'offset' and carry no 'cursor' keep the offset semantics and get null.
+     *
+     * @param request The request
+     * @return The cursor, or null if the request pages by offset
+     * @throws NumberFormatException Thrown if the 'cursor' parameter is not a valid cursor
+     */
+    protected PageCursor getPageCursor(HttpServletRequest request) throws NumberFormatException {
+        String sCursor = request.getParameter("cursor");
+        if (sCursor != null && sCursor.trim().length() > 0)
+            return PageCursor.fromToken(sCursor.trim());
+
+        return (request.getParameter("offset") != null) ? null : PageCursor.START;
+    }
+
+    /**
+     * Returns the cursor from which the page following the given one can be requested
+     *
+     * @param jaPage The page, as returned by the back end store
+     * @param after The cursor the page was requested with, or null for offset paging
+     * @param count The requested page size
+     * @return The cursor, or null if there are no more entries or the page was requested by offset
+     * @throws JSONException Thrown if the last entry of the page cannot be read
+     */
+    protected PageCursor getNextPageCursor(JSONArray jaPage, PageCursor after, long count) throws JSONException {
+        if (after == null || jaPage.length() == 0 || jaPage.length() < count)
+            return null;
+
+        return PageCursor.after(jaPage.getJSONObject(jaPage.length() - 1));
+    }
+
+    /**
+     * Returns the cursor from which the page following the one handled by a listing writer can be requested
+     *
+     * @param writer The listing writer
+     * @param after The cursor the page was requested with, or null for offset paging
+     * @param count The requested page size
+     * @return The cursor, or null if there are no more entries or the page was requested by offset
+     * @throws JSONException Thrown if the last entry of the page cannot be read
+     */
+    protected PageCursor getNextPageCursor(ListingResponseWriter writer, PageCursor after, long count)
+            throws JSONException {
+        if (after == null || writer.getEntryCount() == 0 || writer.getEntryCount() < count)
+            return null;
+
+        return PageCursor.after(writer.getLastEntry());
+    }
+
     /**
      * Packages and sends a response to a API request
      *
@@ -219,10 +345,26 @@ public abstract class AbstractBaseRestlet implements RestServlet {
      * @param response The response object
      */
     protected void sendResponse(JSONArray jaSuccess, JSONArray jaErrors, ContentType ct, HttpServletResponse response) {
+        sendResponse(jaSuccess, jaErrors, null, ct, response);
+    }
+
+    /**
+     * Packages and sends a page of a listing
+     *
+     * @param jaSuccess The responses successfuly generated
+     * @param jaErrors The responses that failed
+     * @param next The cursor from which the next page can be requested, or null if this is the last page
+     * @param ct The desired response content type
+     * @param response The response object
+     */
+    protected void sendResponse(JSONArray jaSuccess, JSONArray jaErrors, PageCursor next,
+                                ContentType ct, HttpServletResponse response) {
         try {
             JSONObject joContent = new JSONObject();
             joContent.put(Tools.OperationResult.SUCCESS.name(), jaSuccess);
             joContent.put(Tools.OperationResult.FAILURE.name(), jaErrors);
+            if (next != null)
+                joContent.put(NEXT_CURSOR, next.toToken());
 
             sendContent(response, joContent, ct);
         }
@@ -235,4 +377,33 @@ public abstract class AbstractBaseRestlet implements RestServlet {
             sendErrorInternalServerError(response);
         }
     }
+
+    /**
+     * Completes the response of a listing
+     *
+     * @param writer The listing writer
+     * @param jaErrors The responses that failed
+     * @param next The cursor from which the next page can be requested, or null if this is the last page
+     * @param response The response object
+     */
+    protected void sendResponse(ListingResponseWriter writer, JSONArray jaErrors, PageCursor next,
+                                HttpServletResponse response) {
+        try {
+            writer.finish(jaErrors, next);
+        }
+        catch (IOException e) {
+            logger.log(Level.WARNING, null, e);
+        }
+        catch (BackendStoreException e) {
+            logger.log(Level.SEVERE, null, e);
+            if (!response.isCommitted())
+                sendErrorInternalServerError(response);
+        }
+        catch (JSONException e) {
+            // Should not happen
+            logger.log(Level.SEVERE, null, e);
+            if (!response.isCommitted())
+                sendErrorInternalServerError(response);
+        }
+    }
 }
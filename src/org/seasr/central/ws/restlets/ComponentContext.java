@@ -40,17 +40,25 @@
 
 package org.seasr.central.ws.restlets;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * @author Boris Capitanu
  */
-public class ComponentContext {
+public class ComponentContext implements Closeable {
     private final InputStream dataStream;
     private final String contentType;
+    private final long size;
 
     public ComponentContext(String contentType, InputStream dataStream) {
+        this(contentType, -1, dataStream);
+    }
+
+    public ComponentContext(String contentType, long size, InputStream dataStream) {
         this.contentType = contentType;
+        this.size = size;
         this.dataStream = dataStream;
     }
 
@@ -61,4 +69,22 @@ public class ComponentContext {
     public String getContentType() {
         return contentType;
     }
+
+    /**
+     * Returns the size of the context data
+     *
+     * @return The size (in bytes), or -1 if not known
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Closes the context data stream, releasing any resources held by it
+     *
+     * @throws IOException Thrown if an I/O error occurs
+     */
+    public void close() throws IOException {
+        dataStream.close();
+    }
 }
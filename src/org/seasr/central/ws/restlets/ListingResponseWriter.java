@@ -0,0 +1,263 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+
+package org.seasr.central.ws.restlets;
+
+import com.google.gdata.util.ContentType;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.seasr.central.storage.EntryHandler;
+import org.seasr.central.storage.PageCursor;
+import org.seasr.central.storage.exceptions.BackendStoreException;
+import org.seasr.central.util.Tools;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the response of a listing as the entries are read from the back end store.
+ * For JSON responses the SUCCESS array is written to the client entry by entry, so the memory used
+ * does not depend on the size of the listing; the other content types are collected and sent as usual.
+ * The response status is decided when the first entry is written, so errors occurring before that
+ * are reported with the usual status codes.
+ *
+ * Subclasses can override {@link #transform(JSONObject)} to adjust the entries before they are written,
+ * or {@link #transform(List)} to adjust them a batch at a time (e.g. to check permissions with one query
+ * per batch instead of one per entry). Entries are transformed in batches of up to BATCH_SIZE, so
+ * {@link #flush()} must be called once the listing has been read.
+ *
+ * @author Boris Capitanu
+ */
+public class ListingResponseWriter implements EntryHandler {
+
+    /** The size of the buffer used for writing the entries */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The maximum number of entries transformed at once */
+    public static final int BATCH_SIZE = 100;
+
+    private final ContentType ct;
+    private final HttpServletResponse response;
+    private final boolean streaming;
+    private final JSONArray jaSuccess = new JSONArray();
+    private final List<JSONObject> batch = new ArrayList<JSONObject>(BATCH_SIZE);
+
+    private Writer writer = null;
+    private JSONObject lastEntry = null;
+    private int entryCount = 0;
+
+    /**
+     * Creates a writer for the response of a listing
+     *
+     * @param ct The desired response content type
+     * @param response The response object
+     */
+    public ListingResponseWriter(ContentType ct, HttpServletResponse response) {
+        this.ct = ct;
+        this.response = response;
+        this.streaming = ct.equals(ContentType.JSON) || ct.equals(ContentTypes.SmartGWT);
+    }
+
+    /**
+     * Adjusts an entry before it is written
+     *
+     * @param entry The entry, as returned by the back end store
+     * @return The entry to write, or null to leave the entry out of the response
+     * @throws Exception Thrown if the entry cannot be transformed
+     */
+    protected JSONObject transform(JSONObject entry) throws Exception {
+        return entry;
+    }
+
+    /**
+     * Adjusts a batch of entries before they are written
+     *
+     * @param entries The entries, as returned by the back end store
+     * @return The entries to write (null elements are left out of the response)
+     * @throws Exception Thrown if the entries cannot be transformed
+     */
+    protected List<JSONObject> transform(List<JSONObject> entries) throws Exception {
+        List<JSONObject> transformed = new ArrayList<JSONObject>(entries.size());
+        for (JSONObject entry : entries)
+            transformed.add(transform(entry));
+
+        return transformed;
+    }
+
+    public void handleEntry(JSONObject entry) throws Exception {
+        lastEntry = entry;
+        entryCount++;
+
+        batch.add(entry);
+        if (batch.size() >= BATCH_SIZE)
+            writeBatch();
+    }
+
+    /**
+     * Transforms and writes the entries that are waiting in the current batch
+     *
+     * @throws BackendStoreException Thrown if the entries could not be handled
+     */
+    public void flush() throws BackendStoreException {
+        try {
+            writeBatch();
+        }
+        catch (BackendStoreException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new BackendStoreException(e);
+        }
+    }
+
+    private void writeBatch() throws Exception {
+        if (batch.isEmpty()) return;
+
+        List<JSONObject> entries = transform(new ArrayList<JSONObject>(batch));
+        batch.clear();
+
+        for (JSONObject joEntry : entries)
+            if (joEntry != null)
+                writeEntry(joEntry);
+    }
+
+    private void writeEntry(JSONObject joEntry) throws IOException {
+        if (!streaming) {
+            jaSuccess.put(joEntry);
+            return;
+        }
+
+        if (writer == null) {
+            response.setContentType(ct.toString());
+            response.setStatus(HttpServletResponse.SC_OK);
+
+            writer = new BufferedWriter(response.getWriter(), BUFFER_SIZE);
+            writer.write('{');
+            writer.write(JSONObject.quote(Tools.OperationResult.SUCCESS.name()));
+            writer.write(":[");
+        } else
+            writer.write(',');
+
+        writer.write(joEntry.toString());
+    }
+
+    /**
+     * Handles the entries of a listing that was already retrieved
+     *
+     * @param entries The entries
+     * @throws BackendStoreException Thrown if an entry could not be handled
+     */
+    public void handleEntries(JSONArray entries) throws BackendStoreException {
+        try {
+            for (int i = 0, iMax = entries.length(); i < iMax; i++)
+                handleEntry(entries.getJSONObject(i));
+        }
+        catch (Exception e) {
+            throw new BackendStoreException(e);
+        }
+
+        flush();
+    }
+
+    /**
+     * Returns the last entry received from the back end store (before any transformation)
+     *
+     * @return The entry, or null if no entries were received
+     */
+    public JSONObject getLastEntry() {
+        return lastEntry;
+    }
+
+    /**
+     * Returns the number of entries received from the back end store
+     *
+     * @return The number of entries
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Completes the response
+     *
+     * @param jaErrors The responses that failed
+     * @param next The cursor from which the next page can be requested, or null if there is none
+     * @throws IOException Thrown if the response cannot be written
+     * @throws JSONException Thrown if the response cannot be serialized
+     * @throws BackendStoreException Thrown if the entries left in the current batch could not be handled
+     */
+    public void finish(JSONArray jaErrors, PageCursor next) throws IOException, JSONException, BackendStoreException {
+        flush();
+
+        if (writer == null) {
+            JSONObject joContent = new JSONObject();
+            joContent.put(Tools.OperationResult.SUCCESS.name(), jaSuccess);
+            joContent.put(Tools.OperationResult.FAILURE.name(), jaErrors);
+            if (next != null)
+                joContent.put(AbstractBaseRestlet.NEXT_CURSOR, next.toToken());
+
+            Tools.sendContent(response, joContent, ct);
+            return;
+        }
+
+        // The status was sent with the first entry
+        for (int i = 0, iMax = jaErrors.length(); i < iMax; i++)
+            jaErrors.getJSONObject(i).remove("http_status");
+
+        writer.write("],");
+        writer.write(JSONObject.quote(Tools.OperationResult.FAILURE.name()));
+        writer.write(':');
+        writer.write(jaErrors.toString());
+        if (next != null) {
+            writer.write(',');
+            writer.write(JSONObject.quote(AbstractBaseRestlet.NEXT_CURSOR));
+            writer.write(':');
+            writer.write(JSONObject.quote(next.toToken()));
+        }
+        writer.write('}');
+        writer.flush();
+    }
+}
@@ -45,6 +45,7 @@ import org.seasr.central.storage.BackendStoreLink;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -75,6 +76,13 @@ public interface RestServlet {
      */
     public String getRestContextPathRegexp();
 
+    /**
+     * Return the HTTP methods handled by the restful service
+     *
+     * @return The (upper case) names of the HTTP methods
+     */
+    public Set<String> getSupportedMethods();
+
     /**
      * Process a matching restful request
      *
@@ -82,7 +90,9 @@ public interface RestServlet {
      * @param response The response object
      * @param method   The HTTP method used
      * @param values   The extracted values from the rest request
-     * @return True is the request is processed and no further attempts should be ma
+     * @return True is the request is processed and no further attempts should be made, or false if the
+     *         request should be offered to the next matching restful service. The dispatcher only offers
+     *         requests using one of the methods returned by getSupportedMethods()
      */
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String...values);
 
@@ -43,9 +43,7 @@ package org.seasr.central.ws.restlets;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.seasr.central.util.Tools.sendErrorNotFound;
 
@@ -58,19 +56,9 @@ import static org.seasr.central.util.Tools.sendErrorNotFound;
 public class RestfulExtensibleDispatcher extends HttpServlet {
 
     /**
-     * The basic collection of rest servlets
+     * The route table used to find the candidate rest servlets for a request path
      */
-    private final ArrayList<RestServlet> lstServlets = new ArrayList<RestServlet>(30);
-
-    /**
-     * The list of compiled expressions
-     */
-    private final ArrayList<Pattern> lstPatterns = new ArrayList<Pattern>(30);
-
-    /**
-     * The number of contained servlets
-     */
-    private int iNumRestlets = 0;
+    private final RouteTable routeTable = new RouteTable();
 
 
     /**
@@ -79,9 +67,7 @@ public class RestfulExtensibleDispatcher extends HttpServlet {
      * @param restlet The rest servlet to add.
      */
     public void add(RestServlet restlet) {
-        lstPatterns.add(Pattern.compile(restlet.getRestContextPathRegexp()));
-        lstServlets.add(restlet);
-        iNumRestlets++;
+        routeTable.add(restlet);
     }
 
     /**
@@ -90,21 +76,14 @@ public class RestfulExtensibleDispatcher extends HttpServlet {
      * @param restlet The rest servlet to remove.
      */
     public void remove(RestServlet restlet) {
-        int idx = lstServlets.indexOf(restlet);
-        if (idx >= 0) {
-            lstServlets.remove(idx);
-            lstPatterns.remove(idx);
-            iNumRestlets--;
-        }
+        routeTable.remove(restlet);
     }
 
     /**
      * Remove all the contained rest servlets.
      */
     public void clear() {
-        lstServlets.clear();
-        lstPatterns.clear();
-        iNumRestlets = 0;
+        routeTable.clear();
     }
 
     /**
@@ -113,7 +92,7 @@ public class RestfulExtensibleDispatcher extends HttpServlet {
      * @return The number of restful servlets contained in this dispatcher
      */
     public int size() {
-        return iNumRestlets;
+        return routeTable.size();
     }
 
     /**
@@ -204,8 +183,8 @@ public class RestfulExtensibleDispatcher extends HttpServlet {
         String sReqPath = req.getRequestURI();
         boolean handled = false;
 
-        for (int idx = 0; idx < iNumRestlets; idx++) {
-            Matcher m = lstPatterns.get(idx).matcher(sReqPath);
+        for (RouteTable.Route route : routeTable.lookup(method, sReqPath)) {
+            Matcher m = route.getPattern().matcher(sReqPath);
             if (m.find()) {
                 // The specified pattern was matched
                 // Extract the values and invoke the restlet
@@ -214,7 +193,7 @@ public class RestfulExtensibleDispatcher extends HttpServlet {
                 for (int i = 1; i <= iGroups; i++)
                     values[i - 1] = m.group(i);
 
-                handled = lstServlets.get(idx).process(req, resp, method, values);
+                handled = route.getRestlet().process(req, resp, method, values);
 
                 if (handled) break;
             }
@@ -0,0 +1,477 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.ws.restlets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Route table used by the dispatcher to narrow down the restlets that could match a request path.
+ * The regular expression of each restlet is decomposed into its literal path segments and single-segment
+ * capture groups, and the restlet is stored in a trie keyed on those segments. A lookup walks the trie
+ * once, in O(path depth), and returns the (few) restlets whose path skeleton fits the request and that
+ * handle the request method, in the order in which they were added. The leaves of the trie are keyed on the
+ * HTTP methods declared by each restlet (see RestServlet.getSupportedMethods()). The full regular expression of each candidate is still used to verify
+ * the match and to extract the values, so the semantics are the same as a linear scan.
+ * Restlets whose regular expression cannot be decomposed are always returned as candidates for the methods
+ * they handle.
+ *
+ * @author Boris Capitanu
+ */
+public class RouteTable {
+
+    /** The characters that cannot appear in a literal path segment */
+    private static final String REGEX_META_CHARS = "\\.[]{}()*+?^$|";
+
+    /** The root of the trie */
+    private Node root = new Node();
+
+    /** The routes that could not be decomposed and have to be checked for every request, keyed on method */
+    private final Map<String, List<Route>> fallbackRoutes = new HashMap<String, List<Route>>();
+
+    /** All the routes, in the order in which they were added */
+    private final List<Route> routes = new ArrayList<Route>();
+
+    /** Sorts the routes in the order in which they were added */
+    private static final Comparator<Route> ROUTE_ORDER = new Comparator<Route>() {
+        @Override
+        public int compare(Route r1, Route r2) {
+            return r1.order < r2.order ? -1 : (r1.order == r2.order ? 0 : 1);
+        }
+    };
+
+
+    /**
+     * Adds a restlet to the route table
+     *
+     * @param restlet The restlet
+     */
+    public void add(RestServlet restlet) {
+        String regexp = restlet.getRestContextPathRegexp();
+        Set<String> methods = new HashSet<String>();
+        for (String method : restlet.getSupportedMethods())
+            methods.add(method.toUpperCase());
+
+        Route route = new Route(restlet, Pattern.compile(regexp), methods, routes.size());
+        routes.add(route);
+        index(route, regexp);
+    }
+
+    /**
+     * Removes a restlet from the route table
+     *
+     * @param restlet The restlet
+     * @return True if the restlet was removed, false if it wasn't part of the route table
+     */
+    public boolean remove(RestServlet restlet) {
+        List<RestServlet> restlets = new ArrayList<RestServlet>(routes.size());
+        for (Route route : routes)
+            restlets.add(route.restlet);
+
+        if (!restlets.remove(restlet))
+            return false;
+
+        clear();
+        for (RestServlet r : restlets)
+            add(r);
+
+        return true;
+    }
+
+    /**
+     * Removes all the routes
+     */
+    public void clear() {
+        root = new Node();
+        fallbackRoutes.clear();
+        routes.clear();
+    }
+
+    /**
+     * Returns the number of routes in the table
+     *
+     * @return The number of routes in the table
+     */
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * Returns the routes handling the specified method that could match the specified request path,
+     * in the order in which they were added
+     *
+     * @param method The (upper case) HTTP method
+     * @param path   The request path
+     * @return The candidate routes
+     */
+    public List<Route> lookup(String method, String path) {
+        List<String> segments = splitPath(path);
+        List<Route> candidates = new ArrayList<Route>();
+        addRoutes(fallbackRoutes, method, candidates);
+
+        if (segments != null)
+            collect(root, method, segments, 0, candidates);
+
+        if (candidates.size() > 1)
+            Collections.sort(candidates, ROUTE_ORDER);
+
+        return candidates;
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    private void collect(Node node, String method, List<String> segments, int depth, List<Route> candidates) {
+        addRoutes(node.openRoutes, method, candidates);
+
+        if (depth == segments.size()) {
+            addRoutes(node.routes, method, candidates);
+            return;
+        }
+
+        String segment = segments.get(depth);
+        boolean last = (depth == segments.size() - 1);
+
+        Node child = node.literals.get(segment);
+        if (child != null)
+            collect(child, method, segments, depth + 1, candidates);
+
+        // The last segment may carry a resource extension (ex: users.json)
+        if (last) {
+            int pos = segment.indexOf('.');
+            if (pos > 0) {
+                child = node.literals.get(segment.substring(0, pos));
+                if (child != null)
+                    collect(child, method, segments, depth + 1, candidates);
+            }
+        }
+
+        if (node.wildcard != null)
+            collect(node.wildcard, method, segments, depth + 1, candidates);
+    }
+
+    /**
+     * Adds the routes of a leaf that handle the specified method to the candidates
+     *
+     * @param leaf       The routes, keyed on method
+     * @param method     The HTTP method
+     * @param candidates The candidate routes
+     */
+    private static void addRoutes(Map<String, List<Route>> leaf, String method, List<Route> candidates) {
+        List<Route> routes = leaf.get(method);
+        if (routes != null)
+            candidates.addAll(routes);
+    }
+
+    /**
+     * Adds a route to a leaf, under each of the methods it handles
+     *
+     * @param leaf  The routes, keyed on method
+     * @param route The route
+     */
+    private static void addRoute(Map<String, List<Route>> leaf, Route route) {
+        for (String method : route.methods) {
+            List<Route> routes = leaf.get(method);
+            if (routes == null) {
+                routes = new ArrayList<Route>(2);
+                leaf.put(method, routes);
+            }
+            routes.add(route);
+        }
+    }
+
+    /**
+     * Splits a request path into its segments, ignoring the trailing slash
+     *
+     * @param path The request path
+     * @return The path segments, or null if the path is not absolute
+     */
+    private static List<String> splitPath(String path) {
+        if (path == null || !path.startsWith("/"))
+            return null;
+
+        List<String> segments = new ArrayList<String>(8);
+        int start = 1;
+        int len = path.length();
+
+        while (start < len) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = len;
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+
+        return segments;
+    }
+
+    /**
+     * Decomposes the regular expression of a route and adds the route to the trie
+     *
+     * @param route  The route
+     * @param regexp The regular expression of the route
+     */
+    private void index(Route route, String regexp) {
+        List<String> tokens = splitRegexp(regexp);
+        if (tokens == null || tokens.size() < 2 || tokens.get(0).length() > 0) {
+            addRoute(fallbackRoutes, route);
+            return;
+        }
+
+        Node node = root;
+        StringBuilder tail = null;
+
+        for (int i = 1, iMax = tokens.size(); i < iMax; i++) {
+            String token = tokens.get(i);
+
+            if (tail != null) {
+                tail.append('/').append(token);
+                continue;
+            }
+
+            String rest;
+
+            if (token.startsWith("(") && !token.startsWith("(?")) {
+                int end = findGroupEnd(token);
+                if (end < 0 || !isSingleSegmentGroup(token.substring(1, end))) {
+                    addRoute(fallbackRoutes, route);
+                    return;
+                }
+                if (node.wildcard == null)
+                    node.wildcard = new Node();
+                node = node.wildcard;
+                rest = token.substring(end + 1);
+            } else {
+                int pos = 0;
+                while (pos < token.length() && REGEX_META_CHARS.indexOf(token.charAt(pos)) < 0)
+                    pos++;
+
+                if (pos == 0) {
+                    // No more literal segments
+                    tail = new StringBuilder(token);
+                    continue;
+                }
+
+                String literal = token.substring(0, pos);
+                Node child = node.literals.get(literal);
+                if (child == null) {
+                    child = new Node();
+                    node.literals.put(literal, child);
+                }
+                node = child;
+                rest = token.substring(pos);
+            }
+
+            if (rest.length() > 0) {
+                // Only optional suffixes (trailing slash, extension, ...) may follow a segment
+                if (!rest.startsWith("(?:") && !rest.startsWith("?") && !rest.equals("$")) {
+                    addRoute(fallbackRoutes, route);
+                    return;
+                }
+                tail = new StringBuilder(rest);
+            }
+        }
+
+        String sTail = (tail != null) ? tail.toString() : "";
+        if (!sTail.endsWith("$")) {
+            // Unanchored expressions can match anywhere in the path
+            addRoute(fallbackRoutes, route);
+            return;
+        }
+
+        if (sTail.contains(".*") || sTail.contains(".+"))
+            addRoute(node.openRoutes, route);
+        else
+            addRoute(node.routes, route);
+    }
+
+    /**
+     * Splits a regular expression on the '/' characters that are not part of a group or character class
+     *
+     * @param regexp The regular expression
+     * @return The tokens, or null if the expression is not balanced
+     */
+    private static List<String> splitRegexp(String regexp) {
+        List<String> tokens = new ArrayList<String>();
+        int depth = 0;
+        boolean inClass = false;
+        int start = 0;
+
+        for (int i = 0, iMax = regexp.length(); i < iMax; i++) {
+            char c = regexp.charAt(i);
+            if (c == '\\') { i++; continue; }
+
+            if (inClass) {
+                if (c == ']') inClass = false;
+                continue;
+            }
+
+            switch (c) {
+                case '[': inClass = true; break;
+                case '(': depth++; break;
+                case ')': depth--; break;
+                case '/':
+                    if (depth == 0) {
+                        tokens.add(regexp.substring(start, i));
+                        start = i + 1;
+                    }
+                    break;
+            }
+        }
+
+        if (depth != 0 || inClass)
+            return null;
+
+        tokens.add(regexp.substring(start));
+
+        return tokens;
+    }
+
+    /**
+     * Finds the index of the parenthesis closing the group that starts at the beginning of the token
+     *
+     * @param token The token
+     * @return The index of the closing parenthesis, or -1 if not found
+     */
+    private static int findGroupEnd(String token) {
+        int depth = 0;
+        boolean inClass = false;
+
+        for (int i = 0, iMax = token.length(); i < iMax; i++) {
+            char c = token.charAt(i);
+            if (c == '\\') { i++; continue; }
+
+            if (inClass) {
+                if (c == ']') inClass = false;
+                continue;
+            }
+
+            if (c == '[') inClass = true;
+            else if (c == '(') depth++;
+            else if (c == ')' && --depth == 0) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks whether a capture group can only match inside a single path segment (cannot match a '/')
+     *
+     * @param group The contents of the group
+     * @return True if the group cannot match a '/', false if it can or if that cannot be determined
+     */
+    private static boolean isSingleSegmentGroup(String group) {
+        boolean inClass = false;
+        boolean negatedClass = false;
+        boolean classHasSlash = false;
+
+        for (int i = 0, iMax = group.length(); i < iMax; i++) {
+            char c = group.charAt(i);
+
+            if (c == '\\') {
+                if (++i >= iMax) return false;
+                char e = group.charAt(i);
+                if (!inClass && "SWDpP".indexOf(e) >= 0) return false;
+                continue;
+            }
+
+            if (inClass) {
+                if (c == '/') classHasSlash = true;
+                else if (c == ']') {
+                    if (negatedClass && !classHasSlash) return false;
+                    if (!negatedClass && classHasSlash) return false;
+                    inClass = false;
+                }
+                continue;
+            }
+
+            if (c == '[') {
+                inClass = true;
+                negatedClass = (i + 1 < iMax && group.charAt(i + 1) == '^');
+                classHasSlash = false;
+                if (negatedClass) i++;
+            }
+            else if (c == '.' || c == '/')
+                return false;
+        }
+
+        return !inClass;
+    }
+
+    //--------------------------------------------------------------------------------------------
+
+    /**
+     * A route associating a restlet with its compiled regular expression
+     */
+    public static class Route {
+        private final RestServlet restlet;
+        private final Pattern pattern;
+        private final Set<String> methods;
+        private final int order;
+
+        private Route(RestServlet restlet, Pattern pattern, Set<String> methods, int order) {
+            this.restlet = restlet;
+            this.pattern = pattern;
+            this.methods = methods;
+            this.order = order;
+        }
+
+        public RestServlet getRestlet() {
+            return restlet;
+        }
+
+        public Pattern getPattern() {
+            return pattern;
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<String, Node>();
+        private Node wildcard;
+        private final Map<String, List<Route>> routes = new HashMap<String, List<Route>>(4);
+        private final Map<String, List<Route>> openRoutes = new HashMap<String, List<Route>>(2);
+    }
+}
@@ -41,6 +41,8 @@
 package org.seasr.central.ws.restlets.component;
 
 import com.google.gdata.util.ContentType;
+import org.mortbay.io.nio.DirectNIOBuffer;
+import org.mortbay.jetty.HttpConnection;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.ComponentContextNotFoundException;
 import org.seasr.central.storage.exceptions.ComponentNotFoundException;
@@ -51,10 +53,18 @@ import org.seasr.central.ws.restlets.ComponentContext;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -78,10 +88,16 @@ public class RetrieveComponentContextRestlet extends AbstractBaseRestlet {
                 "/contexts/([a-f\\d]{32})(?:/.*)?$";
     }
 
+    @Override
+    public Set<String> getSupportedMethods() {
+        return new HashSet<String>(Arrays.asList("GET", "HEAD"));
+    }
+
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
-        // Check for GET
-        if (!method.equalsIgnoreCase("GET")) return false;
+        // Check for GET or HEAD
+        boolean isHead = method.equalsIgnoreCase("HEAD");
+        if (!method.equalsIgnoreCase("GET") && !isHead) return false;
 
         UUID componentId;
         int version;
@@ -124,7 +140,7 @@ public class RetrieveComponentContextRestlet extends AbstractBaseRestlet {
 
             // Check whether this is a special request for the MD5 value of a resource
             if (request.getRequestURI().endsWith(".md5")) {
-                if (bsl.hasComponentContext(contextId)) {
+                if (bsl.hasComponentContext(componentId, version, contextId)) {
                     response.setContentType("text/plain");
                     response.getWriter().print(contextId);
                 } else
@@ -133,19 +149,114 @@ public class RetrieveComponentContextRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
+            String eTag = "\"" + contextId + "\"";
+
+            // Contexts are content-addressed, so the context id is a strong validator
+            if (isNotModified(request, eTag)) {
+                if (bsl.hasComponentContext(componentId, version, contextId))
+                    sendNotModified(response, eTag);
+                else
+                    sendErrorNotFound(response);
+
+                return true;
+            }
+
             ComponentContext context = bsl.getComponentContext(componentId, version, contextId);
 
-            InputStream contextStream = context.getDataStream();
-            OutputStream responseStream = response.getOutputStream();
+            try {
+                long size = context.getSize();
+
+                setImmutableCacheHeaders(response, eTag);
+                response.setContentType(context.getContentType());
+
+                long start = 0;
+                long length = size;
+
+                if (size >= 0) {
+                    response.setHeader("Accept-Ranges", "bytes");
+
+                    String range = request.getHeader("Range");
+                    String ifRange = request.getHeader("If-Range");
+
+                    if (range != null && !isHead && (ifRange == null || ifRange.trim().equals(eTag))) {
+                        long[] byteRange = parseByteRange(range, size);
+
+                        if (byteRange == null) {
+                            sendErrorRangeNotSatisfiable(response, size);
+                            return true;
+                        }
+
+                        if (byteRange.length == 2) {
+                            start = byteRange[0];
+                            length = byteRange[1] - byteRange[0] + 1;
+
+                            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                            response.setHeader("Content-Range",
+                                    String.format("bytes %d-%d/%d", byteRange[0], byteRange[1], size));
+                        } else
+                            response.setStatus(HttpServletResponse.SC_OK);
+                    } else
+                        response.setStatus(HttpServletResponse.SC_OK);
+
+                    // Using setHeader instead of setContentLength to allow for contexts larger than 2GB
+                    response.setHeader("Content-Length", Long.toString(length));
+                } else
+                    response.setStatus(HttpServletResponse.SC_OK);
+
+                if (isHead) return true;
+
+                OutputStream responseStream = response.getOutputStream();
+
+                if (context.getDataStream() instanceof FileInputStream && length >= 0) {
+                    FileChannel channel = ((FileInputStream) context.getDataStream()).getChannel();
 
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.setContentType(context.getContentType());
+                    // Hand contexts kept as local files to Jetty as a memory-mapped buffer, which it writes
+                    // to the socket channel without copying the data through the heap
+                    HttpConnection connection = HttpConnection.getCurrentConnection();
+                    if (connection != null && length <= Integer.MAX_VALUE &&
+                            responseStream == connection.getOutputStream() &&
+                            responseStream instanceof HttpConnection.Output) {
+                        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                        ((HttpConnection.Output) responseStream).sendContent(new DirectNIOBuffer(mapped, true));
+                        return true;
+                    }
 
-            byte[] buffer = new byte[8192];
-            int nRead;
+                    // Otherwise (wrapped responses, contexts over 2GB) copy from the file channel
+                    WritableByteChannel target = Channels.newChannel(responseStream);
 
-            while ((nRead = contextStream.read(buffer)) > 0)
-                responseStream.write(buffer, 0, nRead);
+                    while (length > 0) {
+                        long nSent = channel.transferTo(start, length, target);
+                        if (nSent <= 0)
+                            throw new IOException("Unexpected end of context file");
+                        start += nSent;
+                        length -= nSent;
+                    }
+
+                    return true;
+                }
+
+                InputStream contextStream = context.getDataStream();
+
+                while (start > 0) {
+                    long skipped = contextStream.skip(start);
+                    if (skipped <= 0)
+                        throw new IOException("Cannot skip to the start of the requested range");
+                    start -= skipped;
+                }
+
+                byte[] buffer = new byte[8192];
+                long remaining = (length >= 0) ? length : Long.MAX_VALUE;
+                int nRead;
+
+                while (remaining > 0 &&
+                        (nRead = contextStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                    responseStream.write(buffer, 0, nRead);
+                    remaining -= nRead;
+                }
+            }
+            finally {
+                context.close();
+            }
         }
         catch (ComponentNotFoundException e) {
             sendErrorNotFound(response);
@@ -168,4 +279,48 @@ public class RetrieveComponentContextRestlet extends AbstractBaseRestlet {
 
         return true;
     }
+
+    /**
+     * Parses a single byte range specification (RFC 2616, section 14.35).
+     * Multiple ranges and malformed specifications are ignored, in which case the whole resource is served.
+     *
+     * @param range The value of the Range header
+     * @param size The size of the resource
+     * @return The first and last byte positions of the range (inclusive), an empty array if the range
+     *         should be ignored, or null if the range is not satisfiable
+     */
+    protected static long[] parseByteRange(String range, long size) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) return new long[0];
+
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) return new long[0];
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start, end;
+
+            if (first.length() == 0) {
+                // Suffix range: the last N bytes
+                if (last.length() == 0) return new long[0];
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = (last.length() == 0) ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if (start < 0 || (last.length() > 0 && Long.parseLong(last) < start)) return new long[0];
+                if (start >= size) return null;
+            }
+
+            return new long[] { start, end };
+        }
+        catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
 }
@@ -56,13 +56,15 @@ import org.seasr.central.ws.restlets.ContentTypes;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
-import static org.seasr.central.util.Tools.sendErrorInternalServerError;
-import static org.seasr.central.util.Tools.sendErrorNotAcceptable;
+import static org.seasr.central.util.Tools.*;
 
 /**
  * Restlet for retrieving component information metadata
@@ -92,10 +94,16 @@ public class RetrieveComponentMetaRestlet extends AbstractBaseRestlet {
                 "(?:/|" + regexExtensionMatcher() + ")?$";
     }
 
+    @Override
+    public Set<String> getSupportedMethods() {
+        return new HashSet<String>(Arrays.asList("GET", "HEAD"));
+    }
+
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
-        // Check for GET
-        if (!method.equalsIgnoreCase("GET")) return false;
+        // Check for GET or HEAD
+        boolean isHead = method.equalsIgnoreCase("HEAD");
+        if (!method.equalsIgnoreCase("GET") && !isHead) return false;
 
         ContentType ct = getDesiredResponseContentType(request);
         if (ct == null) {
@@ -151,6 +159,21 @@ public class RetrieveComponentMetaRestlet extends AbstractBaseRestlet {
                     return true;
                 }
 
+                // Component versions never change, so the client copy (if any) is still current
+                String eTag = createVersionedETag(componentId, version, ct, null);
+                if (isNotModified(request, eTag)) {
+                    sendNotModified(response, eTag);
+                    return true;
+                }
+
+                // The metadata is only generated from the descriptor, so HEAD requests get no Content-Length
+                if (isHead) {
+                    setImmutableCacheHeaders(response, eTag);
+                    response.setContentType(ct.toString());
+                    response.setStatus(HttpServletResponse.SC_OK);
+                    return true;
+                }
+
                 // Attempt to retrieve the component from the backend store
                 Model compModel = bsl.getComponent(componentId, version);
 
@@ -208,6 +231,7 @@ public class RetrieveComponentMetaRestlet extends AbstractBaseRestlet {
                 joComponentMeta.put("properties", jaProperties);
 
                 jaSuccess.put(joComponentMeta);
+                setImmutableCacheHeaders(response, eTag);
             }
             catch (ComponentNotFoundException e) {
                 JSONObject joError = SCError.createErrorObj(SCError.COMPONENT_NOT_FOUND, bsl,
@@ -89,6 +89,11 @@ public class ShareComponentRestlet extends AbstractBaseRestlet {
         return "/services/groups/([^/\\s]+)/components(?:/|" + regexExtensionMatcher() + ")?$";
     }
 
+    @Override
+    public Set<String> getSupportedMethods() {
+        return Collections.singleton("POST");
+    }
+
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
         // Check for POST
@@ -159,13 +164,29 @@ public class ShareComponentRestlet extends AbstractBaseRestlet {
                 }
             }
 
+            // Check permissions for all the components at once
+            Map<IdVersionPair, Boolean> permissions;
+            try {
+                permissions = SCSecurity.canShareComponents(components, remoteUserId, bsl, request);
+            }
+            catch (BackendStoreException e) {
+                logger.log(Level.SEVERE, null, e);
+                jaErrors.put(SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl));
+                sendResponse(jaSuccess, jaErrors, ct, response);
+                return true;
+            }
+
             for (IdVersionPair component : components) {
                 UUID compId = component.getId();
                 int version = component.getVersion();
 
                 try {
+                    Boolean allowed = permissions.get(component);
+                    if (allowed == null)
+                        throw new ComponentNotFoundException(compId, version);
+
                     // Check permissions
-                    if (!SCSecurity.canShareComponent(compId, version, remoteUserId, bsl, request)) {
+                    if (!allowed) {
                         JSONObject joError = SCError.createErrorObj(SCError.UNAUTHORIZED, bsl);
                         joError.put("uuid", compId.toString());
                         joError.put("version", version);
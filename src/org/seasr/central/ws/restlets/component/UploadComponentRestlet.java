@@ -45,11 +45,15 @@ import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.vocabulary.RDF;
-import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -57,8 +61,11 @@ import org.meandre.core.repository.ExecutableComponentDescription;
 import org.meandre.core.repository.QueryableRepository;
 import org.meandre.core.repository.RepositoryImpl;
 import org.meandre.core.utils.vocabulary.RepositoryVocabulary;
+import org.seasr.central.storage.ContextFile;
 import org.seasr.central.storage.SCError;
+import org.seasr.central.storage.UploadResult;
 import org.seasr.central.storage.exceptions.BackendStoreException;
+import org.seasr.central.storage.fetch.DescriptorFetcher;
 import org.seasr.central.storage.exceptions.UserNotFoundException;
 import org.seasr.central.util.SCSecurity;
 import org.seasr.central.ws.restlets.AbstractBaseRestlet;
@@ -67,13 +74,15 @@ import org.seasr.meandre.support.generic.io.ModelUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 
 import static org.seasr.central.util.Tools.*;
@@ -87,6 +96,32 @@ public class UploadComponentRestlet extends AbstractBaseRestlet {
 
     private static final Map<String, ContentType> supportedResponseTypes = new HashMap<String, ContentType>();
 
+    /** The number of threads parsing the uploaded descriptors and preparing their contexts */
+    private static final int PREPARATION_THREADS = 4;
+
+    private static final ExecutorService preparationExecutor =
+            Executors.newFixedThreadPool(PREPARATION_THREADS, new ThreadFactory() {
+                private int count = 0;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "sc-upload-parser-" + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** The buffer size used when staging the uploaded context files */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The size up to which an uploaded context file is kept in memory */
+    private int contextMemoryThreshold = 256 * 1024;
+
+    /** The maximum size allowed for an uploaded context file (-1 for no limit) */
+    private long maxContextSize = -1;
+
+    /** The fetcher for remote descriptors (if not set, the descriptors are retrieved directly) */
+    private DescriptorFetcher descriptorFetcher = null;
+
     static {
         supportedResponseTypes.put("json", ContentType.JSON);
         supportedResponseTypes.put("xml", ContentType.APPLICATION_XML);
@@ -105,7 +140,11 @@ public class UploadComponentRestlet extends AbstractBaseRestlet {
         return "/services/users/([^/\\s]+)/components/?(?:" + regexExtensionMatcher() + ")?$";
     }
 
-    @SuppressWarnings("unchecked")
+    @Override
+    public Set<String> getSupportedMethods() {
+        return Collections.singleton("POST");
+    }
+
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
         // check for POST
@@ -133,6 +172,8 @@ public class UploadComponentRestlet extends AbstractBaseRestlet {
             return true;
         }
 
+        List<PendingComponent> pendingComponents = new ArrayList<PendingComponent>();
+
         try {
             Properties userProps = getUserScreenNameAndId(values[0]);
             UUID userId = UUID.fromString(userProps.getProperty("uuid"));
@@ -147,217 +188,187 @@ public class UploadComponentRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
-            ServletFileUpload fileUpload = new ServletFileUpload(new DiskFileItemFactory());
-            List<FileItem> uploadedFiles;
+            ServletFileUpload fileUpload = new ServletFileUpload();
+            if (maxContextSize >= 0)
+                fileUpload.setFileSizeMax(maxContextSize);
+
+            // Group the uploaded context files with the descriptor preceding them. The context files
+            // are hashed while they arrive and are written once, directly to their staging location.
+            final String tempFolderPrefix = String.format("%s_%d_", request.getRemoteAddr(), request.getRemotePort());
+            PendingComponent currentComponent = null;
+            boolean skipProcessingContexts = false;
+
             try {
-                uploadedFiles = fileUpload.parseRequest(request);
-            }
-            catch (FileUploadException e) {
-                jaErrors.put(SCError.createErrorObj(SCError.UPLOAD_ERROR, e, bsl));
-                sendResponse(jaSuccess, jaErrors, ct, response);
-                return true;
-            }
+                FileItemIterator itemIterator = fileUpload.getItemIterator(request);
 
-            // Mapping between component uri and set of contexts, and temp context folders
-            Map<String, Component> componentsMap = new HashMap<String, Component>();
+                while (itemIterator.hasNext()) {
+                    FileItemStream item = itemIterator.next();
+                    String fieldName = item.getFieldName();
 
-            String currentComponentResUri = null;
-            boolean skipProcessingContexts = false;
+                    // Check for proper request parameters
+                    if (!fieldName.equals("context") && !fieldName.equals("component_rdf"))
+                        continue;
 
-            for (FileItem file : uploadedFiles) {
-                // Check for proper request parameters
-                if (file == null || !file.getFieldName().equals("context")
-                        && !file.getFieldName().equals("component_rdf"))
-                    continue;
-
-                // Make sure we have non-empty fields
-                if ((!file.isFormField() && file.getName().trim().length() == 0) ||
-                        (file.isFormField() && file.getString().trim().length() == 0))
-                    continue;
-
-                if (!file.isFormField()) {
-                    logger.fine(String.format("Uploaded file '%s' (%,d bytes) [%s]",
-                            file.getName(), file.getSize(), file.getFieldName()));
-                    if (file.getSize() == 0)
-                        logger.warning(String.format("Uploaded file '%s' has size 0", file.getName()));
-                }
+                    // Make sure we have non-empty fields
+                    String value = item.isFormField() ? Streams.asString(item.openStream()).trim() : null;
+                    if ((!item.isFormField() && (item.getName() == null || item.getName().trim().length() == 0)) ||
+                            (item.isFormField() && value.length() == 0))
+                        continue;
 
-                if (file.getFieldName().equalsIgnoreCase("component_rdf")) {
-                    try {
+                    if (fieldName.equalsIgnoreCase("component_rdf")) {
                         skipProcessingContexts = false;
 
-                        // Read the component model and check that it contains a single executable component
-                        Model compModel = file.isFormField() ?
-                                // TODO: Add mechanism for request timeouts when retrieving remote descriptors
-                                ModelUtils.getModel(new URI(file.getString()), null) :
-                                ModelUtils.getModel(file.getInputStream(), null);
-
-                        List<Resource> compResList = compModel.listSubjectsWithProperty(
-                                RDF.type, RepositoryVocabulary.executable_component).toList();
-                        if (compResList.size() != 1)
-                            throw new Exception("RDF model does not contain an executable component, " +
-                                    "or contains more than one component.");
-
-                        // Create a temp folder to store any context files for this component
-                        File tempFolder = createTempFolder(String.format("%s_%d_",
-                                request.getRemoteAddr(), request.getRemotePort()));
-                        if (tempFolder == null) {
-                            logger.severe("Cannot create a temp folder to store the context files in this request!");
-                            sendErrorInternalServerError(response);
-                            return true;
+                        if (item.isFormField())
+                            currentComponent = new PendingComponent(value, null);
+                        else {
+                            byte[] descriptor = IOUtils.toByteArray(item.openStream());
+                            logger.fine(String.format("Uploaded file '%s' (%,d bytes) [%s]",
+                                    item.getName(), descriptor.length, fieldName));
+                            currentComponent = new PendingComponent(item.getName(), descriptor);
                         }
 
-                        currentComponentResUri = compResList.get(0).getURI();
-                        componentsMap.put(currentComponentResUri, new Component(compModel, tempFolder));
-                    }
-                    catch (Exception e) {
-                        String descriptorName = file.isFormField() ? file.getString().trim() : file.getName();
-                        logger.log(Level.WARNING, String.format("Error parsing RDF from '%s'", descriptorName), e);
-
-                        JSONObject joError = (e instanceof IOException) ?
-                                SCError.createErrorObj(SCError.NETWORK_ERROR, e, bsl) :
-                                SCError.createErrorObj(SCError.RDF_PARSE_ERROR, e, bsl, descriptorName);
-                        joError.put("descriptor", descriptorName);
-                        jaErrors.put(joError);
-
-                        skipProcessingContexts = true;
-                        continue;
+                        pendingComponents.add(currentComponent);
                     }
-                }
 
-                else
+                    else
 
-                if (file.getFieldName().equalsIgnoreCase("context")) {
-                    if (skipProcessingContexts) continue;
+                    if (fieldName.equalsIgnoreCase("context")) {
+                        if (skipProcessingContexts) continue;
 
-                    // Sanity check
-                    if (currentComponentResUri == null) {
-                        JSONObject joError = SCError.createErrorObj(SCError.INCOMPLETE_REQUEST, bsl);
-                        joError.put("param", "component_rdf");
-                        jaErrors.put(joError);
-                        skipProcessingContexts = true;
-                        continue;
-                    }
-
-                    Component component = componentsMap.get(currentComponentResUri);
-
-                    // If we're uploading a context file as a form field (non-file)
-                    // then assume it's specifying a full URL, otherwise the field
-                    // is assumed to be the context file uploaded
-                    if (file.isFormField()) {
-                        try {
-                            URL url = new URL(file.getString());
-                            URLConnection connection = url.openConnection();
-                            connection.setConnectTimeout(CONNECTION_TIMEOUT);
-                            connection.setReadTimeout(READ_TIMEOUT);
-                            String contentType = connection.getContentType();
-                            component.getContexts().put(url, contentType);
-                        }
-                        catch (MalformedURLException e) {
-                            JSONObject joError = SCError.createErrorObj(SCError.INVALID_PARAM_VALUE, e, bsl);
-                            joError.put("url", file.getString());
-                            joError.put("compUri", currentComponentResUri);
+                        // Sanity check
+                        if (currentComponent == null) {
+                            JSONObject joError = SCError.createErrorObj(SCError.INCOMPLETE_REQUEST, bsl);
+                            joError.put("param", "component_rdf");
+                            jaErrors.put(joError);
                             skipProcessingContexts = true;
                             continue;
                         }
-                        catch (IOException e) {
-                            // Error reading from URL
-                            logger.log(Level.WARNING, "Error reading from context url: " + file.getString(), e);
-
-                            JSONObject joError = SCError.createErrorObj(SCError.NETWORK_ERROR, e, bsl);
-                            joError.put("compUri", currentComponentResUri);
-                            joError.put("url", file.getString());
-                            jaErrors.put(joError);
 
+                        // If we're uploading a context file as a form field (non-file)
+                        // then assume it's specifying a full URL, otherwise the field
+                        // is assumed to be the context file uploaded
+                        if (item.isFormField())
+                            currentComponent.contextUrls.add(value);
+                        else {
                             try {
-                                FileUtils.deleteDirectory(component.getTempContextFolder());
+                                ContextFile contextFile = stageContext(item, currentComponent, tempFolderPrefix);
+                                logger.fine(String.format("Uploaded file '%s' (%,d bytes) [%s]",
+                                        item.getName(), contextFile.getSize(), fieldName));
+                                if (contextFile.getSize() == 0)
+                                    logger.warning(String.format("Uploaded file '%s' has size 0", item.getName()));
+
+                                currentComponent.stagedContexts.add(contextFile);
                             }
-                            catch (IOException ex) {
-                                logger.log(Level.WARNING, "Cannot delete temp context folder: " +
-                                        component.getTempContextFolder(), ex);
+                            catch (FileUploadBase.FileUploadIOException e) {
+                                throw e;
+                            }
+                            catch (IOException e) {
+                                logger.log(Level.SEVERE, "Cannot save uploaded context file: " + item.getName(), e);
+                                JSONObject joError = SCError.createErrorObj(SCError.IO_ERROR, e, bsl);
+                                joError.put("descriptor", currentComponent.descriptorName);
+                                joError.put("context_file", item.getName());
+                                jaErrors.put(joError);
+                                skipProcessingContexts = true;
                             }
-
-                            componentsMap.remove(currentComponentResUri);
-                            skipProcessingContexts = true;
-                            continue;
-                        }
-                    } else {
-                        // Add the context file to the current component being uploaded
-                        File contextFile = new File(component.getTempContextFolder(), file.getName());
-                        try {
-                            file.write(contextFile);
-                        }
-                        catch (Exception e) {
-                            logger.log(Level.SEVERE, "Cannot save uploaded context file: " + contextFile, e);
-                            JSONObject joError = SCError.createErrorObj(SCError.IO_ERROR, e, bsl);
-                            joError.put("compUri", currentComponentResUri);
-                            joError.put("context_file", file.getName());
-                            jaErrors.put(joError);
-                            skipProcessingContexts = true;
-                            continue;
                         }
+                    }
+                }
+            }
+            catch (FileUploadBase.FileUploadIOException e) {
+                jaErrors.put(SCError.createErrorObj(SCError.UPLOAD_ERROR, (Exception) e.getCause(), bsl));
+                sendResponse(jaSuccess, jaErrors, ct, response);
+                return true;
+            }
+            catch (FileUploadException e) {
+                jaErrors.put(SCError.createErrorObj(SCError.UPLOAD_ERROR, e, bsl));
+                sendResponse(jaSuccess, jaErrors, ct, response);
+                return true;
+            }
+            catch (IOException e) {
+                jaErrors.put(SCError.createErrorObj(SCError.UPLOAD_ERROR, e, bsl));
+                sendResponse(jaSuccess, jaErrors, ct, response);
+                return true;
+            }
 
-                        try {
-                            component.getContexts().put(contextFile.toURI().toURL(), file.getContentType());
-                        }
-                        catch (MalformedURLException e) {
-                            // Should never happen
-                            throw new RuntimeException(e);
-                        }
+            // Parse the descriptors of all the components in parallel
+            List<Future<PreparedComponent>> futures = new ArrayList<Future<PreparedComponent>>();
+            for (final PendingComponent pending : pendingComponents)
+                futures.add(preparationExecutor.submit(new Callable<PreparedComponent>() {
+                    public PreparedComponent call() throws Exception {
+                        return prepareComponent(pending);
                     }
+                }));
+
+            // Mapping between component uri and the prepared component
+            Map<String, PreparedComponent> componentsMap = new HashMap<String, PreparedComponent>();
+
+            for (Future<PreparedComponent> future : futures) {
+                PreparedComponent prepared;
+                try {
+                    prepared = future.get();
+                }
+                catch (InterruptedException e) {
+                    logger.log(Level.SEVERE, null, e);
+                    sendErrorInternalServerError(response);
+                    return true;
+                }
+                catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, null, e.getCause());
+                    sendErrorInternalServerError(response);
+                    return true;
                 }
+
+                for (JSONObject joError : prepared.errors)
+                    jaErrors.put(joError);
+
+                if (prepared.model != null)
+                    componentsMap.put(prepared.componentUri, prepared);
             }
 
             if (componentsMap.size() > 0) {
                 // Accumulate the component models
                 Model model = ModelFactory.createDefaultModel();
 
-                for (Component component : componentsMap.values())
-                    model.add(component.getModel());
+                for (PreparedComponent component : componentsMap.values())
+                    model.add(component.model);
 
                 QueryableRepository qr = new RepositoryImpl(model);
 
-                for (ExecutableComponentDescription ecd : qr.getAvailableExecutableComponentDescriptions()) {
-                    String origUri = ecd.getExecutableComponent().getURI();
+                Map<ExecutableComponentDescription, List<ContextFile>> components =
+                        new LinkedHashMap<ExecutableComponentDescription, List<ContextFile>>();
+                for (ExecutableComponentDescription ecd : qr.getAvailableExecutableComponentDescriptions())
+                    components.put(ecd, componentsMap.get(ecd.getExecutableComponent().getURI()).contexts);
 
-                    try {
-                        // Attempt to add the component to the backend storage
-                        Map<URL, String> contexts = componentsMap.get(origUri).getContexts();
-                        JSONObject joResult = bsl.addComponent(userId, ecd, contexts);
+                // Attempt to add the components to the backend storage
+                Map<ExecutableComponentDescription, UploadResult> results = bsl.addComponents(userId, components);
 
-                        String compId = joResult.getString("uuid");
-                        int compVersion = joResult.getInt("version");
-
-                        String compUrl = getComponentBaseAccessUrl(request, compId, compVersion) + ".ttl";
-
-                        JSONObject joComponent = new JSONObject();
-                        joComponent.put("orig_uri", origUri);
-                        joComponent.put("uuid", compId);
-                        joComponent.put("version", compVersion);
-                        joComponent.put("url", compUrl);
-
-                        jaSuccess.put(joComponent);
-                    }
-                    catch (BackendStoreException e) {
-                        logger.log(Level.SEVERE, null, e);
+                for (Map.Entry<ExecutableComponentDescription, UploadResult> entry : results.entrySet()) {
+                    ExecutableComponentDescription ecd = entry.getKey();
+                    UploadResult result = entry.getValue();
+                    String origUri = ecd.getExecutableComponent().getURI();
 
-                        JSONObject joError = SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl);
+                    if (!result.isSuccess()) {
+                        JSONObject joError = SCError.createErrorObj(SCError.BACKEND_ERROR, result.getError(), bsl);
                         joError.put("name", ecd.getName());
                         joError.put("orig_uri", origUri);
                         jaErrors.put(joError);
                         continue;
                     }
-                }
 
-                // Clean up the temp folders
-                for (Component component : componentsMap.values())
-                    try {
-                        FileUtils.deleteDirectory(component.getTempContextFolder());
-                    }
-                    catch (IOException e) {
-                        logger.log(Level.WARNING, "Cannot delete temp context folder: "
-                                + component.getTempContextFolder(), e);
-                    }
+                    JSONObject joResult = result.getResult();
+                    String compId = joResult.getString("uuid");
+                    int compVersion = joResult.getInt("version");
+
+                    String compUrl = getComponentBaseAccessUrl(request, compId, compVersion) + ".ttl";
+
+                    JSONObject joComponent = new JSONObject();
+                    joComponent.put("orig_uri", origUri);
+                    joComponent.put("uuid", compId);
+                    joComponent.put("version", compVersion);
+                    joComponent.put("url", compUrl);
+
+                    jaSuccess.put(joComponent);
+                }
             }
         }
         catch (UserNotFoundException e) {
@@ -382,6 +393,17 @@ public class UploadComponentRestlet extends AbstractBaseRestlet {
             sendErrorInternalServerError(response);
             return true;
         }
+        finally {
+            // Clean up the temp folders
+            for (PendingComponent component : pendingComponents)
+                if (component.tempFolder != null)
+                    try {
+                        FileUtils.deleteDirectory(component.tempFolder);
+                    }
+                    catch (IOException e) {
+                        logger.log(Level.WARNING, "Cannot delete temp context folder: " + component.tempFolder, e);
+                    }
+        }
 
         // Send the response
         sendResponse(jaSuccess, jaErrors, ct, response);
@@ -389,26 +411,196 @@ public class UploadComponentRestlet extends AbstractBaseRestlet {
         return true;
     }
 
-    private class Component {
-        private final Model model;
-        private final File tempContextFolder;
-        private final Map<URL, String> contexts = new HashMap<URL, String>();
+    /**
+     * Sets the fetcher used to retrieve the descriptors specified as URLs
+     *
+     * @param descriptorFetcher The descriptor fetcher
+     */
+    public void setDescriptorFetcher(DescriptorFetcher descriptorFetcher) {
+        this.descriptorFetcher = descriptorFetcher;
+    }
+
+    /**
+     * Sets the size up to which an uploaded context file is kept in memory instead of being written to disk
+     *
+     * @param contextMemoryThreshold The threshold (in bytes)
+     */
+    public void setContextMemoryThreshold(int contextMemoryThreshold) {
+        this.contextMemoryThreshold = contextMemoryThreshold;
+    }
+
+    /**
+     * Sets the maximum size allowed for an uploaded context file
+     *
+     * @param maxContextSize The maximum size (in bytes), or -1 for no limit
+     */
+    public void setMaxContextSize(long maxContextSize) {
+        this.maxContextSize = maxContextSize;
+    }
 
-        public Component(Model model, File tempContextFolder) {
-            this.model = model;
-            this.tempContextFolder = tempContextFolder;
+    /**
+     * Reads an uploaded context file, computing its MD5 hash while the bytes arrive. Small files are
+     * kept in memory, the rest are written to the temp folder of the component.
+     *
+     * @param item The uploaded context file
+     * @param component The component the context belongs to
+     * @param tempFolderPrefix The prefix to use for the temp folder of the component
+     * @return The staged context
+     * @throws IOException Thrown if the context cannot be read or written
+     */
+    private ContextFile stageContext(FileItemStream item, PendingComponent component, String tempFolderPrefix)
+            throws IOException {
+
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        String fileName = FilenameUtils.getName(item.getName());
+        String ctxFileName = ContextFile.getFileName(new File(File.separator, fileName).toURI().toURL());
+        InputStream in = item.openStream();
+
+        try {
+            // Read up to the memory threshold
+            byte[] head = new byte[contextMemoryThreshold];
+            int headSize = 0;
+            int read = 0;
+            while (headSize < head.length && (read = in.read(head, headSize, head.length - headSize)) != -1)
+                headSize += read;
+            md5.update(head, 0, headSize);
+
+            if (read == -1 || (read = in.read()) == -1) {
+                byte[] data = new byte[headSize];
+                System.arraycopy(head, 0, data, 0, headSize);
+
+                return new ContextFile(ctxFileName, data, item.getContentType(), new BigInteger(md5.digest()));
+            }
+
+            // Too large to keep in memory, stream the rest to disk
+            if (component.tempFolder == null) {
+                component.tempFolder = createTempFolder(tempFolderPrefix);
+                if (component.tempFolder == null)
+                    throw new IOException("Cannot create a temp folder to store the context files in this request!");
+            }
+
+            File contextFile = new File(component.tempFolder, fileName);
+            OutputStream out = new FileOutputStream(contextFile);
+            try {
+                out.write(head, 0, headSize);
+                out.write(read);
+                md5.update((byte) read);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    md5.update(buffer, 0, read);
+                }
+            }
+            finally {
+                out.close();
+            }
+
+            return new ContextFile(ctxFileName, contextFile, item.getContentType(), new BigInteger(md5.digest()));
+        }
+        finally {
+            in.close();
         }
+    }
+
+    /**
+     * Parses the descriptor of an uploaded component and collects its contexts
+     *
+     * @param pending The uploaded component
+     * @return The prepared component and/or the errors encountered
+     * @throws JSONException Thrown if an error occurred while creating an error object
+     */
+    private PreparedComponent prepareComponent(PendingComponent pending) throws JSONException {
+        PreparedComponent prepared = new PreparedComponent();
+
+        try {
+            // Read the component model and check that it contains a single executable component
+            Model compModel = (pending.descriptor == null) ?
+                    getRemoteModel(new URI(pending.descriptorName)) :
+                    ModelUtils.getModel(new ByteArrayInputStream(pending.descriptor), null);
+
+            List<Resource> compResList = compModel.listSubjectsWithProperty(
+                    RDF.type, RepositoryVocabulary.executable_component).toList();
+            if (compResList.size() != 1)
+                throw new Exception("RDF model does not contain an executable component, " +
+                        "or contains more than one component.");
+
+            prepared.componentUri = compResList.get(0).getURI();
+            prepared.model = compModel;
+        }
+        catch (Exception e) {
+            String descriptorName = pending.descriptorName;
+            logger.log(Level.WARNING, String.format("Error parsing RDF from '%s'", descriptorName), e);
+
+            JSONObject joError = (e instanceof IOException) ?
+                    SCError.createErrorObj(SCError.NETWORK_ERROR, e, bsl) :
+                    SCError.createErrorObj(SCError.RDF_PARSE_ERROR, e, bsl, descriptorName);
+            joError.put("descriptor", descriptorName);
+            prepared.errors.add(joError);
 
-        public Model getModel() {
-            return model;
+            return prepared;
         }
 
-        public Map<URL, String> getContexts() {
-            return contexts;
+        prepared.contexts.addAll(pending.stagedContexts);
+
+        // The remote contexts are retrieved (and their content type determined) by the backend store
+        for (String contextUrl : pending.contextUrls) {
+            try {
+                prepared.contexts.add(new ContextFile(new URL(contextUrl), null));
+            }
+            catch (MalformedURLException e) {
+                JSONObject joError = SCError.createErrorObj(SCError.INVALID_PARAM_VALUE, e, bsl);
+                joError.put("url", contextUrl);
+                joError.put("compUri", prepared.componentUri);
+                prepared.errors.add(joError);
+                break;
+            }
         }
 
-        public File getTempContextFolder() {
-            return tempContextFolder;
+        return prepared;
+    }
+
+    /**
+     * Retrieves and parses a remote descriptor
+     *
+     * @param uri The descriptor location
+     * @return The descriptor model
+     * @throws IOException Thrown if the descriptor cannot be retrieved or parsed
+     */
+    private Model getRemoteModel(URI uri) throws IOException {
+        return (descriptorFetcher != null) ? descriptorFetcher.getModel(uri) : ModelUtils.getModel(uri, null);
+    }
+
+    private static class PendingComponent {
+        private final String descriptorName;
+        private final byte[] descriptor;
+        private final List<ContextFile> stagedContexts = new ArrayList<ContextFile>();
+        private final List<String> contextUrls = new ArrayList<String>();
+        private File tempFolder;
+
+        /**
+         * Creates an uploaded component
+         *
+         * @param descriptorName The descriptor URL, or the name of the uploaded descriptor file
+         * @param descriptor The uploaded descriptor, or null if the descriptor has to be retrieved from its URL
+         */
+        public PendingComponent(String descriptorName, byte[] descriptor) {
+            this.descriptorName = descriptorName;
+            this.descriptor = descriptor;
         }
     }
+
+    private static class PreparedComponent {
+        private String componentUri;
+        private Model model;
+        private final List<ContextFile> contexts = new ArrayList<ContextFile>();
+        private final List<JSONObject> errors = new ArrayList<JSONObject>();
+    }
 }
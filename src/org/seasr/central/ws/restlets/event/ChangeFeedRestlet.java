@@ -0,0 +1,256 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.ws.restlets.event;
+
+import com.google.gdata.util.ContentType;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.seasr.central.storage.ChangeFeed;
+import org.seasr.central.storage.SCError;
+import org.seasr.central.storage.exceptions.BackendStoreException;
+import org.seasr.central.storage.exceptions.UserNotFoundException;
+import org.seasr.central.util.SCSecurity;
+import org.seasr.central.util.Tools;
+import org.seasr.central.ws.restlets.AbstractBaseRestlet;
+import org.seasr.central.ws.restlets.ContentTypes;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import static org.seasr.central.util.Tools.sendContent;
+import static org.seasr.central.util.Tools.sendErrorInternalServerError;
+import static org.seasr.central.util.Tools.sendErrorNotAcceptable;
+
+/**
+ * Restlet for following the changes visible to the remote user (long polling).
+ *
+ * The response contains the events that occurred after the given token, or waits up to 'timeout'
+ * seconds for one to occur, and the token (NEXT) from which to resume. Without a token the feed
+ * is followed from the time of the request. RESET is set when events were missed since the token,
+ * in which case the client has to re-list before following the feed again.
+ *
+ * @author Boris Capitanu
+ */
+public class ChangeFeedRestlet extends AbstractBaseRestlet {
+
+    public static final String RESET = "RESET";
+
+    /** The default maximum time (seconds) a request waits for an event */
+    public static final long DEFAULT_MAX_WAIT = 60;
+
+    private static final Map<String, ContentType> supportedResponseTypes = new HashMap<String, ContentType>();
+
+    static {
+        supportedResponseTypes.put("json", ContentType.JSON);
+        supportedResponseTypes.put("xml", ContentType.APPLICATION_XML);
+        supportedResponseTypes.put("html", ContentType.TEXT_HTML);
+        supportedResponseTypes.put("txt", ContentType.TEXT_PLAIN);
+        supportedResponseTypes.put("sgwt", ContentTypes.SmartGWT);
+    }
+
+    private long maxWait = DEFAULT_MAX_WAIT;
+
+    /**
+     * Sets the maximum time a request can wait for an event
+     *
+     * @param maxWait The maximum wait time (seconds)
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public Map<String, ContentType> getSupportedResponseTypes() {
+        return supportedResponseTypes;
+    }
+
+    @Override
+    public String getRestContextPathRegexp() {
+        return "/services/events(?:/|" + regexExtensionMatcher() + ")?$";
+    }
+
+    @Override
+    public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
+        // Check for GET
+        if (!method.equalsIgnoreCase("GET")) return false;
+
+        ContentType ct = getDesiredResponseContentType(request);
+        if (ct == null) {
+            sendErrorNotAcceptable(response);
+            return true;
+        }
+
+        JSONArray jaSuccess = new JSONArray();
+        JSONArray jaErrors = new JSONArray();
+
+        UUID remoteUserId;
+        String remoteUser = request.getRemoteUser();
+
+        //TODO: for test purposes
+        if (request.getParameterMap().containsKey("remoteUser") && request.getParameter("remoteUser").trim().length() > 0)
+            remoteUser = request.getParameter("remoteUser");
+
+        String token = request.getParameter("token");
+        if (token != null && token.trim().length() == 0) token = null;
+
+        long count;
+        long timeout = maxWait;
+
+        String sTimeout = request.getParameter("timeout");
+
+        try {
+            count = getPageSize(request);
+            if (sTimeout != null) timeout = Math.max(0, Math.min(Long.parseLong(sTimeout), maxWait));
+        }
+        catch (NumberFormatException e) {
+            logger.log(Level.WARNING, null, e);
+            jaErrors.put(SCError.createErrorObj(SCError.INVALID_PARAM_VALUE, e, bsl));
+            sendResponse(jaSuccess, jaErrors, ct, response);
+            return true;
+        }
+
+        ChangeFeed feed = bsl.getChangeFeed();
+        ChangeFeed.Batch batch = null;
+
+        try {
+            remoteUserId = bsl.getUserId(remoteUser);
+
+            // Check permissions
+            if (!SCSecurity.canFollowChanges(remoteUserId, bsl, request)) {
+                jaErrors.put(SCError.createErrorObj(SCError.UNAUTHORIZED, bsl));
+                sendResponse(jaSuccess, jaErrors, ct, response);
+                return true;
+            }
+
+            // Skip the events the remote user cannot see, until a visible one occurs or the time is up
+            long deadline = System.currentTimeMillis() + timeout * 1000;
+            do {
+                ChangeFeed.Batch read = feed.read(token, (int) Math.min(count, Integer.MAX_VALUE),
+                        Math.max(0, deadline - System.currentTimeMillis()));
+
+                for (ChangeFeed.Entry entry : read.getEntries())
+                    if (SCSecurity.canAccessEvent(entry, remoteUserId, bsl, request))
+                        jaSuccess.put(toJSON(entry));
+
+                // Only move past the events once they were all checked
+                batch = read;
+                token = read.getToken();
+            } while (jaSuccess.length() == 0 && !batch.isReset() && System.currentTimeMillis() < deadline);
+        }
+        catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, null, e);
+            jaErrors.put(SCError.createErrorObj(SCError.INVALID_PARAM_VALUE, e, bsl));
+            token = null;
+        }
+        catch (InterruptedException e) {
+            // Answer with what was read so far
+            Thread.currentThread().interrupt();
+        }
+        catch (UserNotFoundException e) {
+            logger.log(Level.WARNING, String.format("Cannot obtain user id for authenticated user '%s'!", remoteUser));
+            jaErrors.put(SCError.createErrorObj(SCError.UNAUTHORIZED, e, bsl));
+            token = null;
+        }
+        catch (BackendStoreException e) {
+            logger.log(Level.SEVERE, null, e);
+            jaErrors.put(SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl));
+
+            // The events of the failed batch are sent again on the next request
+            jaSuccess = new JSONArray();
+        }
+        catch (JSONException e) {
+            // Should not happen
+            logger.log(Level.SEVERE, null, e);
+            sendErrorInternalServerError(response);
+            return true;
+        }
+
+        // Send the response
+        try {
+            JSONObject joContent = new JSONObject();
+            joContent.put(Tools.OperationResult.SUCCESS.name(), jaSuccess);
+            joContent.put(Tools.OperationResult.FAILURE.name(), jaErrors);
+            if (token != null)
+                joContent.put(NEXT_CURSOR, token);
+            if (batch != null && batch.isReset())
+                joContent.put(RESET, true);
+
+            sendContent(response, joContent, ct);
+        }
+        catch (IOException e) {
+            logger.log(Level.WARNING, null, e);
+        }
+        catch (JSONException e) {
+            // Should not happen
+            logger.log(Level.SEVERE, null, e);
+            sendErrorInternalServerError(response);
+        }
+
+        return true;
+    }
+
+    private JSONObject toJSON(ChangeFeed.Entry entry) throws JSONException {
+        JSONObject joEvent = new JSONObject();
+        joEvent.put("event", entry.getEvent().name());
+        joEvent.put("timestamp", entry.getTimestamp());
+
+        if (entry.getUserId() != null)
+            joEvent.put("user", entry.getUserId().toString());
+        if (entry.getGroupId() != null)
+            joEvent.put("group", entry.getGroupId().toString());
+        if (entry.getComponentId() != null)
+            joEvent.put("component", entry.getComponentId().toString());
+        if (entry.getFlowId() != null)
+            joEvent.put("flow", entry.getFlowId().toString());
+
+        JSONObject joMeta = entry.getMetadata();
+        if (joMeta != null)
+            joEvent.put("metadata", joMeta);
+
+        return joEvent;
+    }
+}
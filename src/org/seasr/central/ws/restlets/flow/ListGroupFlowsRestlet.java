@@ -44,6 +44,7 @@ import com.google.gdata.util.ContentType;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.GroupNotFoundException;
@@ -51,6 +52,7 @@ import org.seasr.central.storage.exceptions.UserNotFoundException;
 import org.seasr.central.util.SCSecurity;
 import org.seasr.central.ws.restlets.AbstractBaseRestlet;
 import org.seasr.central.ws.restlets.ContentTypes;
+import org.seasr.central.ws.restlets.ListingResponseWriter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -90,7 +92,7 @@ public class ListGroupFlowsRestlet extends AbstractBaseRestlet {
     }
 
     @Override
-    public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
+    public boolean process(final HttpServletRequest request, HttpServletResponse response, String method, String... values) {
         // check for GET
         if (!method.equalsIgnoreCase("GET")) return false;
 
@@ -111,14 +113,15 @@ public class ListGroupFlowsRestlet extends AbstractBaseRestlet {
             remoteUser = request.getParameter("remoteUser");
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
+        PageCursor after = null;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
+            after = getPageCursor(request);
         }
         catch (NumberFormatException e) {
             logger.log(Level.WARNING, null, e);
@@ -153,18 +156,38 @@ public class ListGroupFlowsRestlet extends AbstractBaseRestlet {
             if (request.getParameterMap().containsKey("includeOldVersions"))
                 includeOldVersions = Boolean.parseBoolean(request.getParameter("includeOldVersions"));
 
-            JSONArray jaResult = bsl.listGroupFlows(groupId, offset, count, includeOldVersions);
-
-            for (int i = 0, iMax = jaResult.length(); i < iMax; i++) {
-                JSONObject joFlowVer = jaResult.getJSONObject(i);
-                String sFlowId = joFlowVer.getString("uuid");
-                int flowVersion = joFlowVer.getInt("version");
-                JSONObject joResult = new JSONObject();
-                joResult.put("uuid", joFlowVer.get("uuid"));
-                joResult.put("version", joFlowVer.get("version"));
-                joResult.put("url", getFlowBaseAccessUrl(request, sFlowId, flowVersion) + ".ttl");
-                jaSuccess.put(joResult);
+            ListingResponseWriter writer = new ListingResponseWriter(ct, response) {
+                @Override
+                protected JSONObject transform(JSONObject joFlowVer) throws Exception {
+                    String sFlowId = joFlowVer.getString("uuid");
+                    int flowVersion = joFlowVer.getInt("version");
+                    JSONObject joResult = new JSONObject();
+                    joResult.put("uuid", joFlowVer.get("uuid"));
+                    joResult.put("version", joFlowVer.get("version"));
+                    joResult.put("url", getFlowBaseAccessUrl(request, sFlowId, flowVersion) + ".ttl");
+                    return joResult;
+                }
+            };
+
+            PageCursor next = null;
+            try {
+                if (after != null)
+                    bsl.listGroupFlows(groupId, after, count, includeOldVersions, writer);
+                else
+                    writer.handleEntries(bsl.listGroupFlows(groupId, offset, count, includeOldVersions));
+                writer.flush();
+
+                next = getNextPageCursor(writer, after, count);
+            }
+            catch (BackendStoreException e) {
+                logger.log(Level.SEVERE, null, e);
+                jaErrors.put(SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl));
             }
+
+            // Send the response
+            sendResponse(writer, jaErrors, next, response);
+
+            return true;
         }
         catch (GroupNotFoundException e) {
             jaErrors.put(SCError.createErrorObj(SCError.GROUP_NOT_FOUND, bsl, values[0]));
@@ -183,10 +206,5 @@ public class ListGroupFlowsRestlet extends AbstractBaseRestlet {
             sendErrorInternalServerError(response);
             return true;
         }
-
-        // Send the response
-        sendResponse(jaSuccess, jaErrors, ct, response);
-
-        return true;
     }
 }
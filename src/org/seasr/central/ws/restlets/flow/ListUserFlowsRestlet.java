@@ -44,6 +44,7 @@ import com.google.gdata.util.ContentType;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.UserNotFoundException;
@@ -109,14 +110,16 @@ public class ListUserFlowsRestlet extends AbstractBaseRestlet {
             remoteUser = request.getParameter("remoteUser");
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
+        PageCursor after = null;
+        PageCursor next = null;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
+            after = getPageCursor(request);
         }
         catch (NumberFormatException e) {
             logger.log(Level.WARNING, null, e);
@@ -136,7 +139,10 @@ public class ListUserFlowsRestlet extends AbstractBaseRestlet {
             if (request.getParameterMap().containsKey("includeOldVersions"))
                 includeOldVersions = Boolean.parseBoolean(request.getParameter("includeOldVersions"));
 
-            JSONArray jaResult = bsl.listAccessibleUserFlowsAsUser(userId, remoteUserId, offset, count, includeOldVersions);
+            JSONArray jaResult = (after != null) ?
+                    bsl.listAccessibleUserFlowsAsUser(userId, remoteUserId, after, count, includeOldVersions) :
+                    bsl.listAccessibleUserFlowsAsUser(userId, remoteUserId, offset, count, includeOldVersions);
+            next = getNextPageCursor(jaResult, after, count);
 
             for (int i = 0, iMax = jaResult.length(); i < iMax; i++) {
                 JSONObject joFlowVer = jaResult.getJSONObject(i);
@@ -173,7 +179,7 @@ public class ListUserFlowsRestlet extends AbstractBaseRestlet {
         }
 
         // Send the response
-        sendResponse(jaSuccess, jaErrors, ct, response);
+        sendResponse(jaSuccess, jaErrors, next, ct, response);
 
         return true;
     }
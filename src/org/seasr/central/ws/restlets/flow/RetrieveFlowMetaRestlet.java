@@ -58,13 +58,15 @@ import org.seasr.central.ws.restlets.ContentTypes;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
-import static org.seasr.central.util.Tools.sendErrorInternalServerError;
-import static org.seasr.central.util.Tools.sendErrorNotAcceptable;
+import static org.seasr.central.util.Tools.*;
 
 /**
  * Restlet for retrieving flow information metadata
@@ -94,10 +96,16 @@ public class RetrieveFlowMetaRestlet extends AbstractBaseRestlet {
                 "(?:/|" + regexExtensionMatcher() + ")?$";
     }
 
+    @Override
+    public Set<String> getSupportedMethods() {
+        return new HashSet<String>(Arrays.asList("GET", "HEAD"));
+    }
+
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
-        // check for GET
-        if (!method.equalsIgnoreCase("GET")) return false;
+        // Check for GET or HEAD
+        boolean isHead = method.equalsIgnoreCase("HEAD");
+        if (!method.equalsIgnoreCase("GET") && !isHead) return false;
 
         ContentType ct = getDesiredResponseContentType(request);
         if (ct == null) {
@@ -153,6 +161,21 @@ public class RetrieveFlowMetaRestlet extends AbstractBaseRestlet {
                     return true;
                 }
 
+                // Flow versions never change, so the client copy (if any) is still current
+                String eTag = createVersionedETag(flowId, version, ct, null);
+                if (isNotModified(request, eTag)) {
+                    sendNotModified(response, eTag);
+                    return true;
+                }
+
+                // The metadata is only generated from the descriptor, so HEAD requests get no Content-Length
+                if (isHead) {
+                    setImmutableCacheHeaders(response, eTag);
+                    response.setContentType(ct.toString());
+                    response.setStatus(HttpServletResponse.SC_OK);
+                    return true;
+                }
+
                 // Attempt to retrieve the flow from the backend store
                 Model flowModel = bsl.getFlow(flowId, version);
 
@@ -177,6 +200,7 @@ public class RetrieveFlowMetaRestlet extends AbstractBaseRestlet {
                 // TODO: should we add info for the component instances in the flow? how about connectors?
 
                 jaSuccess.put(joFlowMeta);
+                setImmutableCacheHeaders(response, eTag);
             }
             catch (FlowNotFoundException e) {
                 JSONObject joError = SCError.createErrorObj(SCError.FLOW_NOT_FOUND, bsl,
@@ -50,8 +50,11 @@ import org.seasr.central.ws.restlets.ContentTypes;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -83,10 +86,16 @@ public class RetrieveFlowRestlet extends AbstractBaseRestlet {
                 "(?:/|" + regexExtensionMatcher() + ")?$";
     }
 
+    @Override
+    public Set<String> getSupportedMethods() {
+        return new HashSet<String>(Arrays.asList("GET", "HEAD"));
+    }
+
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
-        // Check for GET
-        if (!method.equalsIgnoreCase("GET")) return false;
+        // Check for GET or HEAD
+        boolean isHead = method.equalsIgnoreCase("HEAD");
+        if (!method.equalsIgnoreCase("GET") && !isHead) return false;
 
         ContentType ct = getDesiredResponseContentType(request);
         if (ct == null) {
@@ -131,6 +140,36 @@ public class RetrieveFlowRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
+            // Flow versions never change, so the client copy (if any) is still current
+            String eTag = createVersionedETag(flowId, version, ct, request);
+            if (isNotModified(request, eTag)) {
+                sendNotModified(response, eTag);
+                return true;
+            }
+
+            String format = getDescriptorFormat(ct);
+
+            // Answer HEAD requests from the stored rendering metadata, without generating the descriptor
+            if (isHead) {
+                long length = bsl.getFlowRenderingLength(flowId, version, format, getBaseAccessUrl(request));
+                setImmutableCacheHeaders(response, eTag);
+                response.setContentType(ct.toString());
+                if (length >= 0)
+                    response.setHeader("Content-Length", Long.toString(length));
+                response.setStatus(HttpServletResponse.SC_OK);
+                return true;
+            }
+
+            // Send the flow descriptor pre-rendered at upload time, if available
+            byte[] rendering = bsl.getFlowRendering(flowId, version, format);
+            if (rendering != null) {
+                setImmutableCacheHeaders(response, eTag);
+                response.setContentType(ct.toString());
+                response.setStatus(HttpServletResponse.SC_OK);
+                sendRendering(response, rendering, getBaseAccessUrl(request));
+                return true;
+            }
+
             // Attempt to retrieve the flow from the backend store
             Model flowModel = bsl.getFlow(flowId, version);
 
@@ -138,21 +177,11 @@ public class RetrieveFlowRestlet extends AbstractBaseRestlet {
             rewriteFlowModel(flowModel, flowId, version, request);
 
             // Send the response
+            setImmutableCacheHeaders(response, eTag);
             response.setContentType(ct.toString());
             response.setStatus(HttpServletResponse.SC_OK);
 
-            if (ct.equals(ContentTypes.RDFXML))
-                flowModel.write(response.getOutputStream(), "RDF/XML");
-
-            else
-
-            if (ct.equals(ContentTypes.RDFNT))
-                flowModel.write(response.getOutputStream(), "N-TRIPLE");
-
-            else
-
-            if (ct.equals(ContentTypes.RDFTTL))
-                flowModel.write(response.getOutputStream(), "TURTLE");
+            flowModel.write(response.getOutputStream(), format);
         }
         catch (FlowNotFoundException e) {
             sendErrorNotFound(response);
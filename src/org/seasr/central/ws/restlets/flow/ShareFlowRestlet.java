@@ -89,6 +89,11 @@ public class ShareFlowRestlet extends AbstractBaseRestlet {
         return "/services/groups/([^/\\s]+)/flows(?:/|" + regexExtensionMatcher() + ")?$";
     }
 
+    @Override
+    public Set<String> getSupportedMethods() {
+        return Collections.singleton("POST");
+    }
+
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
         // Check for POST
@@ -159,13 +164,29 @@ public class ShareFlowRestlet extends AbstractBaseRestlet {
                 }
             }
 
+            // Check permissions for all the flows at once
+            Map<IdVersionPair, Boolean> permissions;
+            try {
+                permissions = SCSecurity.canShareFlows(flows, remoteUserId, bsl, request);
+            }
+            catch (BackendStoreException e) {
+                logger.log(Level.SEVERE, null, e);
+                jaErrors.put(SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl));
+                sendResponse(jaSuccess, jaErrors, ct, response);
+                return true;
+            }
+
             for (IdVersionPair flow : flows) {
                 UUID flowId = flow.getId();
                 int version = flow.getVersion();
 
                 try {
+                    Boolean allowed = permissions.get(flow);
+                    if (allowed == null)
+                        throw new FlowNotFoundException(flowId, version);
+
                     // Check permissions
-                    if (!SCSecurity.canShareFlow(flowId, version, remoteUserId, bsl, request)) {
+                    if (!allowed) {
                         JSONObject joError = SCError.createErrorObj(SCError.UNAUTHORIZED, bsl);
                         joError.put("uuid", flowId.toString());
                         joError.put("version", version);
@@ -60,6 +60,7 @@ import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.UnknownComponentsException;
 import org.seasr.central.storage.exceptions.UserNotFoundException;
+import org.seasr.central.storage.fetch.DescriptorFetcher;
 import org.seasr.central.util.SCSecurity;
 import org.seasr.central.ws.restlets.AbstractBaseRestlet;
 import org.seasr.central.ws.restlets.ContentTypes;
@@ -83,6 +84,9 @@ public class UploadFlowRestlet extends AbstractBaseRestlet {
 
     private static final Map<String, ContentType> supportedResponseTypes = new HashMap<String, ContentType>();
 
+    /** The fetcher for remote descriptors (if not set, the descriptors are retrieved directly) */
+    private DescriptorFetcher descriptorFetcher = null;
+
     static {
         supportedResponseTypes.put("json", ContentType.JSON);
         supportedResponseTypes.put("xml", ContentType.APPLICATION_XML);
@@ -101,6 +105,20 @@ public class UploadFlowRestlet extends AbstractBaseRestlet {
         return "/services/users/([^/\\s]+)/flows/?(?:" + regexExtensionMatcher() + ")?$";
     }
 
+    @Override
+    public Set<String> getSupportedMethods() {
+        return Collections.singleton("POST");
+    }
+
+    /**
+     * Sets the fetcher used to retrieve the descriptors specified as URLs
+     *
+     * @param descriptorFetcher The descriptor fetcher
+     */
+    public void setDescriptorFetcher(DescriptorFetcher descriptorFetcher) {
+        this.descriptorFetcher = descriptorFetcher;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
@@ -154,6 +172,17 @@ public class UploadFlowRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
+            // Start retrieving all the remote descriptors at once
+            if (descriptorFetcher != null)
+                for (FileItem file : files)
+                    if (file != null && file.getFieldName().equals("flow_rdf") && file.isFormField())
+                        try {
+                            descriptorFetcher.prefetch(new URI(file.getString()));
+                        }
+                        catch (Exception e) {
+                            // Reported when the descriptor is processed
+                        }
+
             // Accumulator for the flow models
             Model model = ModelFactory.createDefaultModel();
 
@@ -178,8 +207,7 @@ public class UploadFlowRestlet extends AbstractBaseRestlet {
                     try {
                         // Read the flow model and check that it contains a single flow
                         Model flowModel = file.isFormField() ?
-                                // TODO: Add mechanism for request timeouts when retrieving remote descriptors
-                                ModelUtils.getModel(new URI(file.getString()), null) :
+                                getRemoteModel(new URI(file.getString())) :
                                 ModelUtils.getModel(file.getInputStream(), null);
 
                         List<Resource> flowResList = flowModel.listSubjectsWithProperty(
@@ -279,4 +307,15 @@ public class UploadFlowRestlet extends AbstractBaseRestlet {
 
         return true;
     }
+
+    /**
+     * Retrieves and parses a remote descriptor
+     *
+     * @param uri The descriptor location
+     * @return The descriptor model
+     * @throws IOException Thrown if the descriptor cannot be retrieved or parsed
+     */
+    private Model getRemoteModel(URI uri) throws IOException {
+        return (descriptorFetcher != null) ? descriptorFetcher.getModel(uri) : ModelUtils.getModel(uri, null);
+    }
 }
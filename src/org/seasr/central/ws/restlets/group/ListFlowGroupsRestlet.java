@@ -44,6 +44,7 @@ import com.google.gdata.util.ContentType;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.FlowNotFoundException;
@@ -111,14 +112,16 @@ public class ListFlowGroupsRestlet extends AbstractBaseRestlet {
             remoteUser = request.getParameter("remoteUser");
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
+        PageCursor after = null;
+        PageCursor next = null;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
+            after = getPageCursor(request);
         }
         catch (NumberFormatException e) {
             logger.log(Level.WARNING, null, e);
@@ -134,7 +137,10 @@ public class ListFlowGroupsRestlet extends AbstractBaseRestlet {
             try {
                 remoteUserId = bsl.getUserId(remoteUser);
 
-                JSONArray jaResult = bsl.listFlowGroupsAsUser(flowId, flowVersion, remoteUserId, offset, count);
+                JSONArray jaResult = (after != null) ?
+                        bsl.listFlowGroupsAsUser(flowId, flowVersion, remoteUserId, after, count) :
+                        bsl.listFlowGroupsAsUser(flowId, flowVersion, remoteUserId, offset, count);
+                next = getNextPageCursor(jaResult, after, count);
 
                 for (int i = 0, iMax = jaResult.length(); i < iMax; i++) {
                     JSONObject joGroup = jaResult.getJSONObject(i);
@@ -173,7 +179,7 @@ public class ListFlowGroupsRestlet extends AbstractBaseRestlet {
         }
 
         // Send the response
-        sendResponse(jaSuccess, jaErrors, ct, response);
+        sendResponse(jaSuccess, jaErrors, next, ct, response);
 
         return true;
     }
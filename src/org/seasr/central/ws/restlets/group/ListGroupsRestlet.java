@@ -44,18 +44,22 @@ import com.google.gdata.util.ContentType;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
-import org.seasr.central.storage.exceptions.GroupNotFoundException;
 import org.seasr.central.storage.exceptions.UserNotFoundException;
 import org.seasr.central.util.SCSecurity;
 import org.seasr.central.ws.restlets.AbstractBaseRestlet;
 import org.seasr.central.ws.restlets.ContentTypes;
+import org.seasr.central.ws.restlets.ListingResponseWriter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -89,7 +93,7 @@ public class ListGroupsRestlet extends AbstractBaseRestlet {
     }
 
     @Override
-    public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
+    public boolean process(final HttpServletRequest request, HttpServletResponse response, String method, String... values) {
         // check for GET
         if (!method.equalsIgnoreCase("GET")) return false;
 
@@ -110,14 +114,15 @@ public class ListGroupsRestlet extends AbstractBaseRestlet {
             remoteUser = request.getParameter("remoteUser");
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
+        PageCursor after = null;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
+            after = getPageCursor(request);
         }
         catch (NumberFormatException e) {
             logger.log(Level.WARNING, null, e);
@@ -136,21 +141,43 @@ public class ListGroupsRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
-            JSONArray jaGroups = bsl.listGroups(offset, count);
-
-            for (int i = 0, iMax = jaGroups.length(); i < iMax; i++) {
-                JSONObject joGroup = jaGroups.getJSONObject(i);
+            final UUID requesterId = remoteUserId;
+            ListingResponseWriter writer = new ListingResponseWriter(ct, response) {
+                @Override
+                protected List<JSONObject> transform(List<JSONObject> groups) throws Exception {
+                    List<UUID> groupIds = new ArrayList<UUID>(groups.size());
+                    for (JSONObject joGroup : groups)
+                        groupIds.add(UUID.fromString(joGroup.getString("uuid")));
+
+                    Set<UUID> allowed = SCSecurity.canAccessPrivateGroupInfo(groupIds, requesterId, bsl, request);
+                    for (int i = 0, iMax = groups.size(); i < iMax; i++)
+                        if (!allowed.contains(groupIds.get(i))) {
+                            JSONObject joGroup = groups.get(i);
+                            joGroup.put("profile", getPublicProfileEntries(joGroup.getJSONObject("profile")));
+                        }
+
+                    return groups;
+                }
+            };
+
+            PageCursor next = null;
+            try {
+                if (after != null)
+                    bsl.listGroups(after, count, writer);
+                else
+                    writer.handleEntries(bsl.listGroups(offset, count));
+                writer.flush();
+
+                next = getNextPageCursor(writer, after, count);
+            }
+            catch (BackendStoreException e) {
+                logger.log(Level.SEVERE, null, e);
+                jaErrors.put(SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl));
+            }
 
-                UUID groupId = UUID.fromString(joGroup.getString("uuid"));
-                if (!SCSecurity.canAccessPrivateGroupInfo(groupId, remoteUserId, bsl, request))
-                    joGroup.put("profile", getPublicProfileEntries(joGroup.getJSONObject("profile")));
+            // Send the response
+            sendResponse(writer, jaErrors, next, response);
 
-                jaSuccess.put(joGroup);
-            }
-        }
-        catch (GroupNotFoundException e) {
-            jaErrors.put(SCError.createErrorObj(SCError.GROUP_NOT_FOUND, bsl, e.getGroupId().toString()));
-            sendResponse(jaSuccess, jaErrors, ct, response);
             return true;
         }
         catch (UserNotFoundException e) {
@@ -171,10 +198,5 @@ public class ListGroupsRestlet extends AbstractBaseRestlet {
             sendErrorInternalServerError(response);
             return true;
         }
-
-        // Send the response
-        sendResponse(jaSuccess, jaErrors, ct, response);
-
-        return true;
     }
 }
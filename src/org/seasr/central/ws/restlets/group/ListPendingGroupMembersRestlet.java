@@ -42,6 +42,8 @@ package org.seasr.central.ws.restlets.group;
 
 import com.google.gdata.util.ContentType;
 import org.json.JSONArray;
+import org.json.JSONException;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.GroupNotFoundException;
@@ -58,6 +60,7 @@ import java.util.Properties;
 import java.util.UUID;
 import java.util.logging.Level;
 
+import static org.seasr.central.util.Tools.sendErrorInternalServerError;
 import static org.seasr.central.util.Tools.sendErrorNotAcceptable;
 
 /**
@@ -109,14 +112,16 @@ public class ListPendingGroupMembersRestlet extends AbstractBaseRestlet {
             remoteUser = request.getParameter("remoteUser");
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
+        PageCursor after = null;
+        PageCursor next = null;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
+            after = getPageCursor(request);
         }
         catch (NumberFormatException e) {
             logger.log(Level.WARNING, null, e);
@@ -139,7 +144,10 @@ public class ListPendingGroupMembersRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
-            jaSuccess = bsl.listPendingGroupMembers(groupId, offset, count);
+            jaSuccess = (after != null) ?
+                    bsl.listPendingGroupMembers(groupId, after, count) :
+                    bsl.listPendingGroupMembers(groupId, offset, count);
+            next = getNextPageCursor(jaSuccess, after, count);
         }
         catch (GroupNotFoundException e) {
             jaErrors.put(SCError.createErrorObj(SCError.GROUP_NOT_FOUND, bsl, values[0]));
@@ -158,9 +166,15 @@ public class ListPendingGroupMembersRestlet extends AbstractBaseRestlet {
             sendResponse(jaSuccess, jaErrors, ct, response);
             return true;
         }
+        catch (JSONException e) {
+            // Should not happen
+            logger.log(Level.SEVERE, null, e);
+            sendErrorInternalServerError(response);
+            return true;
+        }
 
         // Send the response
-        sendResponse(jaSuccess, jaErrors, ct, response);
+        sendResponse(jaSuccess, jaErrors, next, ct, response);
 
         return true;
     }
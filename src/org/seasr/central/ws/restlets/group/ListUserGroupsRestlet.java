@@ -42,6 +42,8 @@ package org.seasr.central.ws.restlets.group;
 
 import com.google.gdata.util.ContentType;
 import org.json.JSONArray;
+import org.json.JSONException;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.UserNotFoundException;
@@ -57,6 +59,7 @@ import java.util.Properties;
 import java.util.UUID;
 import java.util.logging.Level;
 
+import static org.seasr.central.util.Tools.sendErrorInternalServerError;
 import static org.seasr.central.util.Tools.sendErrorNotAcceptable;
 
 /**
@@ -108,14 +111,16 @@ public class ListUserGroupsRestlet extends AbstractBaseRestlet {
             remoteUser = request.getParameter("remoteUser");
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
+        PageCursor after = null;
+        PageCursor next = null;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
+            after = getPageCursor(request);
         }
         catch (NumberFormatException e) {
             logger.log(Level.WARNING, null, e);
@@ -138,7 +143,10 @@ public class ListUserGroupsRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
-            jaSuccess = bsl.listUserGroups(userId, offset, count);
+            jaSuccess = (after != null) ?
+                    bsl.listUserGroups(userId, after, count) :
+                    bsl.listUserGroups(userId, offset, count);
+            next = getNextPageCursor(jaSuccess, after, count);
         }
         catch (UserNotFoundException e) {
             if ((remoteUser != null && remoteUser.equals(e.getUserName())) ||
@@ -156,9 +164,15 @@ public class ListUserGroupsRestlet extends AbstractBaseRestlet {
             sendResponse(jaSuccess, jaErrors, ct, response);
             return true;
         }
+        catch (JSONException e) {
+            // Should not happen
+            logger.log(Level.SEVERE, null, e);
+            sendErrorInternalServerError(response);
+            return true;
+        }
 
         // Send the response
-        sendResponse(jaSuccess, jaErrors, ct, response);
+        sendResponse(jaSuccess, jaErrors, next, ct, response);
 
         return true;
     }
@@ -97,14 +97,13 @@ public class ListRolesRestlet extends AbstractBaseRestlet {
         JSONArray jaErrors = new JSONArray();
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
 
             jaSuccess = bsl.listRoles(offset, count);
         }
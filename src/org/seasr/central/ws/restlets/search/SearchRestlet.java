@@ -0,0 +1,194 @@
+/*
+ * University of Illinois/NCSA
+ * Open Source License
+ *
+ * Copyright (c) 2008, NCSA.  All rights reserved.
+ *
+ * Developed by:
+ * The Automated Learning Group
+ * University of Illinois at Urbana-Champaign
+ * http://www.seasr.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal with the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject
+ * to the following conditions:
+ *
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimers.
+ *
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimers in
+ * the documentation and/or other materials provided with the distribution.
+ *
+ * Neither the names of The Automated Learning Group, University of
+ * Illinois at Urbana-Champaign, nor the names of its contributors may
+ * be used to endorse or promote products derived from this Software
+ * without specific prior written permission.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS WITH THE SOFTWARE.
+ */
+
+package org.seasr.central.ws.restlets.search;
+
+import com.google.gdata.util.ContentType;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.seasr.central.storage.SCError;
+import org.seasr.central.storage.exceptions.BackendStoreException;
+import org.seasr.central.storage.exceptions.InvalidQueryException;
+import org.seasr.central.storage.exceptions.UserNotFoundException;
+import org.seasr.central.storage.search.SearchIndex;
+import org.seasr.central.util.SCSecurity;
+import org.seasr.central.ws.restlets.AbstractBaseRestlet;
+import org.seasr.central.ws.restlets.ContentTypes;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import static org.seasr.central.util.Tools.*;
+
+/**
+ * Restlet for searching the components and flows visible to the remote user
+ *
+ * The query ('q') uses the Lucene query syntax and is matched against the name, description, creator,
+ * tags, port and property names of each version. The hits can be restricted to components or flows
+ * with the 'type' parameter and are paged with 'offset' and 'count'.
+ *
+ * @author Boris Capitanu
+ */
+public class SearchRestlet extends AbstractBaseRestlet {
+
+    private static final Map<String, ContentType> supportedResponseTypes = new HashMap<String, ContentType>();
+
+    static {
+        supportedResponseTypes.put("json", ContentType.JSON);
+        supportedResponseTypes.put("xml", ContentType.APPLICATION_XML);
+        supportedResponseTypes.put("html", ContentType.TEXT_HTML);
+        supportedResponseTypes.put("txt", ContentType.TEXT_PLAIN);
+        supportedResponseTypes.put("sgwt", ContentTypes.SmartGWT);
+    }
+
+    @Override
+    public Map<String, ContentType> getSupportedResponseTypes() {
+        return supportedResponseTypes;
+    }
+
+    @Override
+    public String getRestContextPathRegexp() {
+        return "/services/search(?:/|" + regexExtensionMatcher() + ")?$";
+    }
+
+    @Override
+    public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
+        // Check for GET
+        if (!method.equalsIgnoreCase("GET")) return false;
+
+        ContentType ct = getDesiredResponseContentType(request);
+        if (ct == null) {
+            sendErrorNotAcceptable(response);
+            return true;
+        }
+
+        JSONArray jaSuccess = new JSONArray();
+        JSONArray jaErrors = new JSONArray();
+
+        UUID remoteUserId;
+        String remoteUser = request.getRemoteUser();
+
+        //TODO: for test purposes
+        if (request.getParameterMap().containsKey("remoteUser") && request.getParameter("remoteUser").trim().length() > 0)
+            remoteUser = request.getParameter("remoteUser");
+
+        String query = request.getParameter("q");
+        if (query == null || query.trim().length() == 0) {
+            jaErrors.put(SCError.createErrorObj(SCError.INCOMPLETE_REQUEST, bsl));
+            sendResponse(jaSuccess, jaErrors, ct, response);
+            return true;
+        }
+
+        SearchIndex.Type type = null;
+        String sType = request.getParameter("type");
+        if (sType != null && sType.trim().length() > 0) {
+            try {
+                type = SearchIndex.Type.valueOf(sType.trim().toUpperCase());
+            }
+            catch (IllegalArgumentException e) {
+                jaErrors.put(SCError.createErrorObj(SCError.INVALID_PARAM_VALUE, bsl));
+                sendResponse(jaSuccess, jaErrors, ct, response);
+                return true;
+            }
+        }
+
+        long offset = 0;
+        long count;
+
+        try {
+            String sOffset = request.getParameter("offset");
+            if (sOffset != null) offset = Math.max(0, Long.parseLong(sOffset));
+            count = getPageSize(request);
+        }
+        catch (NumberFormatException e) {
+            logger.log(Level.WARNING, null, e);
+            jaErrors.put(SCError.createErrorObj(SCError.INVALID_PARAM_VALUE, e, bsl));
+            sendResponse(jaSuccess, jaErrors, ct, response);
+            return true;
+        }
+
+        try {
+            remoteUserId = bsl.getUserId(remoteUser);
+
+            boolean unrestricted = SCSecurity.canSearchAllVersions(remoteUserId, bsl, request);
+
+            JSONArray jaHits = bsl.search(query, type, remoteUserId, unrestricted, offset, count);
+            for (int i = 0, iMax = jaHits.length(); i < iMax; i++) {
+                JSONObject joHit = jaHits.getJSONObject(i);
+                String id = joHit.getString("uuid");
+                int version = joHit.getInt("version");
+
+                String url = SearchIndex.Type.FLOW.name().equalsIgnoreCase(joHit.getString("type")) ?
+                        getFlowBaseAccessUrl(request, id, version) :
+                        getComponentBaseAccessUrl(request, id, version);
+                joHit.put("url", url + ".ttl");
+
+                jaSuccess.put(joHit);
+            }
+        }
+        catch (InvalidQueryException e) {
+            logger.log(Level.FINE, null, e);
+            jaErrors.put(SCError.createErrorObj(SCError.INVALID_PARAM_VALUE, e, bsl));
+        }
+        catch (UserNotFoundException e) {
+            logger.log(Level.WARNING, String.format("Cannot obtain user id for authenticated user '%s'!", remoteUser));
+            jaErrors.put(SCError.createErrorObj(SCError.UNAUTHORIZED, e, bsl));
+        }
+        catch (BackendStoreException e) {
+            logger.log(Level.SEVERE, null, e);
+            jaErrors.put(SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl));
+        }
+        catch (JSONException e) {
+            // Should not happen
+            logger.log(Level.SEVERE, null, e);
+            sendErrorInternalServerError(response);
+            return true;
+        }
+
+        sendResponse(jaSuccess, jaErrors, ct, response);
+
+        return true;
+    }
+}
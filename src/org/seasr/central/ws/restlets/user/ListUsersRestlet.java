@@ -44,17 +44,22 @@ import com.google.gdata.util.ContentType;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.seasr.central.storage.PageCursor;
 import org.seasr.central.storage.SCError;
 import org.seasr.central.storage.exceptions.BackendStoreException;
 import org.seasr.central.storage.exceptions.UserNotFoundException;
 import org.seasr.central.util.SCSecurity;
 import org.seasr.central.ws.restlets.AbstractBaseRestlet;
 import org.seasr.central.ws.restlets.ContentTypes;
+import org.seasr.central.ws.restlets.ListingResponseWriter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -89,7 +94,7 @@ public class ListUsersRestlet extends AbstractBaseRestlet {
     }
 
     @Override
-    public boolean process(HttpServletRequest request, HttpServletResponse response, String method, String... values) {
+    public boolean process(final HttpServletRequest request, HttpServletResponse response, String method, String... values) {
         // check for GET
         if (!method.equalsIgnoreCase("GET")) return false;
 
@@ -110,14 +115,15 @@ public class ListUsersRestlet extends AbstractBaseRestlet {
             remoteUser = request.getParameter("remoteUser");
 
         long offset = 0;
-        long count = Long.MAX_VALUE;
+        long count = maxPageSize;
+        PageCursor after = null;
 
         String sOffset = request.getParameter("offset");
-        String sCount = request.getParameter("count");
 
         try {
             if (sOffset != null) offset = Long.parseLong(sOffset);
-            if (sCount != null) count = Long.parseLong(sCount);
+            count = getPageSize(request);
+            after = getPageCursor(request);
 
             remoteUserId = bsl.getUserId(remoteUser);
 
@@ -128,17 +134,44 @@ public class ListUsersRestlet extends AbstractBaseRestlet {
                 return true;
             }
 
-            JSONArray jaUsers = bsl.listUsers(offset, count);
-
-            for (int i = 0, iMax = jaUsers.length(); i < iMax; i++) {
-                JSONObject joUser = jaUsers.getJSONObject(i);
+            final UUID requesterId = remoteUserId;
+            ListingResponseWriter writer = new ListingResponseWriter(ct, response) {
+                @Override
+                protected List<JSONObject> transform(List<JSONObject> users) throws Exception {
+                    List<UUID> userIds = new ArrayList<UUID>(users.size());
+                    for (JSONObject joUser : users)
+                        userIds.add(UUID.fromString(joUser.getString("uuid")));
+
+                    Set<UUID> allowed = SCSecurity.canAccessPrivateUserInfo(userIds, requesterId, bsl, request);
+                    for (int i = 0, iMax = users.size(); i < iMax; i++)
+                        if (!allowed.contains(userIds.get(i))) {
+                            JSONObject joUser = users.get(i);
+                            joUser.put("profile", getPublicProfileEntries(joUser.getJSONObject("profile")));
+                        }
+
+                    return users;
+                }
+            };
+
+            PageCursor next = null;
+            try {
+                if (after != null)
+                    bsl.listUsers(after, count, writer);
+                else
+                    writer.handleEntries(bsl.listUsers(offset, count));
+                writer.flush();
+
+                next = getNextPageCursor(writer, after, count);
+            }
+            catch (BackendStoreException e) {
+                logger.log(Level.SEVERE, null, e);
+                jaErrors.put(SCError.createErrorObj(SCError.BACKEND_ERROR, e, bsl));
+            }
 
-                UUID userId = UUID.fromString(joUser.getString("uuid"));
-                if (!SCSecurity.canAccessPrivateUserInfo(userId, remoteUserId, bsl, request))
-                    joUser.put("profile", getPublicProfileEntries(joUser.getJSONObject("profile")));
+            // Send the response
+            sendResponse(writer, jaErrors, next, response);
 
-                jaSuccess.put(joUser);
-            }
+            return true;
         }
         catch (UserNotFoundException e) {
             if ((remoteUser != null && remoteUser.equals(e.getUserName())) ||